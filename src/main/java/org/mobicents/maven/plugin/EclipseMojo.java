@@ -25,15 +25,21 @@ package org.mobicents.maven.plugin;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -45,17 +51,41 @@ import org.apache.maven.model.Build;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.model.PluginExecution;
 import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.Profile;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.settings.Settings;
 import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.mobicents.maven.plugin.analysis.ClasspathConflictDetector;
+import org.mobicents.maven.plugin.analysis.UnusedDependencyAnalyzer;
+import org.mobicents.maven.plugin.eclipse.ClasspathState;
 import org.mobicents.maven.plugin.eclipse.ClasspathWriter;
 import org.mobicents.maven.plugin.eclipse.ProjectWriter;
+import org.mobicents.maven.plugin.eclipse.ResolutionCheckpoint;
+import org.mobicents.maven.plugin.eclipse.ResolutionState;
+import org.mobicents.maven.plugin.eclipse.SharedResolutionCache;
+import org.mobicents.maven.plugin.output.EclipseAptOutputWriter;
+import org.mobicents.maven.plugin.output.OutputWriter;
+import org.mobicents.maven.plugin.output.OutputWriters;
+import org.mobicents.maven.plugin.resolver.CachingMetadataSource;
+import org.mobicents.maven.plugin.resolver.HedgedArtifactResolver;
+import org.mobicents.maven.plugin.resolver.MissingArtifactCache;
+import org.mobicents.maven.plugin.resolver.PrefetchingMetadataSource;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+import org.mobicents.maven.plugin.utils.JarIndexCache;
+import org.mobicents.maven.plugin.utils.LightweightProjectBuilder;
+import org.mobicents.maven.plugin.utils.LocalRepositoryIndex;
 import org.mobicents.maven.plugin.utils.PathNormalizer;
+import org.mobicents.maven.plugin.utils.ProjectSnapshotStore;
 import org.mobicents.maven.plugin.utils.ProjectUtils;
+import org.mobicents.maven.plugin.utils.ReactorRegistry;
+import org.mobicents.maven.plugin.utils.ShardRunner;
 
 
 /**
@@ -123,6 +153,15 @@ public class EclipseMojo
      */
     private String repositoryVariableName = "M2_REPO";
 
+    /**
+     * Other eclipse classpath variables (the name of each one mapped to its root directory),
+     * for jars outside the maven repository to be written as variable entries too. Each entry
+     * is written relative to the variable with the longest root it's under.
+     *
+     * @parameter
+     */
+    private Map classpathVariables;
+
     /**
      * Artifact factory, needed to download source jars for inclusion in classpath.
      *
@@ -194,6 +233,298 @@ public class EclipseMojo
      */
     private String classpathMerge;
 
+    /**
+     * Whether the generated classpath should be scanned for classes defined more than
+     * once and for packages split across several jars or source roots.
+     *
+     * @parameter expression="${detectClasspathConflicts}"
+     */
+    private boolean detectClasspathConflicts = false;
+
+    /**
+     * Whether the compiled classes of the projects are analyzed for classpath jars they
+     * don't reference: <code>report</code> only logs those jars, <code>remove</code> leaves
+     * them out of the generated .classpath. The projects must have been compiled.
+     *
+     * @parameter expression="${unusedDependencies}"
+     */
+    private String unusedDependencies;
+
+    /**
+     * The file in which the entry listings of classpath jars are kept between runs (used by the
+     * classpath analyses). Defaults to a file within the local repository, so it's shared by all
+     * reactors.
+     *
+     * @parameter expression="${jarIndexCacheFile}"
+     */
+    private File jarIndexCacheFile;
+
+    /**
+     * Limits the generation to the given modules: a comma separated list of artifactIds
+     * (or groupId:artifactIds) and/or POM directories relative to the root project. What all
+     * the other modules contribute to the .classpath is taken from the previous run.
+     *
+     * @parameter expression="${modules}"
+     */
+    private String modules;
+
+    /**
+     * Whether the modules depending (directly or not) on the selected <code>modules</code>
+     * are generated too.
+     *
+     * @parameter expression="${alsoMakeDependents}"
+     */
+    private boolean alsoMakeDependents = false;
+
+    /**
+     * The directory in which the state kept between runs is stored.
+     *
+     * @parameter expression="${workDirectory}" default-value="${project.build.directory}/mobicents-eclipse"
+     */
+    private File workDirectory;
+
+    /**
+     * Whether POMs are read with the lightweight streaming reader, falling back to the
+     * full Maven project builder for POMs it can't handle (i.e. profiles, repositories or
+     * parents that aren't available locally). It's not used when the settings declare
+     * profiles or profiles were activated on the command line.
+     *
+     * @parameter expression="${fastPomReading}"
+     */
+    private boolean fastPomReading = false;
+
+    /**
+     * Whether a snapshot of every module's project is kept in the <code>workDirectory</code>,
+     * so that later runs restore the projects of unchanged POMs (a POM is unchanged while
+     * its content and the content of all its parents is) instead of building them.
+     *
+     * @parameter expression="${projectSnapshots}"
+     */
+    private boolean projectSnapshots = false;
+
+    /**
+     * Whether the modules are streamed: each project is built when the .classpath gets to it
+     * and let go as soon as what the .classpath needs of it was taken, instead of all the
+     * projects being built first and held until the files are written. This keeps the memory
+     * needed proportional to the classpath rather than to the number of modules, for very large
+     * trees, at the cost of building the projects again on every generation.
+     *
+     * @parameter expression="${streaming}"
+     */
+    private boolean streaming = false;
+
+    /**
+     * Whether the resolution results are recorded in the <code>workDirectory</code> as they
+     * complete, so that a generation failing half way (i.e. on an unreachable repository)
+     * is resumed by the next run from where it failed instead of resolving everything again.
+     * The checkpoint is deleted once a generation completes. Off by default, as recording every
+     * result costs a write per artifact.
+     *
+     * @parameter expression="${checkpoint}" default-value="false"
+     */
+    private boolean checkpoint = false;
+
+    /**
+     * Whether artifacts that fail to resolve are left out of the .classpath (which is
+     * written from everything that did resolve, the missing artifacts being listed at the
+     * end) instead of failing the generation.
+     *
+     * @parameter expression="${failSoft}"
+     */
+    private boolean failSoft = false;
+
+    /**
+     * The formats the resolved classpath is written in, separated by commas: <code>eclipse</code>
+     * (the .classpath), <code>idea</code> (an IntelliJ IDEA <code>&lt;artifactId&gt;.iml</code>
+     * module), <code>text</code> (a <code>classpath.txt</code> listing the jars) and <code>apt</code>
+     * (the .factorypath and the APT settings, when the classpath holds annotation processors), or
+     * any other {@link org.mobicents.maven.plugin.output.OutputWriter} added to the dependencies of
+     * the plugin. The classpath is resolved once for all of them, and they're written concurrently.
+     * By default only the .classpath is written: <code>apt</code> reads every jar of the classpath.
+     *
+     * @parameter expression="${outputs}" default-value="eclipse"
+     */
+    private String outputs = "eclipse";
+
+    /**
+     * The number of shards the modules are split into, each one generated by a worker maven
+     * process of its own (all of them running at once) and their results merged into the
+     * .classpath, for trees too large for one JVM to resolve quickly. 0 or 1 to generate all the
+     * modules in this one. The workers run this plugin on the root POM, with its configuration
+     * but none of the properties given on the command line (see <code>shardWorkerArguments</code>).
+     * Every worker resolves the dependencies of its own modules transitively, so a dependency
+     * reached in different versions from different shards keeps the version of the first module
+     * (in POM order) that has it.
+     *
+     * @parameter expression="${shards}"
+     */
+    private int shards = 0;
+
+    /**
+     * The maven executable the shard workers are run with, defaults to the one running this build.
+     *
+     * @parameter expression="${shardWorkerExecutable}"
+     */
+    private String shardWorkerExecutable;
+
+    /**
+     * Extra arguments of the shard workers, separated by spaces (i.e. <code>-DresolutionThreads=4
+     * -e</code>). The workers already get the execution properties, active profiles, settings and
+     * update and checksum policies of this build.
+     *
+     * @parameter expression="${shardWorkerArguments}"
+     */
+    private String shardWorkerArguments;
+
+    /**
+     * The file listing the POMs of the shard a worker generates, set by the execution root on
+     * the workers it starts. A worker only stores the state of its modules in its
+     * <code>workDirectory</code> (neither the .project nor the .classpath of the root are
+     * written).
+     *
+     * @parameter expression="${shardPoms}"
+     */
+    private File shardPoms;
+
+    /**
+     * @parameter expression="${plugin}"
+     * @readonly
+     */
+    private PluginDescriptor plugin;
+
+    /**
+     * Whether released artifacts already in the local repository are looked up in an
+     * index of the repository (built once and stored in <code>localRepositoryIndexFile</code>)
+     * instead of going through the artifact resolver. Snapshots and artifacts missing
+     * locally are still resolved.
+     *
+     * @parameter expression="${localRepositoryIndex}"
+     */
+    private boolean localRepositoryIndex = false;
+
+    /**
+     * The file the local repository index is stored in, defaults to
+     * <code>.cache/mobicents-eclipse/repository-index.bin</code> within the local repository.
+     *
+     * @parameter expression="${localRepositoryIndexFile}"
+     */
+    private File localRepositoryIndexFile;
+
+    /**
+     * Whether the dependency graph is expanded a level at a time before the transitive
+     * dependencies are resolved, the POMs of a whole level being downloaded at once (the
+     * metadata is still read from them one POM at a time).
+     *
+     * @parameter expression="${concurrentResolution}"
+     */
+    private boolean concurrentResolution = false;
+
+    /**
+     * The maximum number of POMs downloaded at once with <code>concurrentResolution</code>.
+     *
+     * @parameter expression="${resolverThreads}"
+     */
+    private int resolverThreads = 8;
+
+    /**
+     * Whether the dependencies of released artifacts are cached in <code>metadataCacheFile</code>,
+     * so that the POMs of the dependencies don't need to be read again to resolve the transitive
+     * dependencies. Snapshots are never cached.
+     *
+     * @parameter expression="${metadataCache}"
+     */
+    private boolean metadataCache = false;
+
+    /**
+     * The file the dependency metadata is cached in, defaults to
+     * <code>.cache/mobicents-eclipse/metadata-cache.bin</code> within the local repository.
+     *
+     * @parameter expression="${metadataCacheFile}"
+     */
+    private File metadataCacheFile;
+
+    /**
+     * Whether artifacts not found in the remote repositories are remembered (in
+     * <code>missingArtifactCacheFile</code>) for <code>missingArtifactTtl</code> hours, during
+     * which they aren't looked up again in the repositories they were missing in. A missing
+     * artifact is then left out of the .classpath with a warning instead of failing the build.
+     *
+     * @parameter expression="${missingArtifactCache}"
+     */
+    private boolean missingArtifactCache = false;
+
+    /**
+     * The number of hours an artifact not found in a remote repository isn't looked up there again.
+     *
+     * @parameter expression="${missingArtifactTtl}"
+     */
+    private int missingArtifactTtl = 24;
+
+    /**
+     * Whether the artifacts remembered as missing are looked up again anyway.
+     *
+     * @parameter expression="${retryMissingArtifacts}"
+     */
+    private boolean retryMissingArtifacts = false;
+
+    /**
+     * The file the missing artifacts are remembered in, defaults to
+     * <code>.cache/mobicents-eclipse/missing-artifacts.bin</code> within the local repository.
+     *
+     * @parameter expression="${missingArtifactCacheFile}"
+     */
+    private File missingArtifactCacheFile;
+
+    /**
+     * Whether the transitive resolutions are shared, through <code>sharedResolutionCacheDirectory</code>,
+     * by all the checkouts (and worktrees) of a reactor: each resolution is stored under the hash
+     * of the dependencies its POMs declare, so a fresh checkout reuses what another one resolved.
+     * The directory is safe to use from several builds at once.
+     *
+     * @parameter expression="${sharedResolutionCache}"
+     */
+    private boolean sharedResolutionCache = false;
+
+    /**
+     * The directory the shared resolutions are kept in, defaults to
+     * <code>.cache/mobicents-eclipse/resolutions</code> within the local repository.
+     *
+     * @parameter expression="${sharedResolutionCacheDirectory}"
+     */
+    private File sharedResolutionCacheDirectory;
+
+    /**
+     * The time (in milliseconds) after which a remote repository that doesn't answer is
+     * given up on when downloading an artifact (the next repository is asked instead),
+     * 0 to wait for as long as the resolver does.
+     *
+     * @parameter expression="${repositoryTimeout}"
+     */
+    private long repositoryTimeout = 0;
+
+    /**
+     * The time (in milliseconds) after which the next remote repository is asked for an
+     * artifact as well when the previous one didn't answer yet, taking whichever answer
+     * comes first, 0 to only ask it once the previous one failed.
+     *
+     * @parameter expression="${hedgeDelay}"
+     */
+    private long hedgeDelay = 0;
+
+    /**
+     * The number of threads the artifacts of the .classpath are resolved on, while the ones
+     * already resolved are processed, 1 to resolve them one after the other. A remote
+     * repository is only ever asked for one artifact at a time, but releases missing from the
+     * local repository are downloaded from different repositories at the same time.
+     *
+     * @parameter expression="${resolutionThreads}"
+     */
+    private int resolutionThreads = 1;
+
+    private static final String UNUSED_DEPENDENCIES_REPORT = "report";
+
+    private static final String UNUSED_DEPENDENCIES_REMOVE = "remove";
+
     /**
      * @see org.apache.maven.plugin.Mojo#execute()
      */
@@ -201,42 +532,13 @@ public class EclipseMojo
         throws MojoExecutionException
         
     {
-    	if (!project.isExecutionRoot() && !generateProjectsForModules) {
+    	if (this.isSkipped()) {
     		getLog().warn("Skipping module because execution root project didn't configured generateProjectsForModules property as true");
     		return;
     	}
         try
         {
-            final MavenProject rootProject = this.getRootProject();
-            final ProjectWriter projectWriter = new ProjectWriter(rootProject,
-                    this.getLog());
-            projectWriter.write(eclipseProjectName != null ? eclipseProjectName : project.getArtifactId());
-            final Map originalCompileSourceRoots = this.collectProjectCompileSourceRoots();
-            final List projects = this.collectProjects();
-            this.processCompileSourceRoots(projects);
-            final ClasspathWriter classpathWriter = new ClasspathWriter(rootProject,
-                    this.getLog());
-            //TODO refactor to pass all arguments as an Options class or this will keep increasing the method signature
-            classpathWriter.write(
-                projects,
-                this.repositoryVariableName,
-                this.artifactFactory,
-                this.artifactResolver,
-                this.localRepository,
-                this.artifactMetadataSource,
-                this.classpathArtifactTypes,
-                this.project.getRemoteArtifactRepositories(),
-                this.resolveTransitiveDependencies,
-                this.classpathMerge,
-                this.classpathExcludes,
-                this.includeResourcesDirectory);
-            // - reset to the original source roots
-            for (final Iterator iterator = projects.iterator(); iterator.hasNext();)
-            {
-                final MavenProject project = (MavenProject)iterator.next();
-                project.getCompileSourceRoots().clear();
-                project.getCompileSourceRoots().addAll((List)originalCompileSourceRoots.get(project));
-            }
+            this.generate();
         }
         catch (Throwable throwable)
         {
@@ -247,90 +549,1173 @@ public class EclipseMojo
     }
 
     /**
-     * Collects all existing project compile source roots.
+     * Indicates whether this execution is skipped, which is the case for modules
+     * unless <code>generateProjectsForModules</code> is on.
      *
-     * @return a collection of collections
+     * @return true/false
      */
-    private Map collectProjectCompileSourceRoots()
-        throws Exception
+    protected boolean isSkipped()
+    {
+        return !project.isExecutionRoot() && !generateProjectsForModules;
+    }
+
+    /**
+     * The resolution results, shared by the executions of the reactor and
+     * kept for as long as this mojo lives.
+     */
+    private ResolutionState resolutionState;
+
+    private ResolutionState getResolutionState()
     {
-        final Map sourceRoots = new LinkedHashMap();
-        for (final Iterator iterator = this.collectProjects().iterator(); iterator.hasNext();)
+        if (this.resolutionState == null)
         {
-            final MavenProject project = (MavenProject)iterator.next();
-            sourceRoots.put(project, new ArrayList(project.getCompileSourceRoots()));
+            this.resolutionState = ReactorRegistry.forSession(this.session).getComponent(ResolutionState.class);
         }
-        return sourceRoots;
+        return this.resolutionState;
     }
 
-    private List projects = new ArrayList();
+    /**
+     * The checkpoint of the resolution results, loaded on demand.
+     */
+    private ResolutionCheckpoint resolutionCheckpoint;
 
     /**
-     * Collects all projects from all POMs within the current project.
-     *
-     * @return all applicable Maven project instances.
-     *
-     * @throws MojoExecutionException
+     * Gets the checkpoint of the resolution results, loading what a previous
+     * (failed) run recorded into the resolution state the first time.
      */
-    private List collectProjects()
-        throws Exception
+    private ResolutionCheckpoint getResolutionCheckpoint()
     {
-        if (projects.isEmpty())
+        if (this.resolutionCheckpoint == null)
         {
-            final List poms = this.getPoms();
-            for (ListIterator iterator = poms.listIterator(); iterator.hasNext();)
+            this.resolutionCheckpoint = new ResolutionCheckpoint(
+                new File(this.workDirectory, RESOLUTION_CHECKPOINT_FILE_NAME), this.getLog());
+            final int count = this.resolutionCheckpoint.load(this.getResolutionState(), this.artifactFactory);
+            if (count > 0)
             {
-                final File pom = (File)iterator.next();
-                try
-                {
-                    // - first attempt to get the existing project from the session
-                    final MavenProject project = ProjectUtils.getProject(this.projectBuilder, this.session, pom, this.getLog());
-                    if (project != null)
-                    {
-                        this.getLog().info("found project " + project.getId());
-                        projects.add(project);
-                    }
-                    else
-                    {
-                        if (this.getLog().isWarnEnabled())
-                        {
-                            this.getLog().warn("Could not load project from pom: " + pom + " - ignoring");
-                        }
-                    }
-                }
-                catch (ProjectBuildingException exception)
-                {
-                    throw new MojoExecutionException("Error loading " + pom, exception);
-                }
+                this.getLog().info("Resuming from the checkpoint of a previous run, " + count
+                    + " resolution results restored");
             }
         }
-        return projects;
+        return this.resolutionCheckpoint;
     }
 
     /**
-     * Processes the project compile source roots (adds all appropriate ones to the projects)
-     * so that they're avialable to the eclipse mojos.
+     * The name of the file the resolution results are recorded in until a generation completes.
+     */
+    private static final String RESOLUTION_CHECKPOINT_FILE_NAME = "resolution-checkpoint.bin";
+
+    /**
+     * Writes the .project and .classpath files from the currently collected
+     * projects.
      *
-     * @param projects the projects to process.
-     * @return the source roots.
      * @throws Exception
      */
-    private void processCompileSourceRoots(final List projects)
+    protected void generate()
         throws Exception
     {
-        for (final Iterator iterator = projects.iterator(); iterator.hasNext();)
+        final MavenProject rootProject = this.getRootProject();
+        if (this.shardPoms == null)
         {
-            final MavenProject project = (MavenProject)iterator.next();
-            final Set compileSourceRoots = new LinkedHashSet(project.getCompileSourceRoots());
-            compileSourceRoots.addAll(this.getExtraSourceDirectories(project));
-            final String testSourceDirectory = project.getBuild().getTestSourceDirectory();
-            if (testSourceDirectory != null && testSourceDirectory.trim().length() > 0)
+            final ProjectWriter projectWriter = new ProjectWriter(rootProject,
+                    this.getLog());
+            projectWriter.write(eclipseProjectName != null ? eclipseProjectName : project.getArtifactId());
+        }
+        // - the processed source roots, the projects' own ones are left as they are
+        final Map<MavenProject, List<String>> compileSourceRoots = new IdentityHashMap<MavenProject, List<String>>();
+        final Iterable projects;
+        if (this.shards > 1 && this.shardPoms == null)
+        {
+            // - the modules are generated by the workers, and all reused from their results
+            projects = Collections.EMPTY_LIST;
+            this.generateShards();
+        }
+        else if (this.streaming)
+        {
+            projects = new ProjectStream(this.getSelectedPoms(), compileSourceRoots);
+        }
+        else
+        {
+            projects = this.collectProjects();
+            for (final Iterator iterator = projects.iterator(); iterator.hasNext();)
+            {
+                final MavenProject project = (MavenProject)iterator.next();
+                compileSourceRoots.put(project, this.processCompileSourceRoots(project));
+            }
+        }
+        try
+        {
+            final ClasspathWriter classpathWriter = new ClasspathWriter(rootProject,
+                    this.getLog());
+            classpathWriter.setResolutionState(this.getResolutionState());
+            classpathWriter.setContext(this.getContext());
+            classpathWriter.setFailSoft(this.failSoft);
+            classpathWriter.setCompileSourceRoots(compileSourceRoots);
+            // - a shard worker only stores the state of its modules
+            final List<OutputWriter> outputWriters =
+                this.shardPoms != null ? Collections.<OutputWriter>emptyList() : this.getOutputWriters();
+            classpathWriter.setOutputWriters(outputWriters);
+            if (this.checkpoint)
+            {
+                classpathWriter.setCheckpoint(this.getResolutionCheckpoint());
+            }
+            classpathWriter.setResolutionThreads(this.resolutionThreads);
+            if (this.classpathVariables != null)
             {
-                compileSourceRoots.add(testSourceDirectory);
+                classpathWriter.setClasspathVariables(this.getClasspathVariables());
             }
-            project.getCompileSourceRoots().clear();
-            project.getCompileSourceRoots().addAll(compileSourceRoots);
+            if (!this.reusedModuleKeys.isEmpty())
+            {
+                classpathWriter.setPreviousState(this.getPreviousState(), this.reusedModuleKeys);
+            }
+            final ArtifactMetadataSource metadataSource = this.getMetadataSource();
+            if (this.concurrentResolution)
+            {
+                classpathWriter.setPrefetchingMetadataSource(
+                    new PrefetchingMetadataSource(metadataSource, this.artifactResolver, this.artifactFactory,
+                        this.resolverThreads, this.getLog()));
+            }
+            if (this.localRepositoryIndex)
+            {
+                classpathWriter.setLocalRepositoryIndex(this.getLocalRepositoryIndex());
+            }
+            if (this.missingArtifactCache)
+            {
+                classpathWriter.setMissingArtifactCache(this.getMissingArtifactCache());
+            }
+            if (this.sharedResolutionCache)
+            {
+                if (this.sharedResolutionCacheDirectory == null)
+                {
+                    this.sharedResolutionCacheDirectory =
+                        new File(this.localRepository.getBasedir(), SHARED_RESOLUTION_CACHE_DIRECTORY_NAME);
+                }
+                classpathWriter.setSharedResolutionCache(new SharedResolutionCache(
+                    this.sharedResolutionCacheDirectory, this.artifactFactory, this.getLog()));
+            }
+            if (this.repositoryTimeout > 0 || this.hedgeDelay > 0)
+            {
+                if (this.hedgedArtifactResolver == null)
+                {
+                    this.hedgedArtifactResolver = new HedgedArtifactResolver(
+                        this.artifactResolver, this.artifactFactory, this.repositoryTimeout, this.hedgeDelay,
+                        this.getLog());
+                }
+                classpathWriter.setHedgedArtifactResolver(this.hedgedArtifactResolver);
+            }
+            final boolean analyzeClasspath = this.detectClasspathConflicts || this.unusedDependencies != null
+                || hasAptOutput(outputWriters);
+            if (analyzeClasspath)
+            {
+                JarIndexCache.instance().load(this.getJarIndexCacheFile());
+            }
+            if (this.unusedDependencies != null)
+            {
+                if (!UNUSED_DEPENDENCIES_REPORT.equals(this.unusedDependencies)
+                    && !UNUSED_DEPENDENCIES_REMOVE.equals(this.unusedDependencies))
+                {
+                    throw new MojoExecutionException("Invalid unusedDependencies '" + this.unusedDependencies
+                        + "', expected '" + UNUSED_DEPENDENCIES_REPORT + "' or '" + UNUSED_DEPENDENCIES_REMOVE + "'");
+                }
+                classpathWriter.setUnusedDependencyAnalyzer(
+                    new UnusedDependencyAnalyzer(this.getLog(), ConcurrentUtils.defaultThreads()),
+                    UNUSED_DEPENDENCIES_REMOVE.equals(this.unusedDependencies));
+            }
+            //TODO refactor to pass all arguments as an Options class or this will keep increasing the method signature
+            classpathWriter.write(
+                projects,
+                this.repositoryVariableName,
+                this.artifactFactory,
+                this.artifactResolver,
+                this.localRepository,
+                metadataSource,
+                this.classpathArtifactTypes,
+                this.project.getRemoteArtifactRepositories(),
+                this.resolveTransitiveDependencies,
+                this.classpathMerge,
+                this.classpathExcludes,
+                this.includeResourcesDirectory);
+            if (this.projectSnapshotStore != null)
+            {
+                this.projectSnapshotStore.store();
+            }
+            // - the caches in the local repository are shared by the shard workers, left to the root
+            if (this.repositoryIndex != null && this.shardPoms == null)
+            {
+                this.repositoryIndex.store(this.getLocalRepositoryIndexFile());
+            }
+            if (this.cachingMetadataSource != null && this.shardPoms == null)
+            {
+                this.cachingMetadataSource.store();
+            }
+            if (this.missingArtifacts != null && this.shardPoms == null)
+            {
+                this.missingArtifacts.store(this.missingArtifactCacheFile);
+            }
+            if (this.hedgedArtifactResolver != null)
+            {
+                this.hedgedArtifactResolver.report();
+            }
+            this.previousState = classpathWriter.getState();
+            this.previousState.store(this.getStateFile());
+            if (this.resolutionCheckpoint != null && classpathWriter.getMissingArtifacts().isEmpty())
+            {
+                this.resolutionCheckpoint.delete();
+            }
+            if (this.detectClasspathConflicts)
+            {
+                new ClasspathConflictDetector(this.getLog(), ConcurrentUtils.defaultThreads()).detect(
+                    classpathWriter.getClasspathFiles(),
+                    classpathWriter.getSourceDirectories());
+            }
+            if (analyzeClasspath)
+            {
+                JarIndexCache.instance().store(this.getJarIndexCacheFile());
+            }
+        }
+        finally
+        {
+            if (this.resolutionCheckpoint != null)
+            {
+                this.resolutionCheckpoint.close();
+            }
+            if (projects instanceof ProjectStream)
+            {
+                ((ProjectStream)projects).close();
+            }
+        }
+    }
+
+    /**
+     * Gets the writers of the selected <code>outputs</code>.
+     *
+     * @return the writers.
+     * @throws Exception
+     */
+    private List<OutputWriter> getOutputWriters()
+        throws Exception
+    {
+        try
+        {
+            return new OutputWriters(this.getClass().getClassLoader()).select(this.outputs);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            throw new MojoExecutionException(exception.getMessage());
+        }
+    }
+
+    /**
+     * Indicates whether the given writers include the one looking for
+     * annotation processors, which reads the index of every jar.
+     */
+    private static boolean hasAptOutput(final List<OutputWriter> outputWriters)
+    {
+        for (final OutputWriter outputWriter : outputWriters)
+        {
+            if (outputWriter instanceof EclipseAptOutputWriter)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the selected modules in worker processes, one per shard, and
+     * merges the states they stored (in POM order, after the modules reused
+     * from the previous run) into the state the modules are all reused from.
+     *
+     * @throws Exception
+     */
+    private void generateShards()
+        throws Exception
+    {
+        final List poms = this.getSelectedPoms();
+        final ClasspathState mergedState = new ClasspathState();
+        final Set<String> moduleKeys = new LinkedHashSet<String>(this.reusedModuleKeys);
+        if (!moduleKeys.isEmpty())
+        {
+            final ClasspathState previousState = this.getPreviousState();
+            for (final String key : moduleKeys)
+            {
+                mergedState.addModule(previousState.getModule(key));
+            }
+        }
+
+        final File shardsDirectory = new File(this.workDirectory, SHARDS_DIRECTORY_NAME);
+        final Settings settings = this.session != null ? this.session.getSettings() : null;
+        File settingsFile = null;
+        final List<File> stateFiles;
+        try
+        {
+            if (settings != null)
+            {
+                settingsFile = ShardRunner.writeSettings(settings);
+            }
+            final ShardRunner shardRunner = new ShardRunner(
+                this.getShardWorkerCommand(settingsFile),
+                shardsDirectory,
+                this.getRootProject().getBasedir(),
+                this.getLog());
+            stateFiles = shardRunner.run(ShardRunner.partition(poms, this.shards), CLASSPATH_STATE_FILE_NAME);
+        }
+        finally
+        {
+            // - the settings may hold credentials
+            if (settingsFile != null)
+            {
+                settingsFile.delete();
+            }
+        }
+        final List<ClasspathState> shardStates = new ArrayList<ClasspathState>();
+        for (final File stateFile : stateFiles)
+        {
+            final ClasspathState shardState = ClasspathState.load(stateFile);
+            if (shardState == null)
+            {
+                throw new MojoExecutionException("Could not read the state of a shard from " + stateFile);
+            }
+            shardStates.add(shardState);
+        }
+        for (final String key : mergedState.addShardModules(poms, this.getRootProject().getBasedir(), shardStates))
+        {
+            this.getLog().warn("No shard generated " + key + " - ignoring");
+        }
+        for (final ClasspathState.Module module : mergedState.getModules())
+        {
+            moduleKeys.add(module.getKey());
+        }
+        this.previousState = mergedState;
+        this.reusedModuleKeys = moduleKeys;
+    }
+
+    /**
+     * Gets the command starting a shard worker: maven, run non-recursively
+     * on the root POM with the same local repository, offline mode, execution
+     * properties, active profiles, settings and update and checksum policies
+     * as this build, for the <code>eclipse</code> goal of this plugin.
+     *
+     * @param settingsFile the file the settings of this build were written to
+     *        for the workers, null if there are none.
+     */
+    private List<String> getShardWorkerCommand(final File settingsFile)
+        throws Exception
+    {
+        final List<String> command = new ArrayList<String>();
+        if (this.shardWorkerExecutable != null)
+        {
+            command.add(this.shardWorkerExecutable);
+        }
+        else
+        {
+            final String executable = System.getProperty("os.name").toLowerCase().startsWith("windows")
+                ? "mvn.bat" : "mvn";
+            final String mavenHome = System.getProperty("maven.home");
+            command.add(mavenHome != null ? new File(new File(mavenHome, "bin"), executable).getPath() : executable);
+        }
+        command.add("-B");
+        command.add("-N");
+        command.add("-f");
+        command.add(this.getPom(this.getRootProject()).getAbsolutePath());
+        command.add("-Dmaven.repo.local=" + new File(this.localRepository.getBasedir()).getAbsolutePath());
+        final Settings settings = this.session != null ? this.session.getSettings() : null;
+        if (settings != null && settings.isOffline())
+        {
+            command.add("-o");
+        }
+        if (this.session != null)
+        {
+            command.addAll(ShardRunner.getPropertyArguments(this.session.getExecutionProperties()));
+        }
+        final Set<String> profileIds = this.getActiveProfileIds();
+        if (!profileIds.isEmpty())
+        {
+            command.add("-P" + StringUtils.join(profileIds.iterator(), ","));
+        }
+        if (settingsFile != null)
+        {
+            // - the settings are the user and global ones merged, the workers merging the global ones again
+            command.add("-s");
+            command.add(settingsFile.getAbsolutePath());
+        }
+        command.addAll(ShardRunner.getPolicyArguments(this.getRootProject().getRemoteArtifactRepositories()));
+        if (this.shardWorkerArguments != null)
+        {
+            for (final String argument : this.shardWorkerArguments.trim().split("\\s+"))
+            {
+                if (argument.length() > 0)
+                {
+                    command.add(argument);
+                }
+            }
+        }
+        command.add(this.plugin.getGroupId() + ':' + this.plugin.getArtifactId() + ':' + this.plugin.getVersion()
+            + ":eclipse");
+        return command;
+    }
+
+    /**
+     * The name of the directory (within the <code>workDirectory</code>) the shards are generated in.
+     */
+    private static final String SHARDS_DIRECTORY_NAME = "shards";
+
+    /**
+     * Goes through the projects of the given POMs one at a time, each project
+     * being built (without being kept) when asked for, and its processed
+     * source roots kept until the next one is asked for.
+     */
+    private class ProjectStream
+        implements Iterable, Iterator
+    {
+        private final Iterator poms;
+
+        /**
+         * The project built ahead by {@link #hasNext()}, null if none.
+         */
+        private MavenProject next;
+
+        /**
+         * The project handed out last, null if none.
+         */
+        private MavenProject current;
+
+        /**
+         * The processed source roots, keyed by project.
+         */
+        private final Map<MavenProject, List<String>> compileSourceRoots;
+
+        ProjectStream(final List poms, final Map<MavenProject, List<String>> compileSourceRoots)
+            throws Exception
+        {
+            this.poms = poms.iterator();
+            this.compileSourceRoots = compileSourceRoots;
+        }
+
+        public Iterator iterator()
+        {
+            return this;
+        }
+
+        public boolean hasNext()
+        {
+            while (this.next == null && this.poms.hasNext())
+            {
+                final File pom = (File)this.poms.next();
+                try
+                {
+                    this.next = EclipseMojo.this.loadProject(pom, false, false);
+                }
+                catch (Exception exception)
+                {
+                    throw new IllegalStateException("Error loading " + pom, exception);
+                }
+                if (this.next == null && EclipseMojo.this.getLog().isWarnEnabled())
+                {
+                    EclipseMojo.this.getLog().warn("Could not load project from pom: " + pom + " - ignoring");
+                }
+            }
+            return this.next != null;
+        }
+
+        public Object next()
+        {
+            if (!this.hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            this.close();
+            this.current = this.next;
+            this.next = null;
+            this.compileSourceRoots.put(this.current, EclipseMojo.this.processCompileSourceRoots(this.current));
+            EclipseMojo.this.getLog().info("found project " + this.current.getId());
+            return this.current;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Lets the project handed out last go, with its processed source roots.
+         */
+        void close()
+        {
+            if (this.current != null)
+            {
+                this.compileSourceRoots.remove(this.current);
+                this.current = null;
+            }
+        }
+    }
+
+    /**
+     * The local repository index, null until first used.
+     */
+    private LocalRepositoryIndex repositoryIndex;
+
+    /**
+     * Gets the local repository index, loading (or building) it the first time.
+     *
+     * @return the index.
+     * @throws Exception
+     */
+    private LocalRepositoryIndex getLocalRepositoryIndex()
+        throws Exception
+    {
+        if (this.repositoryIndex == null)
+        {
+            final long start = System.currentTimeMillis();
+            this.repositoryIndex = new LocalRepositoryIndex(
+                new File(this.localRepository.getBasedir()), ConcurrentUtils.defaultThreads());
+            this.repositoryIndex.load(this.getLocalRepositoryIndexFile());
+            this.getLog().info("Indexed " + this.repositoryIndex.size() + " local repository directories in "
+                + (System.currentTimeMillis() - start) + " ms");
+        }
+        return this.repositoryIndex;
+    }
+
+    private File getLocalRepositoryIndexFile()
+    {
+        if (this.localRepositoryIndexFile == null)
+        {
+            this.localRepositoryIndexFile =
+                new File(this.localRepository.getBasedir(), LOCAL_REPOSITORY_INDEX_FILE_NAME);
+        }
+        return this.localRepositoryIndexFile;
+    }
+
+    /**
+     * The default location of the local repository index, relative to the local repository.
+     */
+    private static final String LOCAL_REPOSITORY_INDEX_FILE_NAME = ".cache/mobicents-eclipse/repository-index.bin";
+
+    /**
+     * The caching metadata source, null until first used.
+     */
+    private CachingMetadataSource cachingMetadataSource;
+
+    /**
+     * Gets the metadata source the dependencies are resolved with: the injected one,
+     * decorated with the metadata cache (loaded the first time) if that's on.
+     *
+     * @return the metadata source.
+     * @throws Exception
+     */
+    private ArtifactMetadataSource getMetadataSource()
+        throws Exception
+    {
+        if (!this.metadataCache)
+        {
+            return this.artifactMetadataSource;
+        }
+        if (this.cachingMetadataSource == null)
+        {
+            if (this.metadataCacheFile == null)
+            {
+                this.metadataCacheFile = new File(this.localRepository.getBasedir(), METADATA_CACHE_FILE_NAME);
+            }
+            this.cachingMetadataSource = new CachingMetadataSource(this.artifactMetadataSource, this.artifactFactory,
+                this.metadataCacheFile, this.getContext(), this.getLog());
+            this.cachingMetadataSource.load();
+            this.getLog().info("Loaded " + this.cachingMetadataSource.size() + " cached metadata entries");
+        }
+        return this.cachingMetadataSource;
+    }
+
+    /**
+     * The default location of the metadata cache, relative to the local repository.
+     */
+    private static final String METADATA_CACHE_FILE_NAME = ".cache/mobicents-eclipse/metadata-cache.bin";
+
+    /**
+     * The resolver that times out and hedges slow repositories, null until first used.
+     */
+    private HedgedArtifactResolver hedgedArtifactResolver;
+
+    /**
+     * The cache of missing artifacts, null until first used.
+     */
+    private MissingArtifactCache missingArtifacts;
+
+    /**
+     * Gets the cache of missing artifacts, loading it the first time (and then
+     * forgetting all misses if they're to be retried).
+     *
+     * @return the cache.
+     */
+    private MissingArtifactCache getMissingArtifactCache()
+    {
+        if (this.missingArtifacts == null)
+        {
+            if (this.missingArtifactCacheFile == null)
+            {
+                this.missingArtifactCacheFile =
+                    new File(this.localRepository.getBasedir(), MISSING_ARTIFACT_CACHE_FILE_NAME);
+            }
+            this.missingArtifacts = new MissingArtifactCache(this.missingArtifactTtl * 3600000L);
+            this.missingArtifacts.load(this.missingArtifactCacheFile);
+            if (this.retryMissingArtifacts)
+            {
+                this.missingArtifacts.clear();
+            }
+        }
+        return this.missingArtifacts;
+    }
+
+    /**
+     * The default location of the missing artifact cache, relative to the local repository.
+     */
+    private static final String MISSING_ARTIFACT_CACHE_FILE_NAME = ".cache/mobicents-eclipse/missing-artifacts.bin";
+
+    /**
+     * Gets the file in which jar listings are cached between runs.
+     *
+     * @return the configured file or the default one within the local repository.
+     */
+    private File getJarIndexCacheFile()
+    {
+        if (this.jarIndexCacheFile == null)
+        {
+            this.jarIndexCacheFile = new File(this.localRepository.getBasedir(), JAR_INDEX_CACHE_FILE_NAME);
+        }
+        return this.jarIndexCacheFile;
+    }
+
+    /**
+     * The default location of the jar index cache, relative to the local repository.
+     */
+    private static final String JAR_INDEX_CACHE_FILE_NAME = ".cache/mobicents-eclipse/jar-index.bin";
+
+    /**
+     * The default location of the shared resolutions, relative to the local repository.
+     */
+    private static final String SHARED_RESOLUTION_CACHE_DIRECTORY_NAME = ".cache/mobicents-eclipse/resolutions";
+
+    /**
+     * Gets the configured <code>classpathVariables</code>, checking their names and roots.
+     *
+     * @return the roots of the variables keyed by name.
+     * @throws MojoExecutionException if a variable is invalid.
+     */
+    private Map<String, String> getClasspathVariables()
+        throws MojoExecutionException
+    {
+        final Map<String, String> variables = new LinkedHashMap<String, String>();
+        for (final Iterator iterator = this.classpathVariables.entrySet().iterator(); iterator.hasNext();)
+        {
+            final Map.Entry variable = (Map.Entry)iterator.next();
+            final String name = String.valueOf(variable.getKey()).trim();
+            final String root = variable.getValue() != null ? variable.getValue().toString().trim() : "";
+            if (name.length() == 0 || name.indexOf('/') != -1 || name.indexOf('\\') != -1)
+            {
+                throw new MojoExecutionException("Invalid classpath variable name '" + name + "'");
+            }
+            if (name.equals(this.repositoryVariableName))
+            {
+                throw new MojoExecutionException("Classpath variable '" + name
+                    + "' clashes with the repositoryVariableName");
+            }
+            if (root.length() == 0)
+            {
+                throw new MojoExecutionException("No root for classpath variable '" + name + "'");
+            }
+            variables.put(name, new File(root).getAbsolutePath());
+        }
+        return variables;
+    }
+
+    private List projects = new ArrayList();
+
+    /**
+     * Collects all projects from all POMs within the current project.
+     *
+     * @return all applicable Maven project instances.
+     *
+     * @throws MojoExecutionException
+     */
+    private List collectProjects()
+        throws Exception
+    {
+        if (projects.isEmpty())
+        {
+            final List poms = this.getSelectedPoms();
+            for (ListIterator iterator = poms.listIterator(); iterator.hasNext();)
+            {
+                final File pom = (File)iterator.next();
+                try
+                {
+                    // - first attempt to get the existing project from the session
+                    final MavenProject project = this.loadProject(pom, false);
+                    if (project != null)
+                    {
+                        this.getLog().info("found project " + project.getId());
+                        projects.add(project);
+                    }
+                    else
+                    {
+                        if (this.getLog().isWarnEnabled())
+                        {
+                            this.getLog().warn("Could not load project from pom: " + pom + " - ignoring");
+                        }
+                    }
+                }
+                catch (ProjectBuildingException exception)
+                {
+                    throw new MojoExecutionException("Error loading " + pom, exception);
+                }
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * Loads the project of the given <code>pom</code>: from its snapshot if it's
+     * unchanged, or else from the session or by building it.
+     *
+     * @param pom the POM file.
+     * @param rebuild whether a project built before is ignored (because the POM changed).
+     * @return the project or null if it couldn't be built.
+     * @throws Exception
+     */
+    private MavenProject loadProject(final File pom, final boolean rebuild)
+        throws Exception
+    {
+        return this.loadProject(pom, rebuild, true);
+    }
+
+    /**
+     * Loads the project of the given <code>pom</code>, keeping it (for the
+     * executions of the reactor) or not once built.
+     *
+     * @param pom the POM.
+     * @param rebuild whether the project is built again even if built before.
+     * @param keep whether the project built is kept.
+     * @return the project or null if it couldn't be built.
+     * @throws Exception
+     */
+    private MavenProject loadProject(final File pom, final boolean rebuild, final boolean keep)
+        throws Exception
+    {
+        final FlightRecorderEvent event = FlightRecorderEvent.projectBuild();
+        String key = null;
+        if (this.projectSnapshots)
+        {
+            final List lineageFiles = this.getLineageBuilder().getLineageFiles(pom);
+            if (lineageFiles != null)
+            {
+                key = this.getProjectSnapshotStore().getKey(lineageFiles);
+                final MavenProject project = this.getProjectSnapshotStore().restore(
+                    pom, key, this.artifactFactory, this.getRootProject().getRemoteArtifactRepositories());
+                if (project != null)
+                {
+                    event.commitProjectBuild(pom, true);
+                    return project;
+                }
+            }
+        }
+        final LightweightProjectBuilder lightweightBuilder = this.getLightweightProjectBuilder();
+        final MavenProject project;
+        if (!keep)
+        {
+            project = ProjectUtils.loadProject(this.projectBuilder, lightweightBuilder, this.session, pom, this.getLog());
+        }
+        else if (rebuild)
+        {
+            project = ProjectUtils.rebuildProject(this.projectBuilder, lightweightBuilder, this.session, pom, this.getLog());
+        }
+        else
+        {
+            project = ProjectUtils.getProject(this.projectBuilder, lightweightBuilder, this.session, pom, this.getLog());
+        }
+        if (project != null && this.projectSnapshots)
+        {
+            if (key == null)
+            {
+                // - the parents may only be available now that the project was built
+                final List lineageFiles = this.getLineageBuilder().getLineageFiles(pom);
+                key = lineageFiles != null ? this.getProjectSnapshotStore().getKey(lineageFiles) : null;
+            }
+            if (key != null)
+            {
+                this.getProjectSnapshotStore().snapshot(pom, key, project);
+            }
+        }
+        event.commitProjectBuild(pom, false);
+        return project;
+    }
+
+    /**
+     * The project snapshots, null until first used.
+     */
+    private ProjectSnapshotStore projectSnapshotStore;
+
+    private ProjectSnapshotStore getProjectSnapshotStore()
+        throws Exception
+    {
+        if (this.projectSnapshotStore == null)
+        {
+            this.projectSnapshotStore =
+                new ProjectSnapshotStore(new File(this.workDirectory, PROJECT_SNAPSHOTS_FILE_NAME), this.getContext());
+            this.projectSnapshotStore.load();
+        }
+        return this.projectSnapshotStore;
+    }
+
+    /**
+     * The digest of what the projects are built with besides their POMs, null
+     * until first used.
+     */
+    private String context;
+
+    /**
+     * Gets the digest of what the projects are built with besides their POMs
+     * (see {@link ProjectSnapshotStore#getContext}).
+     *
+     * @return the digest.
+     * @throws Exception
+     */
+    private String getContext()
+        throws Exception
+    {
+        if (this.context == null)
+        {
+            this.context = ProjectSnapshotStore.getContext(
+                this.session.getSettings(), this.getActiveProfileIds(), this.session.getExecutionProperties());
+        }
+        return this.context;
+    }
+
+    /**
+     * Gets the ids of the profiles activated for this execution other than by
+     * the POMs of the modules: the ones active on the root project (which
+     * Maven built with the <code>-P</code> profiles) and the settings' active
+     * profiles.
+     *
+     * @return the profile ids.
+     * @throws Exception
+     */
+    private Set<String> getActiveProfileIds()
+        throws Exception
+    {
+        final Set<String> profileIds = new TreeSet<String>();
+        for (final Iterator iterator = this.getRootProject().getActiveProfiles().iterator(); iterator.hasNext();)
+        {
+            profileIds.add(((Profile)iterator.next()).getId());
+        }
+        if (this.session.getSettings() != null)
+        {
+            profileIds.addAll(this.session.getSettings().getActiveProfiles());
+        }
+        return profileIds;
+    }
+
+    /**
+     * The file the project snapshots are stored in, within the work directory.
+     */
+    private static final String PROJECT_SNAPSHOTS_FILE_NAME = "project-snapshots.bin";
+
+    /**
+     * Locates the parents of POMs for the project snapshot keys.
+     */
+    private LightweightProjectBuilder lineageBuilder;
+
+    private LightweightProjectBuilder getLineageBuilder()
+        throws Exception
+    {
+        if (this.lineageBuilder == null)
+        {
+            this.lineageBuilder = this.getLightweightProjectBuilder();
+            if (this.lineageBuilder == null)
+            {
+                this.lineageBuilder = this.createLightweightProjectBuilder();
+            }
+        }
+        return this.lineageBuilder;
+    }
+
+    /**
+     * The lightweight project builder, null until first used.
+     */
+    private LightweightProjectBuilder lightweightProjectBuilder;
+
+    /**
+     * Gets the lightweight project builder if <code>fastPomReading</code> is on
+     * and no profile can come from outside the POMs.
+     *
+     * @return the builder or null.
+     * @throws Exception
+     */
+    private LightweightProjectBuilder getLightweightProjectBuilder()
+        throws Exception
+    {
+        if (this.fastPomReading && this.lightweightProjectBuilder == null)
+        {
+            if (!LightweightProjectBuilder.isApplicable(this.session.getSettings(), this.getRootProject()))
+            {
+                this.getLog().info("Profiles may be activated by the settings or the command line, "
+                    + "reading POMs with the full project builder");
+                this.fastPomReading = false;
+                return null;
+            }
+            this.lightweightProjectBuilder = this.createLightweightProjectBuilder();
+        }
+        return this.lightweightProjectBuilder;
+    }
+
+    private LightweightProjectBuilder createLightweightProjectBuilder()
+        throws Exception
+    {
+        return new LightweightProjectBuilder(
+            this.artifactFactory,
+            this.localRepository,
+            this.getRootProject().getRemoteArtifactRepositories(),
+            this.session.getExecutionProperties(),
+            this.getLog());
+    }
+
+    /**
+     * Collects the projects again after the given POMs changed: the projects
+     * of the changed POMs and of the POMs inheriting from them are rebuilt,
+     * POMs that are new are loaded and the projects of POMs that are gone are
+     * dropped, every other project is kept as is.
+     *
+     * @param changedPoms the POMs that were added, changed or deleted.
+     * @throws Exception
+     */
+    protected void reloadProjects(final Set changedPoms)
+        throws Exception
+    {
+        if (this.lightweightProjectBuilder != null)
+        {
+            this.lightweightProjectBuilder.clear();
+        }
+        if (this.projectSnapshotStore != null)
+        {
+            this.projectSnapshotStore.clearHashes();
+        }
+        this.lineageBuilder = null;
+        ProjectUtils.clearProjectBuilderCaches(this.projectBuilder, this.getLog());
+        final File rootPom = this.getRootProject().getFile();
+        if (rootPom != null && rootPom.exists()
+            && !ProjectUtils.getStalePoms(Collections.singleton(rootPom), changedPoms, this.getLineageBuilder())
+                .isEmpty())
+        {
+            this.project = ProjectUtils.rebuildProject(this.projectBuilder, this.session, rootPom, this.getLog());
+            this.rootProject = this.project;
+        }
+        final Map existingProjects = new LinkedHashMap();
+        for (final Iterator iterator = this.projects.iterator(); iterator.hasNext();)
+        {
+            final MavenProject project = (MavenProject)iterator.next();
+            existingProjects.put(this.getPom(project), project);
+        }
+        this.projects.clear();
+        final List selectedPoms = this.getSelectedPoms();
+        final Set stalePoms = ProjectUtils.getStalePoms(selectedPoms, changedPoms, this.getLineageBuilder());
+        for (final Iterator iterator = selectedPoms.iterator(); iterator.hasNext();)
+        {
+            final File pom = (File)iterator.next();
+            MavenProject project = (MavenProject)existingProjects.get(pom);
+            if (project == null || stalePoms.contains(pom))
+            {
+                project = this.loadProject(pom, project != null);
+                if (project != null)
+                {
+                    this.getLog().info("reloaded project " + project.getId());
+                }
+            }
+            if (project != null)
+            {
+                this.projects.add(project);
+            }
+            else if (this.getLog().isWarnEnabled())
+            {
+                this.getLog().warn("Could not load project from pom: " + pom + " - ignoring");
+            }
+        }
+    }
+
+    /**
+     * The keys of the modules whose contribution is taken from the previous run.
+     */
+    private Set<String> reusedModuleKeys = Collections.emptySet();
+
+    /**
+     * Gets the POMs of the modules to generate: all of them, unless <code>modules</code>
+     * selects some (and a previous run can provide the others).
+     *
+     * @return the selected POMs.
+     * @throws Exception
+     */
+    private List getSelectedPoms()
+        throws Exception
+    {
+        this.reusedModuleKeys = Collections.emptySet();
+        if (this.shardPoms != null)
+        {
+            return ShardRunner.readPoms(this.shardPoms);
+        }
+        final List poms = this.getPoms();
+        if (this.modules == null || this.modules.trim().length() == 0)
+        {
+            return poms;
+        }
+        final ClasspathState previousState = this.getPreviousState();
+        if (previousState == null)
+        {
+            this.getLog().warn("No previous run found in " + this.getStateFile() + ", generating all modules");
+            return poms;
+        }
+
+        final Set<String> names = new LinkedHashSet<String>();
+        for (final String name : this.modules.split(","))
+        {
+            if (name.trim().length() > 0)
+            {
+                names.add(name.trim());
+            }
+        }
+        final File rootDirectory = this.getRootProject().getBasedir();
+        final Map<File, ClasspathState.Module> pomModules = new LinkedHashMap<File, ClasspathState.Module>();
+        final Set<File> selected = new LinkedHashSet<File>();
+        final Set<String> selectedIds = new HashSet<String>();
+        final Set<String> matchedNames = new HashSet<String>();
+        for (final Iterator iterator = poms.iterator(); iterator.hasNext();)
+        {
+            final File pom = (File)iterator.next();
+            final String key = ClasspathState.getModuleKey(pom, rootDirectory);
+            final String directory = key.endsWith('/' + POM_FILE_NAME)
+                ? key.substring(0, key.length() - POM_FILE_NAME.length() - 1) : key;
+            final ClasspathState.Module module = previousState.getModule(key);
+            pomModules.put(pom, module);
+            final String[] candidates = module == null
+                ? new String[] {key, directory}
+                : new String[] {key, directory, module.getArtifactId(), module.getId()};
+            boolean match = module == null;
+            for (final String candidate : candidates)
+            {
+                if (names.contains(candidate))
+                {
+                    matchedNames.add(candidate);
+                    match = true;
+                }
+            }
+            if (match)
+            {
+                selected.add(pom);
+                if (module != null)
+                {
+                    selectedIds.add(module.getId());
+                }
+            }
+        }
+        for (final String name : names)
+        {
+            if (!matchedNames.contains(name))
+            {
+                this.getLog().warn("No module matches '" + name + "'");
+            }
+        }
+
+        // - add the modules depending on the selected ones until there are no more
+        boolean added = this.alsoMakeDependents;
+        while (added)
+        {
+            added = false;
+            for (final Map.Entry<File, ClasspathState.Module> entry : pomModules.entrySet())
+            {
+                final ClasspathState.Module module = entry.getValue();
+                if (module != null && !selected.contains(entry.getKey())
+                    && !Collections.disjoint(module.getDependencies(), selectedIds))
+                {
+                    selected.add(entry.getKey());
+                    selectedIds.add(module.getId());
+                    added = true;
+                }
+            }
+        }
+
+        final List selectedPoms = new ArrayList();
+        final Set<String> reused = new LinkedHashSet<String>();
+        for (final Map.Entry<File, ClasspathState.Module> entry : pomModules.entrySet())
+        {
+            if (selected.contains(entry.getKey()))
+            {
+                selectedPoms.add(entry.getKey());
+            }
+            else
+            {
+                reused.add(entry.getValue().getKey());
+            }
+        }
+        this.reusedModuleKeys = reused;
+        this.getLog().info("Generating " + selectedPoms.size() + " of " + poms.size()
+            + " module(s), reusing the others from the previous run");
+        return selectedPoms;
+    }
+
+    /**
+     * The state of the previous run, loaded on demand.
+     */
+    private ClasspathState previousState;
+
+    /**
+     * Gets the per module state stored by the previous run.
+     *
+     * @return the state or null if there's none.
+     */
+    private ClasspathState getPreviousState()
+    {
+        if (this.previousState == null)
+        {
+            this.previousState = ClasspathState.load(this.getStateFile());
+        }
+        return this.previousState;
+    }
+
+    /**
+     * Gets the file the per module state of the generated .classpath is stored in.
+     */
+    private File getStateFile()
+    {
+        return new File(this.workDirectory, CLASSPATH_STATE_FILE_NAME);
+    }
+
+    /**
+     * The name of the file storing the per module state of the generated .classpath.
+     */
+    private static final String CLASSPATH_STATE_FILE_NAME = "classpath-state.bin";
+
+    /**
+     * Gets the POM file of the given <code>project</code>.
+     *
+     * @param project the project.
+     * @return the POM file.
+     */
+    private File getPom(final MavenProject project)
+    {
+        return project.getFile() != null ? project.getFile() : new File(project.getBasedir(), POM_FILE_NAME);
+    }
+
+    /**
+     * Processes the compile source roots of the given project (adds all appropriate ones to a
+     * copy of them) for the eclipse files. The project's own source roots are left as they are,
+     * as the project may be shared with the other executions of the reactor.
+     *
+     * @param project the project to process.
+     * @return the source roots.
+     */
+    private List<String> processCompileSourceRoots(final MavenProject project)
+    {
+        final Set<String> compileSourceRoots = new LinkedHashSet<String>(project.getCompileSourceRoots());
+        compileSourceRoots.addAll(this.getExtraSourceDirectories(project));
+        final String testSourceDirectory = project.getBuild().getTestSourceDirectory();
+        if (testSourceDirectory != null && testSourceDirectory.trim().length() > 0)
+        {
+            compileSourceRoots.add(testSourceDirectory);
         }
+        return new ArrayList<String>(compileSourceRoots);
     }
 
     /**
@@ -443,7 +1828,7 @@ public class EclipseMojo
      * @return the root project.
      * @throws MojoExecutionException
      */
-    private MavenProject getRootProject()
+    protected MavenProject getRootProject()
         throws MojoExecutionException, ArtifactResolutionException, ArtifactNotFoundException
     {
         if (this.rootProject == null)
@@ -479,9 +1864,10 @@ public class EclipseMojo
      * @return all poms found.
      * @throws MojoExecutionException
      */
-    private List getPoms()
+    protected List getPoms()
         throws Exception
     {
+        final FlightRecorderEvent event = FlightRecorderEvent.pomDiscovery();
         final DirectoryScanner scanner = new DirectoryScanner();
         scanner.setBasedir(this.getRootProject().getBasedir());
         scanner.setIncludes(this.includes);
@@ -500,6 +1886,7 @@ public class EclipseMojo
                 poms.add(file);
             }
         }
+        event.commitPomDiscovery(this.getRootProject().getBasedir(), poms.size());
 
         return poms;
     }
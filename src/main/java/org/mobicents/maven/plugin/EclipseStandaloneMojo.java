@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Writes the .classpath and .project files like the <code>eclipse</code> goal,
+ * but as a standalone goal meant to be invoked directly rather than through
+ * the lifecycle: it's bound to no phase, so no other plugin (code generators and
+ * the like) runs before it, and it runs once for the whole reactor, at the
+ * execution root, needing nothing but the POMs. Only the discovery of the
+ * modules and the resolution of their dependencies are done.
+ * <p>
+ * Source directories added by plugins while the lifecycle runs aren't known
+ * this way, only the ones declared in the POMs.
+ * </p>
+ *
+ * @goal eclipse-standalone
+ * @aggregator
+ * @requiresProject true
+ * @inheritByDefault false
+ */
+public class EclipseStandaloneMojo
+    extends EclipseMojo
+{
+    /**
+     * @see org.apache.maven.plugin.Mojo#execute()
+     */
+    public void execute()
+        throws MojoExecutionException
+    {
+        final long start = System.currentTimeMillis();
+        super.execute();
+        this.getLog().info("Eclipse files written in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Never skipped, an aggregator only runs at the execution root.
+     *
+     * @see org.mobicents.maven.plugin.EclipseMojo#isSkipped()
+     */
+    protected boolean isSkipped()
+    {
+        return false;
+    }
+}
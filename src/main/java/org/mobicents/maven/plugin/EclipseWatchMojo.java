@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Writes the .classpath and .project files like the <code>eclipse</code> goal
+ * and then keeps watching the POMs, writing them again whenever POMs are
+ * changed, added or removed (i.e. after switching branches). Only the projects
+ * of the changed POMs and of the POMs inheriting from them are rebuilt,
+ * everything resolved before is reused.
+ * Stop it with Ctrl-C.
+ *
+ * @goal eclipse-watch
+ * @inheritByDefault false
+ */
+public class EclipseWatchMojo
+    extends EclipseMojo
+{
+    /**
+     * How often (in milliseconds) the POMs are checked for changes.
+     *
+     * @parameter expression="${watchInterval}"
+     */
+    private long watchInterval = 500;
+
+    /**
+     * How long (in milliseconds) the POMs must stay unchanged before the files are
+     * written again, so that a burst of changes (a checkout) triggers one generation only.
+     *
+     * @parameter expression="${watchQuietPeriod}"
+     */
+    private long watchQuietPeriod = 300;
+
+    /**
+     * Every how many checks the directory tree is scanned for added or removed POMs
+     * (the known POMs are checked every time).
+     *
+     * @parameter expression="${watchRescanEvery}"
+     */
+    private int watchRescanEvery = 10;
+
+    /**
+     * @see org.apache.maven.plugin.Mojo#execute()
+     */
+    public void execute()
+        throws MojoExecutionException
+    {
+        super.execute();
+        if (this.isSkipped())
+        {
+            return;
+        }
+        try
+        {
+            Map stamps = this.getPomStamps(true);
+            this.getLog().info("Watching " + stamps.size() + " POM(s) for changes, press Ctrl-C to stop");
+            for (int check = 1;; check++)
+            {
+                Thread.sleep(this.watchInterval);
+                Map current = this.getPomStamps(check % Math.max(1, this.watchRescanEvery) == 0);
+                final Set changedPoms = getChanges(stamps, current);
+                if (changedPoms.isEmpty())
+                {
+                    stamps = current;
+                    continue;
+                }
+
+                // - wait for the burst of changes to settle
+                Set moreChanges;
+                do
+                {
+                    Thread.sleep(this.watchQuietPeriod);
+                    final Map settled = this.getPomStamps(true);
+                    moreChanges = getChanges(current, settled);
+                    changedPoms.addAll(moreChanges);
+                    current = settled;
+                }
+                while (!moreChanges.isEmpty());
+                stamps = current;
+
+                final long start = System.currentTimeMillis();
+                this.getLog().info(changedPoms.size() + " POM(s) changed, writing the eclipse files again");
+                try
+                {
+                    this.reloadProjects(changedPoms);
+                    this.generate();
+                    this.getLog().info("Eclipse files written in " + (System.currentTimeMillis() - start) + " ms");
+                }
+                catch (Exception exception)
+                {
+                    // - keep watching, the next change may well fix it
+                    this.getLog().error("Error creating eclipse configuration", exception);
+                }
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            this.getLog().info("Stopped watching");
+        }
+        catch (Exception exception)
+        {
+            throw new MojoExecutionException("Error watching the POMs", exception);
+        }
+    }
+
+    /**
+     * Gets the last modification time and size of every watched POM (the root
+     * one included).
+     *
+     * @param rescan whether the tree is scanned for POMs again or just the known
+     *        POMs are checked.
+     * @return the stamps keyed by POM file.
+     * @throws Exception
+     */
+    private Map getPomStamps(final boolean rescan)
+        throws Exception
+    {
+        if (rescan || this.watchedPoms == null)
+        {
+            this.watchedPoms = new LinkedHashSet(this.getPoms());
+            final File rootPom = this.getRootProject().getFile();
+            if (rootPom != null)
+            {
+                this.watchedPoms.add(rootPom);
+            }
+        }
+        final Map stamps = new HashMap();
+        for (final Iterator iterator = this.watchedPoms.iterator(); iterator.hasNext();)
+        {
+            final File pom = (File)iterator.next();
+            if (pom.exists())
+            {
+                stamps.put(pom, pom.lastModified() + ":" + pom.length());
+            }
+        }
+        return stamps;
+    }
+
+    /**
+     * The POMs currently watched.
+     */
+    private Set watchedPoms;
+
+    /**
+     * Gets the POMs that were added, changed or removed between two stamps.
+     */
+    private static Set getChanges(final Map before, final Map after)
+    {
+        final Set changes = new LinkedHashSet();
+        for (final Iterator iterator = after.entrySet().iterator(); iterator.hasNext();)
+        {
+            final Map.Entry entry = (Map.Entry)iterator.next();
+            if (!entry.getValue().equals(before.get(entry.getKey())))
+            {
+                changes.add(entry.getKey());
+            }
+        }
+        for (final Iterator iterator = before.keySet().iterator(); iterator.hasNext();)
+        {
+            final Object pom = iterator.next();
+            if (!after.containsKey(pom))
+            {
+                changes.add(pom);
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.logging.Log;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+import org.mobicents.maven.plugin.utils.JarIndexCache;
+
+/**
+ * Finds the jars providing annotation processors, that is the ones with a
+ * <code>META-INF/services/javax.annotation.processing.Processor</code> entry.
+ * Only the central directory of each jar is read (see {@link JarIndexCache}),
+ * in parallel, so no jar is ever extracted. A jar that can't be read is
+ * skipped with a warning.
+ */
+public class AnnotationProcessorScanner
+{
+    private static final String PROCESSOR_SERVICE = "META-INF/services/javax.annotation.processing.Processor";
+
+    private final Log logger;
+
+    private final int threads;
+
+    /**
+     * @param logger the logger.
+     * @param threads the number of threads the jars are scanned with.
+     */
+    public AnnotationProcessorScanner(final Log logger, final int threads)
+    {
+        this.logger = logger;
+        this.threads = threads;
+    }
+
+    /**
+     * Finds the jars providing annotation processors among the given ones.
+     *
+     * @param jars the classpath jars (any directory is skipped).
+     * @return the jars with processors, in classpath order.
+     * @throws Exception
+     */
+    public List<File> findProcessorJars(final List<File> jars)
+        throws Exception
+    {
+        final long start = System.currentTimeMillis();
+        final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(jars.size());
+        for (final File jar : jars)
+        {
+            tasks.add(new Callable<Boolean>()
+            {
+                public Boolean call()
+                    throws Exception
+                {
+                    if (!jar.isFile())
+                    {
+                        return Boolean.FALSE;
+                    }
+                    try
+                    {
+                        return Boolean.valueOf(JarIndexCache.instance().getEntries(jar).contains(PROCESSOR_SERVICE));
+                    }
+                    catch (final IOException exception)
+                    {
+                        // - a corrupt jar can't provide a processor, the others are still scanned
+                        AnnotationProcessorScanner.this.logger.warn("Skipping " + jar + ", it could not be read: "
+                            + exception.getMessage());
+                        return Boolean.FALSE;
+                    }
+                }
+            });
+        }
+        final List<Boolean> results = ConcurrentUtils.invokeAll("processor-scanner", tasks, this.threads);
+        final List<File> processorJars = new ArrayList<File>();
+        for (int index = 0; index < jars.size(); index++)
+        {
+            if (results.get(index).booleanValue())
+            {
+                processorJars.add(jars.get(index));
+            }
+        }
+        this.logger.info("Scanned " + jars.size() + " jar(s) for annotation processors in "
+            + (System.currentTimeMillis() - start) + " ms: " + processorJars.size() + " found");
+        return processorJars;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Collects the names of all classes referenced from the constant pool of a
+ * class file (class entries as well as field, method and annotation
+ * descriptors and generic signatures). The constant pool is read directly,
+ * whatever the class file version.
+ */
+class ClassReferenceScanner
+{
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final int CONSTANT_INTEGER = 3;
+
+    private static final int CONSTANT_FLOAT = 4;
+
+    private static final int CONSTANT_LONG = 5;
+
+    private static final int CONSTANT_DOUBLE = 6;
+
+    private static final int CONSTANT_CLASS = 7;
+
+    private static final int CONSTANT_STRING = 8;
+
+    private static final int CONSTANT_FIELDREF = 9;
+
+    private static final int CONSTANT_METHODREF = 10;
+
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    private static final int CONSTANT_DYNAMIC = 17;
+
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+
+    private static final int CONSTANT_MODULE = 19;
+
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /**
+     * Adds the (dot separated) names of all classes referenced by the given
+     * <code>classFile</code> to <code>references</code>.
+     *
+     * @param classFile the compiled class.
+     * @param references the set to which references are added.
+     * @throws IOException
+     */
+    static void scan(final File classFile, final Set<String> references)
+        throws IOException
+    {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(classFile)));
+        try
+        {
+            scanConstantPool(input, references);
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Reads the constant pool of any class file version, taking the class entries
+     * and every <code>L...;</code> type found in UTF8 constants as references.
+     * The attributes of the class only point into the constant pool, so this
+     * covers the annotations (whose types are UTF8 descriptors, never class
+     * entries) and the generic signatures as well.
+     */
+    private static void scanConstantPool(final DataInputStream input, final Set<String> references)
+        throws IOException
+    {
+        if (input.readInt() != 0xCAFEBABE)
+        {
+            throw new IOException("Not a class file");
+        }
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+        final int count = input.readUnsignedShort();
+        final String[] utf8 = new String[count];
+        final int[] classes = new int[count];
+        int classCount = 0;
+        for (int index = 1; index < count; index++)
+        {
+            final int tag = input.readUnsignedByte();
+            switch (tag)
+            {
+                case CONSTANT_UTF8:
+                    utf8[index] = input.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classes[classCount++] = input.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    input.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    input.readUnsignedByte();
+                    input.readUnsignedShort();
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    input.readInt();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    input.readLong();
+                    index++;
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+        for (int ctr = 0; ctr < classCount; ctr++)
+        {
+            final String name = utf8[classes[ctr]];
+            if (name != null)
+            {
+                addReference(name, references);
+            }
+        }
+        for (int index = 1; index < count; index++)
+        {
+            final String value = utf8[index];
+            if (value != null)
+            {
+                addDescriptorReferences(value, references);
+            }
+        }
+    }
+
+    /**
+     * Adds an internal class name (or array descriptor) as a reference.
+     */
+    private static void addReference(final String name, final Set<String> references)
+    {
+        if (name.length() > 0 && name.charAt(0) == '[')
+        {
+            addDescriptorReferences(name, references);
+        }
+        else
+        {
+            references.add(name.replace('/', '.'));
+        }
+    }
+
+    /**
+     * Adds every <code>Lname;</code> type of the given descriptor or signature.
+     */
+    private static void addDescriptorReferences(final String descriptor, final Set<String> references)
+    {
+        int start = descriptor.indexOf('L');
+        while (start >= 0)
+        {
+            int end = start + 1;
+            while (end < descriptor.length())
+            {
+                final char character = descriptor.charAt(end);
+                if (character == ';' || character == '<')
+                {
+                    break;
+                }
+                end++;
+            }
+            if (end < descriptor.length() && end > start + 1)
+            {
+                final String name = descriptor.substring(start + 1, end);
+                if (name.indexOf('/') > 0 && name.indexOf(' ') < 0)
+                {
+                    references.add(name.replace('/', '.'));
+                }
+            }
+            start = descriptor.indexOf('L', end);
+        }
+    }
+}
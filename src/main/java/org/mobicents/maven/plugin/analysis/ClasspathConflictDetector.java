@@ -0,0 +1,256 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.logging.Log;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+import org.mobicents.maven.plugin.utils.JarIndexCache;
+
+/**
+ * Detects classes defined more than once and packages split across several
+ * locations of a generated classpath. Jars are listed through their central
+ * directory only (see {@link JarIndexCache}), in parallel, and source
+ * roots are scanned for <code>.java</code> files.
+ */
+public class ClasspathConflictDetector
+{
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String JAVA_SUFFIX = ".java";
+
+    private final Log logger;
+
+    private final int threads;
+
+    public ClasspathConflictDetector(final Log logger, final int threads)
+    {
+        this.logger = logger;
+        this.threads = threads;
+    }
+
+    /**
+     * Scans the given jars and source roots and logs every duplicate class
+     * and split package found.
+     *
+     * @param jars the jars of the classpath.
+     * @param sourceRoots the source directories of the classpath.
+     * @return the number of conflicts found (duplicate classes plus split packages).
+     * @throws Exception
+     */
+    public int detect(final List<File> jars, final Collection<File> sourceRoots)
+        throws Exception
+    {
+        final long start = System.currentTimeMillis();
+        final List<Callable<Location>> tasks = new ArrayList<Callable<Location>>();
+        for (final File jar : jars)
+        {
+            tasks.add(new Callable<Location>()
+            {
+                public Location call()
+                {
+                    return scanJar(jar);
+                }
+            });
+        }
+        for (final File sourceRoot : sourceRoots)
+        {
+            tasks.add(new Callable<Location>()
+            {
+                public Location call()
+                {
+                    return scanSourceRoot(sourceRoot);
+                }
+            });
+        }
+        final List<Location> locations = ConcurrentUtils.invokeAll("classpath-scanner", tasks, this.threads);
+
+        final Map<String, List<String>> classLocations = new HashMap<String, List<String>>();
+        final Map<String, Set<String>> packageLocations = new HashMap<String, Set<String>>();
+        for (final Location location : locations)
+        {
+            for (final String className : location.classes)
+            {
+                List<String> owners = classLocations.get(className);
+                if (owners == null)
+                {
+                    owners = new ArrayList<String>(1);
+                    classLocations.put(className, owners);
+                }
+                owners.add(location.name);
+                final String packageName = getPackage(className);
+                Set<String> packageOwners = packageLocations.get(packageName);
+                if (packageOwners == null)
+                {
+                    packageOwners = new LinkedHashSet<String>(2);
+                    packageLocations.put(packageName, packageOwners);
+                }
+                packageOwners.add(location.name);
+            }
+        }
+
+        final Map<String, List<String>> duplicates = new TreeMap<String, List<String>>();
+        for (final Map.Entry<String, List<String>> entry : classLocations.entrySet())
+        {
+            if (entry.getValue().size() > 1)
+            {
+                duplicates.put(entry.getKey(), entry.getValue());
+            }
+        }
+        final Map<String, Set<String>> splitPackages = new TreeMap<String, Set<String>>();
+        for (final Map.Entry<String, Set<String>> entry : packageLocations.entrySet())
+        {
+            if (entry.getValue().size() > 1)
+            {
+                splitPackages.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (final Map.Entry<String, List<String>> entry : duplicates.entrySet())
+        {
+            this.logger.warn("Duplicate class " + entry.getKey() + " found in " + entry.getValue());
+        }
+        for (final Map.Entry<String, Set<String>> entry : splitPackages.entrySet())
+        {
+            this.logger.warn("Split package " + entry.getKey() + " found in " + entry.getValue());
+        }
+        this.logger.info("Scanned " + jars.size() + " jar(s) and " + sourceRoots.size() + " source root(s) in "
+            + (System.currentTimeMillis() - start) + " ms: " + duplicates.size() + " duplicate class(es), "
+            + splitPackages.size() + " split package(s)");
+        return duplicates.size() + splitPackages.size();
+    }
+
+    /**
+     * Lists the top level classes of the given jar, none if it can't be read
+     * (a corrupt jar is left to the compiler to report, not the detector).
+     */
+    private Location scanJar(final File jar)
+    {
+        final Location location = new Location(jar.toString());
+        final List<String> entries;
+        try
+        {
+            entries = JarIndexCache.instance().getEntries(jar);
+        }
+        catch (final IOException exception)
+        {
+            this.logger.warn("Skipping " + jar + ", it could not be read: " + exception.getMessage());
+            return location;
+        }
+        for (final String entry : entries)
+        {
+            final String className = toClassName(entry);
+            if (className != null)
+            {
+                location.classes.add(className);
+            }
+        }
+        return location;
+    }
+
+    /**
+     * Lists the top level classes of the given source root.
+     */
+    private Location scanSourceRoot(final File sourceRoot)
+    {
+        final Location location = new Location(sourceRoot.toString());
+        this.scanSourceDirectory(sourceRoot, "", location.classes);
+        return location;
+    }
+
+    private void scanSourceDirectory(final File directory, final String packagePath, final Set<String> classes)
+    {
+        final File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (final File file : files)
+            {
+                final String name = file.getName();
+                if (file.isDirectory())
+                {
+                    this.scanSourceDirectory(file, packagePath + name + '/', classes);
+                }
+                else if (name.endsWith(JAVA_SUFFIX))
+                {
+                    final String className = toClassName(packagePath
+                        + name.substring(0, name.length() - JAVA_SUFFIX.length()) + CLASS_SUFFIX);
+                    if (className != null)
+                    {
+                        classes.add(className);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a jar entry name into a class name, returns null for anything
+     * that is not a top level class (resources, inner classes, descriptors,
+     * multi release versions).
+     */
+    static String toClassName(final String entry)
+    {
+        if (!entry.endsWith(CLASS_SUFFIX) || entry.indexOf('$') >= 0 || entry.startsWith("META-INF/"))
+        {
+            return null;
+        }
+        final String name = entry.substring(0, entry.length() - CLASS_SUFFIX.length());
+        if (name.equals("module-info") || name.endsWith("/module-info"))
+        {
+            return null;
+        }
+        return name.replace('/', '.');
+    }
+
+    static String getPackage(final String className)
+    {
+        final int index = className.lastIndexOf('.');
+        return index < 0 ? "" : className.substring(0, index);
+    }
+
+    /**
+     * The classes found in one classpath location.
+     */
+    private static class Location
+    {
+        final String name;
+
+        final Set<String> classes = new LinkedHashSet<String>();
+
+        Location(final String name)
+        {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.logging.Log;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+import org.mobicents.maven.plugin.utils.JarIndexCache;
+
+/**
+ * Finds the classpath jars that no compiled class of the reactor references.
+ * The output directories of every project are scanned for constant pool class
+ * references (see {@link ClassReferenceScanner}, annotations included) and
+ * matched against the classes listed by every classpath jar.
+ * <p>
+ * Only direct references are visible in the bytecode, a jar that is needed just
+ * because a used class extends one of its types is reported as well, which is
+ * why this is a report by default.
+ * </p>
+ */
+public class UnusedDependencyAnalyzer
+{
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * The number of class files parsed by one task.
+     */
+    private static final int CLASS_FILES_PER_TASK = 256;
+
+    private final Log logger;
+
+    private final int threads;
+
+    public UnusedDependencyAnalyzer(final Log logger, final int threads)
+    {
+        this.logger = logger;
+        this.threads = threads;
+    }
+
+    /**
+     * Finds the jars none of the classes compiled into the given
+     * <code>outputDirectories</code> reference.
+     *
+     * @param outputDirectories the output directories of the projects (may
+     *        hold nulls).
+     * @param jars the jars of the classpath.
+     * @return the unused jars, in classpath order (empty when nothing has been
+     *         compiled yet, since nothing can be told then).
+     * @throws Exception
+     */
+    public Set<File> findUnused(final List<String> outputDirectories, final List<File> jars)
+        throws Exception
+    {
+        final long start = System.currentTimeMillis();
+        final Set<File> unused = new LinkedHashSet<File>();
+
+        final List<File> classFiles = new ArrayList<File>();
+        for (final String outputDirectory : outputDirectories)
+        {
+            collectClassFiles(outputDirectory, classFiles);
+        }
+        if (classFiles.isEmpty())
+        {
+            this.logger.warn("No compiled classes found, skipping the unused dependency analysis"
+                + " (compile the projects first)");
+            return unused;
+        }
+
+        // - the class index of every jar (cached per jar) and the references of
+        //   every compiled class, both computed in parallel
+        final List<Callable<Set<String>>> jarTasks = new ArrayList<Callable<Set<String>>>();
+        for (final File jar : jars)
+        {
+            jarTasks.add(new Callable<Set<String>>()
+            {
+                public Set<String> call()
+                {
+                    final Set<String> classes = new HashSet<String>();
+                    final List<String> entries;
+                    try
+                    {
+                        entries = JarIndexCache.instance().getEntries(jar);
+                    }
+                    catch (final IOException exception)
+                    {
+                        // - judged like a resource only jar
+                        logger.warn("Skipping " + jar + ", it could not be read: " + exception.getMessage());
+                        return classes;
+                    }
+                    for (final String entry : entries)
+                    {
+                        if (entry.endsWith(CLASS_SUFFIX))
+                        {
+                            classes.add(entry.substring(0, entry.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+                        }
+                    }
+                    return classes;
+                }
+            });
+        }
+        final List<Callable<Set<String>>> classTasks = new ArrayList<Callable<Set<String>>>();
+        for (int offset = 0; offset < classFiles.size(); offset += CLASS_FILES_PER_TASK)
+        {
+            final List<File> chunk = classFiles.subList(offset, Math.min(classFiles.size(), offset + CLASS_FILES_PER_TASK));
+            classTasks.add(new Callable<Set<String>>()
+            {
+                public Set<String> call()
+                    throws Exception
+                {
+                    final Set<String> references = new HashSet<String>();
+                    for (final File classFile : chunk)
+                    {
+                        try
+                        {
+                            ClassReferenceScanner.scan(classFile, references);
+                        }
+                        catch (Exception exception)
+                        {
+                            logger.warn("Could not read class file " + classFile + ": " + exception);
+                        }
+                    }
+                    return references;
+                }
+            });
+        }
+        final List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>(jarTasks);
+        tasks.addAll(classTasks);
+        final List<Set<String>> results = ConcurrentUtils.invokeAll("dependency-analyzer", tasks, this.threads);
+
+        final Set<String> references = new HashSet<String>();
+        for (final Set<String> result : results.subList(jarTasks.size(), results.size()))
+        {
+            references.addAll(result);
+        }
+
+        for (int ctr = 0; ctr < jars.size(); ctr++)
+        {
+            final File jar = jars.get(ctr);
+            final Set<String> classes = results.get(ctr);
+            if (classes.isEmpty())
+            {
+                // - resource only jars can't be judged by bytecode references
+                continue;
+            }
+            boolean used = false;
+            for (final String className : classes)
+            {
+                if (references.contains(className))
+                {
+                    used = true;
+                    break;
+                }
+            }
+            if (!used)
+            {
+                unused.add(jar);
+            }
+        }
+        this.logger.info("Analyzed " + classFiles.size() + " class file(s) against " + jars.size() + " jar(s) in "
+            + (System.currentTimeMillis() - start) + " ms: " + unused.size() + " unused jar(s)");
+        return unused;
+    }
+
+    /**
+     * Adds all class files below the given directory.
+     */
+    private static void collectClassFiles(final String directory, final List<File> classFiles)
+    {
+        if (directory != null)
+        {
+            collectClassFiles(new File(directory), classFiles);
+        }
+    }
+
+    private static void collectClassFiles(final File directory, final List<File> classFiles)
+    {
+        final File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (final File file : files)
+            {
+                if (file.isDirectory())
+                {
+                    collectClassFiles(file, classFiles);
+                }
+                else if (file.getName().endsWith(CLASS_SUFFIX))
+                {
+                    classFiles.add(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * The entries of the .classpath in a compact form: a table of rows (one per
+ * entry, in the order they were added) held in arrays, with the coordinates
+ * of the artifacts interned into a pool of strings (so every groupId, type,
+ * etc. is held once however many artifacts share it) and the sets of the
+ * modules owning them into a pool of sets, both referenced by index. The
+ * artifacts themselves aren't kept, only their interned coordinates and the
+ * path (and file) of their entry. The conflict id of an entry is only built
+ * when asked for.
+ */
+class ArtifactTable
+{
+    private static final int NONE = -1;
+
+    private int size;
+
+    private int[] groupIds;
+
+    private int[] artifactIds;
+
+    private int[] types;
+
+    private int[] classifiers;
+
+    private String[] paths;
+
+    private File[] files;
+
+    /**
+     * The index of the set of owners of every row in the pool of sets, NONE
+     * for a row only known by its path.
+     */
+    private int[] owners;
+
+    /**
+     * The interned sets of owners, by index.
+     */
+    private final List<Set<String>> ownerSets = new ArrayList<Set<String>>();
+
+    /**
+     * The index of every interned set of owners.
+     */
+    private final Map<Set<String>, Integer> ownerSetIndexes = new HashMap<Set<String>, Integer>();
+
+    /**
+     * The interned strings, by index.
+     */
+    private String[] symbols = new String[64];
+
+    private int symbolCount;
+
+    /**
+     * The open addressing hash of the interned strings: the index of the
+     * string plus one, 0 for a free slot.
+     */
+    private int[] symbolSlots = new int[128];
+
+    /**
+     * @param capacity the expected number of rows.
+     */
+    ArtifactTable(final int capacity)
+    {
+        final int length = Math.max(16, capacity);
+        this.groupIds = new int[length];
+        this.artifactIds = new int[length];
+        this.types = new int[length];
+        this.classifiers = new int[length];
+        this.paths = new String[length];
+        this.files = new File[length];
+        this.owners = new int[length];
+    }
+
+    /**
+     * Adds a row for the given <code>artifact</code>, without a path yet.
+     *
+     * @param artifact the artifact.
+     * @param owners the keys of the modules the artifact is on the classpath for.
+     * @return the row.
+     */
+    int add(final Artifact artifact, final Set<String> owners)
+    {
+        final int row = this.newRow();
+        this.groupIds[row] = this.intern(artifact.getGroupId());
+        this.artifactIds[row] = this.intern(artifact.getArtifactId());
+        this.types[row] = this.intern(artifact.getType());
+        this.classifiers[row] = this.intern(artifact.getClassifier());
+        this.owners[row] = this.intern(owners);
+        return row;
+    }
+
+    /**
+     * Adds a row only known by its path (and file).
+     *
+     * @return the row.
+     */
+    int add(final String path, final File file)
+    {
+        final int row = this.newRow();
+        this.groupIds[row] = NONE;
+        this.artifactIds[row] = NONE;
+        this.types[row] = NONE;
+        this.classifiers[row] = NONE;
+        this.owners[row] = NONE;
+        this.paths[row] = path;
+        this.files[row] = file;
+        return row;
+    }
+
+    private int newRow()
+    {
+        if (this.size == this.paths.length)
+        {
+            final int length = this.size * 2;
+            this.groupIds = grow(this.groupIds, length);
+            this.artifactIds = grow(this.artifactIds, length);
+            this.types = grow(this.types, length);
+            this.classifiers = grow(this.classifiers, length);
+            final String[] paths = new String[length];
+            System.arraycopy(this.paths, 0, paths, 0, this.size);
+            this.paths = paths;
+            final File[] files = new File[length];
+            System.arraycopy(this.files, 0, files, 0, this.size);
+            this.files = files;
+            this.owners = grow(this.owners, length);
+        }
+        return this.size++;
+    }
+
+    private static int[] grow(final int[] array, final int length)
+    {
+        final int[] grown = new int[length];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    /**
+     * Sets the path (as written to the .classpath) and the file of a row.
+     */
+    void setPath(final int row, final String path, final File file)
+    {
+        this.paths[row] = path;
+        this.files[row] = file;
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+
+    String getPath(final int row)
+    {
+        return this.paths[row];
+    }
+
+    File getFile(final int row)
+    {
+        return this.files[row];
+    }
+
+    /**
+     * Gets the keys of the modules the artifact of a row is on the classpath
+     * for, null for a row only known by its path.
+     */
+    Set<String> getOwners(final int row)
+    {
+        return this.owners[row] == NONE ? null : this.ownerSets.get(this.owners[row]);
+    }
+
+    /**
+     * Builds the conflict id (<code>groupId:artifactId:type[:classifier]</code>)
+     * of the artifact of a row.
+     */
+    String getConflictId(final int row)
+    {
+        final StringBuffer id = new StringBuffer(this.symbols[this.groupIds[row]]);
+        id.append(':').append(this.symbols[this.artifactIds[row]]);
+        id.append(':').append(this.symbols[this.types[row]]);
+        if (this.classifiers[row] != NONE)
+        {
+            id.append(':').append(this.symbols[this.classifiers[row]]);
+        }
+        return id.toString();
+    }
+
+    /**
+     * Gets the rows that have a path, sorted by path.
+     */
+    int[] sortByPath()
+    {
+        int count = 0;
+        for (int row = 0; row < this.size; row++)
+        {
+            if (this.paths[row] != null)
+            {
+                count++;
+            }
+        }
+        final int[] rows = new int[count];
+        count = 0;
+        for (int row = 0; row < this.size; row++)
+        {
+            if (this.paths[row] != null)
+            {
+                rows[count++] = row;
+            }
+        }
+        this.sort(rows, new int[rows.length], 0, rows.length);
+        return rows;
+    }
+
+    /**
+     * Merge sorts (stable) the rows between <code>from</code> and <code>to</code> by path.
+     */
+    private void sort(final int[] rows, final int[] buffer, final int from, final int to)
+    {
+        if (to - from < 2)
+        {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        this.sort(rows, buffer, from, middle);
+        this.sort(rows, buffer, middle, to);
+        if (this.paths[rows[middle - 1]].compareTo(this.paths[rows[middle]]) <= 0)
+        {
+            return;
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int index = from; index < to; index++)
+        {
+            if (right >= to || (left < middle && this.paths[buffer[left]].compareTo(this.paths[buffer[right]]) <= 0))
+            {
+                rows[index] = buffer[left++];
+            }
+            else
+            {
+                rows[index] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Interns the given set of owners into the pool of sets.
+     *
+     * @return the index of the set, NONE for null.
+     */
+    private int intern(final Set<String> owners)
+    {
+        if (owners == null)
+        {
+            return NONE;
+        }
+        Integer index = this.ownerSetIndexes.get(owners);
+        if (index == null)
+        {
+            index = Integer.valueOf(this.ownerSets.size());
+            this.ownerSets.add(owners);
+            this.ownerSetIndexes.put(owners, index);
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Interns the given string into the pool.
+     *
+     * @return the index of the string, NONE for null.
+     */
+    private int intern(final String string)
+    {
+        if (string == null)
+        {
+            return NONE;
+        }
+        final int mask = this.symbolSlots.length - 1;
+        int slot = string.hashCode() & mask;
+        while (this.symbolSlots[slot] != 0)
+        {
+            final int index = this.symbolSlots[slot] - 1;
+            if (this.symbols[index].equals(string))
+            {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (this.symbolCount == this.symbols.length)
+        {
+            final String[] symbols = new String[this.symbolCount * 2];
+            System.arraycopy(this.symbols, 0, symbols, 0, this.symbolCount);
+            this.symbols = symbols;
+        }
+        final int index = this.symbolCount++;
+        this.symbols[index] = string;
+        this.symbolSlots[slot] = index + 1;
+        if (this.symbolCount * 2 > this.symbolSlots.length)
+        {
+            this.rehash();
+        }
+        return index;
+    }
+
+    private void rehash()
+    {
+        this.symbolSlots = new int[this.symbolSlots.length * 2];
+        final int mask = this.symbolSlots.length - 1;
+        for (int index = 0; index < this.symbolCount; index++)
+        {
+            int slot = this.symbols[index].hashCode() & mask;
+            while (this.symbolSlots[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            this.symbolSlots[slot] = index + 1;
+        }
+    }
+}
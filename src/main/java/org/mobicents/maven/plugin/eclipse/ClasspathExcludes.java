@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * The <code>classpathExcludes</code> (<code>groupId</code>,
+ * <code>groupId:artifactId</code> or <code>groupId:artifactId:version</code>)
+ * split once into lookups by coordinate, so that matching an artifact
+ * doesn't build the keys of every form for it.
+ */
+class ClasspathExcludes
+{
+    static final String GROUP_ID = "groupId";
+
+    static final String ARTIFACT_ID = "groupId:artifactId";
+
+    static final String VERSION = "groupId:artifactId:version";
+
+    private final Set<String> groupIds = new HashSet<String>();
+
+    /**
+     * The excluded artifactIds, keyed by groupId.
+     */
+    private final Map<String, Set<String>> artifactIds = new HashMap<String, Set<String>>();
+
+    /**
+     * The excluded versions, keyed by groupId and then artifactId.
+     */
+    private final Map<String, Map<String, Set<String>>> versions = new HashMap<String, Map<String, Set<String>>>();
+
+    /**
+     * @param excludes the excludes, may be null.
+     */
+    ClasspathExcludes(final Set excludes)
+    {
+        if (excludes == null)
+        {
+            return;
+        }
+        for (final Iterator iterator = excludes.iterator(); iterator.hasNext();)
+        {
+            final String[] parts = String.valueOf(iterator.next()).split(":", -1);
+            if (parts.length == 1)
+            {
+                this.groupIds.add(parts[0]);
+            }
+            else if (parts.length == 2)
+            {
+                get(this.artifactIds, parts[0]).add(parts[1]);
+            }
+            else if (parts.length == 3)
+            {
+                Map<String, Set<String>> artifactVersions = this.versions.get(parts[0]);
+                if (artifactVersions == null)
+                {
+                    artifactVersions = new HashMap<String, Set<String>>();
+                    this.versions.put(parts[0], artifactVersions);
+                }
+                get(artifactVersions, parts[1]).add(parts[2]);
+            }
+        }
+    }
+
+    private static Set<String> get(final Map<String, Set<String>> map, final String key)
+    {
+        Set<String> values = map.get(key);
+        if (values == null)
+        {
+            values = new HashSet<String>();
+            map.put(key, values);
+        }
+        return values;
+    }
+
+    /**
+     * Gets the form of the exclude the given <code>artifact</code> matches.
+     *
+     * @return {@link #GROUP_ID}, {@link #ARTIFACT_ID}, {@link #VERSION} or
+     *         null if the artifact isn't excluded.
+     */
+    String match(final Artifact artifact)
+    {
+        final String groupId = artifact.getGroupId();
+        if (this.groupIds.contains(groupId))
+        {
+            return GROUP_ID;
+        }
+        final Set<String> artifactIds = this.artifactIds.get(groupId);
+        if (artifactIds != null && artifactIds.contains(artifact.getArtifactId()))
+        {
+            return ARTIFACT_ID;
+        }
+        final Map<String, Set<String>> artifactVersions = this.versions.get(groupId);
+        if (artifactVersions != null)
+        {
+            final Set<String> versions = artifactVersions.get(artifact.getArtifactId());
+            if (versions != null && versions.contains(artifact.getVersion()))
+            {
+                return VERSION;
+            }
+        }
+        return null;
+    }
+}
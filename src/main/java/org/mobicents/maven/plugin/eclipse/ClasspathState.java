@@ -0,0 +1,346 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+import org.mobicents.maven.plugin.utils.PathNormalizer;
+import org.mobicents.maven.plugin.utils.ProcessLock;
+
+/**
+ * The per module result of a .classpath generation: the source paths and
+ * classpath entries each module contributed. It's stored after every run so
+ * that a later run can regenerate a subset of the modules and take the
+ * contribution of all the others from here. It's written to a temporary file
+ * renamed over the state under a process lock, so that a run (or a shard
+ * worker) reading it never sees a partly written one.
+ */
+public class ClasspathState
+{
+    private static final int MAGIC = 0x4D454353;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The modules keyed by module key (the POM path relative to the root project).
+     */
+    private final Map<String, Module> modules = new LinkedHashMap<String, Module>();
+
+    /**
+     * Gets the key of the module with the given <code>pom</code>: the POM
+     * path relative to the root project directory.
+     *
+     * @param pom the POM of the module.
+     * @param rootDirectory the root project directory.
+     * @return the module key.
+     */
+    public static String getModuleKey(final File pom, final File rootDirectory)
+    {
+        final String path = PathNormalizer.normalizePath(pom.getAbsolutePath());
+        final String root = PathNormalizer.normalizePath(rootDirectory.getAbsolutePath() + '/');
+        return path.startsWith(root) ? path.substring(root.length()) : path;
+    }
+
+    /**
+     * Adds (or replaces) a module.
+     *
+     * @param module the module.
+     */
+    public void addModule(final Module module)
+    {
+        this.modules.put(module.getKey(), module);
+    }
+
+    /**
+     * Gets the module with the given <code>key</code>.
+     *
+     * @param key the module key.
+     * @return the module or null if not known.
+     */
+    public Module getModule(final String key)
+    {
+        return this.modules.get(key);
+    }
+
+    /**
+     * Adds the modules of the given <code>poms</code> that aren't there yet
+     * (i.e. reused from the previous run), in POM order, from the states the
+     * shard workers stored: each from the first state (in shard order) that
+     * has it. The merged state is so the same whatever order the workers
+     * finished in.
+     *
+     * @param poms the POM files of the modules.
+     * @param rootDirectory the root project directory.
+     * @param shardStates the states of the shards, in shard order.
+     * @return the keys of the modules no shard generated.
+     */
+    public List<String> addShardModules(
+        final List poms,
+        final File rootDirectory,
+        final List<ClasspathState> shardStates)
+    {
+        final List<String> missingKeys = new ArrayList<String>();
+        for (final Iterator iterator = poms.iterator(); iterator.hasNext();)
+        {
+            final String key = getModuleKey((File)iterator.next(), rootDirectory);
+            Module module = null;
+            for (final Iterator<ClasspathState> stateIterator = shardStates.iterator(); module == null
+                && stateIterator.hasNext();)
+            {
+                module = stateIterator.next().getModule(key);
+            }
+            if (module == null)
+            {
+                missingKeys.add(key);
+            }
+            else if (!this.modules.containsKey(key))
+            {
+                this.addModule(module);
+            }
+        }
+        return missingKeys;
+    }
+
+    /**
+     * Gets all modules, in generation order.
+     *
+     * @return the modules.
+     */
+    public Collection<Module> getModules()
+    {
+        return this.modules.values();
+    }
+
+    /**
+     * Loads a state from the given <code>file</code>.
+     *
+     * @param file the state file.
+     * @return the state or null if there's none (or it can't be read).
+     */
+    public static ClasspathState load(final File file)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                return null;
+            }
+            final ClasspathState state = new ClasspathState();
+            final int count = input.readInt();
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                final Module module = new Module(input.readUTF(), input.readUTF(), input.readUTF());
+                readStrings(input, module.dependencies);
+                readStrings(input, module.sourcePaths);
+                final int entries = input.readInt();
+                for (int entry = 0; entry < entries; entry++)
+                {
+                    module.entries.put(input.readUTF(), input.readUTF());
+                }
+                state.addModule(module);
+            }
+            return state;
+        }
+        catch (IOException exception)
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Stores this state to the given <code>file</code>.
+     *
+     * @param file the state file.
+     * @throws IOException
+     */
+    public void store(final File file)
+        throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        final ProcessLock lock = ProcessLock.acquire(file);
+        try
+        {
+            final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+            final File temporaryFile = new File(file.getPath() + ".tmp");
+            this.write(temporaryFile);
+            file.delete();
+            if (!temporaryFile.renameTo(file))
+            {
+                throw new IOException("Could not rename " + temporaryFile + " to " + file);
+            }
+            event.commitFileWrite(file);
+        }
+        finally
+        {
+            lock.release();
+        }
+    }
+
+    private void write(final File file)
+        throws IOException
+    {
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(this.modules.size());
+            for (final Module module : this.modules.values())
+            {
+                output.writeUTF(module.key);
+                output.writeUTF(module.groupId);
+                output.writeUTF(module.artifactId);
+                writeStrings(output, module.dependencies);
+                writeStrings(output, module.sourcePaths);
+                output.writeInt(module.entries.size());
+                for (final Map.Entry<String, String> entry : module.entries.entrySet())
+                {
+                    output.writeUTF(entry.getKey());
+                    output.writeUTF(entry.getValue());
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close(output);
+        }
+    }
+
+    private static void readStrings(final DataInputStream input, final List<String> strings)
+        throws IOException
+    {
+        final int count = input.readInt();
+        for (int ctr = 0; ctr < count; ctr++)
+        {
+            strings.add(input.readUTF());
+        }
+    }
+
+    private static void writeStrings(final DataOutputStream output, final List<String> strings)
+        throws IOException
+    {
+        output.writeInt(strings.size());
+        for (final String string : strings)
+        {
+            output.writeUTF(string);
+        }
+    }
+
+    /**
+     * What one module contributed to the .classpath.
+     */
+    public static class Module
+    {
+        private final String key;
+
+        private final String groupId;
+
+        private final String artifactId;
+
+        /**
+         * The direct dependencies, as groupId:artifactId.
+         */
+        private final List<String> dependencies = new ArrayList<String>();
+
+        /**
+         * The source and resource paths, relative to the root project.
+         */
+        private final List<String> sourcePaths = new ArrayList<String>();
+
+        /**
+         * The classpath entry paths (before being made relative to the root
+         * project) keyed by dependency conflict id.
+         */
+        private final Map<String, String> entries = new LinkedHashMap<String, String>();
+
+        public Module(final String key, final String groupId, final String artifactId)
+        {
+            this.key = key;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+        }
+
+        public String getKey()
+        {
+            return this.key;
+        }
+
+        public String getGroupId()
+        {
+            return this.groupId;
+        }
+
+        public String getArtifactId()
+        {
+            return this.artifactId;
+        }
+
+        /**
+         * Gets the groupId:artifactId of this module.
+         */
+        public String getId()
+        {
+            return this.groupId + ':' + this.artifactId;
+        }
+
+        public List<String> getDependencies()
+        {
+            return this.dependencies;
+        }
+
+        public List<String> getSourcePaths()
+        {
+            return this.sourcePaths;
+        }
+
+        public Map<String, String> getEntries()
+        {
+            return this.entries;
+        }
+    }
+}
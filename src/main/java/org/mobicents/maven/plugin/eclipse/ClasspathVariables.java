@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.mobicents.maven.plugin.utils.PathNormalizer;
+
+/**
+ * The eclipse classpath variables the paths of the .classpath entries are
+ * written relative to (the maven repository one and any other configured),
+ * indexed by their normalized root so that a path is matched against the
+ * variable with the longest root containing it by looking up only the
+ * lengths of the roots there are.
+ */
+class ClasspathVariables
+{
+    /**
+     * The names of the variables, keyed by root.
+     */
+    private final Map<String, String> names = new HashMap<String, String>();
+
+    /**
+     * The roots of the variables, keyed by name.
+     */
+    private final Map<String, String> roots = new HashMap<String, String>();
+
+    /**
+     * The distinct lengths of the roots, longest first.
+     */
+    private final int[] lengths;
+
+    /**
+     * @param variables the roots of the variables keyed by name, the first
+     *        variable given a root wins.
+     */
+    ClasspathVariables(final Map<String, String> variables)
+    {
+        final TreeSet<Integer> lengths = new TreeSet<Integer>();
+        for (final Iterator<Map.Entry<String, String>> iterator = variables.entrySet().iterator(); iterator.hasNext();)
+        {
+            final Map.Entry<String, String> variable = iterator.next();
+            String root = PathNormalizer.normalizePath(variable.getValue());
+            while (root.length() > 1 && root.endsWith("/"))
+            {
+                root = root.substring(0, root.length() - 1);
+            }
+            if (!this.names.containsKey(root))
+            {
+                this.names.put(root, variable.getKey());
+                lengths.add(Integer.valueOf(root.length()));
+            }
+            this.roots.put(variable.getKey(), root);
+        }
+        this.lengths = new int[lengths.size()];
+        int index = this.lengths.length;
+        for (final Iterator<Integer> iterator = lengths.iterator(); iterator.hasNext();)
+        {
+            this.lengths[--index] = iterator.next().intValue();
+        }
+    }
+
+    /**
+     * Makes the given (normalized) path relative to the variable with the
+     * longest root it's under.
+     *
+     * @param path the normalized path.
+     * @return the path starting with the name of the variable, or the path as
+     *         is when it's under no variable.
+     */
+    String relativize(final String path)
+    {
+        for (int index = 0; index < this.lengths.length; index++)
+        {
+            final int length = this.lengths[index];
+            if (path.length() > length && path.charAt(length) == '/')
+            {
+                final String name = this.names.get(path.substring(0, length));
+                if (name != null)
+                {
+                    return name + path.substring(length);
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Whether the given path (as returned by {@link #relativize(String)})
+     * starts with a variable.
+     */
+    boolean isRelative(final String path)
+    {
+        return this.roots.containsKey(this.getName(path));
+    }
+
+    /**
+     * Gets the file of the given path (as returned by
+     * {@link #relativize(String)}).
+     */
+    File toFile(final String path)
+    {
+        final String name = this.getName(path);
+        final String root = this.roots.get(name);
+        return root != null ? new File(root, path.substring(name.length())) : new File(path);
+    }
+
+    private String getName(final String path)
+    {
+        final int separator = path.indexOf('/');
+        return separator > 0 ? path.substring(0, separator) : path;
+    }
+}
@@ -23,30 +23,46 @@
 package org.mobicents.maven.plugin.eclipse;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.AbstractArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
 import org.apache.maven.model.Resource;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
-import org.codehaus.plexus.util.xml.XMLWriter;
+import org.mobicents.maven.plugin.analysis.UnusedDependencyAnalyzer;
+import org.mobicents.maven.plugin.output.ClasspathModel;
+import org.mobicents.maven.plugin.output.EclipseClasspathOutputWriter;
+import org.mobicents.maven.plugin.output.OutputWriter;
+import org.mobicents.maven.plugin.output.OutputWriters;
+import org.mobicents.maven.plugin.resolver.HedgedArtifactResolver;
+import org.mobicents.maven.plugin.resolver.MissingArtifactCache;
+import org.mobicents.maven.plugin.resolver.PrefetchingMetadataSource;
+import org.mobicents.maven.plugin.resolver.RepositoryLocks;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+import org.mobicents.maven.plugin.utils.LocalRepositoryIndex;
 import org.mobicents.maven.plugin.utils.PathNormalizer;
 
 /**
@@ -57,16 +73,386 @@ import org.mobicents.maven.plugin.utils.PathNormalizer;
  * @author Jean Deruelle
  */
 public class ClasspathWriter extends EclipseWriter {
+	/**
+	 * The artifact files written to the last .classpath.
+	 */
+	private final List<File> classpathFiles = new ArrayList<File>();
+
+	/**
+	 * The source directories written to the last .classpath.
+	 */
+	private final List<File> sourceDirectories = new ArrayList<File>();
+
+	/**
+	 * The analyzer used to find unused jars, if any.
+	 */
+	private UnusedDependencyAnalyzer unusedDependencyAnalyzer;
+
+	/**
+	 * Whether unused jars are removed from (rather than just reported for)
+	 * the .classpath.
+	 */
+	private boolean removeUnusedDependencies;
+
+	/**
+	 * The resolution results kept between writes.
+	 */
+	private ResolutionState resolutionState = new ResolutionState();
+
+	/**
+	 * The local repository index released artifacts are looked up in before
+	 * going through the resolver, null to always use the resolver.
+	 */
+	private LocalRepositoryIndex localRepositoryIndex;
+
+	/**
+	 * The metadata source dependency graphs are expanded concurrently with,
+	 * null to let the resolver expand them serially.
+	 */
+	private PrefetchingMetadataSource prefetchingMetadataSource;
+
+	/**
+	 * The cache of artifacts not found in the remote repositories, null to
+	 * always look them up (and fail if they're missing).
+	 */
+	private MissingArtifactCache missingArtifactCache;
+
+	/**
+	 * The resolver artifacts are downloaded with (timing out and hedging
+	 * slow repositories), null to use the artifact resolver as is.
+	 */
+	private HedgedArtifactResolver hedgedArtifactResolver;
+
+	/**
+	 * The number of threads artifacts are resolved on while the ones
+	 * already resolved are processed, 1 to resolve them one after the other.
+	 */
+	private int resolutionThreads = 1;
+
+	/**
+	 * The compile source roots of the projects keyed by project, the
+	 * projects' own ones being used for the projects not in there.
+	 */
+	private Map<MavenProject, List<String>> compileSourceRoots = Collections
+			.emptyMap();
+
+	/**
+	 * The roots of the classpath variables (besides the repository one)
+	 * keyed by name.
+	 */
+	private Map<String, String> classpathVariables = Collections.emptyMap();
+
+	/**
+	 * The state of a previous run, from which the contribution of the
+	 * modules that aren't generated is taken.
+	 */
+	private ClasspathState previousState;
+
+	/**
+	 * The keys of the modules taken from the previous state.
+	 */
+	private Set<String> reusedModuleKeys = Collections.emptySet();
+
+	/**
+	 * The state of the last written .classpath.
+	 */
+	private ClasspathState state;
+
+	/**
+	 * Records the resolution results as they complete, null not to.
+	 */
+	private ResolutionCheckpoint checkpoint;
+
+	/**
+	 * Whether artifacts that fail to resolve are left out rather than failing
+	 * the generation.
+	 */
+	private boolean failSoft;
+
+	/**
+	 * The ids of the artifacts left out of the last written .classpath as they
+	 * couldn't be resolved.
+	 */
+	private final Set<String> missingArtifacts = new CopyOnWriteArraySet<String>();
+
+	/**
+	 * The transitive resolutions shared with the other checkouts, null not to
+	 * share them.
+	 */
+	private SharedResolutionCache sharedResolutionCache;
+
+	/**
+	 * The digest of what the POMs are built with besides themselves, part of
+	 * the key of every transitive resolution.
+	 */
+	private String context = "";
+
+	/**
+	 * The writers of the resolved classpath.
+	 */
+	private List<OutputWriter> outputWriters = Collections
+			.<OutputWriter> singletonList(new EclipseClasspathOutputWriter());
+
+	/**
+	 * The last resolved classpath.
+	 */
+	private ClasspathModel model;
+
 	public ClasspathWriter(final MavenProject project, final Log logger) {
 		super(project, logger);
 	}
 
 	/**
-	 * Writes the .classpath file for eclipse.
+	 * Sets the analyzer used to find the jars that no compiled class
+	 * references.
+	 * 
+	 * @param unusedDependencyAnalyzer
+	 *            the analyzer, null to skip the analysis.
+	 * @param removeUnusedDependencies
+	 *            whether unused jars are left out of the .classpath or only
+	 *            reported.
+	 */
+	public void setUnusedDependencyAnalyzer(
+			final UnusedDependencyAnalyzer unusedDependencyAnalyzer,
+			final boolean removeUnusedDependencies) {
+		this.unusedDependencyAnalyzer = unusedDependencyAnalyzer;
+		this.removeUnusedDependencies = removeUnusedDependencies;
+	}
+
+	/**
+	 * Gets the artifact files (jars) of the last written .classpath, in
+	 * classpath order.
+	 * 
+	 * @return the artifact files.
+	 */
+	public List<File> getClasspathFiles() {
+		return this.classpathFiles;
+	}
+
+	/**
+	 * Gets the source (and resource) directories of the last written
+	 * .classpath.
+	 * 
+	 * @return the source directories.
+	 */
+	public List<File> getSourceDirectories() {
+		return this.sourceDirectories;
+	}
+
+	/**
+	 * Sets the resolution results to reuse (and to add to), by default every
+	 * writer starts with an empty state.
+	 * 
+	 * @param resolutionState
+	 *            the resolution state.
+	 */
+	public void setResolutionState(final ResolutionState resolutionState) {
+		this.resolutionState = resolutionState;
+	}
+
+	/**
+	 * Sets the local repository index released artifacts are looked up in
+	 * before going through the artifact resolver.
+	 * 
+	 * @param localRepositoryIndex
+	 *            the index, null to always use the resolver.
+	 */
+	public void setLocalRepositoryIndex(
+			final LocalRepositoryIndex localRepositoryIndex) {
+		this.localRepositoryIndex = localRepositoryIndex;
+	}
+
+	/**
+	 * Sets the metadata source transitive dependencies are resolved with,
+	 * which expands the dependency graph concurrently before the resolver
+	 * mediates it.
+	 * 
+	 * @param prefetchingMetadataSource
+	 *            the metadata source, null to resolve serially.
+	 */
+	public void setPrefetchingMetadataSource(
+			final PrefetchingMetadataSource prefetchingMetadataSource) {
+		this.prefetchingMetadataSource = prefetchingMetadataSource;
+	}
+
+	/**
+	 * Sets the cache of artifacts not found in the remote repositories: these
+	 * aren't looked up again in the repositories they were missing in (until
+	 * the misses expire), and a missing artifact is left out of the .classpath
+	 * with a warning rather than failing the generation.
+	 * 
+	 * @param missingArtifactCache
+	 *            the cache, null to always look artifacts up.
+	 */
+	public void setMissingArtifactCache(
+			final MissingArtifactCache missingArtifactCache) {
+		this.missingArtifactCache = missingArtifactCache;
+	}
+
+	/**
+	 * Sets the resolver artifacts missing from the local repository are
+	 * downloaded with, which gives up on (or hedges) slow repositories.
+	 * 
+	 * @param hedgedArtifactResolver
+	 *            the resolver, null to use the artifact resolver as is.
+	 */
+	public void setHedgedArtifactResolver(
+			final HedgedArtifactResolver hedgedArtifactResolver) {
+		this.hedgedArtifactResolver = hedgedArtifactResolver;
+	}
+
+	/**
+	 * Sets the number of threads artifacts are resolved on, while the
+	 * generation goes on with the artifacts already resolved.
+	 * 
+	 * @param resolutionThreads
+	 *            the number of threads, 1 to resolve the artifacts one after
+	 *            the other.
+	 */
+	public void setResolutionThreads(final int resolutionThreads) {
+		this.resolutionThreads = resolutionThreads;
+	}
+
+	/**
+	 * Sets the compile source roots to use for the projects instead of their
+	 * own ones (i.e. with extra and test source directories), so that the
+	 * projects don't have to be changed.
+	 * 
+	 * @param compileSourceRoots
+	 *            the source roots keyed by project.
+	 */
+	public void setCompileSourceRoots(
+			final Map<MavenProject, List<String>> compileSourceRoots) {
+		this.compileSourceRoots = compileSourceRoots;
+	}
+
+	/**
+	 * Sets the classpath variables the paths of the entries are written
+	 * relative to besides the repository one, the variable with the longest
+	 * root an entry is under being used.
+	 * 
+	 * @param classpathVariables
+	 *            the roots of the variables keyed by name.
+	 */
+	public void setClasspathVariables(
+			final Map<String, String> classpathVariables) {
+		this.classpathVariables = classpathVariables;
+	}
+
+	/**
+	 * Sets the state of a previous run, the contribution of the given modules
+	 * is taken from there instead of from projects (which aren't even
+	 * passed in for these).
+	 * 
+	 * @param previousState
+	 *            the previous state.
+	 * @param reusedModuleKeys
+	 *            the keys of the modules to reuse.
+	 */
+	public void setPreviousState(final ClasspathState previousState,
+			final Set<String> reusedModuleKeys) {
+		this.previousState = previousState;
+		this.reusedModuleKeys = reusedModuleKeys;
+	}
+
+	/**
+	 * Sets the cache the transitive resolutions are shared through with the
+	 * other checkouts of the reactor.
+	 * 
+	 * @param sharedResolutionCache
+	 *            the cache, null not to share the resolutions.
+	 */
+	public void setSharedResolutionCache(
+			final SharedResolutionCache sharedResolutionCache) {
+		this.sharedResolutionCache = sharedResolutionCache;
+	}
+
+	/**
+	 * Sets the digest of what the POMs are built with besides themselves: the
+	 * JDK, the OS, the active profiles and the properties (see
+	 * {@link org.mobicents.maven.plugin.utils.ProjectSnapshotStore#getContext}).
+	 * A transitive resolution is then only reused in the same context.
+	 * 
+	 * @param context
+	 *            the digest.
+	 */
+	public void setContext(final String context) {
+		this.context = context;
+	}
+
+	/**
+	 * Sets the writers the resolved classpath is written with (concurrently),
+	 * by default only the .classpath is written.
+	 * 
+	 * @param outputWriters
+	 *            the writers, none when only the state of the modules is
+	 *            wanted.
+	 */
+	public void setOutputWriters(final List<OutputWriter> outputWriters) {
+		this.outputWriters = outputWriters;
+	}
+
+	/**
+	 * Gets the last resolved classpath.
+	 * 
+	 * @return the classpath.
+	 */
+	public ClasspathModel getModel() {
+		return this.model;
+	}
+
+	/**
+	 * Sets the checkpoint the resolution results are recorded to as they
+	 * complete, so that a run failing half way is resumed from there.
+	 * 
+	 * @param checkpoint
+	 *            the checkpoint, null not to record the results.
+	 */
+	public void setCheckpoint(final ResolutionCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Sets whether artifacts that fail to resolve are left out of the
+	 * .classpath with a warning (and listed at the end) rather than failing
+	 * the generation. A failed transitive resolution falls back to the
+	 * direct dependencies.
+	 * 
+	 * @param failSoft
+	 *            whether to leave out what fails to resolve.
+	 */
+	public void setFailSoft(final boolean failSoft) {
+		this.failSoft = failSoft;
+	}
+
+	/**
+	 * Gets the ids of the artifacts left out of the last written .classpath
+	 * as they couldn't be resolved.
+	 * 
+	 * @return the ids, sorted.
+	 */
+	public Set<String> getMissingArtifacts() {
+		return new TreeSet<String>(this.missingArtifacts);
+	}
+
+	/**
+	 * Gets the per module state of the last written .classpath, to be
+	 * stored for later runs.
+	 * 
+	 * @return the state.
+	 */
+	public ClasspathState getState() {
+		return this.state;
+	}
+
+	/**
+	 * Resolves the classpath once into a {@link ClasspathModel}, and writes it
+	 * with the output writers (the .classpath file for eclipse by default).
 	 * 
 	 * @param projects
-	 *            the list of projects from which the .classpath will get its
-	 *            dependencies.
+	 *            the projects from which the .classpath will get its
+	 *            dependencies, gone through only once (so they may be built
+	 *            as they're asked for, and let go right after).
 	 * @param repositoryVariableName
 	 *            the name of the maven repository variable.
 	 * @param artifactFactory
@@ -90,7 +476,7 @@ public class ClasspathWriter extends EclipseWriter {
 	 * @param includeResourcesDirectory
 	 * @throws Exception
 	 */
-	public void write(final List projects, final String repositoryVariableName,
+	public void write(final Iterable projects, final String repositoryVariableName,
 			final ArtifactFactory artifactFactory,
 			final ArtifactResolver artifactResolver,
 			final ArtifactRepository localRepository,
@@ -101,71 +487,125 @@ public class ClasspathWriter extends EclipseWriter {
 			throws Exception {
 		final String rootDirectory = PathNormalizer.normalizePath(this.project
 				.getBasedir().toString());
-		final File classpathFile = new File(rootDirectory, ".classpath");
-		final FileWriter fileWriter = new FileWriter(classpathFile);
-		final XMLWriter writer = new PrettyPrintXMLWriter(fileWriter, "UTF-8",
-				null);
-		writer.startElement("classpath");
+		final ClasspathModel model = new ClasspathModel(this.project,
+				rootDirectory);
+		this.missingArtifacts.clear();
 
+		// - take what's needed of every project in one pass, so that no
+		// project has to be held once it was gone through
+		final List<ProjectInfo> projectInfos = new ArrayList<ProjectInfo>();
 		final Set projectArtifactIds = new LinkedHashSet();
 		for (final Iterator iterator = projects.iterator(); iterator.hasNext();) {
-			final MavenProject project = (MavenProject) iterator.next();
-			final Artifact projectArtifact = artifactFactory.createArtifact(
-					project.getGroupId(), project.getArtifactId(), project
-							.getVersion(), null, project.getPackaging());
-			projectArtifactIds.add(projectArtifact.getId());
+			final ProjectInfo projectInfo = this.createProjectInfo(
+					(MavenProject) iterator.next(), rootDirectory,
+					includeResourcesDirectory, artifactFactory);
+			projectInfos.add(projectInfo);
+			projectArtifactIds.add(projectInfo.id);
 		}
 
+		// - the modules taken from a previous run
+		final List<ClasspathState.Module> reusedModules = new ArrayList<ClasspathState.Module>();
+		final Set<String> reusedModuleIds = new HashSet<String>();
+		if (this.previousState != null) {
+			for (final String key : this.reusedModuleKeys) {
+				final ClasspathState.Module module = this.previousState
+						.getModule(key);
+				if (module != null) {
+					reusedModules.add(module);
+					reusedModuleIds.add(module.getId());
+				}
+			}
+		}
+
+		// - the modules generated now, and which of them declared each
+		// direct dependency
+		final Map<String, ClasspathState.Module> modules = new LinkedHashMap<String, ClasspathState.Module>();
+		final ModuleOwners owners = new ModuleOwners();
+
 		// - collect the source roots for the root project (if they are any)
-		Set<String> sourceRoots = collectSourceRoots(this.project, rootDirectory, writer,
+		Set<String> sourceRoots = collectSourceRoots(this.project, rootDirectory,
 				includeResourcesDirectory);
+		final ClasspathState.Module rootModule = this.createModule(
+				this.project, sourceRoots);
+		modules.put(rootModule.getKey(), rootModule);
 
 		final Set allArtifacts = new LinkedHashSet(this.project
 				.createArtifacts(artifactFactory, null, null));
+		for (final Iterator iterator = allArtifacts.iterator(); iterator
+				.hasNext();) {
+			owners.addDeclared((Artifact) iterator.next(), rootModule.getKey());
+		}
 
-		for (final Iterator iterator = projects.iterator(); iterator.hasNext();) {
-			final MavenProject project = (MavenProject) iterator.next();
-			sourceRoots.addAll(collectSourceRoots(project, rootDirectory, writer,
-					includeResourcesDirectory));
-			final Set artifacts = project.createArtifacts(artifactFactory,
-					null, null);
-			// - get the direct dependencies
-			for (final Iterator artifactIterator = artifacts.iterator(); artifactIterator
-					.hasNext();) {
-				final Artifact artifact = (Artifact) artifactIterator.next();
-				// - don't attempt to resolve the artifact if its part of the
-				// project (we
-				// infer this if it has the same id has one of the projects or
-				// is in
-				// the same groupId).
-				if (!projectArtifactIds.contains(artifact.getId())
-						&& !project.getGroupId().equals(artifact.getGroupId())) {
-					artifactResolver.resolve(artifact, project
-							.getRemoteArtifactRepositories(), localRepository);
-					allArtifacts.add(artifact);
-				} else {
-					allArtifacts.add(artifact);
+		// - the direct dependencies are resolved while the next projects are
+		// processed
+		final ResolutionPipeline directResolutions = new ResolutionPipeline(
+				this.resolutionThreads);
+		try {
+			for (final ProjectInfo projectInfo : projectInfos) {
+				final ClasspathState.Module module = projectInfo.module;
+				sourceRoots.addAll(module.getSourcePaths());
+				modules.put(module.getKey(), module);
+				final Set artifacts = projectInfo.artifacts;
+				projectInfo.artifacts = null;
+				// - get the direct dependencies
+				for (final Iterator artifactIterator = artifacts.iterator(); artifactIterator
+						.hasNext();) {
+					final Artifact artifact = (Artifact) artifactIterator.next();
+					owners.addDeclared(artifact, module.getKey());
+					// - don't attempt to resolve the artifact if its part of the
+					// project (we
+					// infer this if it has the same id has one of the projects or
+					// is in
+					// the same groupId).
+					if (!projectArtifactIds.contains(artifact.getId())
+							&& !projectInfo.groupId.equals(artifact.getGroupId())
+							&& !reusedModuleIds.contains(artifact.getGroupId() + ':'
+									+ artifact.getArtifactId())) {
+						if (allArtifacts.add(artifact)) {
+							directResolutions.submit(artifact, this.newResolution(
+									artifact, artifactResolver,
+									projectInfo.remoteRepositories,
+									localRepository));
+						}
+					} else {
+						allArtifacts.add(artifact);
+					}
+				}
+			}
+
+			// - wait for the direct dependencies, leaving out the missing ones
+			while (directResolutions.hasNext()) {
+				final ResolutionPipeline.Resolution resolution = directResolutions
+						.next();
+				if (!resolution.resolved) {
+					allArtifacts.remove(resolution.artifact);
 				}
 			}
+		} finally {
+			directResolutions.shutdown();
+		}
+
+		for (final ClasspathState.Module module : reusedModules) {
+			sourceRoots.addAll(module.getSourcePaths());
 		}
 
 		// we have all source roots now, sort and write
+		this.sourceDirectories.clear();
 		for (String sourceRoot : sourceRoots) {
 			logger.info("Adding src path "+sourceRoot);
-			this.writeClasspathEntry(writer, "src", sourceRoot);
+			model.addSourcePath(sourceRoot);
+			this.sourceDirectories.add(new File(rootDirectory, sourceRoot));
 		}
 		
 		// - remove the project artifacts
-		for (final Iterator iterator = projects.iterator(); iterator.hasNext();) {
-			final MavenProject project = (MavenProject) iterator.next();
-			final Artifact projectArtifact = project.getArtifact();
-			if (projectArtifact != null) {
+		for (final ProjectInfo projectInfo : projectInfos) {
+			if (projectInfo.artifactId != null) {
 				for (final Iterator artifactIterator = allArtifacts.iterator(); artifactIterator
 						.hasNext();) {
 					final Artifact artifact = (Artifact) artifactIterator
 							.next();
-					final String projectId = projectArtifact.getArtifactId();
-					final String projectGroupId = projectArtifact.getGroupId();
+					final String projectId = projectInfo.artifactId;
+					final String projectGroupId = projectInfo.artifactGroupId;
 					final String artifactId = artifact.getArtifactId();
 					final String groupId = artifact.getGroupId();
 					if (artifactId.equals(projectId)
@@ -175,6 +615,16 @@ public class ClasspathWriter extends EclipseWriter {
 				}
 			}
 		}
+		if (!reusedModuleIds.isEmpty()) {
+			for (final Iterator iterator = allArtifacts.iterator(); iterator
+					.hasNext();) {
+				final Artifact artifact = (Artifact) iterator.next();
+				if (reusedModuleIds.contains(artifact.getGroupId() + ':'
+						+ artifact.getArtifactId())) {
+					iterator.remove();
+				}
+			}
+		}
 
 		// - now we resolve transitively, if we have the flag on
 		if (resolveTransitiveDependencies) {
@@ -187,86 +637,192 @@ public class ClasspathWriter extends EclipseWriter {
 			filter.add(new ScopeArtifactFilter(Artifact.SCOPE_COMPILE));
 			filter.add(new ScopeArtifactFilter(Artifact.SCOPE_PROVIDED));
 			filter.add(new ScopeArtifactFilter(Artifact.SCOPE_TEST));
-			final ArtifactResolutionResult result = artifactResolver
-					.resolveTransitively(allArtifacts, rootProjectArtifact,
-							localRepository, remoteRepositories,
-							artifactMetadataSource, filter);
+			final String transitiveKey = this.getTransitiveKey(projectInfos,
+					rootProjectArtifact, remoteRepositories);
+			Set transitiveArtifacts = this.resolutionState
+					.getTransitiveArtifacts(this.project.getId(),
+							transitiveKey, localRepository);
+			if (transitiveArtifacts == null
+					&& this.sharedResolutionCache != null) {
+				transitiveArtifacts = this.sharedResolutionCache.get(
+						this.project.getId(), transitiveKey,
+						this.resolutionState, localRepository);
+				if (transitiveArtifacts != null) {
+					logger.info("Reusing the transitive resolution shared by another checkout");
+				}
+			} else if (transitiveArtifacts != null) {
+				logger.info("Dependencies unchanged, reusing the previous transitive resolution");
+			}
+			if (transitiveArtifacts == null) {
+				ArtifactMetadataSource metadataSource = artifactMetadataSource;
+				if (this.prefetchingMetadataSource != null) {
+					this.prefetchingMetadataSource.prefetch(allArtifacts,
+							localRepository, remoteRepositories);
+					metadataSource = this.prefetchingMetadataSource;
+				}
+				try {
+					final ArtifactResolutionResult result = artifactResolver
+							.resolveTransitively(allArtifacts,
+									rootProjectArtifact, localRepository,
+									remoteRepositories, metadataSource, filter);
+					transitiveArtifacts = result.getArtifacts();
+				} catch (final AbstractArtifactResolutionException exception) {
+					if (!this.failSoft) {
+						throw exception;
+					}
+					// - fall back to the direct dependencies (not stored, so
+					// that it's attempted again the next time)
+					logger.warn("Could not resolve the dependencies transitively, "
+							+ "keeping the direct ones only: "
+							+ exception.getMessage());
+					this.missingArtifacts.add(exception.getGroupId() + ':'
+							+ exception.getArtifactId() + ':'
+							+ exception.getType() + ':'
+							+ exception.getVersion());
+				}
+				if (transitiveArtifacts == null) {
+					transitiveArtifacts = new LinkedHashSet(allArtifacts);
+				} else {
+					this.resolutionState.setTransitiveArtifacts(this.project
+							.getId(), transitiveKey, transitiveArtifacts,
+							localRepository);
+					if (this.checkpoint != null) {
+						this.checkpoint.addTransitive(this.project.getId(),
+								transitiveKey, transitiveArtifacts,
+								this.resolutionState, localRepository);
+					}
+					// - not shared when artifacts left out changed the result
+					if (this.sharedResolutionCache != null
+							&& this.missingArtifacts.isEmpty()) {
+						this.sharedResolutionCache.put(transitiveKey,
+								transitiveArtifacts, this.resolutionState,
+								localRepository);
+					}
+				}
+			}
 
 			allArtifacts.clear();
-			allArtifacts.addAll(result.getArtifacts());
+			allArtifacts.addAll(transitiveArtifacts);
 		}
 
-		// remove excluded ones
-		for (Iterator i = allArtifacts.iterator(); i.hasNext();) {
-			Artifact artifact = (Artifact) i.next();
-
-			if (classpathExcludes != null) {
-				if (classpathExcludes.contains(artifact.getGroupId())) {
-					logger.info("Excluding " + artifact
-							+ " from .classpath, groupId is excluded");
-					i.remove();
-				} else if (classpathExcludes.contains(artifact.getGroupId()
-						+ ":" + artifact.getArtifactId())) {
-					logger
-							.info("Excluding "
-									+ artifact
-									+ " from .classpath, groupId:artifactId is excluded");
-					i.remove();
-				} else if (classpathExcludes.contains(artifact.getGroupId()
-						+ ":" + artifact.getArtifactId() + ":"
-						+ artifact.getVersion())) {
-					logger
-							.info("Excluding "
-									+ artifact
-									+ " from .classpath, groupId:artifactId:version is excluded");
-					i.remove();
+		// - stream the artifacts through the exclusions and the type filter,
+		// resolving the ones not resolved yet, into the path mapping (in the
+		// order they're resolved in)
+		final ClasspathExcludes excludes = new ClasspathExcludes(
+				classpathExcludes);
+		final ClasspathVariables variables = this.newClasspathVariables(
+				repositoryVariableName, localRepository);
+		final ArtifactTable table = new ArtifactTable(allArtifacts.size());
+		final ResolutionPipeline resolutions = new ResolutionPipeline(
+				this.resolutionThreads);
+		try {
+			for (final Iterator iterator = allArtifacts.iterator(); iterator
+					.hasNext();) {
+				final Artifact artifact = (Artifact) iterator.next();
+				final String exclude = excludes.match(artifact);
+				if (exclude != null) {
+					logger.info("Excluding " + artifact + " from .classpath, "
+							+ exclude + " is excluded");
+					continue;
+				}
+				if (!classpathArtifactTypes.contains(artifact.getType())) {
+					continue;
+				}
+				final int row = table.add(artifact, owners.getOwners(artifact));
+				if (artifact.getFile() == null) {
+					resolutions.submit(row, artifact, this.newResolution(
+							artifact, artifactResolver, project
+									.getRemoteArtifactRepositories(),
+							localRepository));
+				} else {
+					resolutions.add(row, artifact);
+				}
+			}
+			while (resolutions.hasNext()) {
+				final ResolutionPipeline.Resolution resolution = resolutions
+						.next();
+				final File artifactFile = resolution.artifact.getFile();
+				if (artifactFile != null) {
+					table.setPath(resolution.row, variables
+							.relativize(PathNormalizer
+									.normalizePath(artifactFile.toString())),
+							artifactFile);
 				}
 			}
+		} finally {
+			resolutions.shutdown();
 		}
 
-		final List allArtifactPaths = new ArrayList(allArtifacts);
-		for (final ListIterator iterator = allArtifactPaths.listIterator(); iterator
-				.hasNext();) {
-			final Artifact artifact = (Artifact) iterator.next();
-			if (classpathArtifactTypes.contains(artifact.getType())) {
-				File artifactFile = artifact.getFile();
-				if (artifactFile == null) {
-					artifactResolver.resolve(artifact, project
-							.getRemoteArtifactRepositories(), localRepository);
-					artifactFile = artifact.getFile();
+		// - the state of the modules generated now (in the order of the
+		// artifacts), then add what the reused modules contributed (unless
+		// already there in another version)
+		this.state = new ClasspathState();
+		final int artifactRows = table.size();
+		final Set<String> conflictIds = new HashSet<String>();
+		for (int row = 0; row < artifactRows; row++) {
+			final String path = table.getPath(row);
+			if (path != null) {
+				final String conflictId = table.getConflictId(row);
+				conflictIds.add(conflictId);
+				for (final String owner : table.getOwners(row)) {
+					modules.get(owner).getEntries().put(conflictId, path);
 				}
-				if (artifactFile != null) {
-					final String path = StringUtils.replace(PathNormalizer
-							.normalizePath(artifactFile.toString()),
-							PathNormalizer.normalizePath(localRepository
-									.getBasedir()), repositoryVariableName);
-					iterator.set(path);
-				} else {
-					iterator.remove();
+			}
+		}
+		for (final ClasspathState.Module module : modules.values()) {
+			this.state.addModule(module);
+		}
+		for (final ClasspathState.Module module : reusedModules) {
+			this.state.addModule(module);
+			for (final Map.Entry<String, String> entry : module.getEntries()
+					.entrySet()) {
+				final String path = entry.getValue();
+				if (conflictIds.add(entry.getKey())) {
+					table.add(path, variables.toFile(path));
 				}
-			} else {
-				iterator.remove();
 			}
 		}
 
 		// - sort the paths
-		Collections.sort(allArtifactPaths);
+		int[] rows = table.sortByPath();
 
-		for (final Iterator iterator = allArtifactPaths.iterator(); iterator
-				.hasNext();) {
-			String path = (String) iterator.next();
-			if (path.startsWith(repositoryVariableName)) {
-				this.writeClasspathEntry(writer, "var", path);
-			} else {
-				if (path.startsWith(rootDirectory)) {
-					path = StringUtils.replace(path, rootDirectory + '/', "");
+		this.classpathFiles.clear();
+		for (int index = 0; index < rows.length; index++) {
+			this.classpathFiles.add(table.getFile(rows[index]));
+		}
+
+		if (this.unusedDependencyAnalyzer != null) {
+			final List<String> outputDirectories = new ArrayList<String>();
+			for (final ProjectInfo projectInfo : projectInfos) {
+				outputDirectories.addAll(projectInfo.outputDirectories);
+			}
+			final Set<File> unused = this.unusedDependencyAnalyzer
+					.findUnused(outputDirectories, this.classpathFiles);
+			int kept = 0;
+			for (int index = 0; index < rows.length; index++) {
+				final File file = table.getFile(rows[index]);
+				if (unused.contains(file)) {
+					if (this.removeUnusedDependencies) {
+						logger.info("Removing unused " + file + " from .classpath");
+						this.classpathFiles.remove(file);
+						continue;
+					}
+					logger.warn("Unused " + file);
 				}
-				this.writeClasspathEntry(writer, "lib", path);
+				rows[kept++] = rows[index];
+			}
+			if (kept < rows.length) {
+				final int[] keptRows = new int[kept];
+				System.arraycopy(rows, 0, keptRows, 0, kept);
+				rows = keptRows;
 			}
 		}
 
-		this.writeClasspathEntry(writer, "con",
-				"org.eclipse.jdt.launching.JRE_CONTAINER");
+		for (int index = 0; index < rows.length; index++) {
+			final String path = table.getPath(rows[index]);
+			model.addEntry(new ClasspathModel.Entry(path, variables
+					.isRelative(path), table.getFile(rows[index])));
+		}
 
 		String outputPath = StringUtils.replace(PathNormalizer
 				.normalizePath(this.project.getBuild().getOutputDirectory()),
@@ -274,15 +830,326 @@ public class ClasspathWriter extends EclipseWriter {
 		if (outputPath.startsWith("/")) {
 			outputPath = outputPath.substring(1, outputPath.length());
 		}
-		this.writeClasspathEntry(writer, "output", outputPath);
+		model.setOutputPath(outputPath);
+		model.setMerge(merge);
+		this.model = model;
+
+		// - the model is resolved once, for all the writers
+		OutputWriters.write(this.outputWriters, model, logger);
+		if (!this.missingArtifacts.isEmpty()) {
+			final StringBuffer message = new StringBuffer(
+					"The .classpath was written without "
+							+ this.missingArtifacts.size()
+							+ " artifacts that could not be resolved:");
+			for (final String id : this.getMissingArtifacts()) {
+				message.append("\n  ").append(id);
+			}
+			logger.warn(message.toString());
+		}
+	}
+
+	/**
+	 * Takes what's needed of the given <code>project</code> to write the
+	 * .classpath.
+	 * 
+	 * @param project
+	 *            the project.
+	 * @return the project info.
+	 */
+	private ProjectInfo createProjectInfo(final MavenProject project,
+			final String rootDirectory,
+			final boolean includeResourcesDirectory,
+			final ArtifactFactory artifactFactory) throws Exception {
+		final ProjectInfo projectInfo = new ProjectInfo();
+		projectInfo.id = artifactFactory.createArtifact(project.getGroupId(),
+				project.getArtifactId(), project.getVersion(), null,
+				project.getPackaging()).getId();
+		projectInfo.groupId = project.getGroupId();
+		final Artifact projectArtifact = project.getArtifact();
+		if (projectArtifact != null) {
+			projectInfo.artifactGroupId = projectArtifact.getGroupId();
+			projectInfo.artifactId = projectArtifact.getArtifactId();
+		}
+		projectInfo.module = this.createModule(project, collectSourceRoots(
+				project, rootDirectory, includeResourcesDirectory));
+		projectInfo.artifacts = project.createArtifacts(artifactFactory, null,
+				null);
+		projectInfo.remoteRepositories = project
+				.getRemoteArtifactRepositories();
+		projectInfo.dependencyKey = getDependencyKey(project);
+		final Build build = project.getBuild();
+		if (build != null) {
+			projectInfo.outputDirectories.add(build.getOutputDirectory());
+			projectInfo.outputDirectories.add(build.getTestOutputDirectory());
+		}
+		return projectInfo;
+	}
+
+	/**
+	 * What the .classpath needs of a project, so that the project itself
+	 * isn't held while it's written.
+	 */
+	private static class ProjectInfo {
+
+		/**
+		 * The id of the artifact built from the project's coordinates.
+		 */
+		String id;
+
+		String groupId;
+
+		/**
+		 * The coordinates of the project's own artifact, null if it has none.
+		 */
+		String artifactGroupId;
+
+		String artifactId;
+
+		ClasspathState.Module module;
+
+		/**
+		 * The direct dependencies, null once gone through.
+		 */
+		Set artifacts;
+
+		List remoteRepositories;
+
+		/**
+		 * The part of the transitive resolution key of the project.
+		 */
+		String dependencyKey;
+
+		final List<String> outputDirectories = new ArrayList<String>();
+	}
+
+	/**
+	 * Creates the state module of the given <code>project</code>.
+	 * 
+	 * @param project
+	 *            the project.
+	 * @param sourcePaths
+	 *            the source paths of the project.
+	 * @return the module, without any entries yet.
+	 */
+	private ClasspathState.Module createModule(final MavenProject project,
+			final Set<String> sourcePaths) {
+		final File pom = project.getFile() != null ? project.getFile()
+				: new File(project.getBasedir(), "pom.xml");
+		final ClasspathState.Module module = new ClasspathState.Module(
+				ClasspathState.getModuleKey(pom, this.project.getBasedir()),
+				project.getGroupId(), project.getArtifactId());
+		module.getSourcePaths().addAll(sourcePaths);
+		for (final Iterator iterator = project.getDependencies().iterator(); iterator
+				.hasNext();) {
+			final Dependency dependency = (Dependency) iterator.next();
+			module.getDependencies().add(
+					dependency.getGroupId() + ':' + dependency.getArtifactId());
+		}
+		return module;
+	}
+
+	/**
+	 * Creates the classpath variables, the repository one first so that it
+	 * wins over any other variable with the same root.
+	 */
+	private ClasspathVariables newClasspathVariables(
+			final String repositoryVariableName,
+			final ArtifactRepository localRepository) {
+		final Map<String, String> variables = new LinkedHashMap<String, String>();
+		variables.put(repositoryVariableName, localRepository.getBasedir());
+		variables.putAll(this.classpathVariables);
+		return new ClasspathVariables(variables);
+	}
+
+	/**
+	 * Resolves the given <code>artifact</code>, unless it was already resolved
+	 * before or (with the missing artifact cache) it's known to be missing.
+	 * 
+	 * @param artifact
+	 *            the artifact to resolve.
+	 * @param artifactResolver
+	 *            the artifact resolver.
+	 * @param remoteRepositories
+	 *            the remote repositories to resolve from.
+	 * @param localRepository
+	 *            the local repository instance.
+	 * @return true if the artifact was resolved, false if it's missing.
+	 * @throws Exception
+	 */
+	private boolean resolve(final Artifact artifact,
+			final ArtifactResolver artifactResolver,
+			final List remoteRepositories,
+			final ArtifactRepository localRepository) throws Exception {
+		final FlightRecorderEvent event = FlightRecorderEvent
+				.artifactResolution();
+		String outcome = "failed";
+		List repositories = null;
+		try {
+			if (this.resolutionState.restore(artifact, localRepository)) {
+				outcome = "restored";
+				return true;
+			}
+			if (this.localRepositoryIndex != null
+					&& this.localRepositoryIndex.resolve(artifact,
+							localRepository)) {
+				this.resolutionState.store(artifact, localRepository);
+				outcome = "indexed";
+				return true;
+			}
+			if (this.missingArtifactCache == null) {
+				repositories = remoteRepositories;
+				this.download(artifact, artifactResolver, remoteRepositories,
+						localRepository);
+			} else {
+				repositories = this.missingArtifactCache.getRepositories(
+						artifact, remoteRepositories);
+				// - still resolved when missing everywhere if it was since installed
+				if (repositories.isEmpty()
+						&& !new File(localRepository.getBasedir(),
+								localRepository.pathOf(artifact)).exists()) {
+					logger.warn("Leaving out " + artifact
+							+ ", it was recently found missing in "
+							+ remoteRepositories.size() + " repositories");
+					this.missingArtifacts.add(artifact.getId());
+					outcome = "missing-cached";
+					return false;
+				}
+				try {
+					this.download(artifact, artifactResolver, repositories,
+							localRepository);
+				} catch (final ArtifactNotFoundException exception) {
+					this.missingArtifactCache.addMissing(artifact,
+							repositories);
+					logger.warn("Leaving out " + artifact
+							+ ", it was not found in " + repositories.size()
+							+ " repositories");
+					this.missingArtifacts.add(artifact.getId());
+					outcome = "missing";
+					return false;
+				}
+				if (repositories.size() < remoteRepositories.size()) {
+					this.missingArtifactCache.removeMissing(artifact);
+				}
+			}
+			this.resolutionState.store(artifact, localRepository);
+			if (this.checkpoint != null) {
+				this.checkpoint.addResolved(artifact, this.resolutionState
+						.getStamp(artifact, localRepository));
+			}
+			if (this.localRepositoryIndex != null) {
+				this.localRepositoryIndex.add(artifact);
+			}
+			outcome = "resolved";
+			return true;
+		} finally {
+			event.commitArtifactResolution(artifact, repositories, outcome);
+		}
+	}
 
-		if (StringUtils.isNotBlank(merge)) {
-			writer.writeMarkup(merge);
+	/**
+	 * Creates the resolution of the given <code>artifact</code> for the
+	 * resolution pipeline.
+	 */
+	private Callable<Boolean> newResolution(final Artifact artifact,
+			final ArtifactResolver artifactResolver,
+			final List remoteRepositories,
+			final ArtifactRepository localRepository) {
+		return new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				try {
+					return Boolean.valueOf(ClasspathWriter.this.resolve(
+							artifact, artifactResolver, remoteRepositories,
+							localRepository));
+				} catch (final AbstractArtifactResolutionException exception) {
+					if (!ClasspathWriter.this.failSoft) {
+						throw exception;
+					}
+					logger.warn("Leaving out " + artifact
+							+ ", it could not be resolved: "
+							+ exception.getMessage());
+					ClasspathWriter.this.missingArtifacts.add(artifact
+							.getId());
+					return Boolean.FALSE;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Resolves the given <code>artifact</code> with the hedged resolver if
+	 * there's one, or else with the artifact resolver, never asking a remote
+	 * repository another resolution thread is asking: a release only holds
+	 * the lock of the repository it is asking at the time.
+	 */
+	private void download(final Artifact artifact,
+			final ArtifactResolver artifactResolver,
+			final List remoteRepositories,
+			final ArtifactRepository localRepository) throws Exception {
+		if (this.hedgedArtifactResolver != null) {
+			this.hedgedArtifactResolver.resolve(artifact, remoteRepositories,
+					localRepository);
+		} else {
+			RepositoryLocks.instance().resolve(artifactResolver, artifact,
+					remoteRepositories, localRepository);
 		}
-		writer.endElement();
+	}
 
-		logger.info("Classpath file written --> '" + classpathFile + "'");
-		IOUtil.close(fileWriter);
+	/**
+	 * Builds the key identifying a transitive resolution: the context, the
+	 * root artifact, the remote repositories and the dependencies (with their
+	 * exclusions) of every project.
+	 * 
+	 * @param projectInfos
+	 *            the projects whose dependencies are resolved.
+	 * @param rootProjectArtifact
+	 *            the artifact of the root project.
+	 * @param remoteRepositories
+	 *            the remote repositories to resolve from.
+	 * @return the key.
+	 */
+	private String getTransitiveKey(final List<ProjectInfo> projectInfos,
+			final Artifact rootProjectArtifact, final List remoteRepositories) {
+		final StringBuffer key = new StringBuffer(this.context).append('|')
+				.append(rootProjectArtifact.getId());
+		for (final Iterator iterator = remoteRepositories.iterator(); iterator
+				.hasNext();) {
+			key.append('|').append(
+					((ArtifactRepository) iterator.next()).getUrl());
+		}
+		key.append(getDependencyKey(this.project));
+		for (final ProjectInfo projectInfo : projectInfos) {
+			key.append(projectInfo.dependencyKey);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Gets the part of the transitive resolution key of the given
+	 * <code>project</code>: its id and its dependencies.
+	 */
+	private static String getDependencyKey(final MavenProject project) {
+		final StringBuffer key = new StringBuffer();
+		key.append('|').append(project.getId());
+		for (final Iterator dependencyIterator = project.getDependencies()
+				.iterator(); dependencyIterator.hasNext();) {
+			final Dependency dependency = (Dependency) dependencyIterator
+					.next();
+			key.append(';').append(dependency.getGroupId()).append(':')
+					.append(dependency.getArtifactId()).append(':')
+					.append(dependency.getType()).append(':')
+					.append(dependency.getClassifier()).append(':')
+					.append(dependency.getVersion()).append(':')
+					.append(dependency.getScope()).append(':')
+					.append(dependency.isOptional());
+			for (final Iterator exclusionIterator = dependency
+					.getExclusions().iterator(); exclusionIterator.hasNext();) {
+				final Exclusion exclusion = (Exclusion) exclusionIterator
+						.next();
+				key.append('!').append(exclusion.getGroupId()).append(':')
+						.append(exclusion.getArtifactId());
+			}
+		}
+		return key.toString();
 	}
 
 	/**
@@ -292,19 +1159,19 @@ public class ClasspathWriter extends EclipseWriter {
 	 *            the project for which to write the source roots.
 	 * @param rootDirectory
 	 *            the root project's base directory
-	 * @param writer
-	 *            the XMLWriter used to write the source roots.
 	 * @param includeResourcesDirectory
 	 */
 	private Set<String> collectSourceRoots(final MavenProject project,
-			final String rootDirectory, final XMLWriter writer,
-			boolean includeResourcesDirectory) {
+			final String rootDirectory, boolean includeResourcesDirectory) {
 		
 		Set<String> sourcePaths = new TreeSet<String>();
 
 		// collect source roots
 		List<String> sourceRoots = new ArrayList<String>();
-		sourceRoots.addAll(project.getCompileSourceRoots());
+		final List<String> compileSourceRoots = this.compileSourceRoots
+				.get(project);
+		sourceRoots.addAll(compileSourceRoots != null ? compileSourceRoots
+				: project.getCompileSourceRoots());
 		sourceRoots.addAll(project.getTestCompileSourceRoots());
 		for (String s : sourceRoots) {
 			final String sourceRoot = PathNormalizer
@@ -366,23 +1233,4 @@ public class ClasspathWriter extends EclipseWriter {
 		}
 		return sourcePaths;
 	}
-
-	/**
-	 * Writes a classpathentry with the given <code>kind</code> and
-	 * <code>path</code> values.
-	 * 
-	 * @param writer
-	 *            the XML writer with which to write.
-	 * @param kind
-	 *            the kind of the classpath entry.
-	 * @param path
-	 *            the path of the classpath entry.
-	 */
-	private void writeClasspathEntry(final XMLWriter writer, final String kind,
-			final String path) {
-		writer.startElement("classpathentry");
-		writer.addAttribute("kind", kind);
-		writer.addAttribute("path", path);
-		writer.endElement();
-	}
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Records which modules declared each direct dependency, so that every
+ * .classpath entry can be attributed to the modules it is there for. The
+ * dependencies are keyed by <code>groupId:artifactId</code>, as the version
+ * reached after resolution (ranges, managed versions) may not be the
+ * declared one, and an artifact whose origin is unknown is attributed to
+ * every module that declared a dependency rather than to none of them.
+ */
+class ModuleOwners
+{
+    private final Map<String, Set<String>> owners = new HashMap<String, Set<String>>();
+
+    private final Set<String> moduleKeys = new LinkedHashSet<String>();
+
+    /**
+     * Records that the direct dependency <code>artifact</code> was declared by
+     * the module with the given key.
+     */
+    void addDeclared(final Artifact artifact, final String moduleKey)
+    {
+        final String key = getKey(artifact.getGroupId(), artifact.getArtifactId());
+        Set<String> moduleKeys = this.owners.get(key);
+        if (moduleKeys == null)
+        {
+            moduleKeys = new LinkedHashSet<String>();
+            this.owners.put(key, moduleKeys);
+        }
+        moduleKeys.add(moduleKey);
+        this.moduleKeys.add(moduleKey);
+    }
+
+    /**
+     * Gets the keys of the modules the given (possibly transitive)
+     * <code>artifact</code> is on the classpath for: the modules that declared
+     * the direct dependency it was reached through, or every module that
+     * declared a dependency when that can't be told.
+     */
+    Set<String> getOwners(final Artifact artifact)
+    {
+        Set<String> owners = null;
+        final List trail = artifact.getDependencyTrail();
+        if (trail != null && trail.size() > 1)
+        {
+            owners = this.owners.get(getKey(String.valueOf(trail.get(1))));
+        }
+        if (owners == null)
+        {
+            owners = this.owners.get(getKey(artifact.getGroupId(), artifact.getArtifactId()));
+        }
+        return owners != null ? owners : Collections.unmodifiableSet(this.moduleKeys);
+    }
+
+    /**
+     * Gets the <code>groupId:artifactId</code> of an artifact id as found in
+     * a dependency trail (<code>groupId:artifactId:type[:classifier]:version</code>).
+     */
+    private static String getKey(final String id)
+    {
+        final int groupEnd = id.indexOf(':');
+        final int artifactEnd = groupEnd < 0 ? -1 : id.indexOf(':', groupEnd + 1);
+        return artifactEnd < 0 ? id : id.substring(0, artifactEnd);
+    }
+
+    private static String getKey(final String groupId, final String artifactId)
+    {
+        return groupId + ':' + artifactId;
+    }
+}
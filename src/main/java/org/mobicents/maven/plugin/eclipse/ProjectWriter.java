@@ -30,6 +30,7 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
 import org.codehaus.plexus.util.xml.XMLWriter;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
 
 
 /**
@@ -54,6 +55,7 @@ public class ProjectWriter
         throws Exception
     {
         final File projectFile = this.getFile(".project");
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
         final FileWriter fileWriter = new FileWriter(projectFile);
         final XMLWriter writer = new PrettyPrintXMLWriter(fileWriter,"UTF-8",null);
         writer.startElement("projectDescription");
@@ -80,6 +82,7 @@ public class ProjectWriter
         writer.endElement();
         writer.endElement();
         IOUtil.close(fileWriter);
+        event.commitFileWrite(projectFile);
         this.logger.info("Project file written --> '" + projectFile + "'");
     }
 }
\ No newline at end of file
@@ -0,0 +1,369 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Records the resolution results (the resolved artifacts and the transitive
+ * resolution of every project) to disk as they complete, so that a run that
+ * failed half way (i.e. on an unreachable artifact) is resumed by the next
+ * one from where it failed rather than from scratch. The records are
+ * appended (and flushed) one at a time, a record torn by the failure is
+ * dropped when loading. The checkpoint is deleted once a run completes.
+ */
+public class ResolutionCheckpoint
+{
+    private static final int MAGIC = 0x4D454350;
+
+    private static final int VERSION = 1;
+
+    private static final byte RESOLVED = 1;
+
+    private static final byte TRANSITIVE = 2;
+
+    private final File file;
+
+    private final Log logger;
+
+    /**
+     * The stream records are appended to, null until the first one.
+     */
+    private DataOutputStream output;
+
+    /**
+     * @param file the file of the checkpoint.
+     * @param logger the logger.
+     */
+    public ResolutionCheckpoint(final File file, final Log logger)
+    {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * Loads the checkpoint left by a previous run (if any) into the given
+     * <code>state</code>.
+     *
+     * @param state the state to load into.
+     * @param artifactFactory the factory the artifacts are created with.
+     * @return the number of results loaded.
+     */
+    public int load(
+        final ResolutionState state,
+        final ArtifactFactory artifactFactory)
+    {
+        if (!this.file.isFile())
+        {
+            return 0;
+        }
+        int count = 0;
+        long length = 0;
+        try
+        {
+            final byte[] content = readFile(this.file);
+            final ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+            final DataInputStream input = new DataInputStream(bytes);
+            try
+            {
+                if (input.readInt() == MAGIC && input.readInt() == VERSION)
+                {
+                    length = content.length - bytes.available();
+                    while (bytes.available() > 0)
+                    {
+                        final byte type = input.readByte();
+                        if (type == RESOLVED)
+                        {
+                            state.put(input.readUTF(), new File(input.readUTF()), readString(input));
+                        }
+                        else if (type == TRANSITIVE)
+                        {
+                            final String projectId = input.readUTF();
+                            final String key = input.readUTF();
+                            final int artifactCount = input.readInt();
+                            final Set artifacts = new LinkedHashSet();
+                            final Map<String, String> stamps = new HashMap<String, String>();
+                            for (int ctr = 0; ctr < artifactCount; ctr++)
+                            {
+                                final Artifact artifact = readArtifact(input, artifactFactory);
+                                final String stamp = readString(input);
+                                if (stamp != null)
+                                {
+                                    stamps.put(artifact.getId(), stamp);
+                                }
+                                artifacts.add(artifact);
+                            }
+                            state.putTransitiveArtifacts(projectId, key, artifacts, stamps);
+                        }
+                        else
+                        {
+                            throw new IOException("Unknown record " + type);
+                        }
+                        count++;
+                        length = content.length - bytes.available();
+                    }
+                }
+            }
+            catch (IOException exception)
+            {
+                this.logger.debug("Dropping the end of " + this.file + " from byte " + length);
+            }
+            if (length < content.length)
+            {
+                truncate(this.file, length);
+            }
+        }
+        catch (Exception exception)
+        {
+            this.logger.warn("Could not read the resolution checkpoint " + this.file + ": " + exception);
+        }
+        return count;
+    }
+
+    /**
+     * Records a resolved artifact.
+     *
+     * @param artifact the artifact.
+     * @param stamp the stamp of the snapshot, null for a release.
+     */
+    public synchronized void addResolved(final Artifact artifact, final String stamp)
+    {
+        if (artifact.getFile() == null)
+        {
+            return;
+        }
+        try
+        {
+            final DataOutputStream output = this.getOutput();
+            output.writeByte(RESOLVED);
+            output.writeUTF(artifact.getId());
+            output.writeUTF(artifact.getFile().getPath());
+            writeString(output, stamp);
+            output.flush();
+        }
+        catch (IOException exception)
+        {
+            this.fail(exception);
+        }
+    }
+
+    /**
+     * Records the transitive resolution of a project.
+     *
+     * @param projectId the id of the project resolved for.
+     * @param key identifies everything the resolution depends on.
+     * @param artifacts the resolved artifacts.
+     * @param state the state giving the stamps of the snapshots.
+     * @param localRepository the local repository.
+     */
+    public synchronized void addTransitive(
+        final String projectId,
+        final String key,
+        final Set artifacts,
+        final ResolutionState state,
+        final ArtifactRepository localRepository)
+    {
+        try
+        {
+            final DataOutputStream output = this.getOutput();
+            output.writeByte(TRANSITIVE);
+            output.writeUTF(projectId);
+            output.writeUTF(key);
+            output.writeInt(artifacts.size());
+            for (final Iterator iterator = artifacts.iterator(); iterator.hasNext();)
+            {
+                final Artifact artifact = (Artifact)iterator.next();
+                writeArtifact(output, artifact);
+                writeString(output, state.getStamp(artifact, localRepository));
+            }
+            output.flush();
+        }
+        catch (IOException exception)
+        {
+            this.fail(exception);
+        }
+    }
+
+    /**
+     * Closes the checkpoint and deletes it, the run having completed.
+     */
+    public synchronized void delete()
+    {
+        this.close();
+        this.file.delete();
+    }
+
+    /**
+     * Closes the checkpoint, keeping it for the next run.
+     */
+    public synchronized void close()
+    {
+        IOUtil.close(this.output);
+        this.output = null;
+    }
+
+    private DataOutputStream getOutput()
+        throws IOException
+    {
+        if (this.output == null)
+        {
+            this.file.getAbsoluteFile().getParentFile().mkdirs();
+            final boolean exists = this.file.isFile() && this.file.length() > 0;
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, exists)));
+            if (!exists)
+            {
+                this.output.writeInt(MAGIC);
+                this.output.writeInt(VERSION);
+            }
+        }
+        return this.output;
+    }
+
+    /**
+     * Stops recording after a write failed, the run itself goes on.
+     */
+    private void fail(final IOException exception)
+    {
+        this.logger.warn("Could not write the resolution checkpoint " + this.file + ": " + exception);
+        this.delete();
+    }
+
+    static void writeArtifact(final DataOutputStream output, final Artifact artifact)
+        throws IOException
+    {
+        output.writeUTF(artifact.getGroupId());
+        output.writeUTF(artifact.getArtifactId());
+        output.writeUTF(artifact.getVersion());
+        output.writeUTF(artifact.getType());
+        writeString(output, artifact.getClassifier());
+        writeString(output, artifact.getScope());
+        output.writeBoolean(artifact.isOptional());
+        writeString(output, artifact.getFile() != null ? artifact.getFile().getPath() : null);
+        final List trail = artifact.getDependencyTrail();
+        output.writeInt(trail != null ? trail.size() : -1);
+        if (trail != null)
+        {
+            for (final Iterator iterator = trail.iterator(); iterator.hasNext();)
+            {
+                output.writeUTF(String.valueOf(iterator.next()));
+            }
+        }
+    }
+
+    static Artifact readArtifact(final DataInputStream input, final ArtifactFactory artifactFactory)
+        throws IOException
+    {
+        final String groupId = input.readUTF();
+        final String artifactId = input.readUTF();
+        final String version = input.readUTF();
+        final String type = input.readUTF();
+        final String classifier = readString(input);
+        final String scope = readString(input);
+        final boolean optional = input.readBoolean();
+        final Artifact artifact = artifactFactory.createDependencyArtifact(
+            groupId, artifactId, VersionRange.createFromVersion(version), type, classifier, scope, optional);
+        final String file = readString(input);
+        if (file != null)
+        {
+            artifact.setFile(new File(file));
+            artifact.setResolved(true);
+        }
+        final int trailSize = input.readInt();
+        if (trailSize >= 0)
+        {
+            final List<String> trail = new ArrayList<String>(trailSize);
+            for (int ctr = 0; ctr < trailSize; ctr++)
+            {
+                trail.add(input.readUTF());
+            }
+            artifact.setDependencyTrail(trail);
+        }
+        return artifact;
+    }
+
+    static void writeString(final DataOutputStream output, final String string)
+        throws IOException
+    {
+        output.writeBoolean(string != null);
+        if (string != null)
+        {
+            output.writeUTF(string);
+        }
+    }
+
+    static String readString(final DataInputStream input)
+        throws IOException
+    {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    static byte[] readFile(final File file)
+        throws IOException
+    {
+        final FileInputStream input = new FileInputStream(file);
+        try
+        {
+            return IOUtil.toByteArray(input);
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    private static void truncate(final File file, final long length)
+        throws IOException
+    {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try
+        {
+            randomAccessFile.setLength(length);
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.maven.artifact.Artifact;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+
+/**
+ * Resolves artifacts on a pool of threads while the caller goes on with the
+ * next ones, handing them back as their resolution completes, so that the
+ * stages after resolution work on the artifacts already resolved while the
+ * others are still being downloaded. With a single thread every artifact is
+ * resolved right away when submitted, as done without a pipeline.
+ */
+class ResolutionPipeline
+{
+    private final ExecutorService executor;
+
+    private final CompletionService<Resolution> completion;
+
+    /**
+     * The resolutions done and not taken yet, besides the ones of the executor.
+     */
+    private final LinkedList<Resolution> done = new LinkedList<Resolution>();
+
+    /**
+     * The number of resolutions submitted to the executor and not taken yet.
+     */
+    private int running;
+
+    /**
+     * @param threads the number of threads resolving artifacts.
+     */
+    ResolutionPipeline(final int threads)
+    {
+        this.executor = threads > 1 ? ConcurrentUtils.newPool("resolution", threads) : null;
+        this.completion = this.executor != null ? new ExecutorCompletionService<Resolution>(this.executor) : null;
+    }
+
+    /**
+     * Submits the given <code>resolution</code> of an artifact.
+     *
+     * @param artifact the artifact.
+     * @param resolution resolves the artifact, returning whether it could be.
+     * @throws Exception the failure of the resolution when not pipelined.
+     */
+    void submit(final Artifact artifact, final Callable<Boolean> resolution)
+        throws Exception
+    {
+        this.submit(-1, artifact, resolution);
+    }
+
+    /**
+     * Submits the given <code>resolution</code> of an artifact, handed back
+     * along with the given <code>row</code>.
+     *
+     * @param row identifies the artifact for the caller.
+     * @param artifact the artifact.
+     * @param resolution resolves the artifact, returning whether it could be.
+     * @throws Exception the failure of the resolution when not pipelined.
+     */
+    void submit(final int row, final Artifact artifact, final Callable<Boolean> resolution)
+        throws Exception
+    {
+        final Callable<Resolution> task = new Callable<Resolution>()
+        {
+            public Resolution call()
+                throws Exception
+            {
+                return new Resolution(row, artifact, resolution.call().booleanValue());
+            }
+        };
+        if (this.completion != null)
+        {
+            this.completion.submit(task);
+            this.running++;
+        }
+        else
+        {
+            this.done.add(task.call());
+        }
+    }
+
+    /**
+     * Passes on an artifact that needs no resolution.
+     *
+     * @param row identifies the artifact for the caller.
+     * @param artifact the (already resolved) artifact.
+     */
+    void add(final int row, final Artifact artifact)
+    {
+        this.done.add(new Resolution(row, artifact, true));
+    }
+
+    /**
+     * Whether artifacts submitted are still to be taken.
+     */
+    boolean hasNext()
+    {
+        return !this.done.isEmpty() || this.running > 0;
+    }
+
+    /**
+     * Takes the next artifact whose resolution completed (the ones needing no
+     * resolution first), waiting for one if needed.
+     *
+     * @return the resolution.
+     * @throws Exception the failure of the resolution.
+     */
+    Resolution next()
+        throws Exception
+    {
+        if (!this.done.isEmpty())
+        {
+            return this.done.removeFirst();
+        }
+        this.running--;
+        final Future<Resolution> future = this.completion.take();
+        return ConcurrentUtils.get(future);
+    }
+
+    /**
+     * Stops the threads, abandoning the resolutions not taken.
+     */
+    void shutdown()
+    {
+        if (this.executor != null)
+        {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The outcome of the resolution of an artifact.
+     */
+    static class Resolution
+    {
+        final int row;
+
+        final Artifact artifact;
+
+        final boolean resolved;
+
+        Resolution(final int row, final Artifact artifact, final boolean resolved)
+        {
+            this.row = row;
+            this.artifact = artifact;
+            this.resolved = resolved;
+        }
+    }
+}
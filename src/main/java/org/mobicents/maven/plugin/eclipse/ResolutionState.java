@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.mobicents.maven.plugin.resolver.SnapshotStamps;
+
+/**
+ * Keeps the results of artifact resolution in memory, so that generating
+ * the .classpath again (i.e. when watching the POMs) only resolves what
+ * actually changed. It's shared by all the executions of a reactor (through
+ * the {@link org.mobicents.maven.plugin.utils.ReactorRegistry}), which may
+ * run concurrently.
+ * <p>
+ * Releases never change, so they're kept for good. Snapshots change under the
+ * same version, so what was resolved for them is kept along with the
+ * {@link SnapshotStamps stamp} of their local repository metadata at the
+ * time, and only reused while the stamp is the same.
+ * </p>
+ */
+public class ResolutionState
+{
+    /**
+     * The resolved files, keyed by artifact id.
+     */
+    private final Map<String, Resolved> files = new ConcurrentHashMap<String, Resolved>();
+
+    /**
+     * The last transitive resolution of every project, keyed by project id.
+     */
+    private final Map<String, TransitiveResolution> transitiveResolutions =
+        new ConcurrentHashMap<String, TransitiveResolution>();
+
+    private final SnapshotStamps snapshotStamps = new SnapshotStamps();
+
+    /**
+     * Sets the previously resolved file on the given <code>artifact</code>.
+     *
+     * @param artifact the artifact to resolve.
+     * @param localRepository the local repository.
+     * @return true if the artifact was resolved before (and its file still
+     *         exists, and it's not a snapshot that changed since).
+     */
+    public boolean restore(final Artifact artifact, final ArtifactRepository localRepository)
+    {
+        final Resolved resolved = this.files.get(artifact.getId());
+        if (resolved != null && resolved.file.exists() &&
+            ObjectUtils.equals(resolved.stamp, this.snapshotStamps.getStamp(artifact, localRepository)))
+        {
+            artifact.setFile(resolved.file);
+            artifact.setResolved(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stores the file of the given resolved <code>artifact</code>.
+     *
+     * @param artifact the resolved artifact.
+     * @param localRepository the local repository.
+     */
+    public void store(final Artifact artifact, final ArtifactRepository localRepository)
+    {
+        if (artifact.getFile() != null)
+        {
+            this.files.put(artifact.getId(),
+                new Resolved(artifact.getFile(), this.snapshotStamps.getStamp(artifact, localRepository)));
+        }
+    }
+
+    /**
+     * Gets the artifacts of the last transitive resolution for the given
+     * project, if it was done for the same <code>key</code> and none of the
+     * snapshots resolved changed since.
+     *
+     * @param projectId the id of the project resolved for.
+     * @param key identifies everything the resolution depends on.
+     * @param localRepository the local repository.
+     * @return the resolved artifacts or null if not known.
+     */
+    public Set getTransitiveArtifacts(
+        final String projectId,
+        final String key,
+        final ArtifactRepository localRepository)
+    {
+        final TransitiveResolution resolution = this.transitiveResolutions.get(projectId);
+        if (resolution == null || !key.equals(resolution.key))
+        {
+            return null;
+        }
+        for (final Iterator iterator = resolution.artifacts.iterator(); iterator.hasNext();)
+        {
+            final Artifact artifact = (Artifact)iterator.next();
+            if (artifact.isSnapshot() &&
+                !ObjectUtils.equals(resolution.snapshotStamps.get(artifact.getId()),
+                    this.snapshotStamps.getStamp(artifact, localRepository)))
+            {
+                return null;
+            }
+        }
+        return new LinkedHashSet(resolution.artifacts);
+    }
+
+    /**
+     * Stores the artifacts of a transitive resolution for the given project.
+     *
+     * @param projectId the id of the project resolved for.
+     * @param key identifies everything the resolution depends on.
+     * @param artifacts the resolved artifacts.
+     * @param localRepository the local repository.
+     */
+    public void setTransitiveArtifacts(
+        final String projectId,
+        final String key,
+        final Set artifacts,
+        final ArtifactRepository localRepository)
+    {
+        final Map<String, String> stamps = new HashMap<String, String>();
+        for (final Iterator iterator = artifacts.iterator(); iterator.hasNext();)
+        {
+            final Artifact artifact = (Artifact)iterator.next();
+            if (artifact.isSnapshot())
+            {
+                stamps.put(artifact.getId(), this.snapshotStamps.getStamp(artifact, localRepository));
+            }
+        }
+        this.transitiveResolutions.put(projectId,
+            new TransitiveResolution(key, Collections.unmodifiableSet(new LinkedHashSet(artifacts)), stamps));
+    }
+
+    /**
+     * Puts a file resolved before (i.e. by a previous run), with the stamp of
+     * the snapshot it was resolved for.
+     *
+     * @param id the id of the artifact.
+     * @param file the resolved file.
+     * @param stamp the stamp of the snapshot, null for a release.
+     */
+    public void put(final String id, final File file, final String stamp)
+    {
+        this.files.put(id, new Resolved(file, stamp));
+    }
+
+    /**
+     * Puts the artifacts of a transitive resolution done before (i.e. by a
+     * previous run), with the stamps of the snapshots it resolved.
+     *
+     * @param projectId the id of the project resolved for.
+     * @param key identifies everything the resolution depends on.
+     * @param artifacts the resolved artifacts.
+     * @param snapshotStamps the stamps of the snapshots, keyed by artifact id.
+     */
+    public void putTransitiveArtifacts(
+        final String projectId,
+        final String key,
+        final Set artifacts,
+        final Map<String, String> snapshotStamps)
+    {
+        this.transitiveResolutions.put(projectId,
+            new TransitiveResolution(key, Collections.unmodifiableSet(new LinkedHashSet(artifacts)),
+                new HashMap<String, String>(snapshotStamps)));
+    }
+
+    /**
+     * Gets the stamp of the given <code>artifact</code>.
+     *
+     * @param artifact the artifact.
+     * @param localRepository the local repository.
+     * @return the stamp, null if it's not a snapshot.
+     */
+    public String getStamp(final Artifact artifact, final ArtifactRepository localRepository)
+    {
+        return this.snapshotStamps.getStamp(artifact, localRepository);
+    }
+
+    /**
+     * A resolved file, with the stamp of the snapshot it was resolved for.
+     */
+    private static class Resolved
+    {
+        final File file;
+
+        final String stamp;
+
+        Resolved(final File file, final String stamp)
+        {
+            this.file = file;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * A transitive resolution, the key it was done for and the stamps of the
+     * snapshots it resolved.
+     */
+    private static class TransitiveResolution
+    {
+        final String key;
+
+        final Set artifacts;
+
+        final Map<String, String> snapshotStamps;
+
+        TransitiveResolution(final String key, final Set artifacts, final Map<String, String> snapshotStamps)
+        {
+            this.key = key;
+            this.artifacts = artifacts;
+            this.snapshotStamps = snapshotStamps;
+        }
+    }
+}
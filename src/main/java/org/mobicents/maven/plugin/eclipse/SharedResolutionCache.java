@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+import org.mobicents.maven.plugin.utils.ProcessLock;
+
+/**
+ * Keeps the transitive resolutions in a user level directory (by default
+ * within the local repository), so that every checkout (or worktree) of a
+ * reactor reuses what any other one resolved. The resolutions are content
+ * addressed: each one is stored in a file named after the hash of its key,
+ * which is built from the content of the POMs (the dependencies and
+ * exclusions of every project, and the repositories) and from what they are
+ * built with (the JDK, the OS, the active profiles and the properties), so a
+ * checkout whose POMs declare the same gets the same resolution whatever its
+ * location, but only when built the same way. A
+ * resolution is only reused while its snapshots are unchanged and its files
+ * are still in the local repository.
+ * <p>
+ * Several processes may use the directory at once, files are replaced and
+ * read under a {@link ProcessLock} on the directory.
+ * </p>
+ */
+public class SharedResolutionCache
+{
+    private static final int MAGIC = 0x4D455352;
+
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".bin";
+
+    private final File directory;
+
+    private final ArtifactFactory artifactFactory;
+
+    private final Log logger;
+
+    /**
+     * @param directory the directory of the cache.
+     * @param artifactFactory the factory the artifacts are created with.
+     * @param logger the logger.
+     */
+    public SharedResolutionCache(final File directory, final ArtifactFactory artifactFactory, final Log logger)
+    {
+        this.directory = directory;
+        this.artifactFactory = artifactFactory;
+        this.logger = logger;
+    }
+
+    /**
+     * Gets the transitive resolution with the given <code>key</code>, adding
+     * it to the given <code>state</code> for the given project.
+     *
+     * @param projectId the id of the project resolved for.
+     * @param key identifies everything the resolution depends on.
+     * @param state the resolution state.
+     * @param localRepository the local repository.
+     * @return the resolved artifacts or null if not known (or out of date).
+     */
+    public Set get(
+        final String projectId,
+        final String key,
+        final ResolutionState state,
+        final ArtifactRepository localRepository)
+    {
+        final File file = this.getFile(key);
+        if (!file.isFile())
+        {
+            return null;
+        }
+        try
+        {
+            final byte[] content;
+            final ProcessLock lock = ProcessLock.acquire(this.directory);
+            try
+            {
+                content = ResolutionCheckpoint.readFile(file);
+            }
+            finally
+            {
+                lock.release();
+            }
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(content));
+            // - the key is stored too, as a check
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || !key.equals(input.readUTF()))
+            {
+                return null;
+            }
+            final int count = input.readInt();
+            final Set artifacts = new LinkedHashSet();
+            final Map<String, String> stamps = new HashMap<String, String>();
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                final Artifact artifact = ResolutionCheckpoint.readArtifact(input, this.artifactFactory);
+                final String stamp = ResolutionCheckpoint.readString(input);
+                if (artifact.getFile() != null && !artifact.getFile().exists())
+                {
+                    return null;
+                }
+                if (stamp != null)
+                {
+                    stamps.put(artifact.getId(), stamp);
+                }
+                artifacts.add(artifact);
+            }
+            state.putTransitiveArtifacts(projectId, key, artifacts, stamps);
+            return state.getTransitiveArtifacts(projectId, key, localRepository);
+        }
+        catch (IOException exception)
+        {
+            this.logger.debug("Could not read the shared resolution " + file + ": " + exception);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the transitive resolution with the given <code>key</code>.
+     *
+     * @param key identifies everything the resolution depends on.
+     * @param artifacts the resolved artifacts.
+     * @param state the state giving the stamps of the snapshots.
+     * @param localRepository the local repository.
+     */
+    public void put(
+        final String key,
+        final Set artifacts,
+        final ResolutionState state,
+        final ArtifactRepository localRepository)
+    {
+        final File file = this.getFile(key);
+        try
+        {
+            file.getParentFile().mkdirs();
+            final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+            final File temporaryFile = new File(file.getPath() + '.' + System.nanoTime() + ".tmp");
+            final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(key);
+                output.writeInt(artifacts.size());
+                for (final Iterator iterator = artifacts.iterator(); iterator.hasNext();)
+                {
+                    final Artifact artifact = (Artifact)iterator.next();
+                    ResolutionCheckpoint.writeArtifact(output, artifact);
+                    ResolutionCheckpoint.writeString(output, state.getStamp(artifact, localRepository));
+                }
+            }
+            finally
+            {
+                IOUtil.close(output);
+            }
+            final ProcessLock lock = ProcessLock.acquire(this.directory);
+            try
+            {
+                file.delete();
+                if (!temporaryFile.renameTo(file))
+                {
+                    temporaryFile.delete();
+                    throw new IOException("Could not rename " + temporaryFile + " to " + file);
+                }
+            }
+            finally
+            {
+                lock.release();
+            }
+            event.commitFileWrite(file);
+        }
+        catch (IOException exception)
+        {
+            this.logger.warn("Could not store the shared resolution " + file + ": " + exception);
+        }
+    }
+
+    /**
+     * Gets the file of the resolution with the given <code>key</code>: named
+     * after its hash, within a directory named after the first two digits
+     * (so that no directory holds too many files).
+     */
+    private File getFile(final String key)
+    {
+        final String hash = hash(key);
+        return new File(new File(this.directory, hash.substring(0, 2)), hash + SUFFIX);
+    }
+
+    private static String hash(final String key)
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+            digest.update(key.getBytes("UTF-8"));
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 isn't available");
+        }
+        catch (IOException exception)
+        {
+            throw new IllegalStateException("UTF-8 isn't available");
+        }
+        final byte[] bytes = digest.digest();
+        final StringBuffer hash = new StringBuffer(bytes.length * 2);
+        for (int ctr = 0; ctr < bytes.length; ctr++)
+        {
+            hash.append(Character.forDigit((bytes[ctr] >> 4) & 0xF, 16));
+            hash.append(Character.forDigit(bytes[ctr] & 0xF, 16));
+        }
+        return hash.toString();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.project.MavenProject;
+
+/**
+ * The classpath of the root project, as resolved once for all the
+ * {@link OutputWriter}s: the source directories, the entries (in classpath
+ * order) and the output directory, all paths being normalized (with '/').
+ */
+public class ClasspathModel
+{
+    private final MavenProject project;
+
+    private final String rootDirectory;
+
+    private final List<String> sourcePaths = new ArrayList<String>();
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    private String outputPath;
+
+    private String merge;
+
+    /**
+     * @param project the root project.
+     * @param rootDirectory the (normalized) base directory of the root project.
+     */
+    public ClasspathModel(final MavenProject project, final String rootDirectory)
+    {
+        this.project = project;
+        this.rootDirectory = rootDirectory;
+    }
+
+    /**
+     * Gets the root project.
+     *
+     * @return the project.
+     */
+    public MavenProject getProject()
+    {
+        return this.project;
+    }
+
+    /**
+     * Gets the (normalized) base directory of the root project.
+     *
+     * @return the directory.
+     */
+    public String getRootDirectory()
+    {
+        return this.rootDirectory;
+    }
+
+    /**
+     * Adds a source (or resource) directory.
+     *
+     * @param sourcePath the path of the directory, relative to the root directory.
+     */
+    public void addSourcePath(final String sourcePath)
+    {
+        this.sourcePaths.add(sourcePath);
+    }
+
+    /**
+     * Gets the source (and resource) directories, relative to the root directory.
+     *
+     * @return the paths, sorted.
+     */
+    public List<String> getSourcePaths()
+    {
+        return Collections.unmodifiableList(this.sourcePaths);
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param entry the entry.
+     */
+    public void addEntry(final Entry entry)
+    {
+        this.entries.add(entry);
+    }
+
+    /**
+     * Gets the entries, in classpath order.
+     *
+     * @return the entries.
+     */
+    public List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /**
+     * Gets the output directory, relative to the root directory.
+     *
+     * @return the path.
+     */
+    public String getOutputPath()
+    {
+        return this.outputPath;
+    }
+
+    /**
+     * @param outputPath the output directory, relative to the root directory.
+     */
+    public void setOutputPath(final String outputPath)
+    {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Gets the markup to merge into the generated .classpath.
+     *
+     * @return the markup, null if none.
+     */
+    public String getMerge()
+    {
+        return this.merge;
+    }
+
+    /**
+     * @param merge the markup to merge into the generated .classpath.
+     */
+    public void setMerge(final String merge)
+    {
+        this.merge = merge;
+    }
+
+    /**
+     * An entry of the classpath (a jar or a directory).
+     */
+    public static class Entry
+    {
+        private final String path;
+
+        private final boolean variable;
+
+        private final File file;
+
+        /**
+         * @param path the path of the entry, starting with the name of the
+         *        classpath variable it's relative to if <code>variable</code>.
+         * @param variable whether the path is relative to a classpath variable.
+         * @param file the actual file.
+         */
+        public Entry(final String path, final boolean variable, final File file)
+        {
+            this.path = path;
+            this.variable = variable;
+            this.file = file;
+        }
+
+        /**
+         * Gets the path of the entry: relative to a classpath variable (and
+         * starting with its name) or else absolute.
+         *
+         * @return the path.
+         */
+        public String getPath()
+        {
+            return this.path;
+        }
+
+        /**
+         * Indicates whether the path is relative to a classpath variable.
+         *
+         * @return true/false
+         */
+        public boolean isVariable()
+        {
+            return this.variable;
+        }
+
+        /**
+         * Gets the actual file of the entry.
+         *
+         * @return the file.
+         */
+        public File getFile()
+        {
+            return this.file;
+        }
+    }
+}
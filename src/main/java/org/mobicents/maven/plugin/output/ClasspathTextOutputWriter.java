@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+
+/**
+ * Writes the classpath as plain text, for scripts: a <code>classpath.txt</code>
+ * file in the root directory listing the absolute path of every entry, one per
+ * line, in classpath order (i.e. <code>paste -sd: classpath.txt</code> gives a
+ * java classpath).
+ */
+public class ClasspathTextOutputWriter
+    implements OutputWriter
+{
+    private static final String FILE_NAME = "classpath.txt";
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#getName()
+     */
+    public String getName()
+    {
+        return "text";
+    }
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#write(org.mobicents.maven.plugin.output.ClasspathModel, org.apache.maven.plugin.logging.Log)
+     */
+    public void write(final ClasspathModel model, final Log logger)
+        throws Exception
+    {
+        final File file = new File(model.getRootDirectory(), FILE_NAME);
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try
+        {
+            for (final ClasspathModel.Entry entry : model.getEntries())
+            {
+                writer.println(entry.getFile().getAbsolutePath());
+            }
+            if (writer.checkError())
+            {
+                throw new IOException("Could not write " + file);
+            }
+        }
+        finally
+        {
+            IOUtil.close(writer);
+        }
+        event.commitFileWrite(file);
+        logger.info("Classpath text file written --> '" + file + "'");
+    }
+}
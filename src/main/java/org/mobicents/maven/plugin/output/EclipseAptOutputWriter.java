@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+import org.mobicents.maven.plugin.analysis.AnnotationProcessorScanner;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+
+/**
+ * Enables annotation processing in Eclipse when the classpath holds
+ * annotation processors: writes the .factorypath (listing the jars providing
+ * processors only, not the whole classpath) and turns APT on in the
+ * .settings of the project. Nothing is written when there's no processor.
+ */
+public class EclipseAptOutputWriter
+    implements OutputWriter
+{
+    private static final String GENERATED_SOURCES = "target/generated-sources/annotations";
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#getName()
+     */
+    public String getName()
+    {
+        return "apt";
+    }
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#write(org.mobicents.maven.plugin.output.ClasspathModel, org.apache.maven.plugin.logging.Log)
+     */
+    public void write(final ClasspathModel model, final Log logger)
+        throws Exception
+    {
+        final List<File> jars = new ArrayList<File>();
+        final Map<File, ClasspathModel.Entry> entries = new LinkedHashMap<File, ClasspathModel.Entry>();
+        for (final ClasspathModel.Entry entry : model.getEntries())
+        {
+            if (entry.getFile() != null && entry.getFile().isFile() && !entries.containsKey(entry.getFile()))
+            {
+                jars.add(entry.getFile());
+                entries.put(entry.getFile(), entry);
+            }
+        }
+        final List<File> processorJars =
+            new AnnotationProcessorScanner(logger, ConcurrentUtils.defaultThreads()).findProcessorJars(jars);
+        if (processorJars.isEmpty())
+        {
+            return;
+        }
+
+        final File factoryPathFile = new File(model.getRootDirectory(), ".factorypath");
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final FileWriter fileWriter = new FileWriter(factoryPathFile);
+        try
+        {
+            final XMLWriter writer = new PrettyPrintXMLWriter(fileWriter, "UTF-8", null);
+            writer.startElement("factorypath");
+            for (final File jar : processorJars)
+            {
+                final ClasspathModel.Entry entry = entries.get(jar);
+                writer.startElement("factorypathentry");
+                writer.addAttribute("kind", entry.isVariable() ? "VARJAR" : "EXTJAR");
+                writer.addAttribute("id", entry.isVariable() ? entry.getPath() : jar.getAbsolutePath());
+                writer.addAttribute("enabled", "true");
+                writer.addAttribute("runInBatchMode", "false");
+                writer.endElement();
+            }
+            writer.endElement();
+        }
+        finally
+        {
+            IOUtil.close(fileWriter);
+        }
+        event.commitFileWrite(factoryPathFile);
+        logger.info("Factory path file written --> '" + factoryPathFile + "'");
+
+        final File settingsDirectory = new File(model.getRootDirectory(), ".settings");
+        settingsDirectory.mkdirs();
+        final Map<String, String> aptSettings = new LinkedHashMap<String, String>();
+        aptSettings.put("org.eclipse.jdt.apt.aptEnabled", "true");
+        aptSettings.put("org.eclipse.jdt.apt.genSrcDir", GENERATED_SOURCES);
+        aptSettings.put("org.eclipse.jdt.apt.reconcileEnabled", "true");
+        updatePreferences(new File(settingsDirectory, "org.eclipse.jdt.apt.core.prefs"), aptSettings);
+        final Map<String, String> coreSettings = new LinkedHashMap<String, String>();
+        coreSettings.put("org.eclipse.jdt.core.compiler.processAnnotations", "enabled");
+        updatePreferences(new File(settingsDirectory, "org.eclipse.jdt.core.prefs"), coreSettings);
+    }
+
+    /**
+     * Sets the given preferences in the given file, keeping the other ones
+     * (the compiler settings of the project for instance) as they are.
+     */
+    private static void updatePreferences(final File file, final Map<String, String> preferences)
+        throws IOException
+    {
+        final Map<String, String> values = new LinkedHashMap<String, String>(preferences);
+        final List<String> lines = new ArrayList<String>();
+        if (file.isFile())
+        {
+            final BufferedReader reader = new BufferedReader(new FileReader(file));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    final int separator = line.indexOf('=');
+                    final String key = separator > 0 ? line.substring(0, separator).trim() : null;
+                    if (key != null && values.containsKey(key))
+                    {
+                        line = key + '=' + values.remove(key);
+                    }
+                    lines.add(line);
+                }
+            }
+            finally
+            {
+                IOUtil.close(reader);
+            }
+        }
+        else
+        {
+            lines.add("eclipse.preferences.version=1");
+        }
+        for (final Map.Entry<String, String> value : values.entrySet())
+        {
+            lines.add(value.getKey() + '=' + value.getValue());
+        }
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try
+        {
+            for (final String line : lines)
+            {
+                writer.println(line);
+            }
+        }
+        finally
+        {
+            IOUtil.close(writer);
+        }
+        event.commitFileWrite(file);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+
+/**
+ * Writes the .classpath file for Eclipse.
+ */
+public class EclipseClasspathOutputWriter
+    implements OutputWriter
+{
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#getName()
+     */
+    public String getName()
+    {
+        return "eclipse";
+    }
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#write(org.mobicents.maven.plugin.output.ClasspathModel, org.apache.maven.plugin.logging.Log)
+     */
+    public void write(final ClasspathModel model, final Log logger)
+        throws Exception
+    {
+        final String rootDirectory = model.getRootDirectory();
+        final File classpathFile = new File(rootDirectory, ".classpath");
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final FileWriter fileWriter = new FileWriter(classpathFile);
+        try
+        {
+            final XMLWriter writer = new PrettyPrintXMLWriter(fileWriter, "UTF-8", null);
+            writer.startElement("classpath");
+            for (final String sourcePath : model.getSourcePaths())
+            {
+                this.writeClasspathEntry(writer, "src", sourcePath);
+            }
+            for (final ClasspathModel.Entry entry : model.getEntries())
+            {
+                String path = entry.getPath();
+                if (entry.isVariable())
+                {
+                    this.writeClasspathEntry(writer, "var", path);
+                }
+                else
+                {
+                    if (path.startsWith(rootDirectory))
+                    {
+                        path = StringUtils.replace(path, rootDirectory + '/', "");
+                    }
+                    this.writeClasspathEntry(writer, "lib", path);
+                }
+            }
+            this.writeClasspathEntry(writer, "con", "org.eclipse.jdt.launching.JRE_CONTAINER");
+            this.writeClasspathEntry(writer, "output", model.getOutputPath());
+            if (StringUtils.isNotBlank(model.getMerge()))
+            {
+                writer.writeMarkup(model.getMerge());
+            }
+            writer.endElement();
+        }
+        finally
+        {
+            IOUtil.close(fileWriter);
+        }
+        event.commitFileWrite(classpathFile);
+        logger.info("Classpath file written --> '" + classpathFile + "'");
+    }
+
+    /**
+     * Writes a classpathentry with the given <code>kind</code> and
+     * <code>path</code> values.
+     *
+     * @param writer the XML writer with which to write.
+     * @param kind the kind of the classpath entry.
+     * @param path the path of the classpath entry.
+     */
+    private void writeClasspathEntry(final XMLWriter writer, final String kind, final String path)
+    {
+        writer.startElement("classpathentry");
+        writer.addAttribute("kind", kind);
+        writer.addAttribute("path", path);
+        writer.endElement();
+    }
+}
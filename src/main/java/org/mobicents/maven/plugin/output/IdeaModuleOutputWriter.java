@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+
+/**
+ * Writes an IntelliJ IDEA module file (<code>&lt;artifactId&gt;.iml</code>)
+ * in the root directory, with the same source directories, jars (as module
+ * libraries) and output directory as the .classpath. Paths within the root
+ * directory are written relative to the module. As in the .classpath, all the
+ * source directories are production ones.
+ */
+public class IdeaModuleOutputWriter
+    implements OutputWriter
+{
+    private static final String MODULE_DIR = "$MODULE_DIR$";
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#getName()
+     */
+    public String getName()
+    {
+        return "idea";
+    }
+
+    /**
+     * @see org.mobicents.maven.plugin.output.OutputWriter#write(org.mobicents.maven.plugin.output.ClasspathModel, org.apache.maven.plugin.logging.Log)
+     */
+    public void write(final ClasspathModel model, final Log logger)
+        throws Exception
+    {
+        final String rootDirectory = model.getRootDirectory();
+        final File moduleFile = new File(rootDirectory, model.getProject().getArtifactId() + ".iml");
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final FileWriter fileWriter = new FileWriter(moduleFile);
+        try
+        {
+            final XMLWriter writer = new PrettyPrintXMLWriter(fileWriter, "UTF-8", null);
+            writer.startElement("module");
+            writer.addAttribute("type", "JAVA_MODULE");
+            writer.addAttribute("version", "4");
+            writer.startElement("component");
+            writer.addAttribute("name", "NewModuleRootManager");
+            writer.addAttribute("inherit-compiler-output", "false");
+            writer.startElement("output");
+            writer.addAttribute("url", "file://" + MODULE_DIR + '/' + model.getOutputPath());
+            writer.endElement();
+            writer.startElement("exclude-output");
+            writer.endElement();
+            writer.startElement("content");
+            writer.addAttribute("url", "file://" + MODULE_DIR);
+            for (final String sourcePath : model.getSourcePaths())
+            {
+                writer.startElement("sourceFolder");
+                writer.addAttribute("url", "file://" + MODULE_DIR + '/' + sourcePath);
+                writer.addAttribute("isTestSource", "false");
+                writer.endElement();
+            }
+            writer.endElement();
+            writer.startElement("orderEntry");
+            writer.addAttribute("type", "inheritedJdk");
+            writer.endElement();
+            writer.startElement("orderEntry");
+            writer.addAttribute("type", "sourceFolder");
+            writer.addAttribute("forTests", "false");
+            writer.endElement();
+            for (final ClasspathModel.Entry entry : model.getEntries())
+            {
+                this.writeLibrary(writer, this.getUrl(entry.getFile(), rootDirectory));
+            }
+            writer.endElement();
+            writer.endElement();
+        }
+        finally
+        {
+            IOUtil.close(fileWriter);
+        }
+        event.commitFileWrite(moduleFile);
+        logger.info("IDEA module file written --> '" + moduleFile + "'");
+    }
+
+    /**
+     * Writes a module library holding the given jar (or directory).
+     */
+    private void writeLibrary(final XMLWriter writer, final String url)
+    {
+        writer.startElement("orderEntry");
+        writer.addAttribute("type", "module-library");
+        writer.startElement("library");
+        writer.startElement("CLASSES");
+        writer.startElement("root");
+        writer.addAttribute("url", url);
+        writer.endElement();
+        writer.endElement();
+        writer.startElement("JAVADOC");
+        writer.endElement();
+        writer.startElement("SOURCES");
+        writer.endElement();
+        writer.endElement();
+        writer.endElement();
+    }
+
+    /**
+     * Gets the IDEA url of the given file, relative to the module if it's
+     * within the root directory.
+     */
+    private String getUrl(final File file, final String rootDirectory)
+    {
+        String path = file.getAbsolutePath().replace('\\', '/');
+        if (path.startsWith(rootDirectory + '/'))
+        {
+            path = MODULE_DIR + path.substring(rootDirectory.length());
+        }
+        return file.isDirectory() ? "file://" + path : "jar://" + path + "!/";
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writes the resolved classpath in some format (an IDE's project files, a
+ * plain list...). Implementations are discovered through
+ * <code>META-INF/services/org.mobicents.maven.plugin.output.OutputWriter</code>
+ * files (see {@link OutputWriters}), they need a public no-arg constructor
+ * and may be run concurrently with the other writers.
+ */
+public interface OutputWriter
+{
+    /**
+     * Gets the name the writer is selected with (in the <code>outputs</code>
+     * of the plugin).
+     *
+     * @return the name.
+     */
+    String getName();
+
+    /**
+     * Writes the given classpath.
+     *
+     * @param model the resolved classpath.
+     * @param logger the logger.
+     * @throws Exception
+     */
+    void write(ClasspathModel model, Log logger)
+        throws Exception;
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.output;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+
+/**
+ * Discovers the {@link OutputWriter}s and runs them. The writers are listed
+ * (by class name, one per line, '#' starting a comment) in the
+ * <code>META-INF/services/org.mobicents.maven.plugin.output.OutputWriter</code>
+ * files of the class loader, so that a jar added to the dependencies of the
+ * plugin brings its own.
+ */
+public class OutputWriters
+{
+    private static final String SERVICES_FILE = "META-INF/services/" + OutputWriter.class.getName();
+
+    /**
+     * The writers found, keyed by name.
+     */
+    private final Map<String, OutputWriter> writers = new LinkedHashMap<String, OutputWriter>();
+
+    /**
+     * Discovers the writers of the given class loader.
+     *
+     * @param classLoader the class loader.
+     * @throws Exception if a services file can't be read or a writer can't be created.
+     */
+    public OutputWriters(final ClassLoader classLoader)
+        throws Exception
+    {
+        for (final Enumeration<URL> resources = classLoader.getResources(SERVICES_FILE); resources.hasMoreElements();)
+        {
+            for (final String className : readClassNames(resources.nextElement()))
+            {
+                final OutputWriter writer =
+                    (OutputWriter)Class.forName(className, true, classLoader).newInstance();
+                // - the first one of a name wins, as for classes
+                if (!this.writers.containsKey(writer.getName()))
+                {
+                    this.writers.put(writer.getName(), writer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the writers with the given names.
+     *
+     * @param names the names of the writers, separated by commas.
+     * @return the writers.
+     * @throws IllegalArgumentException if there's no writer with one of the names.
+     */
+    public List<OutputWriter> select(final String names)
+    {
+        final List<OutputWriter> selected = new ArrayList<OutputWriter>();
+        for (final String name : names.split(","))
+        {
+            if (name.trim().length() > 0)
+            {
+                final OutputWriter writer = this.writers.get(name.trim());
+                if (writer == null)
+                {
+                    throw new IllegalArgumentException("No output '" + name.trim() + "', the outputs are "
+                        + this.writers.keySet());
+                }
+                if (!selected.contains(writer))
+                {
+                    selected.add(writer);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Runs the given writers on the given classpath, concurrently.
+     *
+     * @param writers the writers.
+     * @param model the resolved classpath.
+     * @param logger the logger.
+     * @throws Exception the first failure of a writer.
+     */
+    public static void write(final List<OutputWriter> writers, final ClasspathModel model, final Log logger)
+        throws Exception
+    {
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(writers.size());
+        for (final OutputWriter writer : writers)
+        {
+            tasks.add(new Callable<Object>()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    writer.write(model, logger);
+                    return null;
+                }
+            });
+        }
+        ConcurrentUtils.invokeAll("output-writer", tasks, tasks.size());
+    }
+
+    private static List<String> readClassNames(final URL url)
+        throws IOException
+    {
+        final List<String> classNames = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                final int comment = line.indexOf('#');
+                final String className = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (className.length() > 0)
+                {
+                    classNames.add(className);
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close(reader);
+        }
+        return classNames;
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.apache.maven.artifact.resolver.filter.ExcludesArtifactFilter;
+import org.apache.maven.artifact.resolver.filter.IncludesArtifactFilter;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+
+/**
+ * Decorates an {@link ArtifactMetadataSource} with a persistent cache of the
+ * dependencies of released artifacts, so that their POMs (and the POMs of
+ * their parents) don't need to be read and built again on every run.
+ * <p>
+ * The dependencies of an artifact are cached as retrieved in compile scope
+ * and without exclusions (see {@link MetadataDerivation}), keyed by the
+ * artifact id. Releases don't change once deployed, so the entries never
+ * expire; snapshots (and <code>LATEST</code>/<code>RELEASE</code>) are
+ * always retrieved from the decorated source, as are relocated artifacts and
+ * artifacts whose POM declares repositories of its own.
+ * </p>
+ * <p>
+ * The dependencies a released POM ends up with still depend on what it is
+ * built with: the JDK, the OS, the active profiles and the properties (i.e.
+ * a profile activated by the JDK, or a system scoped dependency on
+ * <code>${java.home}/../lib/tools.jar</code>). The entries are therefore
+ * stored along with the digest of that context (see
+ * {@link org.mobicents.maven.plugin.utils.ProjectSnapshotStore#getContext}),
+ * and only the ones of the current context are used.
+ * </p>
+ * <p>
+ * The cache file is append-only: the entries retrieved during a run are
+ * appended by {@link #store()} (under a file lock, so that concurrent builds
+ * sharing a local repository don't interleave), and an entry that was cut
+ * short is dropped (under the same lock) the next time the file is loaded.
+ * </p>
+ */
+public class CachingMetadataSource
+    implements ArtifactMetadataSource
+{
+    private static final int MAGIC = 0x4D454D43;
+
+    private static final int VERSION = 2;
+
+    private final ArtifactMetadataSource source;
+
+    private final ArtifactFactory artifactFactory;
+
+    private final File file;
+
+    private final String context;
+
+    private final Log logger;
+
+    /**
+     * The cached dependencies of the context, keyed by artifact id.
+     */
+    private final ConcurrentMap<String, List<Dependency>> entries = new ConcurrentHashMap<String, List<Dependency>>();
+
+    /**
+     * The ids of the entries not yet appended to the file.
+     */
+    private final List<String> pending = new ArrayList<String>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param source the decorated metadata source.
+     * @param artifactFactory the factory the cached dependencies are created with.
+     * @param file the file the cache is stored in.
+     * @param context the digest of what the POMs are built with besides
+     *        themselves, the entries of other contexts being ignored.
+     * @param logger the logger.
+     */
+    public CachingMetadataSource(
+        final ArtifactMetadataSource source,
+        final ArtifactFactory artifactFactory,
+        final File file,
+        final String context,
+        final Log logger)
+    {
+        this.source = source;
+        this.artifactFactory = artifactFactory;
+        this.file = file;
+        this.context = context;
+        this.logger = logger;
+    }
+
+    /**
+     * @see org.apache.maven.artifact.metadata.ArtifactMetadataSource#retrieve(org.apache.maven.artifact.Artifact,
+     *      org.apache.maven.artifact.repository.ArtifactRepository, java.util.List)
+     */
+    public ResolutionGroup retrieve(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+        throws ArtifactMetadataRetrievalException
+    {
+        if (!isCacheable(artifact))
+        {
+            return this.source.retrieve(artifact, localRepository, remoteRepositories);
+        }
+        final Artifact probe = MetadataDerivation.createProbe(this.artifactFactory, artifact);
+        final String id = probe.getId();
+        ResolutionGroup unfiltered = this.toGroup(probe, this.entries.get(id), remoteRepositories);
+        if (unfiltered != null)
+        {
+            this.hits.incrementAndGet();
+        }
+        else
+        {
+            this.misses.incrementAndGet();
+            unfiltered = this.source.retrieve(probe, localRepository, remoteRepositories);
+            if (!id.equals(probe.getId()))
+            {
+                // - relocated, the dependencies are those of another artifact
+                return this.source.retrieve(artifact, localRepository, remoteRepositories);
+            }
+            final List<Dependency> dependencies = toDependencies(unfiltered, remoteRepositories);
+            if (dependencies != null && this.entries.put(id, dependencies) == null)
+            {
+                synchronized (this.pending)
+                {
+                    this.pending.add(id);
+                }
+            }
+        }
+        final ResolutionGroup derived = MetadataDerivation.derive(this.artifactFactory, artifact, unfiltered);
+        return derived != null ? derived : this.source.retrieve(artifact, localRepository, remoteRepositories);
+    }
+
+    /**
+     * @see org.apache.maven.artifact.metadata.ArtifactMetadataSource#retrieveAvailableVersions(org.apache.maven.artifact.Artifact,
+     *      org.apache.maven.artifact.repository.ArtifactRepository, java.util.List)
+     */
+    public List retrieveAvailableVersions(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+        throws ArtifactMetadataRetrievalException
+    {
+        return this.source.retrieveAvailableVersions(artifact, localRepository, remoteRepositories);
+    }
+
+    /**
+     * Whether the dependencies of the given <code>artifact</code> can be cached:
+     * it must be a release with a known version.
+     */
+    private static boolean isCacheable(final Artifact artifact)
+    {
+        final String version = artifact.getVersion();
+        return version != null && artifact.getScope() != null && !artifact.isSnapshot() &&
+            !Artifact.LATEST_VERSION.equals(version) && !Artifact.RELEASE_VERSION.equals(version);
+    }
+
+    /**
+     * Creates the unfiltered metadata of the given <code>probe</code> from its
+     * cached <code>dependencies</code>.
+     *
+     * @return the metadata or null if nothing (usable) is cached.
+     */
+    private ResolutionGroup toGroup(
+        final Artifact probe,
+        final List<Dependency> dependencies,
+        final List remoteRepositories)
+    {
+        if (dependencies == null)
+        {
+            return null;
+        }
+        final Set artifacts = new LinkedHashSet();
+        for (final Dependency dependency : dependencies)
+        {
+            final Artifact artifact;
+            try
+            {
+                artifact = this.artifactFactory.createDependencyArtifact(
+                    dependency.groupId,
+                    dependency.artifactId,
+                    VersionRange.createFromVersionSpec(dependency.versionSpec),
+                    dependency.type,
+                    dependency.classifier,
+                    dependency.scope,
+                    null,
+                    dependency.optional);
+            }
+            catch (InvalidVersionSpecificationException exception)
+            {
+                return null;
+            }
+            if (dependency.systemPath != null)
+            {
+                artifact.setFile(new File(dependency.systemPath));
+            }
+            if (!dependency.exclusions.isEmpty())
+            {
+                artifact.setDependencyFilter(new ExcludesArtifactFilter(dependency.exclusions));
+            }
+            artifacts.add(artifact);
+        }
+        final Artifact pomArtifact = this.artifactFactory.createProjectArtifact(
+            probe.getGroupId(), probe.getArtifactId(), probe.getVersion());
+        return new ResolutionGroup(pomArtifact, artifacts, remoteRepositories);
+    }
+
+    /**
+     * Gets the dependencies to cache from the given unfiltered metadata.
+     *
+     * @return the dependencies or null if they can't be cached.
+     */
+    private static List<Dependency> toDependencies(final ResolutionGroup group, final List remoteRepositories)
+    {
+        // - the repositories a POM declares apply to its dependencies, which a cached entry wouldn't know
+        final Set<String> repositoryIds = new HashSet<String>();
+        for (final Iterator iterator = remoteRepositories.iterator(); iterator.hasNext();)
+        {
+            repositoryIds.add(((ArtifactRepository)iterator.next()).getId());
+        }
+        for (final Iterator iterator = group.getResolutionRepositories().iterator(); iterator.hasNext();)
+        {
+            if (!repositoryIds.contains(((ArtifactRepository)iterator.next()).getId()))
+            {
+                return null;
+            }
+        }
+        final List<Dependency> dependencies = new ArrayList<Dependency>();
+        for (final Iterator iterator = group.getArtifacts().iterator(); iterator.hasNext();)
+        {
+            final Artifact artifact = (Artifact)iterator.next();
+            final List<String> exclusions = getExclusions(artifact.getDependencyFilter());
+            if (exclusions == null || artifact.getVersionRange() == null)
+            {
+                return null;
+            }
+            dependencies.add(new Dependency(
+                artifact.getGroupId(),
+                artifact.getArtifactId(),
+                artifact.getVersionRange().toString(),
+                artifact.getType(),
+                artifact.getClassifier(),
+                artifact.getScope(),
+                artifact.isOptional(),
+                Artifact.SCOPE_SYSTEM.equals(artifact.getScope()) && artifact.getFile() != null
+                    ? artifact.getFile().getPath() : null,
+                exclusions));
+        }
+        return dependencies;
+    }
+
+    /**
+     * The field holding the patterns of an {@link IncludesArtifactFilter}, which
+     * has no accessor for them.
+     */
+    private static final Field PATTERNS = getPatternsField();
+
+    private static Field getPatternsField()
+    {
+        try
+        {
+            final Field field = IncludesArtifactFilter.class.getDeclaredField("patterns");
+            field.setAccessible(true);
+            return field;
+        }
+        catch (Exception exception)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the exclusions (<code>groupId:artifactId</code>) of the given
+     * dependency filter.
+     *
+     * @return the exclusions or null if the filter isn't just exclusions.
+     */
+    private static List<String> getExclusions(final ArtifactFilter filter)
+    {
+        if (filter == null)
+        {
+            return Collections.emptyList();
+        }
+        if (filter.getClass() != ExcludesArtifactFilter.class || PATTERNS == null)
+        {
+            return null;
+        }
+        try
+        {
+            final List<String> exclusions = new ArrayList<String>();
+            for (final Iterator iterator = ((List)PATTERNS.get(filter)).iterator(); iterator.hasNext();)
+            {
+                exclusions.add(String.valueOf(iterator.next()));
+            }
+            return exclusions;
+        }
+        catch (IllegalAccessException exception)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the entries of the context from the cache file, dropping an entry
+     * at its end that was cut short and starting over if it isn't a cache
+     * file (of this version).
+     */
+    public void load()
+    {
+        this.entries.clear();
+        if (!this.file.isFile())
+        {
+            return;
+        }
+        long length = 0;
+        try
+        {
+            final byte[] content = readFile(this.file);
+            final ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+            final DataInputStream input = new DataInputStream(bytes);
+            try
+            {
+                if (input.readInt() == MAGIC && input.readInt() == VERSION)
+                {
+                    length = content.length - bytes.available();
+                    final String prefix = this.context + '/';
+                    while (bytes.available() > 0)
+                    {
+                        final String key = input.readUTF();
+                        final int count = input.readInt();
+                        final List<Dependency> dependencies = new ArrayList<Dependency>(count);
+                        for (int ctr = 0; ctr < count; ctr++)
+                        {
+                            dependencies.add(Dependency.read(input));
+                        }
+                        if (key.startsWith(prefix))
+                        {
+                            this.entries.put(key.substring(prefix.length()), dependencies);
+                        }
+                        length = content.length - bytes.available();
+                    }
+                }
+            }
+            catch (IOException exception)
+            {
+                this.logger.debug("Dropping the end of " + this.file + " from byte " + length);
+            }
+            if (length < content.length)
+            {
+                truncate(this.file, length, content.length);
+            }
+        }
+        catch (IOException exception)
+        {
+            this.logger.warn("Could not read the metadata cache " + this.file + ": " + exception);
+            this.entries.clear();
+        }
+    }
+
+    private static byte[] readFile(final File file)
+        throws IOException
+    {
+        final FileInputStream input = new FileInputStream(file);
+        try
+        {
+            return IOUtil.toByteArray(input);
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Cuts the file to the given <code>length</code>, under the file lock and
+     * only if it's still as long as it was when read (the end may otherwise be
+     * an entry another process was appending).
+     */
+    private static void truncate(final File file, final long length, final long readLength)
+        throws IOException
+    {
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try
+        {
+            final FileLock lock = output.getChannel().lock();
+            try
+            {
+                if (output.length() == readLength)
+                {
+                    output.setLength(length);
+                }
+            }
+            finally
+            {
+                lock.release();
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * Appends the entries retrieved since the last time to the cache file.
+     *
+     * @throws IOException
+     */
+    public void store()
+        throws IOException
+    {
+        final List<String> ids;
+        synchronized (this.pending)
+        {
+            ids = new ArrayList<String>(this.pending);
+            this.pending.clear();
+        }
+        this.logger.info("Metadata cache: " + this.hits.getAndSet(0) + " hit(s), " + this.misses.getAndSet(0)
+            + " miss(es), " + ids.size() + " new entr" + (ids.size() == 1 ? "y" : "ies"));
+        if (ids.isEmpty())
+        {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        for (final String id : ids)
+        {
+            final List<Dependency> dependencies = this.entries.get(id);
+            output.writeUTF(this.context + '/' + id);
+            output.writeInt(dependencies.size());
+            for (final Dependency dependency : dependencies)
+            {
+                dependency.write(output);
+            }
+        }
+        output.flush();
+
+        this.file.getAbsoluteFile().getParentFile().mkdirs();
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final FileOutputStream stream = new FileOutputStream(this.file, true);
+        try
+        {
+            final FileLock lock = stream.getChannel().lock();
+            try
+            {
+                if (stream.getChannel().size() == 0)
+                {
+                    final DataOutputStream header = new DataOutputStream(stream);
+                    header.writeInt(MAGIC);
+                    header.writeInt(VERSION);
+                    header.flush();
+                }
+                stream.write(bytes.toByteArray());
+                stream.flush();
+            }
+            finally
+            {
+                lock.release();
+            }
+        }
+        finally
+        {
+            IOUtil.close(stream);
+        }
+        event.commitFileWrite(this.file);
+    }
+
+    /**
+     * Gets the number of cached entries of the context.
+     */
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * A cached dependency.
+     */
+    private static class Dependency
+    {
+        private final String groupId;
+
+        private final String artifactId;
+
+        private final String versionSpec;
+
+        private final String type;
+
+        private final String classifier;
+
+        private final String scope;
+
+        private final boolean optional;
+
+        private final String systemPath;
+
+        private final List<String> exclusions;
+
+        Dependency(
+            final String groupId,
+            final String artifactId,
+            final String versionSpec,
+            final String type,
+            final String classifier,
+            final String scope,
+            final boolean optional,
+            final String systemPath,
+            final List<String> exclusions)
+        {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.versionSpec = versionSpec;
+            this.type = type;
+            this.classifier = classifier;
+            this.scope = scope;
+            this.optional = optional;
+            this.systemPath = systemPath;
+            this.exclusions = exclusions;
+        }
+
+        void write(final DataOutputStream output)
+            throws IOException
+        {
+            output.writeUTF(this.groupId);
+            output.writeUTF(this.artifactId);
+            output.writeUTF(this.versionSpec);
+            output.writeUTF(this.type);
+            writeOptional(output, this.classifier);
+            writeOptional(output, this.scope);
+            output.writeBoolean(this.optional);
+            writeOptional(output, this.systemPath);
+            output.writeInt(this.exclusions.size());
+            for (final String exclusion : this.exclusions)
+            {
+                output.writeUTF(exclusion);
+            }
+        }
+
+        static Dependency read(final DataInputStream input)
+            throws IOException
+        {
+            final String groupId = input.readUTF();
+            final String artifactId = input.readUTF();
+            final String versionSpec = input.readUTF();
+            final String type = input.readUTF();
+            final String classifier = readOptional(input);
+            final String scope = readOptional(input);
+            final boolean optional = input.readBoolean();
+            final String systemPath = readOptional(input);
+            final int count = input.readInt();
+            final List<String> exclusions = new ArrayList<String>(count);
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                exclusions.add(input.readUTF());
+            }
+            return new Dependency(groupId, artifactId, versionSpec, type, classifier, scope, optional, systemPath,
+                exclusions);
+        }
+
+        private static void writeOptional(final DataOutputStream output, final String value)
+            throws IOException
+        {
+            output.writeBoolean(value != null);
+            if (value != null)
+            {
+                output.writeUTF(value);
+            }
+        }
+
+        private static String readOptional(final DataInputStream input)
+            throws IOException
+        {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+    }
+}
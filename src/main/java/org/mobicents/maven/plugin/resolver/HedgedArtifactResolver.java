@@ -0,0 +1,475 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+
+/**
+ * Resolves released artifacts from the remote repositories one repository at
+ * a time (as the artifact resolver does), but gives up on a repository that
+ * doesn't answer within a timeout and, with hedging, asks the next repository
+ * as well when one doesn't answer within a (shorter) delay, taking whichever
+ * answer comes first. Every attempt downloads into a directory of its own,
+ * and the winning file is then moved into the local repository, so that
+ * concurrent attempts can't clash. The attempts hold no repository lock (see
+ * {@link RepositoryLocks}), as an attempt given up on can't be stopped and
+ * would keep the other resolutions from its repository until it ends.
+ * <p>
+ * The response times of every repository are kept, from the time an attempt
+ * starts asking the repository until it answers, and {@link #report()} logs
+ * their median and 99th percentile.
+ * </p>
+ */
+public class HedgedArtifactResolver
+{
+    private final ArtifactResolver resolver;
+
+    private final ArtifactFactory artifactFactory;
+
+    private final long timeout;
+
+    private final long hedgeDelay;
+
+    private final Log logger;
+
+    /**
+     * Runs the attempts, unbounded as an attempt that timed out is abandoned
+     * rather than stopped.
+     */
+    private final ExecutorService executor = ConcurrentUtils.newCachedPool("hedged-resolution");
+
+    private final AtomicInteger attemptCounter = new AtomicInteger();
+
+    /**
+     * The statistics of every repository asked, keyed by repository url.
+     */
+    private final Map<String, RepositoryStatistics> statistics = new LinkedHashMap<String, RepositoryStatistics>();
+
+    /**
+     * The directory the attempts download into, null until first used.
+     */
+    private File attemptsDirectory;
+
+    /**
+     * @param resolver the artifact resolver the attempts are made with.
+     * @param artifactFactory the factory of the artifacts of the attempts.
+     * @param timeout the time (in milliseconds) after which a repository is
+     *        given up on, 0 to wait for as long as the resolver does.
+     * @param hedgeDelay the time (in milliseconds) after which the next
+     *        repository is asked as well, 0 to only ask it once the previous
+     *        one failed.
+     * @param logger the logger.
+     */
+    public HedgedArtifactResolver(
+        final ArtifactResolver resolver,
+        final ArtifactFactory artifactFactory,
+        final long timeout,
+        final long hedgeDelay,
+        final Log logger)
+    {
+        this.resolver = resolver;
+        this.artifactFactory = artifactFactory;
+        this.timeout = timeout;
+        this.hedgeDelay = hedgeDelay;
+        this.logger = logger;
+    }
+
+    /**
+     * Resolves the given <code>artifact</code>. Snapshots, system scoped
+     * artifacts and artifacts already in the local repository are left to the
+     * artifact resolver.
+     *
+     * @param artifact the artifact to resolve.
+     * @param remoteRepositories the remote repositories, in the order to ask them.
+     * @param localRepository the local repository.
+     * @throws ArtifactResolutionException
+     * @throws ArtifactNotFoundException if no repository had the artifact (in time).
+     */
+    public void resolve(
+        final Artifact artifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository)
+        throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        final File file = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+        if (remoteRepositories.isEmpty() || artifact.getVersion() == null || artifact.isSnapshot() ||
+            Artifact.SCOPE_SYSTEM.equals(artifact.getScope()) || file.exists())
+        {
+            RepositoryLocks.instance().resolve(this.resolver, artifact, remoteRepositories, localRepository);
+            return;
+        }
+
+        final CompletionService<File> completion = new ExecutorCompletionService<File>(this.executor);
+        final Map<Future<File>, Attempt> attempts = new HashMap<Future<File>, Attempt>();
+        final List<Attempt> running = new ArrayList<Attempt>();
+        final List<String> failures = new ArrayList<String>();
+        int next = 0;
+        long lastStart = 0;
+        try
+        {
+            while (true)
+            {
+                long now = System.currentTimeMillis();
+                final boolean hedge = this.hedgeDelay > 0 && !running.isEmpty() && now - lastStart >= this.hedgeDelay;
+                if (next < remoteRepositories.size() && (running.isEmpty() || hedge))
+                {
+                    final Attempt attempt = new Attempt(
+                        artifact, (ArtifactRepository)remoteRepositories.get(next++), localRepository, hedge);
+                    attempt.future = completion.submit(attempt);
+                    attempts.put(attempt.future, attempt);
+                    running.add(attempt);
+                    lastStart = attempt.submitted;
+                    if (hedge)
+                    {
+                        this.getStatistics(attempt.repository).addHedge();
+                    }
+                    continue;
+                }
+                if (running.isEmpty())
+                {
+                    throw new ArtifactNotFoundException(
+                        "Could not find the artifact in any repository (" + failures + ")", artifact);
+                }
+
+                // - wait for an answer, until the next attempt times out or is to be hedged
+                long deadline = Long.MAX_VALUE;
+                if (this.timeout > 0)
+                {
+                    for (final Attempt attempt : running)
+                    {
+                        deadline = Math.min(deadline, attempt.submitted + this.timeout);
+                    }
+                }
+                if (this.hedgeDelay > 0 && next < remoteRepositories.size())
+                {
+                    deadline = Math.min(deadline, lastStart + this.hedgeDelay);
+                }
+                final Future<File> future = deadline == Long.MAX_VALUE ? completion.take()
+                    : completion.poll(Math.max(0, deadline - now), TimeUnit.MILLISECONDS);
+                now = System.currentTimeMillis();
+                if (future != null)
+                {
+                    final Attempt attempt = attempts.get(future);
+                    running.remove(attempt);
+                    final RepositoryStatistics statistics = this.getStatistics(attempt.repository);
+                    try
+                    {
+                        final File downloaded = future.get();
+                        statistics.add(attempt.responseTime, attempt.hedge);
+                        this.install(downloaded, file);
+                        FileUtils.deleteDirectory(attempt.directory);
+                        artifact.setFile(file);
+                        artifact.setResolved(true);
+                        return;
+                    }
+                    catch (ExecutionException exception)
+                    {
+                        statistics.add(attempt.responseTime, false);
+                        failures.add(attempt.repository.getId() + ": " + exception.getCause().getMessage());
+                    }
+                    catch (CancellationException exception)
+                    {
+                        // - already given up on
+                    }
+                }
+                for (final Attempt attempt : new ArrayList<Attempt>(running))
+                {
+                    if (this.timeout > 0 && now - attempt.submitted >= this.timeout)
+                    {
+                        this.logger.warn("Giving up on " + attempt.repository.getId() + " for " + artifact
+                            + " after " + this.timeout + " ms");
+                        attempt.cancel();
+                        running.remove(attempt);
+                        this.getStatistics(attempt.repository).addTimeout();
+                        failures.add(attempt.repository.getId() + ": timed out");
+                    }
+                }
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new ArtifactResolutionException("Interrupted resolving the artifact", artifact, exception);
+        }
+        catch (IOException exception)
+        {
+            throw new ArtifactResolutionException("Could not install the artifact", artifact, exception);
+        }
+        finally
+        {
+            // - overtaken by a hedged attempt
+            for (final Attempt attempt : running)
+            {
+                attempt.cancel();
+                this.getStatistics(attempt.repository).addOvertaken();
+            }
+        }
+    }
+
+    /**
+     * Moves the <code>downloaded</code> file to its location in the local
+     * repository, through a temporary file so that it only ever appears complete.
+     */
+    private void install(final File downloaded, final File file)
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        final File temporaryFile = new File(file.getPath() + ".hedged-" + this.attemptCounter.incrementAndGet());
+        if (!downloaded.renameTo(temporaryFile))
+        {
+            FileUtils.copyFile(downloaded, temporaryFile);
+        }
+        if (!temporaryFile.renameTo(file))
+        {
+            temporaryFile.delete();
+            if (!file.exists())
+            {
+                throw new IOException("Could not rename " + temporaryFile + " to " + file);
+            }
+        }
+    }
+
+    private synchronized RepositoryStatistics getStatistics(final ArtifactRepository repository)
+    {
+        RepositoryStatistics statistics = this.statistics.get(repository.getUrl());
+        if (statistics == null)
+        {
+            statistics = new RepositoryStatistics(repository.getId() + " (" + repository.getUrl() + ")");
+            this.statistics.put(repository.getUrl(), statistics);
+        }
+        return statistics;
+    }
+
+    private synchronized File getAttemptsDirectory(final ArtifactRepository localRepository)
+    {
+        if (this.attemptsDirectory == null)
+        {
+            // - within the local repository, so that the downloaded files can just be renamed
+            this.attemptsDirectory = new File(localRepository.getBasedir(), ".cache/mobicents-eclipse/hedged-resolution");
+        }
+        return this.attemptsDirectory;
+    }
+
+    /**
+     * Logs the median and 99th percentile response time of every repository
+     * asked since the last report, and deletes what abandoned attempts
+     * downloaded.
+     */
+    public synchronized void report()
+    {
+        for (final RepositoryStatistics statistics : this.statistics.values())
+        {
+            this.logger.info(statistics.toString());
+        }
+        this.statistics.clear();
+        if (this.attemptsDirectory != null)
+        {
+            try
+            {
+                FileUtils.deleteDirectory(this.attemptsDirectory);
+            }
+            catch (IOException exception)
+            {
+                this.logger.debug("Could not delete " + this.attemptsDirectory, exception);
+            }
+        }
+    }
+
+    /**
+     * An attempt to download an artifact from a single repository into a
+     * directory of its own.
+     */
+    private class Attempt
+        implements Callable<File>
+    {
+        private final Artifact artifact;
+
+        private final ArtifactRepository repository;
+
+        private final File directory;
+
+        private final ArtifactRepository attemptRepository;
+
+        private final boolean hedge;
+
+        /**
+         * The time the attempt was submitted at, the timeouts and hedges
+         * being scheduled from it.
+         */
+        private final long submitted = System.currentTimeMillis();
+
+        /**
+         * The time (in milliseconds) the repository took to answer, set once
+         * it did.
+         */
+        private volatile long responseTime;
+
+        private volatile Future<File> future;
+
+        Attempt(
+            final Artifact artifact,
+            final ArtifactRepository repository,
+            final ArtifactRepository localRepository,
+            final boolean hedge)
+        {
+            final HedgedArtifactResolver resolver = HedgedArtifactResolver.this;
+            this.artifact = resolver.artifactFactory.createArtifactWithClassifier(
+                artifact.getGroupId(),
+                artifact.getArtifactId(),
+                artifact.getVersion(),
+                artifact.getType(),
+                artifact.getClassifier());
+            this.repository = repository;
+            this.directory = new File(
+                resolver.getAttemptsDirectory(localRepository),
+                String.valueOf(resolver.attemptCounter.incrementAndGet()));
+            this.attemptRepository = new DefaultArtifactRepository(
+                "hedged-resolution", "file://" + this.directory.getAbsolutePath(), localRepository.getLayout());
+            this.hedge = hedge;
+        }
+
+        public File call()
+            throws Exception
+        {
+            final long start = System.currentTimeMillis();
+            try
+            {
+                HedgedArtifactResolver.this.resolver.resolve(
+                    this.artifact, Collections.singletonList(this.repository), this.attemptRepository);
+            }
+            finally
+            {
+                this.responseTime = System.currentTimeMillis() - start;
+            }
+            return this.artifact.getFile();
+        }
+
+        void cancel()
+        {
+            if (this.future != null)
+            {
+                this.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The response times of a repository.
+     */
+    private static class RepositoryStatistics
+    {
+        private final String name;
+
+        private final List<Long> times = new ArrayList<Long>();
+
+        private int timeouts;
+
+        private int hedges;
+
+        private int hedgesWon;
+
+        private int overtaken;
+
+        RepositoryStatistics(final String name)
+        {
+            this.name = name;
+        }
+
+        synchronized void add(final long time, final boolean hedgeWon)
+        {
+            this.times.add(Long.valueOf(time));
+            if (hedgeWon)
+            {
+                this.hedgesWon++;
+            }
+        }
+
+        synchronized void addTimeout()
+        {
+            this.timeouts++;
+        }
+
+        synchronized void addHedge()
+        {
+            this.hedges++;
+        }
+
+        synchronized void addOvertaken()
+        {
+            this.overtaken++;
+        }
+
+        /**
+         * Gets the given percentile (nearest rank) of the response times.
+         */
+        private long getPercentile(final List<Long> sorted, final int percentile)
+        {
+            final int rank = (int)Math.ceil(percentile / 100.0 * sorted.size());
+            return sorted.get(Math.max(0, rank - 1)).longValue();
+        }
+
+        public synchronized String toString()
+        {
+            final StringBuffer buffer = new StringBuffer(this.name).append(": ");
+            buffer.append(this.times.size()).append(" response(s)");
+            if (!this.times.isEmpty())
+            {
+                final List<Long> sorted = new ArrayList<Long>(this.times);
+                Collections.sort(sorted);
+                buffer.append(", p50 ").append(this.getPercentile(sorted, 50)).append(" ms");
+                buffer.append(", p99 ").append(this.getPercentile(sorted, 99)).append(" ms");
+            }
+            buffer.append(", ").append(this.timeouts).append(" timeout(s)");
+            buffer.append(", ").append(this.hedgesWon).append(" of ").append(this.hedges).append(" hedge(s) won");
+            buffer.append(", overtaken ").append(this.overtaken).append(" time(s)");
+            return buffer.toString();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.resolver.filter.AndArtifactFilter;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+/**
+ * Reuses the metadata of an artifact retrieved once, in compile scope and
+ * without exclusions (through a {@link #createProbe probe}), for the scope
+ * and exclusions the collector asks for: the dependencies are scoped through
+ * the artifact factory for the scope they're inherited in and filtered by the
+ * exclusions of the dependency trail, the same way the Maven project does it.
+ */
+final class MetadataDerivation
+{
+    private MetadataDerivation()
+    {
+        // - no instances
+    }
+
+    /**
+     * Creates the artifact the unfiltered metadata of the given
+     * <code>artifact</code> is retrieved for.
+     */
+    static Artifact createProbe(final ArtifactFactory artifactFactory, final Artifact artifact)
+    {
+        return artifactFactory.createDependencyArtifact(
+            artifact.getGroupId(),
+            artifact.getArtifactId(),
+            artifact.getVersionRange().cloneOf(),
+            artifact.getType(),
+            artifact.getClassifier(),
+            Artifact.SCOPE_COMPILE,
+            null,
+            false);
+    }
+
+    /**
+     * Derives the metadata of the given <code>artifact</code> (with its scope
+     * and exclusions) from its unfiltered metadata.
+     *
+     * @return the metadata or null if it can't be derived.
+     */
+    static ResolutionGroup derive(
+        final ArtifactFactory artifactFactory,
+        final Artifact artifact,
+        final ResolutionGroup unfiltered)
+    {
+        if (unfiltered == null || artifact.getScope() == null)
+        {
+            return null;
+        }
+        final ArtifactFilter filter = artifact.getDependencyFilter();
+        final Set artifacts = new LinkedHashSet();
+        for (final Iterator iterator = unfiltered.getArtifacts().iterator(); iterator.hasNext();)
+        {
+            final Artifact dependency = (Artifact)iterator.next();
+
+            // - in compile scope a dependency keeps its own scope unless it's runtime
+            //   (which may have been no scope at all), which maps the same way
+            final Artifact derived = artifactFactory.createDependencyArtifact(
+                dependency.getGroupId(),
+                dependency.getArtifactId(),
+                dependency.getVersionRange().cloneOf(),
+                dependency.getType(),
+                dependency.getClassifier(),
+                dependency.getScope(),
+                artifact.getScope(),
+                dependency.isOptional());
+            if (derived == null || (filter != null && !filter.include(derived)))
+            {
+                continue;
+            }
+            if (Artifact.SCOPE_SYSTEM.equals(derived.getScope()))
+            {
+                derived.setFile(dependency.getFile());
+            }
+            final ArtifactFilter exclusions = dependency.getDependencyFilter();
+            if (filter == null)
+            {
+                derived.setDependencyFilter(exclusions);
+            }
+            else if (exclusions == null)
+            {
+                derived.setDependencyFilter(filter);
+            }
+            else
+            {
+                final AndArtifactFilter combined = new AndArtifactFilter();
+                combined.add(filter);
+                combined.add(exclusions);
+                derived.setDependencyFilter(combined);
+            }
+            artifacts.add(derived);
+        }
+        return new ResolutionGroup(unfiltered.getPomArtifact(), artifacts, unfiltered.getResolutionRepositories());
+    }
+}
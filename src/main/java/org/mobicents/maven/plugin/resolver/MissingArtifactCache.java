@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.utils.FlightRecorderEvent;
+import org.mobicents.maven.plugin.utils.ProcessLock;
+
+/**
+ * Remembers, for a while, the artifacts that could not be found in a remote
+ * repository, so that they aren't looked up there (and the repository isn't
+ * waited for) on every run. An artifact is only looked up again in the
+ * repositories it wasn't found in once the time to live of the misses
+ * expires, or after {@link #clear() clearing} the cache.
+ */
+public class MissingArtifactCache
+{
+    private static final int MAGIC = 0x4D454D41;
+
+    private static final int VERSION = 1;
+
+    private final long timeToLive;
+
+    /**
+     * The times misses were recorded at, keyed by artifact id and repository url.
+     */
+    private final Map<String, Long> misses = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * The keys of the misses forgotten since the cache was loaded, which
+     * mustn't come back from the stored cache when merging with it.
+     */
+    private final Map<String, Boolean> removed = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Whether all misses were forgotten since the cache was loaded.
+     */
+    private volatile boolean cleared;
+
+    private volatile boolean modified;
+
+    /**
+     * @param timeToLive how long (in milliseconds) a miss is remembered.
+     */
+    public MissingArtifactCache(final long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    private static String getKey(final Artifact artifact, final ArtifactRepository repository)
+    {
+        return artifact.getId() + '|' + repository.getUrl();
+    }
+
+    private boolean isExpired(final Long time, final long now)
+    {
+        return time == null || now - time.longValue() >= this.timeToLive;
+    }
+
+    /**
+     * Gets the repositories the given <code>artifact</code> is still to be
+     * looked up in: the ones it wasn't recently found missing in.
+     *
+     * @param artifact the artifact to resolve.
+     * @param remoteRepositories the remote repositories.
+     * @return the repositories to look the artifact up in.
+     */
+    public List getRepositories(final Artifact artifact, final List remoteRepositories)
+    {
+        final long now = System.currentTimeMillis();
+        final List repositories = new ArrayList();
+        for (final Iterator iterator = remoteRepositories.iterator(); iterator.hasNext();)
+        {
+            final ArtifactRepository repository = (ArtifactRepository)iterator.next();
+            if (this.isExpired(this.misses.get(getKey(artifact, repository)), now))
+            {
+                repositories.add(repository);
+            }
+        }
+        return repositories;
+    }
+
+    /**
+     * Records that the given <code>artifact</code> could not be found in any
+     * of the given <code>repositories</code>.
+     *
+     * @param artifact the missing artifact.
+     * @param repositories the repositories it was looked up in.
+     */
+    public void addMissing(final Artifact artifact, final List repositories)
+    {
+        final Long now = Long.valueOf(System.currentTimeMillis());
+        for (final Iterator iterator = repositories.iterator(); iterator.hasNext();)
+        {
+            final String key = getKey(artifact, (ArtifactRepository)iterator.next());
+            this.misses.put(key, now);
+            this.removed.remove(key);
+        }
+        this.modified = true;
+    }
+
+    /**
+     * Forgets the misses of the given (since found) <code>artifact</code>.
+     *
+     * @param artifact the found artifact.
+     */
+    public void removeMissing(final Artifact artifact)
+    {
+        final String prefix = artifact.getId() + '|';
+        for (final Iterator<String> iterator = this.misses.keySet().iterator(); iterator.hasNext();)
+        {
+            final String key = iterator.next();
+            if (key.startsWith(prefix))
+            {
+                iterator.remove();
+                this.removed.put(key, Boolean.TRUE);
+                this.modified = true;
+            }
+        }
+    }
+
+    /**
+     * Forgets all misses, so that every artifact is looked up again.
+     */
+    public void clear()
+    {
+        this.misses.clear();
+        this.cleared = true;
+        this.modified = true;
+    }
+
+    /**
+     * Loads the misses (the ones not expired yet) from the given <code>file</code>.
+     *
+     * @param file the stored cache.
+     */
+    public void load(final File file)
+    {
+        this.misses.clear();
+        this.removed.clear();
+        this.cleared = false;
+        if (this.read(file, this.misses))
+        {
+            this.modified = true;
+        }
+    }
+
+    /**
+     * Reads the misses not expired yet from the given <code>file</code>
+     * (none if it can't be read).
+     *
+     * @param file the stored cache.
+     * @param misses receives the misses.
+     * @return true if expired misses were left out.
+     */
+    private boolean read(final File file, final Map<String, Long> misses)
+    {
+        if (!file.isFile())
+        {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        final Map<String, Long> read = new HashMap<String, Long>();
+        boolean expired = false;
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                return false;
+            }
+            final int count = input.readInt();
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                final String key = input.readUTF();
+                final Long time = Long.valueOf(input.readLong());
+                if (this.isExpired(time, now))
+                {
+                    expired = true;
+                }
+                else
+                {
+                    read.put(key, time);
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            return false;
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+        misses.putAll(read);
+        return expired;
+    }
+
+    /**
+     * Stores the misses not expired yet to the given <code>file</code>, if
+     * anything changed since they were loaded, along with the misses other
+     * processes stored there since (unless forgotten here).
+     *
+     * @param file the stored cache.
+     * @throws IOException
+     */
+    public void store(final File file)
+        throws IOException
+    {
+        if (!this.modified)
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Long> iterator = this.misses.values().iterator(); iterator.hasNext();)
+        {
+            if (this.isExpired(iterator.next(), now))
+            {
+                iterator.remove();
+            }
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        // - the file is shared by the processes using the local repository
+        final ProcessLock lock = ProcessLock.acquire(file);
+        try
+        {
+            final Map<String, Long> misses = new HashMap<String, Long>();
+            if (!this.cleared)
+            {
+                this.read(file, misses);
+                misses.keySet().removeAll(this.removed.keySet());
+            }
+            for (final Map.Entry<String, Long> entry : this.misses.entrySet())
+            {
+                final Long stored = misses.get(entry.getKey());
+                if (stored == null || stored.longValue() < entry.getValue().longValue())
+                {
+                    misses.put(entry.getKey(), entry.getValue());
+                }
+            }
+            final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+            final File temporaryFile = new File(file.getPath() + ".tmp");
+            final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(misses.size());
+                for (final Map.Entry<String, Long> entry : misses.entrySet())
+                {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().longValue());
+                }
+            }
+            finally
+            {
+                IOUtil.close(output);
+            }
+            file.delete();
+            if (!temporaryFile.renameTo(file))
+            {
+                throw new IOException("Could not rename " + temporaryFile + " to " + file);
+            }
+            event.commitFileWrite(file);
+        }
+        finally
+        {
+            lock.release();
+        }
+        this.removed.clear();
+        this.cleared = false;
+        this.modified = false;
+    }
+
+    /**
+     * Gets the number of remembered misses.
+     */
+    public int size()
+    {
+        return this.misses.size();
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.AbstractArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.versioning.OverConstrainedVersionException;
+import org.apache.maven.plugin.logging.Log;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+
+/**
+ * Decorates an {@link ArtifactMetadataSource} so that the dependency graph
+ * can be expanded concurrently: {@link #prefetch} walks the graph a level at
+ * a time, retrieving the metadata of all artifacts of a level on a bounded
+ * pool (a retrieval already in flight is waited for rather than repeated),
+ * after which the (unchanged, serial) artifact collector mostly gets its
+ * metadata from memory. Version mediation is still done by the collector, so
+ * the resolved artifacts are the same as without prefetching.
+ * <p>
+ * Only the downloads of the POMs run concurrently, each holding the lock of
+ * the repository it asks (see {@link RepositoryLocks}). The retrievals
+ * themselves run one at a time, holding the locks of all their repositories,
+ * as the Maven project builder isn't safe to use concurrently: it puts the
+ * system properties into the shared container context while activating
+ * profiles, and takes them out after.
+ * </p>
+ * <p>
+ * The metadata of every artifact is retrieved once, in compile scope and
+ * without exclusions, and the dependencies the collector asks for are
+ * derived from that (see {@link MetadataDerivation}).
+ * </p>
+ */
+public class PrefetchingMetadataSource
+    implements ArtifactMetadataSource
+{
+    private final ArtifactMetadataSource source;
+
+    private final ArtifactResolver artifactResolver;
+
+    private final ArtifactFactory artifactFactory;
+
+    private final int threads;
+
+    private final Log logger;
+
+    /**
+     * The (in flight or done) retrievals, keyed by artifact id.
+     */
+    private final ConcurrentMap<String, Future<ResolutionGroup>> retrievals =
+        new ConcurrentHashMap<String, Future<ResolutionGroup>>();
+
+    /**
+     * Held by the retrievals, so that they run one at a time.
+     */
+    private final Lock retrievalLock = new ReentrantLock();
+
+    /**
+     * @param source the metadata source the retrievals are made with.
+     * @param artifactResolver the artifact resolver the POMs are downloaded with.
+     * @param artifactFactory the artifact factory.
+     * @param threads the maximum number of POMs downloaded at once.
+     * @param logger the logger.
+     */
+    public PrefetchingMetadataSource(
+        final ArtifactMetadataSource source,
+        final ArtifactResolver artifactResolver,
+        final ArtifactFactory artifactFactory,
+        final int threads,
+        final Log logger)
+    {
+        this.source = source;
+        this.artifactResolver = artifactResolver;
+        this.artifactFactory = artifactFactory;
+        this.threads = threads;
+        this.logger = logger;
+    }
+
+    /**
+     * Retrieves (concurrently) the metadata of all artifacts the given
+     * <code>artifacts</code> depend on, directly or not.
+     *
+     * @param artifacts the direct dependencies.
+     * @param localRepository the local repository.
+     * @param remoteRepositories the remote repositories.
+     */
+    public void prefetch(
+        final Set artifacts,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+    {
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = ConcurrentUtils.newPool("metadata", this.threads);
+        final Set<String> expanded = new LinkedHashSet<String>();
+        try
+        {
+            List<Node> level = new ArrayList<Node>();
+            for (final Iterator iterator = artifacts.iterator(); iterator.hasNext();)
+            {
+                level.add(new Node((Artifact)iterator.next(), remoteRepositories, true));
+            }
+            while (!level.isEmpty())
+            {
+                // - start the retrievals of the whole level
+                final List<Node> retrieved = new ArrayList<Node>();
+                final List<Future<ResolutionGroup>> futures = new ArrayList<Future<ResolutionGroup>>();
+                for (final Node node : level)
+                {
+                    if (this.isExpandable(node) && expanded.add(node.artifact.getId()))
+                    {
+                        retrieved.add(node);
+                        futures.add(this.submit(node.artifact, localRepository, node.repositories, executor));
+                    }
+                }
+
+                // - and the next level from their results
+                final List<Node> nextLevel = new ArrayList<Node>();
+                for (int ctr = 0; ctr < retrieved.size(); ctr++)
+                {
+                    final Node node = retrieved.get(ctr);
+                    try
+                    {
+                        final ResolutionGroup group = ConcurrentUtils.get(futures.get(ctr));
+                        final ResolutionGroup derived =
+                            MetadataDerivation.derive(this.artifactFactory, node.artifact, group);
+                        if (derived != null)
+                        {
+                            for (final Iterator iterator = derived.getArtifacts().iterator(); iterator.hasNext();)
+                            {
+                                nextLevel.add(new Node((Artifact)iterator.next(), group.getResolutionRepositories(),
+                                    false));
+                            }
+                        }
+                    }
+                    catch (Exception exception)
+                    {
+                        // - left to the collector, which will retrieve it again and report the failure
+                        if (this.logger.isDebugEnabled())
+                        {
+                            this.logger.debug("Could not prefetch the metadata of " + node.artifact, exception);
+                        }
+                    }
+                }
+                level = nextLevel;
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        this.logger.info("Prefetched the metadata of " + expanded.size() + " artifact(s) in "
+            + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Whether the collector expands the given node: optional dependencies
+     * are only expanded when they're direct ones, and ranges need the
+     * available versions first (which is left to the collector).
+     */
+    private boolean isExpandable(final Node node)
+    {
+        if (node.artifact.isOptional() && !node.direct)
+        {
+            return false;
+        }
+        try
+        {
+            return node.artifact.getVersion() != null && node.artifact.isSelectedVersionKnown();
+        }
+        catch (OverConstrainedVersionException exception)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @see org.apache.maven.artifact.metadata.ArtifactMetadataSource#retrieve(org.apache.maven.artifact.Artifact,
+     *      org.apache.maven.artifact.repository.ArtifactRepository, java.util.List)
+     */
+    public ResolutionGroup retrieve(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+        throws ArtifactMetadataRetrievalException
+    {
+        ResolutionGroup group = null;
+        final Future<ResolutionGroup> future = this.retrievals.get(artifact.getId());
+        if (future != null)
+        {
+            try
+            {
+                group = ConcurrentUtils.get(future);
+            }
+            catch (Exception exception)
+            {
+                // - retrieved again below, so that the failure is reported as usual
+            }
+        }
+        else
+        {
+            try
+            {
+                group = ConcurrentUtils.get(this.submit(artifact, localRepository, remoteRepositories, null));
+            }
+            catch (Exception exception)
+            {
+                // - retrieved again below
+            }
+        }
+        final ResolutionGroup derived = MetadataDerivation.derive(this.artifactFactory, artifact, group);
+        return derived != null ? derived : this.source.retrieve(artifact, localRepository, remoteRepositories);
+    }
+
+    /**
+     * @see org.apache.maven.artifact.metadata.ArtifactMetadataSource#retrieveAvailableVersions(org.apache.maven.artifact.Artifact,
+     *      org.apache.maven.artifact.repository.ArtifactRepository, java.util.List)
+     */
+    public List retrieveAvailableVersions(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+        throws ArtifactMetadataRetrievalException
+    {
+        return this.source.retrieveAvailableVersions(artifact, localRepository, remoteRepositories);
+    }
+
+    /**
+     * Starts (unless it already was) retrieving the metadata of the given
+     * <code>artifact</code>, on the <code>executor</code> or, if that's null,
+     * right away.
+     */
+    private Future<ResolutionGroup> submit(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories,
+        final ExecutorService executor)
+    {
+        final String id = artifact.getId();
+        Future<ResolutionGroup> future = this.retrievals.get(id);
+        if (future == null)
+        {
+            final FutureTask<ResolutionGroup> task = new FutureTask<ResolutionGroup>(new Callable<ResolutionGroup>()
+            {
+                public ResolutionGroup call()
+                    throws Exception
+                {
+                    return PrefetchingMetadataSource.this.retrieveUnfiltered(
+                        artifact, localRepository, remoteRepositories);
+                }
+            });
+            future = this.retrievals.putIfAbsent(id, task);
+            if (future == null)
+            {
+                future = task;
+                if (executor != null)
+                {
+                    executor.execute(task);
+                }
+                else
+                {
+                    task.run();
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Retrieves the metadata of the given <code>artifact</code> in compile scope
+     * and without exclusions.
+     *
+     * @return the metadata or null if it can't be reused for other scopes
+     *         (i.e. because the artifact was relocated).
+     */
+    private ResolutionGroup retrieveUnfiltered(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+        throws ArtifactMetadataRetrievalException
+    {
+        final Artifact probe = MetadataDerivation.createProbe(this.artifactFactory, artifact);
+        final String id = probe.getId();
+        this.download(probe, localRepository, remoteRepositories);
+        final ResolutionGroup group;
+        this.retrievalLock.lock();
+        try
+        {
+            final List<Lock> locks = RepositoryLocks.instance().lock(remoteRepositories);
+            try
+            {
+                group = this.source.retrieve(probe, localRepository, remoteRepositories);
+            }
+            finally
+            {
+                RepositoryLocks.instance().unlock(locks);
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new ArtifactMetadataRetrievalException("Interrupted retrieving the metadata of " + artifact,
+                exception);
+        }
+        finally
+        {
+            this.retrievalLock.unlock();
+        }
+        return id.equals(probe.getId()) ? group : null;
+    }
+
+    /**
+     * Downloads the POM of the given <code>artifact</code> into the local
+     * repository, unless it is there already, so that its retrieval finds it
+     * there. A POM that can't be downloaded is left to the retrieval, which
+     * reports the failure.
+     */
+    private void download(
+        final Artifact artifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories)
+    {
+        final Artifact pom = this.artifactFactory.createProjectArtifact(
+            artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+        try
+        {
+            RepositoryLocks.instance().resolve(this.artifactResolver, pom, remoteRepositories, localRepository);
+        }
+        catch (AbstractArtifactResolutionException exception)
+        {
+            if (this.logger.isDebugEnabled())
+            {
+                this.logger.debug("Could not download the POM of " + artifact, exception);
+            }
+        }
+    }
+
+    /**
+     * An artifact of the graph being prefetched.
+     */
+    private static class Node
+    {
+        private final Artifact artifact;
+
+        private final List repositories;
+
+        private final boolean direct;
+
+        Node(final Artifact artifact, final List repositories, final boolean direct)
+        {
+            this.artifact = artifact;
+            this.repositories = repositories;
+            this.direct = direct;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+
+/**
+ * Serializes the resolutions from every remote repository. The artifact
+ * resolver and the wagon manager of maven 2.0.7 aren't meant to be used
+ * concurrently (they share their transfer listeners and update the files of
+ * the local repository without any locking), so resolutions on several
+ * threads only ever ask different repositories at the same time.
+ * <p>
+ * A release is resolved from one repository at a time, holding only the
+ * lock of the repository being asked, so that concurrent resolutions spread
+ * over the repositories rather than queue up behind the first one. Snapshots
+ * and the latest or release versions are resolved from the metadata of every
+ * repository, so they hold the locks of all of them.
+ * </p>
+ * <p>
+ * The locks of the repositories of a resolution are taken in the order of
+ * their urls, so that resolutions asking several repositories can't deadlock.
+ * </p>
+ */
+public class RepositoryLocks
+{
+    private static final RepositoryLocks instance = new RepositoryLocks();
+
+    /**
+     * The lock of every repository, keyed by repository url.
+     */
+    private final ConcurrentMap<String, Lock> locks = new ConcurrentHashMap<String, Lock>();
+
+    /**
+     * Gets the locks shared by every resolver of the build.
+     *
+     * @return the shared instance.
+     */
+    public static RepositoryLocks instance()
+    {
+        return instance;
+    }
+
+    /**
+     * Resolves the given <code>artifact</code> with the artifact
+     * <code>resolver</code>, holding the locks of the repositories asked. A
+     * release already in the local repository is resolved without asking any
+     * repository, and so without any lock.
+     *
+     * @param resolver the artifact resolver.
+     * @param artifact the artifact to resolve.
+     * @param remoteRepositories the remote repositories, in the order to ask them.
+     * @param localRepository the local repository.
+     * @throws ArtifactResolutionException if a repository failed, or if interrupted.
+     * @throws ArtifactNotFoundException if no repository had the artifact.
+     */
+    public void resolve(
+        final ArtifactResolver resolver,
+        final Artifact artifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository)
+        throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        if (remoteRepositories.isEmpty() || Artifact.SCOPE_SYSTEM.equals(artifact.getScope()) ||
+            (isRelease(artifact) && new File(localRepository.getBasedir(), localRepository.pathOf(artifact)).exists()))
+        {
+            resolver.resolve(artifact, remoteRepositories, localRepository);
+        }
+        else if (!isRelease(artifact))
+        {
+            this.resolveLocked(resolver, artifact, remoteRepositories, localRepository);
+        }
+        else
+        {
+            ArtifactResolutionException failure = null;
+            for (final Object repository : remoteRepositories)
+            {
+                try
+                {
+                    this.resolveLocked(resolver, artifact, Collections.singletonList(repository), localRepository);
+                    return;
+                }
+                catch (final ArtifactNotFoundException exception)
+                {
+                    // - asking the next repository
+                }
+                catch (final ArtifactResolutionException exception)
+                {
+                    if (Thread.currentThread().isInterrupted())
+                    {
+                        throw exception;
+                    }
+                    failure = exception;
+                }
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+            throw new ArtifactNotFoundException(
+                "Could not find the artifact in any of the " + remoteRepositories.size() + " repositories",
+                artifact);
+        }
+    }
+
+    /**
+     * Locks the given <code>repositories</code>, waiting for the resolutions
+     * asking any of them to complete.
+     *
+     * @param repositories the remote repositories.
+     * @return the locks taken, to be passed on to {@link #unlock(List)}.
+     * @throws InterruptedException if interrupted while waiting, no lock taken.
+     */
+    public List<Lock> lock(final List repositories)
+        throws InterruptedException
+    {
+        final SortedSet<String> urls = new TreeSet<String>();
+        for (final Object repository : repositories)
+        {
+            urls.add(((ArtifactRepository)repository).getUrl());
+        }
+        final List<Lock> taken = new ArrayList<Lock>(urls.size());
+        try
+        {
+            for (final String url : urls)
+            {
+                final Lock lock = this.getLock(url);
+                lock.lockInterruptibly();
+                taken.add(lock);
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            this.unlock(taken);
+            throw exception;
+        }
+        return taken;
+    }
+
+    /**
+     * Releases the given <code>locks</code>, in the reverse order they were
+     * taken in.
+     *
+     * @param locks the locks returned by {@link #lock(List)}.
+     */
+    public void unlock(final List<Lock> locks)
+    {
+        for (final ListIterator<Lock> iterator = locks.listIterator(locks.size()); iterator.hasPrevious();)
+        {
+            iterator.previous().unlock();
+        }
+    }
+
+    private void resolveLocked(
+        final ArtifactResolver resolver,
+        final Artifact artifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository)
+        throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        final List<Lock> taken;
+        try
+        {
+            taken = this.lock(remoteRepositories);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new ArtifactResolutionException("Interrupted resolving the artifact", artifact, exception);
+        }
+        try
+        {
+            resolver.resolve(artifact, remoteRepositories, localRepository);
+        }
+        finally
+        {
+            this.unlock(taken);
+        }
+    }
+
+    /**
+     * Tells whether the given <code>artifact</code> is a fixed release,
+     * resolved from the first repository having it without looking at any
+     * metadata.
+     */
+    private static boolean isRelease(final Artifact artifact)
+    {
+        final String version = artifact.getVersion();
+        return version != null && !artifact.isSnapshot() && !Artifact.LATEST_VERSION.equals(version) &&
+            !Artifact.RELEASE_VERSION.equals(version);
+    }
+
+    private Lock getLock(final String url)
+    {
+        Lock lock = this.locks.get(url);
+        if (lock == null)
+        {
+            final Lock newLock = new ReentrantLock();
+            lock = this.locks.putIfAbsent(url, newLock);
+            if (lock == null)
+            {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+}
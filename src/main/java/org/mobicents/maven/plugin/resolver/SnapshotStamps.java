@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Tells when a snapshot changed, from the metadata of its version directory
+ * in the local repository: <code>maven-metadata-local.xml</code> (updated when
+ * it's installed) and <code>maven-metadata-&lt;repository&gt;.xml</code>
+ * (updated when it's downloaded). The stamp of a snapshot is built from the
+ * <code>lastUpdated</code> and the snapshot timestamp and build number of each
+ * of these, so it changes whenever a new snapshot lands in the local
+ * repository, and anything resolved for the snapshot is only kept for as long
+ * as the stamp stays the same.
+ * <p>
+ * A metadata file is only parsed again once its modification time or size
+ * changed.
+ * </p>
+ */
+public class SnapshotStamps
+{
+    private static final String METADATA_PREFIX = "maven-metadata-";
+
+    private static final String METADATA_SUFFIX = ".xml";
+
+    /**
+     * The stamps of the metadata files parsed, keyed by file.
+     */
+    private final Map<File, FileStamp> fileStamps = new ConcurrentHashMap<File, FileStamp>();
+
+    /**
+     * Gets the stamp of the given <code>artifact</code>.
+     *
+     * @param artifact the artifact.
+     * @param localRepository the local repository.
+     * @return the stamp, null if it's not a snapshot.
+     */
+    public String getStamp(final Artifact artifact, final ArtifactRepository localRepository)
+    {
+        if (!artifact.isSnapshot())
+        {
+            return null;
+        }
+        final File directory = new File(localRepository.getBasedir(), localRepository.pathOf(artifact))
+            .getParentFile();
+        final File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return "";
+        }
+        Arrays.sort(files);
+        final StringBuffer stamp = new StringBuffer();
+        for (int index = 0; index < files.length; index++)
+        {
+            final File file = files[index];
+            final String name = file.getName();
+            if (name.startsWith(METADATA_PREFIX) && name.endsWith(METADATA_SUFFIX))
+            {
+                stamp.append(name).append('=').append(this.getFileStamp(file)).append(';');
+            }
+        }
+        return stamp.toString();
+    }
+
+    /**
+     * Gets the stamp of a metadata file, parsing it unless it's unchanged
+     * since last parsed.
+     */
+    private String getFileStamp(final File file)
+    {
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        final FileStamp cached = this.fileStamps.get(file);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length)
+        {
+            return cached.stamp;
+        }
+        final String stamp = readStamp(file, lastModified);
+        this.fileStamps.put(file, new FileStamp(lastModified, length, stamp));
+        return stamp;
+    }
+
+    /**
+     * Reads the <code>lastUpdated</code> and snapshot version of a metadata
+     * file, its modification time if it can't be read.
+     */
+    private static String readStamp(final File file, final long lastModified)
+    {
+        Reader reader = null;
+        try
+        {
+            reader = new FileReader(file);
+            final Metadata metadata = new MetadataXpp3Reader().read(reader, false);
+            final Versioning versioning = metadata.getVersioning();
+            if (versioning == null)
+            {
+                return "";
+            }
+            final StringBuffer stamp = new StringBuffer(String.valueOf(versioning.getLastUpdated()));
+            final Snapshot snapshot = versioning.getSnapshot();
+            if (snapshot != null)
+            {
+                stamp.append('/').append(snapshot.getTimestamp()).append('-').append(snapshot.getBuildNumber());
+            }
+            return stamp.toString();
+        }
+        catch (Exception exception)
+        {
+            return String.valueOf(lastModified);
+        }
+        finally
+        {
+            IOUtil.close(reader);
+        }
+    }
+
+    /**
+     * The stamp of a metadata file, along with what it was parsed from.
+     */
+    private static class FileStamp
+    {
+        final long lastModified;
+
+        final long length;
+
+        final String stamp;
+
+        FileStamp(final long lastModified, final long length, final String stamp)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.stamp = stamp;
+        }
+    }
+}
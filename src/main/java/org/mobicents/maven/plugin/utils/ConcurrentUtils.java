@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contains utilities for running plugin work concurrently.
+ */
+public class ConcurrentUtils
+{
+    /**
+     * The default number of worker threads, one per available core.
+     */
+    public static int defaultThreads()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates a fixed size pool of daemon threads, so a pool that is never shut
+     * down can't keep the Maven JVM alive.
+     *
+     * @param name the prefix of the thread names.
+     * @param threads the number of threads.
+     * @return the new executor.
+     */
+    public static ExecutorService newPool(final String name, final int threads)
+    {
+        return Executors.newFixedThreadPool(Math.max(1, threads), newThreadFactory(name));
+    }
+
+    /**
+     * Creates an unbounded pool of daemon threads, for tasks that may be
+     * abandoned while still running (and so must not hold up the others).
+     *
+     * @param name the prefix of the thread names.
+     * @return the new executor.
+     */
+    public static ExecutorService newCachedPool(final String name)
+    {
+        return Executors.newCachedThreadPool(newThreadFactory(name));
+    }
+
+    private static ThreadFactory newThreadFactory(final String name)
+    {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory()
+        {
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Runs all <code>tasks</code> on a pool of <code>threads</code> and returns
+     * their results in task order.
+     *
+     * @param name the prefix of the worker thread names.
+     * @param tasks the tasks to run.
+     * @param threads the maximum number of threads to use.
+     * @return the task results.
+     * @throws Exception the first failure of any task.
+     */
+    public static <T> List<T> invokeAll(final String name, final List<? extends Callable<T>> tasks, final int threads)
+        throws Exception
+    {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.isEmpty())
+        {
+            return results;
+        }
+        final ExecutorService executor = newPool(name, Math.min(threads, tasks.size()));
+        try
+        {
+            final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (final Callable<T> task : tasks)
+            {
+                futures.add(executor.submit(task));
+            }
+            for (final Future<T> future : futures)
+            {
+                results.add(get(future));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Waits for the given <code>future</code>, unwrapping the cause of any
+     * execution failure.
+     */
+    public static <T> T get(final Future<T> future)
+        throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException exception)
+        {
+            final Throwable cause = exception.getCause();
+            if (cause instanceof Exception)
+            {
+                throw (Exception)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw exception;
+        }
+    }
+}
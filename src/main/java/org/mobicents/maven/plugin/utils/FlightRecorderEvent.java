@@ -0,0 +1,377 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+
+/**
+ * An event of the plugin recorded by the JDK Flight Recorder, so that the
+ * discovery of the POMs, the project builds, the artifact resolutions and the
+ * file writes show in the recordings taken of the build, on the same timeline
+ * as the GC and I/O events. The event types are defined at runtime through
+ * <code>jdk.jfr.EventFactory</code> (by reflection, the plugin targeting JVMs
+ * without it): on such a JVM, and whenever no recording enables them, an event
+ * is a shared no-op and its values aren't even computed.
+ * <p>
+ * An event is begun where the work starts and committed (with its values) where
+ * it ends:
+ * <pre>
+ * final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+ * ... write the file ...
+ * event.commitFileWrite(file);
+ * </pre>
+ * </p>
+ */
+public class FlightRecorderEvent
+{
+    private static final String NAME_PREFIX = "org.mobicents.maven.eclipse.";
+
+    private static final String[] CATEGORY = {"Maven", "Mobicents Eclipse Plugin"};
+
+    private static final EventType POM_DISCOVERY = EventType.define(
+        "PomDiscovery", "POM Discovery", "Finds the POMs of the modules",
+        new String[] {"directory", "poms"},
+        new Class[] {String.class, int.class});
+
+    private static final EventType PROJECT_BUILD = EventType.define(
+        "ProjectBuild", "Project Build", "Builds (or restores) the project of a POM",
+        new String[] {"pom", "cached"},
+        new Class[] {String.class, boolean.class});
+
+    private static final EventType ARTIFACT_RESOLUTION = EventType.define(
+        "ArtifactResolution", "Artifact Resolution", "Resolves the file of an artifact",
+        new String[] {"artifact", "repository", "outcome"},
+        new Class[] {String.class, String.class, String.class});
+
+    private static final EventType FILE_WRITE = EventType.define(
+        "FileWrite", "File Write", "Writes a generated file or a cache",
+        new String[] {"path", "size"},
+        new Class[] {String.class, long.class});
+
+    /**
+     * The event begun when nothing is recorded.
+     */
+    private static final FlightRecorderEvent DISABLED = new FlightRecorderEvent(null);
+
+    /**
+     * The <code>jdk.jfr.Event</code>, null if not recorded.
+     */
+    private final Object event;
+
+    private FlightRecorderEvent(final Object event)
+    {
+        this.event = event;
+    }
+
+    /**
+     * Begins the discovery of the POMs.
+     *
+     * @return the event.
+     */
+    public static FlightRecorderEvent pomDiscovery()
+    {
+        return POM_DISCOVERY.begin();
+    }
+
+    /**
+     * Begins the build of a project.
+     *
+     * @return the event.
+     */
+    public static FlightRecorderEvent projectBuild()
+    {
+        return PROJECT_BUILD.begin();
+    }
+
+    /**
+     * Begins the resolution of an artifact.
+     *
+     * @return the event.
+     */
+    public static FlightRecorderEvent artifactResolution()
+    {
+        return ARTIFACT_RESOLUTION.begin();
+    }
+
+    /**
+     * Begins the write of a file.
+     *
+     * @return the event.
+     */
+    public static FlightRecorderEvent fileWrite()
+    {
+        return FILE_WRITE.begin();
+    }
+
+    /**
+     * Commits a {@link #pomDiscovery()}.
+     *
+     * @param directory the directory the POMs were searched in.
+     * @param poms the number of POMs found.
+     */
+    public void commitPomDiscovery(final File directory, final int poms)
+    {
+        if (this.event != null)
+        {
+            this.commit(String.valueOf(directory), Integer.valueOf(poms));
+        }
+    }
+
+    /**
+     * Commits a {@link #projectBuild()}.
+     *
+     * @param pom the POM of the project.
+     * @param cached whether the project was restored rather than built.
+     */
+    public void commitProjectBuild(final File pom, final boolean cached)
+    {
+        if (this.event != null)
+        {
+            this.commit(pom.getPath(), Boolean.valueOf(cached));
+        }
+    }
+
+    /**
+     * Commits an {@link #artifactResolution()}.
+     *
+     * @param artifact the artifact.
+     * @param repositories the remote repositories it was resolved from, null if
+     *        it wasn't looked for remotely.
+     * @param outcome how the resolution ended.
+     */
+    public void commitArtifactResolution(final Artifact artifact, final List repositories, final String outcome)
+    {
+        if (this.event != null)
+        {
+            final String repository;
+            if (artifact.getRepository() != null)
+            {
+                repository = artifact.getRepository().getId();
+            }
+            else if (repositories == null)
+            {
+                repository = "local";
+            }
+            else
+            {
+                final StringBuffer ids = new StringBuffer();
+                for (final Iterator iterator = repositories.iterator(); iterator.hasNext();)
+                {
+                    ids.append(ids.length() > 0 ? "," : "").append(((ArtifactRepository)iterator.next()).getId());
+                }
+                repository = ids.toString();
+            }
+            this.commit(artifact.getId(), repository, outcome);
+        }
+    }
+
+    /**
+     * Commits a {@link #fileWrite()}.
+     *
+     * @param file the file written.
+     */
+    public void commitFileWrite(final File file)
+    {
+        if (this.event != null)
+        {
+            this.commit(file.getPath(), Long.valueOf(file.length()));
+        }
+    }
+
+    private void commit(final Object... values)
+    {
+        try
+        {
+            for (int index = 0; index < values.length; index++)
+            {
+                Jfr.SET.invoke(this.event, Integer.valueOf(index), values[index]);
+            }
+            Jfr.COMMIT.invoke(this.event);
+        }
+        catch (final Exception exception)
+        {
+            // - a lost event never fails the build
+        }
+    }
+
+    /**
+     * An event type, defined (and registered with the flight recorder) when the
+     * class is loaded.
+     */
+    private static class EventType
+    {
+        /**
+         * The <code>jdk.jfr.EventFactory</code>, null if there's no flight recorder.
+         */
+        private final Object factory;
+
+        /**
+         * The <code>jdk.jfr.EventType</code>, null if there's no flight recorder.
+         */
+        private final Object type;
+
+        private EventType(final Object factory, final Object type)
+        {
+            this.factory = factory;
+            this.type = type;
+        }
+
+        static EventType define(
+            final String name,
+            final String label,
+            final String description,
+            final String[] fieldNames,
+            final Class[] fieldTypes)
+        {
+            if (Jfr.CREATE == null)
+            {
+                return new EventType(null, null);
+            }
+            try
+            {
+                final List<Object> annotations = new ArrayList<Object>();
+                annotations.add(Jfr.newAnnotation("jdk.jfr.Name", NAME_PREFIX + name));
+                annotations.add(Jfr.newAnnotation("jdk.jfr.Label", label));
+                annotations.add(Jfr.newAnnotation("jdk.jfr.Description", description));
+                annotations.add(Jfr.newAnnotation("jdk.jfr.Category", CATEGORY));
+                final List<Object> fields = new ArrayList<Object>();
+                for (int index = 0; index < fieldNames.length; index++)
+                {
+                    fields.add(Jfr.VALUE_DESCRIPTOR.newInstance(fieldTypes[index], fieldNames[index],
+                        Collections.singletonList(Jfr.newAnnotation("jdk.jfr.Label", fieldNames[index]))));
+                }
+                final Object factory = Jfr.CREATE.invoke(null, annotations, fields);
+                return new EventType(factory, Jfr.GET_EVENT_TYPE.invoke(factory));
+            }
+            catch (final Exception exception)
+            {
+                return new EventType(null, null);
+            }
+        }
+
+        FlightRecorderEvent begin()
+        {
+            if (this.type == null)
+            {
+                return DISABLED;
+            }
+            try
+            {
+                if (!((Boolean)Jfr.IS_ENABLED.invoke(this.type)).booleanValue())
+                {
+                    return DISABLED;
+                }
+                final Object event = Jfr.NEW_EVENT.invoke(this.factory);
+                Jfr.BEGIN.invoke(event);
+                return new FlightRecorderEvent(event);
+            }
+            catch (final Exception exception)
+            {
+                return DISABLED;
+            }
+        }
+    }
+
+    /**
+     * The reflected flight recorder API, all null if it isn't available.
+     */
+    private static class Jfr
+    {
+        static final Method CREATE;
+
+        static final Method GET_EVENT_TYPE;
+
+        static final Method NEW_EVENT;
+
+        static final Method IS_ENABLED;
+
+        static final Method BEGIN;
+
+        static final Method SET;
+
+        static final Method COMMIT;
+
+        static final Constructor ANNOTATION_ELEMENT;
+
+        static final Constructor VALUE_DESCRIPTOR;
+
+        static
+        {
+            Method[] methods = new Method[7];
+            Constructor[] constructors = new Constructor[2];
+            try
+            {
+                final Class factoryClass = load("jdk.jfr.EventFactory");
+                final Class eventClass = load("jdk.jfr.Event");
+                methods = new Method[] {
+                    factoryClass.getMethod("create", List.class, List.class),
+                    factoryClass.getMethod("getEventType"),
+                    factoryClass.getMethod("newEvent"),
+                    load("jdk.jfr.EventType").getMethod("isEnabled"),
+                    eventClass.getMethod("begin"),
+                    eventClass.getMethod("set", int.class, Object.class),
+                    eventClass.getMethod("commit")};
+                constructors = new Constructor[] {
+                    load("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class),
+                    load("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class)};
+            }
+            catch (final Throwable throwable)
+            {
+                // - a JVM without the jdk.jfr API
+                Arrays.fill(methods, null);
+                Arrays.fill(constructors, null);
+            }
+            CREATE = methods[0];
+            GET_EVENT_TYPE = methods[1];
+            NEW_EVENT = methods[2];
+            IS_ENABLED = methods[3];
+            BEGIN = methods[4];
+            SET = methods[5];
+            COMMIT = methods[6];
+            ANNOTATION_ELEMENT = constructors[0];
+            VALUE_DESCRIPTOR = constructors[1];
+        }
+
+        static Object newAnnotation(final String annotationClassName, final Object value)
+            throws Exception
+        {
+            return ANNOTATION_ELEMENT.newInstance(load(annotationClassName), value);
+        }
+
+        private static Class load(final String className)
+            throws ClassNotFoundException
+        {
+            return Class.forName(className, true, ClassLoader.getSystemClassLoader());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the entry names of a jar straight from its ZIP central directory.
+ * The directory is memory mapped and no entry is ever inflated, which makes
+ * listing a jar roughly as cheap as a couple of page faults.
+ */
+public class JarCentralDirectory
+{
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Lists the names of all entries (files and directories) of the given
+     * <code>jar</code>, in central directory order.
+     *
+     * @param jar the jar to read.
+     * @return the entry names.
+     * @throws IOException if the file can't be read or isn't a ZIP archive (a
+     *         length or offset pointing out of the archive included).
+     */
+    public static List<String> readEntryNames(final File jar)
+        throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(jar, "r");
+        try
+        {
+            final FileChannel channel = file.getChannel();
+            final long size = channel.size();
+            if (size < END_OF_CENTRAL_DIRECTORY_SIZE)
+            {
+                throw new IOException("Not a ZIP archive: " + jar);
+            }
+
+            // - the end of central directory record sits within the last 64k (+ record size) of the file
+            final long tailStart = Math.max(0, size - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+            final ByteBuffer tail = map(channel, tailStart, size - tailStart);
+            int end = -1;
+            for (int position = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--)
+            {
+                if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY)
+                {
+                    end = position;
+                    break;
+                }
+            }
+            if (end < 0)
+            {
+                throw new IOException("No central directory found in " + jar);
+            }
+
+            long entries = tail.getShort(end + 10) & 0xFFFF;
+            long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long directoryEnd = tailStart + end;
+            if (entries == 0xFFFF || directorySize == 0xFFFFFFFFL)
+            {
+                // - ZIP64, the real values live in the zip64 end of central directory record
+                final int locator = end - ZIP64_LOCATOR_SIZE;
+                if (locator < 0 || tail.getInt(locator) != ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR)
+                {
+                    throw new IOException("Corrupt ZIP64 archive: " + jar);
+                }
+                final long zip64End = tail.getLong(locator + 8);
+                if (zip64End < 0 || zip64End > size - ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE)
+                {
+                    throw new IOException("Corrupt ZIP64 archive: " + jar);
+                }
+                final ByteBuffer zip64 = map(channel, zip64End, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+                if (zip64.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY)
+                {
+                    throw new IOException("Corrupt ZIP64 archive: " + jar);
+                }
+                entries = zip64.getLong(32);
+                directorySize = zip64.getLong(40);
+                directoryEnd = zip64End;
+            }
+
+            // - computed from the end rather than the stored offset so that archives
+            //   with a prefix (i.e. self extracting ones) are read correctly too
+            // - a single mapping can't exceed 2 GB, far more than any real directory
+            final long directoryStart = directoryEnd - directorySize;
+            if (directorySize < 0 || directorySize > Integer.MAX_VALUE || directoryStart < 0
+                || entries < 0 || entries > Integer.MAX_VALUE)
+            {
+                throw new IOException("Corrupt central directory in " + jar);
+            }
+            final ByteBuffer directory = map(channel, directoryStart, directorySize);
+            final List<String> names = new ArrayList<String>((int)entries);
+            byte[] nameBytes = new byte[256];
+            int position = 0;
+            while (position + CENTRAL_DIRECTORY_HEADER_SIZE <= directory.limit()
+                && directory.getInt(position) == CENTRAL_DIRECTORY_HEADER)
+            {
+                final int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                final int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                final int next = position + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+                if (next > directory.limit())
+                {
+                    throw new IOException("Corrupt central directory in " + jar + " (entry at " + position
+                        + " overruns the directory)");
+                }
+                if (nameLength > nameBytes.length)
+                {
+                    nameBytes = new byte[nameLength];
+                }
+                directory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+                directory.get(nameBytes, 0, nameLength);
+                names.add(decode(nameBytes, nameLength));
+                position = next;
+            }
+            return names;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /**
+     * Maps the given region of the channel read only and little endian
+     * (as all ZIP structures are).
+     */
+    private static ByteBuffer map(final FileChannel channel, final long position, final long length)
+        throws IOException
+    {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Decodes an entry name, taking a shortcut for the (by far most common)
+     * pure ASCII names.
+     */
+    private static String decode(final byte[] bytes, final int length)
+    {
+        final char[] chars = new char[length];
+        for (int ctr = 0; ctr < length; ctr++)
+        {
+            final byte value = bytes[ctr];
+            if (value < 0)
+            {
+                return UTF8.decode(ByteBuffer.wrap(bytes, 0, length)).toString();
+            }
+            chars[ctr] = (char)value;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Caches the entry names of jars, keyed by path and validated against the
+ * size and modification time of the file, so that every classpath analysis
+ * lists a given jar only once.
+ * <p>
+ * The cache can be stored to (and loaded from) a compact binary file shared by
+ * all runs and reactors: the names of each jar are front coded (each name only
+ * stores what differs from the previous one) and only decoded when the jar is
+ * actually asked for. Jars that are new or changed since are re-read lazily.
+ * </p>
+ */
+public class JarIndexCache
+{
+    /**
+     * The shared instance of this class.
+     */
+    private static final JarIndexCache instance = new JarIndexCache();
+
+    /**
+     * Retrieves the shared instance of this class.
+     *
+     * @return the shared instance.
+     */
+    public static JarIndexCache instance()
+    {
+        return instance;
+    }
+
+    private static final int MAGIC = 0x4D454A49;
+
+    private static final int VERSION = 1;
+
+    private final ConcurrentMap<File, Entry> entries = new ConcurrentHashMap<File, Entry>();
+
+    /**
+     * Whether entries were added since the last load or store.
+     */
+    private volatile boolean modified;
+
+    /**
+     * Gets the entry names of the given <code>jar</code>, reading its central
+     * directory only if it isn't cached yet or has changed since.
+     *
+     * @param jar the jar.
+     * @return the (unmodifiable) entry names.
+     * @throws IOException
+     */
+    public List<String> getEntries(final File jar)
+        throws IOException
+    {
+        final long size = jar.length();
+        final long lastModified = jar.lastModified();
+        final Entry cached = this.entries.get(jar);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified)
+        {
+            return cached.getNames();
+        }
+        final Entry entry = new Entry(
+                size,
+                lastModified,
+                Collections.unmodifiableList(JarCentralDirectory.readEntryNames(jar)));
+        this.entries.put(jar, entry);
+        this.modified = true;
+        return entry.getNames();
+    }
+
+    /**
+     * Loads the entries stored in the given <code>file</code>, entries already in
+     * memory take precedence. A missing, outdated or corrupt file is ignored.
+     *
+     * @param file the cache file.
+     */
+    public void load(final File file)
+    {
+        if (!file.isFile())
+        {
+            return;
+        }
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                return;
+            }
+            final int count = input.readInt();
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                final File jar = new File(input.readUTF());
+                final long size = input.readLong();
+                final long lastModified = input.readLong();
+                final byte[] encoded = new byte[input.readInt()];
+                input.readFully(encoded);
+                this.entries.putIfAbsent(jar, new Entry(size, lastModified, encoded));
+            }
+        }
+        catch (IOException exception)
+        {
+            // - a broken cache is just rebuilt
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Stores all entries of jars that still exist to the given
+     * <code>file</code>, if anything changed since it was loaded. The file is
+     * shared by the processes using the local repository: it's locked (see
+     * {@link ProcessLock}) and what they stored since it was loaded is merged
+     * in before it's replaced, atomically so readers never see a partial cache.
+     *
+     * @param file the cache file.
+     * @throws IOException
+     */
+    public void store(final File file)
+        throws IOException
+    {
+        if (!this.modified && file.isFile())
+        {
+            return;
+        }
+        final File directory = file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        final ProcessLock lock = ProcessLock.acquire(file);
+        try
+        {
+            this.load(file);
+            final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+            final File temporary = new File(directory, file.getName() + '.' + System.nanoTime() + ".tmp");
+            final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 65536));
+            try
+            {
+                final List<Map.Entry<File, Entry>> stored = new ArrayList<Map.Entry<File, Entry>>();
+                for (final Map.Entry<File, Entry> entry : this.entries.entrySet())
+                {
+                    if (entry.getKey().isFile())
+                    {
+                        stored.add(entry);
+                    }
+                }
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(stored.size());
+                for (final Map.Entry<File, Entry> entry : stored)
+                {
+                    final Entry value = entry.getValue();
+                    final byte[] encoded = value.getEncoded();
+                    output.writeUTF(entry.getKey().getPath());
+                    output.writeLong(value.size);
+                    output.writeLong(value.lastModified);
+                    output.writeInt(encoded.length);
+                    output.write(encoded);
+                }
+            }
+            finally
+            {
+                IOUtil.close(output);
+            }
+            file.delete();
+            if (!temporary.renameTo(file))
+            {
+                temporary.delete();
+                throw new IOException("Could not rename " + temporary + " to " + file);
+            }
+            event.commitFileWrite(file);
+        }
+        finally
+        {
+            lock.release();
+        }
+        this.modified = false;
+    }
+
+    /**
+     * Gets the number of cached jars.
+     */
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Clears out any cached jar.
+     */
+    public void clear()
+    {
+        this.entries.clear();
+        this.modified = false;
+    }
+
+    /**
+     * The listing of one jar, either decoded or still in its stored form.
+     */
+    private static class Entry
+    {
+        final long size;
+
+        final long lastModified;
+
+        private volatile List<String> names;
+
+        private volatile byte[] encoded;
+
+        Entry(final long size, final long lastModified, final List<String> names)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.names = names;
+        }
+
+        Entry(final long size, final long lastModified, final byte[] encoded)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.encoded = encoded;
+        }
+
+        List<String> getNames()
+            throws IOException
+        {
+            if (this.names == null)
+            {
+                this.names = Collections.unmodifiableList(decode(this.encoded));
+            }
+            return this.names;
+        }
+
+        byte[] getEncoded()
+            throws IOException
+        {
+            if (this.encoded == null)
+            {
+                this.encoded = encode(this.names);
+            }
+            return this.encoded;
+        }
+    }
+
+    /**
+     * Front codes the names: the length of the prefix shared with the previous
+     * name followed by the remaining suffix.
+     */
+    static byte[] encode(final List<String> names)
+        throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(names.size() * 16);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(names.size());
+        String previous = "";
+        for (final String name : names)
+        {
+            final int limit = Math.min(Math.min(previous.length(), name.length()), 0xFFFF);
+            int prefix = 0;
+            while (prefix < limit && previous.charAt(prefix) == name.charAt(prefix))
+            {
+                prefix++;
+            }
+            output.writeShort(prefix);
+            output.writeUTF(name.substring(prefix));
+            previous = name;
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<String> decode(final byte[] encoded)
+        throws IOException
+    {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(encoded));
+        final int count = input.readInt();
+        final List<String> names = new ArrayList<String>(count);
+        String previous = "";
+        for (int ctr = 0; ctr < count; ctr++)
+        {
+            final int prefix = input.readUnsignedShort();
+            final String name = previous.substring(0, prefix) + input.readUTF();
+            names.add(name);
+            previous = name;
+        }
+        return names;
+    }
+}
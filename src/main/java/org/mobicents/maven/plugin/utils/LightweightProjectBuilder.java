@@ -0,0 +1,676 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Builds projects from POMs read by {@link PomReader}, applying the parent
+ * inheritance, dependency management and interpolation that matter to the
+ * Eclipse writers. That's a lot cheaper than the full Maven project builder,
+ * which is why it's tried first, but it only knows part of the model, so
+ * whenever a POM or any of its parents uses something it can't reproduce
+ * faithfully (a profile, a parent that's neither in the tree nor in the local
+ * repository, repositories, an expression it can't resolve, a dependency
+ * without a version) it gives up and the full builder has to be used. It
+ * can't be used at all when profiles may come from outside the POMs, see
+ * {@link #isApplicable(Settings, MavenProject)}.
+ */
+public class LightweightProjectBuilder
+{
+    private final ArtifactFactory artifactFactory;
+
+    private final ArtifactRepository localRepository;
+
+    private final List remoteRepositories;
+
+    private final Properties executionProperties;
+
+    private final Log logger;
+
+    /**
+     * The POMs read so far (parents are shared by many modules).
+     */
+    private final Map<File, PomReader.Pom> poms = new ConcurrentHashMap<File, PomReader.Pom>();
+
+    /**
+     * How deep parent POMs are looked up at most.
+     */
+    private static final int MAXIMUM_PARENTS = 32;
+
+    public LightweightProjectBuilder(
+        final ArtifactFactory artifactFactory,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories,
+        final Properties executionProperties,
+        final Log logger)
+    {
+        this.artifactFactory = artifactFactory;
+        this.localRepository = localRepository;
+        this.remoteRepositories = remoteRepositories;
+        this.executionProperties = executionProperties != null ? executionProperties : new Properties();
+        this.logger = logger;
+    }
+
+    /**
+     * Tells whether projects can be built without missing a profile that
+     * doesn't come from their POMs: that's not the case when the settings
+     * declare profiles (they may be active, by their activation or by the
+     * active profiles, and add properties or repositories) or when the
+     * execution activated profiles (with <code>-P</code>), as seen on the
+     * root project built by Maven.
+     *
+     * @param settings the settings, may be null.
+     * @param rootProject the project Maven built for the execution, may be null.
+     * @return true if the builder can be used.
+     */
+    public static boolean isApplicable(final Settings settings, final MavenProject rootProject)
+    {
+        if (settings != null && (!settings.getProfiles().isEmpty() || !settings.getActiveProfiles().isEmpty()))
+        {
+            return false;
+        }
+        return rootProject == null || rootProject.getActiveProfiles().isEmpty();
+    }
+
+    /**
+     * Builds the project for the given <code>pom</code>.
+     *
+     * @param pom the POM file.
+     * @return the project or null if the full project builder is needed.
+     */
+    public MavenProject build(final File pom)
+    {
+        try
+        {
+            final List<PomReader.Pom> lineage = this.getLineage(pom.getAbsoluteFile());
+            if (lineage == null)
+            {
+                return null;
+            }
+            final MavenProject project = this.build(lineage);
+            if (project == null && this.logger.isDebugEnabled())
+            {
+                this.logger.debug("Using the full project builder for " + pom);
+            }
+            return project;
+        }
+        catch (IOException exception)
+        {
+            if (this.logger.isDebugEnabled())
+            {
+                this.logger.debug("Could not read " + pom + ", using the full project builder", exception);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Gets the given POM followed by all its parents.
+     *
+     * @return the lineage or null if a parent can't be found (or uses
+     *         something that can't be handled).
+     */
+    private List<PomReader.Pom> getLineage(final File file)
+        throws IOException
+    {
+        return this.getLineage(file, true);
+    }
+
+    /**
+     * Gets the given POM followed by all its parents.
+     *
+     * @param strict whether POMs using something that can't be handled are refused.
+     * @return the lineage or null if a parent can't be found (or, when strict, a POM
+     *         uses something that can't be handled).
+     */
+    private List<PomReader.Pom> getLineage(final File file, final boolean strict)
+        throws IOException
+    {
+        final List<PomReader.Pom> lineage = new ArrayList<PomReader.Pom>();
+        PomReader.Pom pom = this.read(file);
+        while (pom != null)
+        {
+            if ((strict && (pom.profiles || pom.repositories)) || lineage.size() > MAXIMUM_PARENTS)
+            {
+                return null;
+            }
+            lineage.add(pom);
+            if (pom.parentArtifactId == null)
+            {
+                break;
+            }
+            pom = this.getParent(pom);
+            if (pom == null)
+            {
+                return null;
+            }
+        }
+        return lineage;
+    }
+
+    /**
+     * Gets the files of the given POM and of all its parents, as found locally.
+     *
+     * @param pom the POM file.
+     * @return the files, the POM itself first, or null if a parent isn't available locally.
+     * @throws IOException if a POM can't be read.
+     */
+    public List<File> getLineageFiles(final File pom)
+        throws IOException
+    {
+        final List<PomReader.Pom> lineage = this.getLineage(pom.getAbsoluteFile(), false);
+        if (lineage == null)
+        {
+            return null;
+        }
+        final List<File> files = new ArrayList<File>();
+        for (final PomReader.Pom current : lineage)
+        {
+            files.add(current.file);
+        }
+        return files;
+    }
+
+    /**
+     * Gets the parent of the given <code>pom</code>, from the relative path
+     * if the POM there is the right one, or else from the local repository.
+     */
+    private PomReader.Pom getParent(final PomReader.Pom pom)
+        throws IOException
+    {
+        if (pom.parentGroupId == null || pom.parentVersion == null)
+        {
+            return null;
+        }
+        File file = new File(
+                pom.file.getParentFile(),
+                pom.parentRelativePath != null ? pom.parentRelativePath : "../pom.xml");
+        if (file.isDirectory())
+        {
+            file = new File(file, "pom.xml");
+        }
+        if (file.isFile())
+        {
+            final PomReader.Pom parent = this.read(file.getCanonicalFile());
+            if (pom.parentArtifactId.equals(parent.getArtifactId()) &&
+                pom.parentGroupId.equals(parent.getGroupId()) &&
+                pom.parentVersion.equals(parent.getVersion()))
+            {
+                return parent;
+            }
+        }
+        file = new File(
+                this.localRepository.getBasedir(),
+                pom.parentGroupId.replace('.', '/') + '/' + pom.parentArtifactId + '/' + pom.parentVersion + '/' +
+                pom.parentArtifactId + '-' + pom.parentVersion + ".pom");
+        return file.isFile() ? this.read(file) : null;
+    }
+
+    private PomReader.Pom read(final File file)
+        throws IOException
+    {
+        PomReader.Pom pom = this.poms.get(file);
+        if (pom == null)
+        {
+            pom = PomReader.read(file);
+            this.poms.put(file, pom);
+        }
+        return pom;
+    }
+
+    /**
+     * Forgets the POMs read so far (i.e. because some of them changed).
+     */
+    public void clear()
+    {
+        this.poms.clear();
+    }
+
+    /**
+     * Builds the project from the POM lineage (the POM itself first).
+     *
+     * @return the project or null if it can't be built faithfully.
+     */
+    private MavenProject build(final List<PomReader.Pom> lineage)
+    {
+        final PomReader.Pom pom = lineage.get(0);
+        final File basedir = pom.file.getParentFile();
+        final String packaging = pom.packaging != null ? pom.packaging : "jar";
+
+        // - the properties, nearer POMs win
+        final Map<String, String> properties = new HashMap<String, String>();
+        for (int ctr = lineage.size() - 1; ctr >= 0; ctr--)
+        {
+            properties.putAll(lineage.get(ctr).properties);
+        }
+        for (final Iterator iterator = this.executionProperties.entrySet().iterator(); iterator.hasNext();)
+        {
+            final Map.Entry entry = (Map.Entry)iterator.next();
+            properties.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        final String basedirPath = basedir.getAbsolutePath();
+        for (int ctr = 0; ctr < PROJECT_PREFIXES.length; ctr++)
+        {
+            final String prefix = PROJECT_PREFIXES[ctr];
+            properties.put(prefix + "groupId", pom.getGroupId());
+            properties.put(prefix + "artifactId", pom.artifactId);
+            properties.put(prefix + "version", pom.getVersion());
+            properties.put(prefix + "packaging", packaging);
+            properties.put(prefix + "basedir", basedirPath);
+            if (pom.parentArtifactId != null)
+            {
+                properties.put(prefix + "parent.groupId", pom.parentGroupId);
+                properties.put(prefix + "parent.artifactId", pom.parentArtifactId);
+                properties.put(prefix + "parent.version", pom.parentVersion);
+            }
+        }
+        properties.put("basedir", basedirPath);
+        final Interpolator interpolator = new Interpolator(properties);
+
+        final String groupId = interpolator.interpolate(pom.getGroupId());
+        final String artifactId = interpolator.interpolate(pom.artifactId);
+        final String version = interpolator.interpolate(pom.getVersion());
+        if (groupId == null || artifactId == null || version == null)
+        {
+            return null;
+        }
+
+        // - the build directories, inherited and then aligned to this POM's directory
+        final Build build = new Build();
+        final String directory = this.align(basedir, interpolator.interpolate(inherit(lineage, DIRECTORY, "target")));
+        for (int ctr = 0; ctr < PROJECT_PREFIXES.length; ctr++)
+        {
+            properties.put(PROJECT_PREFIXES[ctr] + "build.directory", directory);
+        }
+        build.setDirectory(directory);
+        build.setSourceDirectory(
+            this.align(basedir, interpolator.interpolate(inherit(lineage, SOURCE_DIRECTORY, "src/main/java"))));
+        build.setTestSourceDirectory(
+            this.align(basedir, interpolator.interpolate(inherit(lineage, TEST_SOURCE_DIRECTORY, "src/test/java"))));
+        build.setOutputDirectory(
+            this.align(basedir, interpolator.interpolate(inherit(lineage, OUTPUT_DIRECTORY, "target/classes"))));
+        build.setTestOutputDirectory(
+            this.align(basedir, interpolator.interpolate(inherit(lineage, TEST_OUTPUT_DIRECTORY, "target/test-classes"))));
+        for (final String resource : inheritResources(lineage, false))
+        {
+            final Resource buildResource = new Resource();
+            buildResource.setDirectory(this.align(basedir, interpolator.interpolate(resource)));
+            build.addResource(buildResource);
+        }
+        for (final String resource : inheritResources(lineage, true))
+        {
+            final Resource buildResource = new Resource();
+            buildResource.setDirectory(this.align(basedir, interpolator.interpolate(resource)));
+            build.addTestResource(buildResource);
+        }
+        for (final PomReader.Pom current : lineage)
+        {
+            if (current.multiSourcePlugin)
+            {
+                final Plugin plugin = new Plugin();
+                plugin.setArtifactId(PomReader.MULTI_SOURCE_PLUGIN_ARTIFACT_ID);
+                if (current.multiSourceConfiguration != null)
+                {
+                    final Xpp3Dom configuration = new Xpp3Dom(current.multiSourceConfiguration);
+                    interpolator.interpolate(configuration);
+                    plugin.setConfiguration(configuration);
+                }
+                final PluginManagement pluginManagement = new PluginManagement();
+                pluginManagement.addPlugin(plugin);
+                build.setPluginManagement(pluginManagement);
+                break;
+            }
+        }
+
+        // - the dependencies, with the inherited ones and management applied
+        final Map<String, Dependency> managedDependencies = new HashMap<String, Dependency>();
+        for (final PomReader.Pom current : lineage)
+        {
+            for (final Dependency managed : current.managedDependencies)
+            {
+                final String key = getManagementKey(managed, interpolator);
+                if (!managedDependencies.containsKey(key))
+                {
+                    managedDependencies.put(key, managed);
+                }
+            }
+        }
+        final Map<String, Dependency> dependencies = new LinkedHashMap<String, Dependency>();
+        for (int ctr = lineage.size() - 1; ctr >= 0; ctr--)
+        {
+            for (final Dependency declared : lineage.get(ctr).dependencies)
+            {
+                final Dependency dependency = this.interpolate(declared, interpolator);
+                final Dependency managed = managedDependencies.get(getManagementKey(dependency, null));
+                if (managed != null)
+                {
+                    if (dependency.getVersion() == null)
+                    {
+                        dependency.setVersion(interpolator.interpolate(managed.getVersion()));
+                    }
+                    if (dependency.getScope() == null)
+                    {
+                        dependency.setScope(interpolator.interpolate(managed.getScope()));
+                    }
+                    if (dependency.getExclusions().isEmpty())
+                    {
+                        dependency.setExclusions(this.interpolate(managed, interpolator).getExclusions());
+                    }
+                }
+                if (dependency.getVersion() == null)
+                {
+                    return null;
+                }
+                if (dependency.getScope() == null)
+                {
+                    dependency.setScope("compile");
+                }
+                dependencies.remove(getManagementKey(dependency, null));
+                dependencies.put(getManagementKey(dependency, null), dependency);
+            }
+        }
+        if (interpolator.isUnresolved())
+        {
+            return null;
+        }
+
+        final Model model = new Model();
+        model.setModelVersion("4.0.0");
+        model.setGroupId(groupId);
+        model.setArtifactId(artifactId);
+        model.setVersion(version);
+        model.setPackaging(packaging);
+        model.setBuild(build);
+        model.setDependencies(new ArrayList<Dependency>(dependencies.values()));
+        final Properties modelProperties = new Properties();
+        modelProperties.putAll(pom.properties);
+        model.setProperties(modelProperties);
+
+        final MavenProject project = new MavenProject(model);
+        project.setFile(pom.file);
+        project.addCompileSourceRoot(build.getSourceDirectory());
+        project.addTestCompileSourceRoot(build.getTestSourceDirectory());
+        project.setRemoteArtifactRepositories(this.remoteRepositories);
+        project.setArtifact(this.artifactFactory.createBuildArtifact(groupId, artifactId, version, packaging));
+        return project;
+    }
+
+    private static final String[] PROJECT_PREFIXES = new String[] {"project.", "pom.", ""};
+
+    private static final int DIRECTORY = 0;
+
+    private static final int SOURCE_DIRECTORY = 1;
+
+    private static final int TEST_SOURCE_DIRECTORY = 2;
+
+    private static final int OUTPUT_DIRECTORY = 3;
+
+    private static final int TEST_OUTPUT_DIRECTORY = 4;
+
+    /**
+     * Gets the nearest declaration of a build directory, or the super POM default.
+     */
+    private static String inherit(final List<PomReader.Pom> lineage, final int field, final String defaultValue)
+    {
+        for (final PomReader.Pom pom : lineage)
+        {
+            final String value =
+                field == DIRECTORY ? pom.directory
+                : field == SOURCE_DIRECTORY ? pom.sourceDirectory
+                : field == TEST_SOURCE_DIRECTORY ? pom.testSourceDirectory
+                : field == OUTPUT_DIRECTORY ? pom.outputDirectory : pom.testOutputDirectory;
+            if (value != null)
+            {
+                return value;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets the nearest declaration of the resources, or the super POM default.
+     */
+    private static List<String> inheritResources(final List<PomReader.Pom> lineage, final boolean test)
+    {
+        for (final PomReader.Pom pom : lineage)
+        {
+            final List<String> resources = test ? pom.testResources : pom.resources;
+            if (resources != null)
+            {
+                return resources;
+            }
+        }
+        final List<String> resources = new ArrayList<String>();
+        resources.add(test ? "src/test/resources" : "src/main/resources");
+        return resources;
+    }
+
+    /**
+     * Makes a relative path absolute against the project directory, like the
+     * full project builder does.
+     */
+    private String align(final File basedir, final String path)
+    {
+        if (path == null)
+        {
+            return null;
+        }
+        final File file = new File(path);
+        return file.isAbsolute() ? file.getPath() : new File(basedir, path).getAbsolutePath();
+    }
+
+    /**
+     * Gets the key dependencies are managed (and overridden) by.
+     */
+    private static String getManagementKey(final Dependency dependency, final Interpolator interpolator)
+    {
+        final String type = dependency.getType() != null ? dependency.getType() : "jar";
+        final String key = dependency.getGroupId() + ':' + dependency.getArtifactId() + ':' + type +
+            (dependency.getClassifier() != null ? ':' + dependency.getClassifier() : "");
+        return interpolator != null ? interpolator.interpolate(key) : key;
+    }
+
+    /**
+     * Gets an interpolated copy of the given <code>dependency</code>.
+     */
+    private Dependency interpolate(final Dependency dependency, final Interpolator interpolator)
+    {
+        final Dependency copy = new Dependency();
+        copy.setGroupId(interpolator.interpolate(dependency.getGroupId()));
+        copy.setArtifactId(interpolator.interpolate(dependency.getArtifactId()));
+        copy.setVersion(interpolator.interpolate(dependency.getVersion()));
+        copy.setType(dependency.getType() != null ? interpolator.interpolate(dependency.getType()) : "jar");
+        copy.setClassifier(interpolator.interpolate(dependency.getClassifier()));
+        copy.setScope(interpolator.interpolate(dependency.getScope()));
+        copy.setOptional(dependency.isOptional());
+        copy.setSystemPath(interpolator.interpolate(dependency.getSystemPath()));
+        for (final Iterator iterator = dependency.getExclusions().iterator(); iterator.hasNext();)
+        {
+            final Exclusion exclusion = (Exclusion)iterator.next();
+            final Exclusion exclusionCopy = new Exclusion();
+            exclusionCopy.setGroupId(interpolator.interpolate(exclusion.getGroupId()));
+            exclusionCopy.setArtifactId(interpolator.interpolate(exclusion.getArtifactId()));
+            copy.addExclusion(exclusionCopy);
+        }
+        return copy;
+    }
+
+    /**
+     * Describes what the Eclipse writers use of the given <code>project</code>,
+     * so that projects built by this builder can be compared with the ones
+     * built by the full project builder.
+     *
+     * @param project the project.
+     * @return the description, one property per line.
+     */
+    public static String describe(final MavenProject project)
+    {
+        final StringBuffer description = new StringBuffer();
+        description.append("id: ").append(project.getId()).append('\n');
+        final Build build = project.getBuild();
+        description.append("directory: ").append(build.getDirectory()).append('\n');
+        description.append("outputDirectory: ").append(build.getOutputDirectory()).append('\n');
+        description.append("testOutputDirectory: ").append(build.getTestOutputDirectory()).append('\n');
+        description.append("compileSourceRoots: ").append(project.getCompileSourceRoots()).append('\n');
+        description.append("testSourceDirectory: ").append(build.getTestSourceDirectory()).append('\n');
+        for (final Iterator iterator = build.getResources().iterator(); iterator.hasNext();)
+        {
+            description.append("resource: ").append(((Resource)iterator.next()).getDirectory()).append('\n');
+        }
+        for (final Iterator iterator = build.getTestResources().iterator(); iterator.hasNext();)
+        {
+            description.append("testResource: ").append(((Resource)iterator.next()).getDirectory()).append('\n');
+        }
+        for (final Iterator iterator = project.getDependencies().iterator(); iterator.hasNext();)
+        {
+            final Dependency dependency = (Dependency)iterator.next();
+            description.append("dependency: ").append(dependency.getManagementKey()).append(':')
+                .append(dependency.getVersion()).append(':').append(dependency.getScope());
+            for (final Iterator exclusions = dependency.getExclusions().iterator(); exclusions.hasNext();)
+            {
+                final Exclusion exclusion = (Exclusion)exclusions.next();
+                description.append(" -").append(exclusion.getGroupId()).append(':').append(exclusion.getArtifactId());
+            }
+            description.append('\n');
+        }
+        final PluginManagement pluginManagement = build.getPluginManagement();
+        if (pluginManagement != null)
+        {
+            for (final Iterator iterator = pluginManagement.getPlugins().iterator(); iterator.hasNext();)
+            {
+                final Plugin plugin = (Plugin)iterator.next();
+                if (PomReader.MULTI_SOURCE_PLUGIN_ARTIFACT_ID.equals(plugin.getArtifactId()))
+                {
+                    description.append("multiSource: ").append(plugin.getConfiguration()).append('\n');
+                }
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Replaces <code>${...}</code> expressions, remembering whether any of
+     * them couldn't be resolved.
+     */
+    private static class Interpolator
+    {
+        private final Map<String, String> properties;
+
+        private boolean unresolved;
+
+        Interpolator(final Map<String, String> properties)
+        {
+            this.properties = properties;
+        }
+
+        String interpolate(final String value)
+        {
+            if (value == null || value.indexOf("${") < 0)
+            {
+                return value;
+            }
+            String result = value;
+            for (int pass = 0; pass < 10 && result.indexOf("${") >= 0; pass++)
+            {
+                final StringBuffer buffer = new StringBuffer();
+                int index = 0;
+                boolean replaced = false;
+                for (int start = result.indexOf("${"); start >= 0; start = result.indexOf("${", index))
+                {
+                    final int end = result.indexOf('}', start);
+                    if (end < 0)
+                    {
+                        break;
+                    }
+                    final String name = result.substring(start + 2, end);
+                    String replacement = this.properties.get(name);
+                    if (replacement == null && name.startsWith("env."))
+                    {
+                        replacement = System.getenv(name.substring(4));
+                    }
+                    buffer.append(result.substring(index, start));
+                    if (replacement != null)
+                    {
+                        buffer.append(replacement);
+                        replaced = true;
+                    }
+                    else
+                    {
+                        buffer.append(result.substring(start, end + 1));
+                    }
+                    index = end + 1;
+                }
+                buffer.append(result.substring(index));
+                result = buffer.toString();
+                if (!replaced)
+                {
+                    break;
+                }
+            }
+            if (result.indexOf("${") >= 0)
+            {
+                this.unresolved = true;
+            }
+            return result;
+        }
+
+        void interpolate(final Xpp3Dom dom)
+        {
+            dom.setValue(this.interpolate(dom.getValue()));
+            final Xpp3Dom[] children = dom.getChildren();
+            for (int ctr = 0; ctr < children.length; ctr++)
+            {
+                this.interpolate(children[ctr]);
+            }
+        }
+
+        boolean isUnresolved()
+        {
+            return this.unresolved;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * An in memory index of the files in the local repository, so that released
+ * artifacts that are already there can be located without going through the
+ * artifact resolver (which reads metadata and checks update policies). The
+ * index is built by walking the repository in parallel and persisted along
+ * with the modification time of every indexed directory; a directory whose
+ * time changed is listed again when the index is loaded. Anything not in the
+ * index (and every snapshot) is left to the resolver.
+ */
+public class LocalRepositoryIndex
+{
+    private static final int MAGIC = 0x4D454C52;
+
+    private static final int VERSION = 1;
+
+    private final File basedir;
+
+    private final int threads;
+
+    /**
+     * The indexed directories (those containing files), keyed by path
+     * relative to the repository.
+     */
+    private final Map<String, Directory> directories = new ConcurrentHashMap<String, Directory>();
+
+    private volatile boolean modified;
+
+    /**
+     * @param basedir the local repository directory.
+     * @param threads the number of threads walking the repository.
+     */
+    public LocalRepositoryIndex(final File basedir, final int threads)
+    {
+        this.basedir = basedir;
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the file of the given <code>artifact</code> if it's a release already
+     * in the local repository.
+     *
+     * @param artifact the artifact to resolve.
+     * @param localRepository the local repository.
+     * @return true if the artifact was resolved from the index.
+     */
+    public boolean resolve(final Artifact artifact, final ArtifactRepository localRepository)
+    {
+        if (artifact.getVersion() == null || artifact.isSnapshot() ||
+            Artifact.SCOPE_SYSTEM.equals(artifact.getScope()))
+        {
+            return false;
+        }
+        final String path = localRepository.pathOf(artifact);
+        final int index = path.lastIndexOf('/');
+        final Directory directory = this.directories.get(index < 0 ? "" : path.substring(0, index));
+        if (directory != null && directory.names.contains(path.substring(index + 1)))
+        {
+            artifact.setFile(new File(this.basedir, path));
+            artifact.setResolved(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the file of an artifact the resolver resolved, so that the next
+     * lookup finds it.
+     *
+     * @param artifact the resolved artifact.
+     */
+    public void add(final Artifact artifact)
+    {
+        final File file = artifact.getFile();
+        if (file == null || artifact.isSnapshot() || !file.isFile())
+        {
+            return;
+        }
+        final String path = this.getRelativePath(file.getParentFile());
+        if (path != null)
+        {
+            this.directories.put(path, list(file.getParentFile()));
+            this.modified = true;
+        }
+    }
+
+    /**
+     * Gets the path of the given directory relative to the repository.
+     *
+     * @return the path or null if it's not within the repository.
+     */
+    private String getRelativePath(final File directory)
+    {
+        final String root = PathNormalizer.normalizePath(this.basedir.getAbsolutePath() + '/');
+        final String path = PathNormalizer.normalizePath(directory.getAbsolutePath());
+        return path.startsWith(root) ? path.substring(root.length()) : null;
+    }
+
+    /**
+     * Loads the index from the given <code>file</code>, listing again every
+     * directory that changed since, or builds it by walking the repository if
+     * there's no usable stored index.
+     *
+     * @param file the stored index.
+     * @throws Exception
+     */
+    public void load(final File file)
+        throws Exception
+    {
+        this.directories.clear();
+        if (this.read(file))
+        {
+            this.validate();
+        }
+        else
+        {
+            this.walk();
+        }
+    }
+
+    private boolean read(final File file)
+    {
+        if (!file.isFile())
+        {
+            return false;
+        }
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION ||
+                !input.readUTF().equals(this.basedir.getAbsolutePath()))
+            {
+                return false;
+            }
+            final int count = input.readInt();
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                final String path = input.readUTF();
+                final long lastModified = input.readLong();
+                final int nameCount = input.readInt();
+                final Set<String> names = new HashSet<String>(nameCount * 2);
+                for (int name = 0; name < nameCount; name++)
+                {
+                    names.add(input.readUTF());
+                }
+                this.directories.put(path, new Directory(lastModified, names));
+            }
+            return true;
+        }
+        catch (IOException exception)
+        {
+            this.directories.clear();
+            return false;
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Lists again (in parallel) the directories whose modification time changed
+     * and drops the ones that are gone.
+     */
+    private void validate()
+        throws Exception
+    {
+        final List<String> paths = new ArrayList<String>(this.directories.keySet());
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        final int chunk = 512;
+        for (int start = 0; start < paths.size(); start += chunk)
+        {
+            final List<String> part = paths.subList(start, Math.min(paths.size(), start + chunk));
+            tasks.add(new Callable<Object>()
+            {
+                public Object call()
+                {
+                    for (final String path : part)
+                    {
+                        final File directory = new File(LocalRepositoryIndex.this.basedir, path);
+                        final long lastModified = directory.lastModified();
+                        if (lastModified == 0)
+                        {
+                            LocalRepositoryIndex.this.directories.remove(path);
+                            LocalRepositoryIndex.this.modified = true;
+                        }
+                        else if (lastModified != LocalRepositoryIndex.this.directories.get(path).lastModified)
+                        {
+                            LocalRepositoryIndex.this.directories.put(path, list(directory));
+                            LocalRepositoryIndex.this.modified = true;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        ConcurrentUtils.invokeAll("repository-index", tasks, this.threads);
+    }
+
+    /**
+     * Builds the index by walking the repository, every top level directory
+     * on its own thread.
+     */
+    private void walk()
+        throws Exception
+    {
+        final File[] roots = this.basedir.listFiles();
+        if (roots == null)
+        {
+            return;
+        }
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int ctr = 0; ctr < roots.length; ctr++)
+        {
+            final File root = roots[ctr];
+            if (root.isDirectory() && !root.getName().startsWith("."))
+            {
+                tasks.add(new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        LocalRepositoryIndex.this.walk(root, root.getName());
+                        return null;
+                    }
+                });
+            }
+        }
+        ConcurrentUtils.invokeAll("repository-index", tasks, this.threads);
+        this.modified = true;
+    }
+
+    private void walk(final File directory, final String path)
+    {
+        final File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        final Set<String> names = new HashSet<String>();
+        for (int ctr = 0; ctr < files.length; ctr++)
+        {
+            final File file = files[ctr];
+            if (file.isDirectory())
+            {
+                this.walk(file, path + '/' + file.getName());
+            }
+            else
+            {
+                names.add(file.getName());
+            }
+        }
+        if (!names.isEmpty())
+        {
+            this.directories.put(path, new Directory(directory.lastModified(), names));
+        }
+    }
+
+    private static Directory list(final File directory)
+    {
+        final long lastModified = directory.lastModified();
+        final Set<String> names = new HashSet<String>();
+        final File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (int ctr = 0; ctr < files.length; ctr++)
+            {
+                if (files[ctr].isFile())
+                {
+                    names.add(files[ctr].getName());
+                }
+            }
+        }
+        return new Directory(lastModified, names);
+    }
+
+    /**
+     * Stores the index to the given <code>file</code> if it changed since it
+     * was loaded.
+     *
+     * @param file the stored index.
+     * @throws IOException
+     */
+    public void store(final File file)
+        throws IOException
+    {
+        if (!this.modified)
+        {
+            return;
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        // - the file is shared by the processes using the local repository
+        final ProcessLock lock = ProcessLock.acquire(file);
+        try
+        {
+            final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+            final File temporaryFile = new File(file.getPath() + ".tmp");
+            final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(this.basedir.getAbsolutePath());
+                output.writeInt(this.directories.size());
+                for (final Map.Entry<String, Directory> entry : this.directories.entrySet())
+                {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().lastModified);
+                    output.writeInt(entry.getValue().names.size());
+                    for (final String name : entry.getValue().names)
+                    {
+                        output.writeUTF(name);
+                    }
+                }
+            }
+            finally
+            {
+                IOUtil.close(output);
+            }
+            file.delete();
+            if (!temporaryFile.renameTo(file))
+            {
+                throw new IOException("Could not rename " + temporaryFile + " to " + file);
+            }
+            event.commitFileWrite(file);
+        }
+        finally
+        {
+            lock.release();
+        }
+        this.modified = false;
+    }
+
+    /**
+     * Gets the number of indexed directories.
+     */
+    public int size()
+    {
+        return this.directories.size();
+    }
+
+    /**
+     * An indexed directory: its modification time and the names of its files.
+     */
+    private static class Directory
+    {
+        private final long lastModified;
+
+        private final Set<String> names;
+
+        Directory(final long lastModified, final Set<String> names)
+        {
+            this.lastModified = lastModified;
+            this.names = Collections.unmodifiableSet(names);
+        }
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Pull-parses a POM for just the elements the Eclipse writers need
+ * (coordinates, parent, properties, build and resource directories,
+ * dependencies and the multi source plugin configuration), skipping
+ * everything else. No inheritance or interpolation is applied, see
+ * {@link LightweightProjectBuilder} for that.
+ */
+public class PomReader
+{
+    /**
+     * The artifact id for the multi source plugin.
+     */
+    public static final String MULTI_SOURCE_PLUGIN_ARTIFACT_ID = "andromda-multi-source-plugin";
+
+    private static final String PROJECT = "project";
+
+    private static final String DEPENDENCY = "project/dependencies/dependency";
+
+    private static final String MANAGED_DEPENDENCY = "project/dependencyManagement/dependencies/dependency";
+
+    private static final String EXCLUSION = "/exclusions/exclusion";
+
+    private static final String MANAGED_PLUGIN = "project/build/pluginManagement/plugins/plugin";
+
+    /**
+     * Reads the given <code>pom</code>.
+     *
+     * @param pom the POM file.
+     * @return what was read.
+     * @throws IOException if the file can't be read or isn't well formed.
+     */
+    public static Pom read(final File pom)
+        throws IOException
+    {
+        final java.io.Reader reader = ReaderFactory.newXmlReader(pom);
+        try
+        {
+            final XmlPullParser parser = new MXParser();
+            parser.setInput(reader);
+            return read(parser, pom);
+        }
+        catch (XmlPullParserException exception)
+        {
+            final IOException ioException = new IOException("Invalid POM " + pom + ": " + exception.getMessage());
+            ioException.initCause(exception);
+            throw ioException;
+        }
+        finally
+        {
+            IOUtil.close(reader);
+        }
+    }
+
+    private static Pom read(final XmlPullParser parser, final File file)
+        throws XmlPullParserException, IOException
+    {
+        final Pom pom = new Pom(file);
+        final List<String> paths = new ArrayList<String>();
+        Dependency dependency = null;
+        Exclusion exclusion = null;
+        String pluginArtifactId = null;
+        Xpp3Dom pluginConfiguration = null;
+        Xpp3Dom executionConfiguration = null;
+        for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next())
+        {
+            if (event == XmlPullParser.START_TAG)
+            {
+                final String name = parser.getName();
+                final String parentPath = paths.isEmpty() ? null : paths.get(paths.size() - 1);
+                final String path = parentPath == null ? name : parentPath + '/' + name;
+                if (parentPath == null && !PROJECT.equals(name))
+                {
+                    throw new IOException("Not a POM: " + file);
+                }
+
+                if (path.equals(DEPENDENCY) || path.equals(MANAGED_DEPENDENCY))
+                {
+                    dependency = new Dependency();
+                }
+                else if (path.equals(DEPENDENCY + EXCLUSION) || path.equals(MANAGED_DEPENDENCY + EXCLUSION))
+                {
+                    exclusion = new Exclusion();
+                }
+                else if (path.equals(MANAGED_PLUGIN))
+                {
+                    pluginArtifactId = null;
+                    pluginConfiguration = null;
+                    executionConfiguration = null;
+                }
+                else if (path.equals("project/build/resources"))
+                {
+                    pom.resources = new ArrayList<String>();
+                }
+                else if (path.equals("project/build/testResources"))
+                {
+                    pom.testResources = new ArrayList<String>();
+                }
+                else if (path.equals("project/repositories"))
+                {
+                    pom.repositories = true;
+                }
+                else if (path.equals("project/profiles/profile"))
+                {
+                    pom.profiles = true;
+                }
+
+                // - elements consumed right away (their end tag included)
+                if (path.equals(MANAGED_PLUGIN + "/configuration"))
+                {
+                    pluginConfiguration = readDom(parser);
+                    continue;
+                }
+                if (path.equals(MANAGED_PLUGIN + "/executions/execution/configuration"))
+                {
+                    final Xpp3Dom configuration = readDom(parser);
+                    if (executionConfiguration == null)
+                    {
+                        executionConfiguration = configuration;
+                    }
+                    continue;
+                }
+                if ("project/properties".equals(parentPath))
+                {
+                    pom.properties.put(name, parser.nextText().trim());
+                    continue;
+                }
+                final String text = isLeaf(path) ? parser.nextText().trim() : null;
+                if (text != null)
+                {
+                    if (exclusion != null && (path.startsWith(DEPENDENCY + EXCLUSION)
+                        || path.startsWith(MANAGED_DEPENDENCY + EXCLUSION)))
+                    {
+                        setExclusionField(exclusion, name, text);
+                    }
+                    else if (dependency != null && (path.startsWith(DEPENDENCY) || path.startsWith(MANAGED_DEPENDENCY)))
+                    {
+                        setDependencyField(dependency, name, text);
+                    }
+                    else if (path.equals(MANAGED_PLUGIN + "/artifactId"))
+                    {
+                        pluginArtifactId = text;
+                    }
+                    else
+                    {
+                        pom.set(path, text);
+                    }
+                    continue;
+                }
+                paths.add(path);
+            }
+            else if (event == XmlPullParser.END_TAG)
+            {
+                final String path = paths.remove(paths.size() - 1);
+                if (path.equals(DEPENDENCY))
+                {
+                    pom.dependencies.add(dependency);
+                    dependency = null;
+                }
+                else if (path.equals(MANAGED_DEPENDENCY))
+                {
+                    pom.managedDependencies.add(dependency);
+                    dependency = null;
+                }
+                else if (path.equals(DEPENDENCY + EXCLUSION) || path.equals(MANAGED_DEPENDENCY + EXCLUSION))
+                {
+                    dependency.addExclusion(exclusion);
+                    exclusion = null;
+                }
+                else if (path.equals(MANAGED_PLUGIN) && MULTI_SOURCE_PLUGIN_ARTIFACT_ID.equals(pluginArtifactId))
+                {
+                    pom.multiSourceConfiguration =
+                        pluginConfiguration != null ? pluginConfiguration : executionConfiguration;
+                    pom.multiSourcePlugin = true;
+                }
+            }
+        }
+        return pom;
+    }
+
+    /**
+     * The leaf elements whose text is read.
+     */
+    private static boolean isLeaf(final String path)
+    {
+        return LEAVES.containsKey(path);
+    }
+
+    private static final Map<String, Boolean> LEAVES = new LinkedHashMap<String, Boolean>();
+
+    static
+    {
+        final String[] leaves = new String[] {
+            "project/groupId", "project/artifactId", "project/version", "project/packaging",
+            "project/parent/groupId", "project/parent/artifactId", "project/parent/version",
+            "project/parent/relativePath",
+            "project/build/directory", "project/build/sourceDirectory", "project/build/testSourceDirectory",
+            "project/build/outputDirectory", "project/build/testOutputDirectory",
+            "project/build/resources/resource/directory", "project/build/testResources/testResource/directory",
+            MANAGED_PLUGIN + "/artifactId"};
+        for (int ctr = 0; ctr < leaves.length; ctr++)
+        {
+            LEAVES.put(leaves[ctr], Boolean.TRUE);
+        }
+        final String[] dependencyLeaves = new String[] {
+            "groupId", "artifactId", "version", "type", "classifier", "scope", "optional", "systemPath"};
+        for (int ctr = 0; ctr < dependencyLeaves.length; ctr++)
+        {
+            LEAVES.put(DEPENDENCY + '/' + dependencyLeaves[ctr], Boolean.TRUE);
+            LEAVES.put(MANAGED_DEPENDENCY + '/' + dependencyLeaves[ctr], Boolean.TRUE);
+        }
+        LEAVES.put(DEPENDENCY + EXCLUSION + "/groupId", Boolean.TRUE);
+        LEAVES.put(DEPENDENCY + EXCLUSION + "/artifactId", Boolean.TRUE);
+        LEAVES.put(MANAGED_DEPENDENCY + EXCLUSION + "/groupId", Boolean.TRUE);
+        LEAVES.put(MANAGED_DEPENDENCY + EXCLUSION + "/artifactId", Boolean.TRUE);
+    }
+
+    private static void setDependencyField(final Dependency dependency, final String name, final String value)
+    {
+        if ("groupId".equals(name))
+        {
+            dependency.setGroupId(value);
+        }
+        else if ("artifactId".equals(name))
+        {
+            dependency.setArtifactId(value);
+        }
+        else if ("version".equals(name))
+        {
+            dependency.setVersion(value);
+        }
+        else if ("type".equals(name))
+        {
+            dependency.setType(value);
+        }
+        else if ("classifier".equals(name))
+        {
+            dependency.setClassifier(value);
+        }
+        else if ("scope".equals(name))
+        {
+            dependency.setScope(value);
+        }
+        else if ("optional".equals(name))
+        {
+            dependency.setOptional(Boolean.valueOf(value).booleanValue());
+        }
+        else if ("systemPath".equals(name))
+        {
+            dependency.setSystemPath(value);
+        }
+    }
+
+    private static void setExclusionField(final Exclusion exclusion, final String name, final String value)
+    {
+        if ("groupId".equals(name))
+        {
+            exclusion.setGroupId(value);
+        }
+        else if ("artifactId".equals(name))
+        {
+            exclusion.setArtifactId(value);
+        }
+    }
+
+    /**
+     * Reads the element the parser is positioned on (with all its children)
+     * into a DOM, leaving the parser on its end tag.
+     */
+    private static Xpp3Dom readDom(final XmlPullParser parser)
+        throws XmlPullParserException, IOException
+    {
+        final Xpp3Dom dom = new Xpp3Dom(parser.getName());
+        for (int ctr = 0; ctr < parser.getAttributeCount(); ctr++)
+        {
+            dom.setAttribute(parser.getAttributeName(ctr), parser.getAttributeValue(ctr));
+        }
+        final StringBuffer text = new StringBuffer();
+        for (int event = parser.next(); event != XmlPullParser.END_TAG; event = parser.next())
+        {
+            if (event == XmlPullParser.START_TAG)
+            {
+                dom.addChild(readDom(parser));
+            }
+            else if (event == XmlPullParser.TEXT)
+            {
+                text.append(parser.getText());
+            }
+        }
+        if (dom.getChildCount() == 0)
+        {
+            dom.setValue(text.toString().trim());
+        }
+        return dom;
+    }
+
+    /**
+     * What was read from a POM, values are as written (not interpolated and
+     * relative paths not aligned).
+     */
+    public static class Pom
+    {
+        final File file;
+
+        String groupId;
+
+        String artifactId;
+
+        String version;
+
+        String packaging;
+
+        String parentGroupId;
+
+        String parentArtifactId;
+
+        String parentVersion;
+
+        String parentRelativePath;
+
+        final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+        String directory;
+
+        String sourceDirectory;
+
+        String testSourceDirectory;
+
+        String outputDirectory;
+
+        String testOutputDirectory;
+
+        /**
+         * The resource directories, null if the POM doesn't declare any resources.
+         */
+        List<String> resources;
+
+        /**
+         * The test resource directories, null if the POM doesn't declare any.
+         */
+        List<String> testResources;
+
+        final List<Dependency> dependencies = new ArrayList<Dependency>();
+
+        final List<Dependency> managedDependencies = new ArrayList<Dependency>();
+
+        /**
+         * Whether the multi source plugin is declared in the plugin management.
+         */
+        boolean multiSourcePlugin;
+
+        Xpp3Dom multiSourceConfiguration;
+
+        /**
+         * Whether any profile is declared (it may be activated by its
+         * activation, by <code>-P</code> or by the settings).
+         */
+        boolean profiles;
+
+        /**
+         * Whether any repository is declared.
+         */
+        boolean repositories;
+
+        Pom(final File file)
+        {
+            this.file = file;
+        }
+
+        void set(final String path, final String value)
+        {
+            if ("project/groupId".equals(path))
+            {
+                this.groupId = value;
+            }
+            else if ("project/artifactId".equals(path))
+            {
+                this.artifactId = value;
+            }
+            else if ("project/version".equals(path))
+            {
+                this.version = value;
+            }
+            else if ("project/packaging".equals(path))
+            {
+                this.packaging = value;
+            }
+            else if ("project/parent/groupId".equals(path))
+            {
+                this.parentGroupId = value;
+            }
+            else if ("project/parent/artifactId".equals(path))
+            {
+                this.parentArtifactId = value;
+            }
+            else if ("project/parent/version".equals(path))
+            {
+                this.parentVersion = value;
+            }
+            else if ("project/parent/relativePath".equals(path))
+            {
+                this.parentRelativePath = value;
+            }
+            else if ("project/build/directory".equals(path))
+            {
+                this.directory = value;
+            }
+            else if ("project/build/sourceDirectory".equals(path))
+            {
+                this.sourceDirectory = value;
+            }
+            else if ("project/build/testSourceDirectory".equals(path))
+            {
+                this.testSourceDirectory = value;
+            }
+            else if ("project/build/outputDirectory".equals(path))
+            {
+                this.outputDirectory = value;
+            }
+            else if ("project/build/testOutputDirectory".equals(path))
+            {
+                this.testOutputDirectory = value;
+            }
+            else if ("project/build/resources/resource/directory".equals(path))
+            {
+                this.resources.add(value);
+            }
+            else if ("project/build/testResources/testResource/directory".equals(path))
+            {
+                this.testResources.add(value);
+            }
+        }
+
+        /**
+         * Gets the groupId, inherited from the parent if not declared.
+         */
+        public String getGroupId()
+        {
+            return this.groupId != null ? this.groupId : this.parentGroupId;
+        }
+
+        public String getArtifactId()
+        {
+            return this.artifactId;
+        }
+
+        /**
+         * Gets the version, inherited from the parent if not declared.
+         */
+        public String getVersion()
+        {
+            return this.version != null ? this.version : this.parentVersion;
+        }
+
+        public File getFile()
+        {
+            return this.file;
+        }
+    }
+}
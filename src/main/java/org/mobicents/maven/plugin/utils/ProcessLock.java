@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A lock on a file shared by several maven processes (i.e. a cache in the
+ * local repository, used from several checkouts at once), held through a
+ * <code>.lock</code> file next to it: an OS file lock keeps the other
+ * processes out, and a lock per file keeps out the other threads of this
+ * one (which the OS lock doesn't). The lock is reentrant.
+ * <p>
+ * Typical use:
+ * </p>
+ * <pre>
+ * final ProcessLock lock = ProcessLock.acquire(file);
+ * try
+ * {
+ *     ...
+ * }
+ * finally
+ * {
+ *     lock.release();
+ * }
+ * </pre>
+ */
+public class ProcessLock
+{
+    /**
+     * The locks of the threads of this process, keyed by lock file path.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> threadLocks =
+        new ConcurrentHashMap<String, ReentrantLock>();
+
+    private final ReentrantLock threadLock;
+
+    private final RandomAccessFile lockFile;
+
+    private final FileLock fileLock;
+
+    private ProcessLock(final ReentrantLock threadLock, final RandomAccessFile lockFile, final FileLock fileLock)
+    {
+        this.threadLock = threadLock;
+        this.lockFile = lockFile;
+        this.fileLock = fileLock;
+    }
+
+    /**
+     * Acquires the lock on the given <code>file</code>, waiting for the
+     * other processes and threads holding it.
+     *
+     * @param file the file to lock (which needn't exist).
+     * @return the lock.
+     * @throws IOException if the lock file can't be created or locked.
+     */
+    public static ProcessLock acquire(final File file)
+        throws IOException
+    {
+        final File lockFile = new File(file.getAbsolutePath() + ".lock");
+        ReentrantLock threadLock = threadLocks.get(lockFile.getPath());
+        if (threadLock == null)
+        {
+            final ReentrantLock newLock = new ReentrantLock();
+            threadLock = threadLocks.putIfAbsent(lockFile.getPath(), newLock);
+            if (threadLock == null)
+            {
+                threadLock = newLock;
+            }
+        }
+        threadLock.lock();
+        if (threadLock.getHoldCount() > 1)
+        {
+            // - the file is already locked by this thread
+            return new ProcessLock(threadLock, null, null);
+        }
+        RandomAccessFile randomAccessFile = null;
+        try
+        {
+            lockFile.getParentFile().mkdirs();
+            randomAccessFile = new RandomAccessFile(lockFile, "rw");
+            return new ProcessLock(threadLock, randomAccessFile, randomAccessFile.getChannel().lock());
+        }
+        catch (IOException exception)
+        {
+            close(randomAccessFile);
+            threadLock.unlock();
+            throw exception;
+        }
+        catch (RuntimeException exception)
+        {
+            close(randomAccessFile);
+            threadLock.unlock();
+            throw exception;
+        }
+    }
+
+    /**
+     * Releases the lock.
+     */
+    public void release()
+    {
+        try
+        {
+            if (this.fileLock != null)
+            {
+                try
+                {
+                    this.fileLock.release();
+                }
+                catch (IOException exception)
+                {
+                    // - released anyway when the file is closed
+                }
+            }
+            close(this.lockFile);
+        }
+        finally
+        {
+            this.threadLock.unlock();
+        }
+    }
+
+    private static void close(final RandomAccessFile file)
+    {
+        if (file != null)
+        {
+            try
+            {
+                file.close();
+            }
+            catch (IOException exception)
+            {
+                // - nothing more to do
+            }
+        }
+    }
+}
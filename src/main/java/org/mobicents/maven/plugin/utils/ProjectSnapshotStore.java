@@ -0,0 +1,591 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.io.xpp3.SettingsXpp3Writer;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+
+/**
+ * Stores, per POM, a compact binary snapshot of the part of the project model
+ * the Eclipse writers use (coordinates, build directories, source roots,
+ * resources, dependencies and the multi source plugin configuration), so that
+ * a later run can restore the projects of unchanged POMs instead of building
+ * them. A snapshot is only used while the POM and all its parents have the
+ * content they had when it was taken, and while the projects are built with
+ * the same profiles, properties, settings, JDK and OS.
+ */
+public class ProjectSnapshotStore
+{
+    private static final int MAGIC = 0x4D455053;
+
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    /**
+     * The digest of what, outside the POMs, the projects were built with.
+     */
+    private final String context;
+
+    /**
+     * The snapshots keyed by POM path.
+     */
+    private final Map<String, Snapshot> snapshots = new LinkedHashMap<String, Snapshot>();
+
+    /**
+     * The content hashes of the POMs hashed during this run, keyed by file.
+     */
+    private final Map<File, String> hashes = new HashMap<File, String>();
+
+    private boolean modified;
+
+    /**
+     * @param file the file the snapshots are stored in.
+     * @param context what the projects are built with besides their POMs, see
+     *        {@link #getContext(Settings, Collection, Properties)}.
+     */
+    public ProjectSnapshotStore(final File file, final String context)
+    {
+        this.file = file;
+        this.context = context;
+    }
+
+    /**
+     * Gets a digest of what, besides the POMs, decides which profiles are
+     * active and how the projects are interpolated: the active profile ids,
+     * the execution properties, the settings, the JDK and OS profiles may be
+     * activated by and the JDK location (which system scoped dependencies may
+     * point into).
+     *
+     * @param settings the settings, may be null.
+     * @param activeProfileIds the ids of the profiles activated explicitly.
+     * @param executionProperties the execution properties, may be null.
+     * @return the digest.
+     * @throws IOException if the settings can't be written.
+     */
+    public static String getContext(
+        final Settings settings,
+        final Collection activeProfileIds,
+        final Properties executionProperties)
+        throws IOException
+    {
+        final StringWriter context = new StringWriter();
+        context.write("profiles:" + new TreeSet(activeProfileIds) + '\n');
+        if (executionProperties != null)
+        {
+            for (final Iterator iterator = new TreeMap(executionProperties).entrySet().iterator(); iterator.hasNext();)
+            {
+                final Map.Entry entry = (Map.Entry)iterator.next();
+                context.write("property:" + entry.getKey() + '=' + entry.getValue() + '\n');
+            }
+        }
+        final String[] activationProperties =
+            new String[] {"java.version", "java.home", "os.name", "os.arch", "os.version"};
+        for (int ctr = 0; ctr < activationProperties.length; ctr++)
+        {
+            context.write(activationProperties[ctr] + ':' + System.getProperty(activationProperties[ctr]) + '\n');
+        }
+        if (settings != null)
+        {
+            new SettingsXpp3Writer().write(context, settings);
+        }
+        return hash(new ByteArrayInputStream(context.toString().getBytes("UTF-8")));
+    }
+
+    /**
+     * Gets the key a snapshot of the project of a POM is valid for: the
+     * context of the store and the content hashes of the POM and of all its
+     * parents.
+     *
+     * @param lineageFiles the POM file followed by the files of its parents.
+     * @return the key.
+     * @throws IOException if a POM can't be read.
+     */
+    public synchronized String getKey(final List<File> lineageFiles)
+        throws IOException
+    {
+        final StringBuffer key = new StringBuffer(this.context).append('/');
+        for (final File pom : lineageFiles)
+        {
+            String hash = this.hashes.get(pom);
+            if (hash == null)
+            {
+                hash = hash(pom);
+                this.hashes.put(pom, hash);
+            }
+            key.append(hash).append('/');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Forgets the POM hashes computed so far (i.e. because POMs changed).
+     */
+    public synchronized void clearHashes()
+    {
+        this.hashes.clear();
+    }
+
+    private static String hash(final File file)
+        throws IOException
+    {
+        return hash(new FileInputStream(file));
+    }
+
+    private static String hash(final InputStream input)
+        throws IOException
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 isn't available");
+        }
+        try
+        {
+            final byte[] buffer = new byte[8192];
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer))
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+        final byte[] bytes = digest.digest();
+        final StringBuffer hash = new StringBuffer(bytes.length * 2);
+        for (int ctr = 0; ctr < bytes.length; ctr++)
+        {
+            hash.append(Character.forDigit((bytes[ctr] >> 4) & 0xF, 16));
+            hash.append(Character.forDigit(bytes[ctr] & 0xF, 16));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Restores the project of the given <code>pom</code> from its snapshot.
+     *
+     * @param pom the POM file.
+     * @param key the current key of the POM.
+     * @param artifactFactory creates the project artifact.
+     * @param remoteRepositories the remote repositories of the restored project.
+     * @return the project or null if there's no snapshot for the given key.
+     */
+    public synchronized MavenProject restore(
+        final File pom,
+        final String key,
+        final ArtifactFactory artifactFactory,
+        final List remoteRepositories)
+    {
+        final Snapshot snapshot = this.snapshots.get(pom.getAbsolutePath());
+        if (snapshot == null || !snapshot.key.equals(key))
+        {
+            return null;
+        }
+        try
+        {
+            return snapshot.restore(pom, artifactFactory, remoteRepositories);
+        }
+        catch (Exception exception)
+        {
+            this.snapshots.remove(pom.getAbsolutePath());
+            this.modified = true;
+            return null;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the given <code>project</code>.
+     *
+     * @param pom the POM file.
+     * @param key the current key of the POM.
+     * @param project the project built from the POM.
+     */
+    public synchronized void snapshot(final File pom, final String key, final MavenProject project)
+    {
+        final String path = pom.getAbsolutePath();
+        final Snapshot existing = this.snapshots.get(path);
+        if (existing == null || !existing.key.equals(key))
+        {
+            try
+            {
+                this.snapshots.put(path, new Snapshot(key, project));
+                this.modified = true;
+            }
+            catch (IOException exception)
+            {
+                // - an unusual project, it just won't have a snapshot
+            }
+        }
+    }
+
+    /**
+     * Loads the stored snapshots, if any (a file that can't be read is ignored).
+     */
+    public synchronized void load()
+    {
+        if (!this.file.isFile())
+        {
+            return;
+        }
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                return;
+            }
+            final int count = input.readInt();
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                final String path = input.readUTF();
+                final String key = input.readUTF();
+                final byte[] model = new byte[input.readInt()];
+                input.readFully(model);
+                this.snapshots.put(path, new Snapshot(key, model));
+            }
+        }
+        catch (IOException exception)
+        {
+            this.snapshots.clear();
+        }
+        finally
+        {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Stores the snapshots if any was taken since they were loaded, dropping
+     * the ones of POMs that no longer exist.
+     *
+     * @throws IOException
+     */
+    public synchronized void store()
+        throws IOException
+    {
+        for (final Iterator<String> iterator = this.snapshots.keySet().iterator(); iterator.hasNext();)
+        {
+            if (!new File(iterator.next()).exists())
+            {
+                iterator.remove();
+                this.modified = true;
+            }
+        }
+        if (!this.modified)
+        {
+            return;
+        }
+        this.file.getAbsoluteFile().getParentFile().mkdirs();
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        final File temporaryFile = new File(this.file.getPath() + ".tmp");
+        final DataOutputStream output =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(this.snapshots.size());
+            for (final Map.Entry<String, Snapshot> entry : this.snapshots.entrySet())
+            {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue().key);
+                output.writeInt(entry.getValue().model.length);
+                output.write(entry.getValue().model);
+            }
+        }
+        finally
+        {
+            IOUtil.close(output);
+        }
+        this.file.delete();
+        if (!temporaryFile.renameTo(this.file))
+        {
+            throw new IOException("Could not rename " + temporaryFile + " to " + this.file);
+        }
+        event.commitFileWrite(this.file);
+        this.modified = false;
+    }
+
+    /**
+     * The snapshot of one project, kept serialized until it's restored.
+     */
+    private static class Snapshot
+    {
+        private final String key;
+
+        private final byte[] model;
+
+        Snapshot(final String key, final byte[] model)
+        {
+            this.key = key;
+            this.model = model;
+        }
+
+        Snapshot(final String key, final MavenProject project)
+            throws IOException
+        {
+            this.key = key;
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            final DataOutputStream output = new DataOutputStream(bytes);
+            output.writeUTF(project.getGroupId());
+            output.writeUTF(project.getArtifactId());
+            output.writeUTF(project.getVersion());
+            output.writeUTF(project.getPackaging());
+            final Build build = project.getBuild();
+            writeString(output, build.getDirectory());
+            writeString(output, build.getSourceDirectory());
+            writeString(output, build.getTestSourceDirectory());
+            writeString(output, build.getOutputDirectory());
+            writeString(output, build.getTestOutputDirectory());
+            writeStrings(output, project.getCompileSourceRoots());
+            writeStrings(output, project.getTestCompileSourceRoots());
+            writeResources(output, build.getResources());
+            writeResources(output, build.getTestResources());
+            output.writeInt(project.getDependencies().size());
+            for (final Iterator iterator = project.getDependencies().iterator(); iterator.hasNext();)
+            {
+                final Dependency dependency = (Dependency)iterator.next();
+                output.writeUTF(dependency.getGroupId());
+                output.writeUTF(dependency.getArtifactId());
+                writeString(output, dependency.getVersion());
+                writeString(output, dependency.getType());
+                writeString(output, dependency.getClassifier());
+                writeString(output, dependency.getScope());
+                output.writeBoolean(dependency.isOptional());
+                writeString(output, dependency.getSystemPath());
+                output.writeInt(dependency.getExclusions().size());
+                for (final Iterator exclusions = dependency.getExclusions().iterator(); exclusions.hasNext();)
+                {
+                    final Exclusion exclusion = (Exclusion)exclusions.next();
+                    output.writeUTF(exclusion.getGroupId());
+                    output.writeUTF(exclusion.getArtifactId());
+                }
+            }
+            writeString(output, getMultiSourceConfiguration(build));
+            output.flush();
+            this.model = bytes.toByteArray();
+        }
+
+        MavenProject restore(final File pom, final ArtifactFactory artifactFactory, final List remoteRepositories)
+            throws Exception
+        {
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(this.model));
+            final Model model = new Model();
+            model.setModelVersion("4.0.0");
+            model.setGroupId(input.readUTF());
+            model.setArtifactId(input.readUTF());
+            model.setVersion(input.readUTF());
+            model.setPackaging(input.readUTF());
+            final Build build = new Build();
+            build.setDirectory(readString(input));
+            build.setSourceDirectory(readString(input));
+            build.setTestSourceDirectory(readString(input));
+            build.setOutputDirectory(readString(input));
+            build.setTestOutputDirectory(readString(input));
+            final List<String> compileSourceRoots = readStrings(input);
+            final List<String> testCompileSourceRoots = readStrings(input);
+            for (final String directory : readStrings(input))
+            {
+                final Resource resource = new Resource();
+                resource.setDirectory(directory);
+                build.addResource(resource);
+            }
+            for (final String directory : readStrings(input))
+            {
+                final Resource resource = new Resource();
+                resource.setDirectory(directory);
+                build.addTestResource(resource);
+            }
+            final int dependencyCount = input.readInt();
+            for (int ctr = 0; ctr < dependencyCount; ctr++)
+            {
+                final Dependency dependency = new Dependency();
+                dependency.setGroupId(input.readUTF());
+                dependency.setArtifactId(input.readUTF());
+                dependency.setVersion(readString(input));
+                dependency.setType(readString(input));
+                dependency.setClassifier(readString(input));
+                dependency.setScope(readString(input));
+                dependency.setOptional(input.readBoolean());
+                dependency.setSystemPath(readString(input));
+                final int exclusionCount = input.readInt();
+                for (int exclusionCtr = 0; exclusionCtr < exclusionCount; exclusionCtr++)
+                {
+                    final Exclusion exclusion = new Exclusion();
+                    exclusion.setGroupId(input.readUTF());
+                    exclusion.setArtifactId(input.readUTF());
+                    dependency.addExclusion(exclusion);
+                }
+                model.addDependency(dependency);
+            }
+            final String configuration = readString(input);
+            if (configuration != null)
+            {
+                final Plugin plugin = new Plugin();
+                plugin.setArtifactId(PomReader.MULTI_SOURCE_PLUGIN_ARTIFACT_ID);
+                if (configuration.length() > 0)
+                {
+                    plugin.setConfiguration(Xpp3DomBuilder.build(new StringReader(configuration)));
+                }
+                final PluginManagement pluginManagement = new PluginManagement();
+                pluginManagement.addPlugin(plugin);
+                build.setPluginManagement(pluginManagement);
+            }
+            model.setBuild(build);
+
+            final MavenProject project = new MavenProject(model);
+            project.setFile(pom);
+            project.getCompileSourceRoots().addAll(compileSourceRoots);
+            project.getTestCompileSourceRoots().addAll(testCompileSourceRoots);
+            project.setRemoteArtifactRepositories(remoteRepositories);
+            project.setArtifact(artifactFactory.createBuildArtifact(
+                model.getGroupId(), model.getArtifactId(), model.getVersion(), model.getPackaging()));
+            return project;
+        }
+
+        /**
+         * Gets the multi source plugin configuration as XML, an empty string
+         * if the plugin has no configuration or null if there's no such plugin.
+         */
+        private static String getMultiSourceConfiguration(final Build build)
+        {
+            final PluginManagement pluginManagement = build.getPluginManagement();
+            if (pluginManagement != null)
+            {
+                for (final Iterator iterator = pluginManagement.getPlugins().iterator(); iterator.hasNext();)
+                {
+                    final Plugin plugin = (Plugin)iterator.next();
+                    if (PomReader.MULTI_SOURCE_PLUGIN_ARTIFACT_ID.equals(plugin.getArtifactId()))
+                    {
+                        Object configuration = plugin.getConfiguration();
+                        if (configuration == null && !plugin.getExecutions().isEmpty())
+                        {
+                            // - there should only be one execution so we take the first one
+                            configuration = ((org.apache.maven.model.PluginExecution)plugin.getExecutions().get(0))
+                                .getConfiguration();
+                        }
+                        return configuration != null ? ((Xpp3Dom)configuration).toString() : "";
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static void writeResources(final DataOutputStream output, final List resources)
+            throws IOException
+        {
+            final List<String> directories = new ArrayList<String>();
+            for (final Iterator iterator = resources.iterator(); iterator.hasNext();)
+            {
+                final String directory = ((Resource)iterator.next()).getDirectory();
+                if (directory != null)
+                {
+                    directories.add(directory);
+                }
+            }
+            writeStrings(output, directories);
+        }
+
+        private static void writeStrings(final DataOutputStream output, final List strings)
+            throws IOException
+        {
+            output.writeInt(strings.size());
+            for (final Iterator iterator = strings.iterator(); iterator.hasNext();)
+            {
+                output.writeUTF(String.valueOf(iterator.next()));
+            }
+        }
+
+        private static List<String> readStrings(final DataInputStream input)
+            throws IOException
+        {
+            final int count = input.readInt();
+            final List<String> strings = new ArrayList<String>(count);
+            for (int ctr = 0; ctr < count; ctr++)
+            {
+                strings.add(input.readUTF());
+            }
+            return strings;
+        }
+
+        private static void writeString(final DataOutputStream output, final String string)
+            throws IOException
+        {
+            output.writeBoolean(string != null);
+            if (string != null)
+            {
+                output.writeUTF(string);
+            }
+        }
+
+        private static String readString(final DataInputStream input)
+            throws IOException
+        {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+    }
+}
@@ -23,10 +23,16 @@
 package org.mobicents.maven.plugin.utils;
 
 import java.io.File;
-
-import java.util.HashMap;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
@@ -39,90 +45,291 @@ import org.apache.maven.project.ProjectBuildingException;
 /**
  * Contains ulitities for dealing with Maven projects.
  *
+ * <p>
+ * Previously discovered projects are kept in the {@link ReactorRegistry} of
+ * the session, shared by the executions of the reactor (even concurrent ones).
+ * </p>
+ *
  * @author Chad Brandon
  */
 public class ProjectUtils
 {
     /**
-     * Stores previously discovered projects.
+     * Gets a project for the given <code>pom</code>.
+     *
+     * @param pom the pom from which to build the project.
+     * @return the built project.
+     * @throws ProjectBuildingException
      */
-    private static final Map projectCache = new HashMap();
+    public static MavenProject getProject(
+        final MavenProjectBuilder projectBuilder,
+        final MavenSession session,
+        final File pom,
+        final Log logger)
+        throws ProjectBuildingException
+    {
+        return getProject(projectBuilder, null, session, pom, logger);
+    }
 
     /**
-     * Gets a project for the given <code>pom</code>.
+     * Gets a project for the given <code>pom</code>, trying the given
+     * <code>lightweightBuilder</code> before the full project builder.
      *
+     * @param lightweightBuilder the lightweight builder (may be null).
      * @param pom the pom from which to build the project.
      * @return the built project.
      * @throws ProjectBuildingException
      */
-    public static synchronized MavenProject getProject(
+    public static MavenProject getProject(
         final MavenProjectBuilder projectBuilder,
+        final LightweightProjectBuilder lightweightBuilder,
         final MavenSession session,
         final File pom,
         final Log logger)
         throws ProjectBuildingException
     {
-        // - first attempt to get a project from the cache
-        MavenProject project = (MavenProject)projectCache.get(pom);
-        if (project == null)
+        // - first attempt to get a project from the registry, next from the
+        //   session and if we didn't find it in the session, create it
+        final ReactorRegistry registry = ReactorRegistry.forSession(session);
+        return getProject(registry, pom, new Callable<MavenProject>()
+        {
+            public MavenProject call()
+            {
+                final MavenProject project = registry.getSessionProject(session, pom);
+                return project != null
+                    ? project : buildProject(projectBuilder, lightweightBuilder, session, pom, logger);
+            }
+        }, false);
+    }
+
+    /**
+     * Gets a project for the given <code>pom</code> like
+     * {@link #getProject(MavenProjectBuilder, LightweightProjectBuilder, MavenSession, File, Log)}
+     * does, but without keeping it once built, so that it's let go as soon as
+     * the caller is done with it.
+     *
+     * @param lightweightBuilder the lightweight builder (may be null).
+     * @param pom the pom from which to build the project.
+     * @return the project or null if it couldn't be built.
+     */
+    public static MavenProject loadProject(
+        final MavenProjectBuilder projectBuilder,
+        final LightweightProjectBuilder lightweightBuilder,
+        final MavenSession session,
+        final File pom,
+        final Log logger)
+    {
+        final MavenProject project = ReactorRegistry.forSession(session).getSessionProject(session, pom);
+        return project != null ? project : buildProject(projectBuilder, lightweightBuilder, session, pom, logger);
+    }
+
+    /**
+     * Builds the project for the given <code>pom</code> again, ignoring any
+     * previously built or session project (i.e. because the POM changed).
+     *
+     * @param pom the pom from which to build the project.
+     * @return the built project or null if it couldn't be built.
+     */
+    public static MavenProject rebuildProject(
+        final MavenProjectBuilder projectBuilder,
+        final MavenSession session,
+        final File pom,
+        final Log logger)
+    {
+        return rebuildProject(projectBuilder, null, session, pom, logger);
+    }
+
+    /**
+     * Builds the project for the given <code>pom</code> again, trying the given
+     * <code>lightweightBuilder</code> before the full project builder.
+     *
+     * @param lightweightBuilder the lightweight builder (may be null).
+     * @param pom the pom from which to build the project.
+     * @return the built project or null if it couldn't be built.
+     */
+    public static MavenProject rebuildProject(
+        final MavenProjectBuilder projectBuilder,
+        final LightweightProjectBuilder lightweightBuilder,
+        final MavenSession session,
+        final File pom,
+        final Log logger)
+    {
+        try
         {
-            // - next attempt to get the existing project from the session
-            project = getProjectFromSession(
-                    session,
-                    pom);
-            if (project == null)
+            return getProject(ReactorRegistry.forSession(session), pom, new Callable<MavenProject>()
             {
-                // - if we didn't find it in the session, create it
-                try
+                public MavenProject call()
                 {
-                    project =
-                        projectBuilder.build(
-                            pom,
-                            session.getLocalRepository(),
-                            new DefaultProfileManager(session.getContainer()));
-                    projectCache.put(
-                        pom,
-                        project);
+                    return buildProject(projectBuilder, lightweightBuilder, session, pom, logger);
                 }
-                catch (Exception ex)
+            }, true);
+        }
+        catch (ProjectBuildingException exception)
+        {
+            // - never thrown by the builder
+            return null;
+        }
+    }
+
+    /**
+     * Gets the POMs whose projects are stale once the given POMs changed: the
+     * changed POMs themselves and every POM inheriting from one of them
+     * (through any number of parents), since a project gets the dependencies,
+     * the dependency management, the properties and the build directories of
+     * its parents. A POM whose parents can't all be located is taken as stale.
+     *
+     * @param poms the POMs of the projects.
+     * @param changedPoms the POMs that were added, changed or deleted.
+     * @param lineageBuilder the builder locating the parents (with nothing
+     *        cached from before the changes).
+     * @return the stale POMs, among <code>poms</code>.
+     */
+    public static Set<File> getStalePoms(
+        final Collection poms,
+        final Collection changedPoms,
+        final LightweightProjectBuilder lineageBuilder)
+    {
+        final Set<File> changed = new HashSet<File>();
+        for (final Iterator iterator = changedPoms.iterator(); iterator.hasNext();)
+        {
+            changed.add(getCanonicalFile((File)iterator.next()));
+        }
+        final Set<File> stale = new LinkedHashSet<File>();
+        for (final Iterator iterator = poms.iterator(); iterator.hasNext();)
+        {
+            final File pom = (File)iterator.next();
+            List<File> lineage;
+            try
+            {
+                lineage = lineageBuilder.getLineageFiles(pom);
+            }
+            catch (IOException exception)
+            {
+                // - i.e. saved half way, the full builder will tell
+                lineage = null;
+            }
+            if (lineage == null)
+            {
+                stale.add(pom);
+                continue;
+            }
+            for (final File file : lineage)
+            {
+                if (changed.contains(getCanonicalFile(file)))
                 {
-                    if (logger.isDebugEnabled())
+                    stale.add(pom);
+                    break;
+                }
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Clears the models the given <code>projectBuilder</code> keeps of the
+     * projects it built: the 2.0.x builder takes the parent of a project from
+     * them (by id) rather than from its POM, so a project built again after
+     * its parent POM changed would still get the old parent.
+     *
+     * @param projectBuilder the project builder.
+     * @param logger the logger.
+     */
+    public static void clearProjectBuilderCaches(final MavenProjectBuilder projectBuilder, final Log logger)
+    {
+        for (Class type = projectBuilder.getClass(); type != null; type = type.getSuperclass())
+        {
+            final Field[] fields = type.getDeclaredFields();
+            for (int ctr = 0; ctr < fields.length; ctr++)
+            {
+                final Field field = fields[ctr];
+                if (Map.class.isAssignableFrom(field.getType()) && field.getName().endsWith("ProjectCache"))
+                {
+                    try
+                    {
+                        field.setAccessible(true);
+                        final Map cache = (Map)field.get(projectBuilder);
+                        if (cache != null)
+                        {
+                            cache.clear();
+                        }
+                    }
+                    catch (Exception exception)
                     {
-                        logger.debug("Failed to build project from pom: " + pom, ex);
+                        logger.debug("Could not clear " + field + ": " + exception);
                     }
                 }
             }
         }
-        return project;
+    }
+
+    private static File getCanonicalFile(final File file)
+    {
+        try
+        {
+            return file.getCanonicalFile();
+        }
+        catch (IOException exception)
+        {
+            return file.getAbsoluteFile();
+        }
     }
 
     /**
-     * The POM file name.
+     * Gets (or rebuilds) the project for the given <code>pom</code> from the
+     * <code>registry</code>.
      */
-    private static final String POM_FILE = "pom.xml";
+    private static MavenProject getProject(
+        final ReactorRegistry registry,
+        final File pom,
+        final Callable<MavenProject> builder,
+        final boolean rebuild)
+        throws ProjectBuildingException
+    {
+        try
+        {
+            return rebuild ? registry.rebuildProject(pom, builder) : registry.getProject(pom, builder);
+        }
+        catch (RuntimeException exception)
+        {
+            throw exception;
+        }
+        catch (Exception exception)
+        {
+            throw new ProjectBuildingException(pom.toString(), "Failed to build project from pom: " + pom,
+                exception);
+        }
+    }
 
     /**
-     * Attempts to retrieve the Maven project for the given <code>pom</code>.
-     *
-     * @param pom the POM to find.
-     * @return the maven project with the matching POM.
+     * Builds the project for the given <code>pom</code>.
      */
-    private static MavenProject getProjectFromSession(
+    private static MavenProject buildProject(
+        final MavenProjectBuilder projectBuilder,
+        final LightweightProjectBuilder lightweightBuilder,
         final MavenSession session,
-        final File pom)
+        final File pom,
+        final Log logger)
     {
-        MavenProject foundProject = null;
-        for (final Iterator projectIterator = session.getSortedProjects().iterator(); projectIterator.hasNext();)
+        MavenProject project = lightweightBuilder != null ? lightweightBuilder.build(pom) : null;
+        if (project != null)
+        {
+            return project;
+        }
+        try
         {
-            final MavenProject project = (MavenProject)projectIterator.next();
-            final File projectPom = new File(
-                    project.getBasedir(),
-                    POM_FILE);
-            if (projectPom.equals(pom))
+            project =
+                projectBuilder.build(
+                    pom,
+                    session.getLocalRepository(),
+                    new DefaultProfileManager(session.getContainer()));
+        }
+        catch (Exception ex)
+        {
+            if (logger.isDebugEnabled())
             {
-                foundProject = project;
+                logger.debug("Failed to build project from pom: " + pom, ex);
             }
         }
-        return foundProject;
+        return project;
     }
 }
\ No newline at end of file
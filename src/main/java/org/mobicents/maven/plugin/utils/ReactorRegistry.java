@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * The state shared by all the executions of the plugin within a reactor (a
+ * maven session), which may run concurrently when modules are built in
+ * parallel: the projects built from POMs and any other shared component
+ * (i.e. the resolution results).
+ * <p>
+ * Reads don't lock. A project is built once, by the first execution asking
+ * for it, while the others asking for the same POM wait for that build only.
+ * </p>
+ */
+public class ReactorRegistry
+{
+    /**
+     * The registries, keyed by session (weakly, so they go with the session).
+     */
+    private static final Map<MavenSession, ReactorRegistry> registries =
+        new WeakHashMap<MavenSession, ReactorRegistry>();
+
+    /**
+     * Retrieves the registry of the reactor of the given <code>session</code>.
+     *
+     * @param session the session, may be null.
+     * @return the registry, created if needed.
+     */
+    public static ReactorRegistry forSession(final MavenSession session)
+    {
+        synchronized (registries)
+        {
+            ReactorRegistry registry = registries.get(session);
+            if (registry == null)
+            {
+                registry = new ReactorRegistry();
+                registries.put(session, registry);
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * The projects built (or being built), keyed by POM.
+     */
+    private final ConcurrentMap<File, Future<MavenProject>> projects =
+        new ConcurrentHashMap<File, Future<MavenProject>>();
+
+    /**
+     * The projects of the session, keyed by POM, null until first needed.
+     */
+    private volatile Map<File, MavenProject> sessionProjects;
+
+    /**
+     * The shared components, keyed by type.
+     */
+    private final ConcurrentMap<Class, Object> components = new ConcurrentHashMap<Class, Object>();
+
+    /**
+     * Gets the project of the given <code>pom</code>, built with the given
+     * <code>builder</code> unless built (or being built) already.
+     *
+     * @param pom the POM.
+     * @param builder builds the project, returning null if it can't be.
+     * @return the project or null if it couldn't be built.
+     * @throws Exception the failure of the builder.
+     */
+    public MavenProject getProject(final File pom, final Callable<MavenProject> builder)
+        throws Exception
+    {
+        Future<MavenProject> future = this.projects.get(pom);
+        if (future == null)
+        {
+            final FutureTask<MavenProject> task = new FutureTask<MavenProject>(builder);
+            future = this.projects.putIfAbsent(pom, task);
+            if (future == null)
+            {
+                future = task;
+                task.run();
+            }
+        }
+        return this.get(pom, future);
+    }
+
+    /**
+     * Builds the project of the given <code>pom</code> again with the given
+     * <code>builder</code>, replacing the one built before.
+     *
+     * @param pom the POM.
+     * @param builder builds the project, returning null if it can't be.
+     * @return the project or null if it couldn't be built.
+     * @throws Exception the failure of the builder.
+     */
+    public MavenProject rebuildProject(final File pom, final Callable<MavenProject> builder)
+        throws Exception
+    {
+        final FutureTask<MavenProject> task = new FutureTask<MavenProject>(builder);
+        this.projects.put(pom, task);
+        task.run();
+        return this.get(pom, task);
+    }
+
+    /**
+     * Gets the project of a build, forgetting the build if it failed so that
+     * it's attempted again the next time.
+     */
+    private MavenProject get(final File pom, final Future<MavenProject> future)
+        throws Exception
+    {
+        MavenProject project = null;
+        try
+        {
+            project = ConcurrentUtils.get(future);
+        }
+        finally
+        {
+            if (project == null)
+            {
+                this.projects.remove(pom, future);
+            }
+        }
+        return project;
+    }
+
+    /**
+     * Gets the project of the given <code>session</code> with the given
+     * <code>pom</code>.
+     *
+     * @param session the session.
+     * @param pom the POM.
+     * @return the project or null if not in the session.
+     */
+    public MavenProject getSessionProject(final MavenSession session, final File pom)
+    {
+        Map<File, MavenProject> sessionProjects = this.sessionProjects;
+        if (sessionProjects == null)
+        {
+            sessionProjects = new ConcurrentHashMap<File, MavenProject>();
+            if (session != null && session.getSortedProjects() != null)
+            {
+                for (final Iterator iterator = session.getSortedProjects().iterator(); iterator.hasNext();)
+                {
+                    final MavenProject project = (MavenProject)iterator.next();
+                    sessionProjects.put(new File(project.getBasedir(), POM_FILE), project);
+                }
+            }
+            this.sessionProjects = sessionProjects;
+        }
+        return sessionProjects.get(pom);
+    }
+
+    /**
+     * The POM file name.
+     */
+    private static final String POM_FILE = "pom.xml";
+
+    /**
+     * Gets the shared component of the given <code>type</code>, created with
+     * its no-arg constructor the first time it's asked for.
+     *
+     * @param type the type of the component.
+     * @return the component.
+     */
+    public <T> T getComponent(final Class<T> type)
+    {
+        Object component = this.components.get(type);
+        if (component == null)
+        {
+            try
+            {
+                component = type.newInstance();
+            }
+            catch (Exception exception)
+            {
+                throw new IllegalArgumentException("Can't create shared " + type.getName() + ": " + exception);
+            }
+            final Object existing = this.components.putIfAbsent(type, component);
+            if (existing != null)
+            {
+                component = existing;
+            }
+        }
+        return type.cast(component);
+    }
+}
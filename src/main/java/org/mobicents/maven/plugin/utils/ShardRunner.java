@@ -0,0 +1,543 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.io.xpp3.SettingsXpp3Writer;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Runs the generation of the modules in worker JVMs: the POMs are split into
+ * shards, and each shard is generated by a maven process of its own (running
+ * the plugin on the POMs of the shard only, in a work directory of its own),
+ * all the workers running at once. The per module results they store are
+ * then merged by the execution root, so that a large tree is resolved on as
+ * many cores (and heaps, and resolvers) as there are shards.
+ * <p>
+ * Each shard gets a directory of its own, numbered from 1, holding the list
+ * of its POMs, the output of its worker and whatever the worker stores in its
+ * work directory.
+ * </p>
+ */
+public class ShardRunner
+{
+    private static final String POMS_FILE_NAME = "poms.txt";
+
+    private static final String LOG_FILE_NAME = "worker.log";
+
+    /**
+     * The number of lines of the output of a failed worker that are logged.
+     */
+    private static final int FAILURE_LINES = 30;
+
+    /**
+     * The prefixes of the execution properties not passed on to the workers:
+     * the ones of the JVM and of the environment, which the workers have of
+     * their own.
+     */
+    private static final String[] JVM_PROPERTY_PREFIXES =
+        {"java.", "javax.", "sun.", "jdk.", "os.", "user.", "file.", "path.", "line.", "awt.", "env."};
+
+    /**
+     * The execution properties not passed on to the workers: the ones of the
+     * maven launcher and the ones set for every worker.
+     */
+    private static final String[] WORKER_PROPERTIES =
+        {"maven.home", "classworlds.conf", "maven.repo.local", "shardPoms", "workDirectory"};
+
+    /**
+     * The command starting a worker, to which the shard is appended.
+     */
+    private final List<String> command;
+
+    /**
+     * The directory the directories of the shards are created in.
+     */
+    private final File directory;
+
+    /**
+     * The directory the workers are started in.
+     */
+    private final File workingDirectory;
+
+    private final Log logger;
+
+    /**
+     * @param command the command starting a worker, to which the list of POMs
+     *        (<code>-DshardPoms</code>) and the work directory
+     *        (<code>-DworkDirectory</code>) of the shard are appended.
+     * @param directory the directory the directories of the shards are created in.
+     * @param workingDirectory the directory the workers are started in.
+     * @param logger the logger.
+     */
+    public ShardRunner(
+        final List<String> command,
+        final File directory,
+        final File workingDirectory,
+        final Log logger)
+    {
+        this.command = command;
+        this.directory = directory;
+        this.workingDirectory = workingDirectory;
+        this.logger = logger;
+    }
+
+    /**
+     * Splits the given <code>poms</code> into (at most) the given number of
+     * shards. The POMs are sorted by path and dealt out in turn, so that a
+     * POM stays in the same shard (and keeps the state its worker stored) for
+     * as long as the modules of the tree are the same.
+     *
+     * @param poms the POM files.
+     * @param shards the number of shards.
+     * @return the POMs of every shard, none empty.
+     */
+    public static List<List<File>> partition(final List poms, final int shards)
+    {
+        final List<File> sorted = new ArrayList<File>(poms);
+        Collections.sort(sorted, new Comparator<File>()
+        {
+            public int compare(final File first, final File second)
+            {
+                return first.getPath().compareTo(second.getPath());
+            }
+        });
+        final int count = Math.max(1, Math.min(shards, sorted.size()));
+        final List<List<File>> partitions = new ArrayList<List<File>>(count);
+        for (int ctr = 0; ctr < count; ctr++)
+        {
+            partitions.add(new ArrayList<File>());
+        }
+        for (int index = 0; index < sorted.size(); index++)
+        {
+            partitions.get(index % count).add(sorted.get(index));
+        }
+        return partitions;
+    }
+
+    /**
+     * Gets the <code>-D</code> arguments passing the given execution properties
+     * (the <code>-D</code> ones of the build) on to the workers, sorted by name,
+     * leaving out the ones of the JVM, of the environment and the ones set for
+     * every worker.
+     *
+     * @param executionProperties the execution properties, may be null.
+     * @return the arguments.
+     */
+    public static List<String> getPropertyArguments(final Properties executionProperties)
+    {
+        final Map<String, String> properties = new TreeMap<String, String>();
+        if (executionProperties != null)
+        {
+            for (final Iterator iterator = executionProperties.keySet().iterator(); iterator.hasNext();)
+            {
+                final String name = String.valueOf(iterator.next());
+                if (!isWorkerProperty(name))
+                {
+                    properties.put(name, executionProperties.getProperty(name));
+                }
+            }
+        }
+        final List<String> arguments = new ArrayList<String>(properties.size());
+        for (final Map.Entry<String, String> property : properties.entrySet())
+        {
+            arguments.add("-D" + property.getKey() + '=' + property.getValue());
+        }
+        return arguments;
+    }
+
+    private static boolean isWorkerProperty(final String name)
+    {
+        for (int index = 0; index < JVM_PROPERTY_PREFIXES.length; index++)
+        {
+            if (name.startsWith(JVM_PROPERTY_PREFIXES[index]))
+            {
+                return true;
+            }
+        }
+        for (int index = 0; index < WORKER_PROPERTIES.length; index++)
+        {
+            if (name.equals(WORKER_PROPERTIES[index]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the arguments passing the update and checksum policies of the build
+     * on to the workers. Maven 2.0.7 doesn't keep the <code>-U</code> and
+     * <code>-C</code> options themselves, only their effect on the remote
+     * repositories: <code>-U</code> when every one of them updates always (as
+     * <code>-U</code> makes them), <code>-C</code> when every one of them fails
+     * on checksums.
+     *
+     * @param remoteRepositories the remote repositories of the build.
+     * @return the arguments.
+     */
+    public static List<String> getPolicyArguments(final List remoteRepositories)
+    {
+        final List<String> arguments = new ArrayList<String>();
+        if (remoteRepositories == null || remoteRepositories.isEmpty())
+        {
+            return arguments;
+        }
+        boolean update = true;
+        boolean strictChecksums = true;
+        for (final Iterator iterator = remoteRepositories.iterator(); iterator.hasNext();)
+        {
+            final ArtifactRepository repository = (ArtifactRepository)iterator.next();
+            final ArtifactRepositoryPolicy[] policies = {repository.getReleases(), repository.getSnapshots()};
+            for (int index = 0; index < policies.length; index++)
+            {
+                final ArtifactRepositoryPolicy policy = policies[index];
+                update &= policy != null &&
+                    ArtifactRepositoryPolicy.UPDATE_POLICY_ALWAYS.equals(policy.getUpdatePolicy());
+                strictChecksums &= policy != null &&
+                    ArtifactRepositoryPolicy.CHECKSUM_POLICY_FAIL.equals(policy.getChecksumPolicy());
+            }
+        }
+        if (update)
+        {
+            arguments.add("-U");
+        }
+        if (strictChecksums)
+        {
+            arguments.add("-C");
+        }
+        return arguments;
+    }
+
+    /**
+     * Writes the given <code>settings</code> for the workers to a temporary
+     * file, outside of the project tree and readable by its owner only, as
+     * they may hold the passwords of the servers. The file is to be deleted
+     * once the workers are done.
+     *
+     * @param settings the settings.
+     * @return the settings file.
+     * @throws IOException if the file can't be written or restricted to its owner.
+     */
+    public static File writeSettings(final Settings settings)
+        throws IOException
+    {
+        final File file = File.createTempFile("mobicents-eclipse-settings", ".xml");
+        file.deleteOnExit();
+        try
+        {
+            // - before anything is written
+            restrictToOwner(file);
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try
+            {
+                new SettingsXpp3Writer().write(writer, settings);
+            }
+            finally
+            {
+                IOUtil.close(writer);
+            }
+        }
+        catch (IOException exception)
+        {
+            file.delete();
+            throw exception;
+        }
+        return file;
+    }
+
+    /**
+     * Makes the given <code>file</code> readable and writable by its owner
+     * only, with the permission methods of <code>java.io.File</code> (by
+     * reflection, the plugin targeting JVMs without them) or else chmod. Left
+     * as is on file systems without such permissions, where the temporary
+     * directory is the user's own.
+     */
+    private static void restrictToOwner(final File file)
+        throws IOException
+    {
+        if (File.separatorChar != '/')
+        {
+            return;
+        }
+        boolean restricted = true;
+        try
+        {
+            for (final String name : new String[] {"setReadable", "setWritable", "setExecutable"})
+            {
+                final Method method = File.class.getMethod(name, new Class[] {boolean.class, boolean.class});
+                restricted &= Boolean.TRUE.equals(method.invoke(file, new Object[] {Boolean.FALSE, Boolean.FALSE}));
+                if (!"setExecutable".equals(name))
+                {
+                    restricted &= Boolean.TRUE.equals(method.invoke(file, new Object[] {Boolean.TRUE, Boolean.TRUE}));
+                }
+            }
+        }
+        catch (NoSuchMethodException exception)
+        {
+            restricted = chmod(file, "600");
+        }
+        catch (Exception exception)
+        {
+            restricted = false;
+        }
+        if (!restricted)
+        {
+            throw new IOException("Could not restrict " + file + " to its owner");
+        }
+    }
+
+    private static boolean chmod(final File file, final String mode)
+        throws IOException
+    {
+        final Process process = new ProcessBuilder(new String[] {"chmod", mode, file.getPath()}).start();
+        try
+        {
+            process.getOutputStream().close();
+            return process.waitFor() == 0;
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Gets the list of POMs a worker was started for.
+     *
+     * @param file the file listing the POMs, one per line.
+     * @return the POM files.
+     * @throws IOException
+     */
+    public static List<File> readPoms(final File file)
+        throws IOException
+    {
+        final List<File> poms = new ArrayList<File>();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.trim().length() > 0)
+                {
+                    poms.add(new File(line.trim()));
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close(reader);
+        }
+        return poms;
+    }
+
+    /**
+     * Runs a worker for each of the given shards and waits for all of them.
+     *
+     * @param shards the POMs of every shard.
+     * @param outputFileName the name of the file each worker stores its
+     *        results in, within its work directory.
+     * @return the result files of the shards, in shard order.
+     * @throws Exception if a worker couldn't be started or failed.
+     */
+    public List<File> run(final List<List<File>> shards, final String outputFileName)
+        throws Exception
+    {
+        final List<File> outputFiles = new ArrayList<File>(shards.size());
+        final List<Callable<Integer>> workers = new ArrayList<Callable<Integer>>(shards.size());
+        for (int index = 0; index < shards.size(); index++)
+        {
+            final File shardDirectory = this.getShardDirectory(index);
+            shardDirectory.mkdirs();
+            final File outputFile = new File(shardDirectory, outputFileName);
+            // - so that a worker that stored nothing isn't taken for one that did
+            outputFile.delete();
+            outputFiles.add(outputFile);
+            workers.add(this.newWorker(index, shards.get(index), shardDirectory));
+        }
+        this.logger.info("Generating " + shards.size() + " shard(s) in worker processes");
+
+        // - the workers never throw on failure, so that all of them are waited for
+        final List<Integer> exitCodes = ConcurrentUtils.invokeAll("shard-worker", workers, workers.size());
+        final List<Integer> failed = new ArrayList<Integer>();
+        for (int index = 0; index < exitCodes.size(); index++)
+        {
+            if (exitCodes.get(index).intValue() != 0 || !outputFiles.get(index).isFile())
+            {
+                failed.add(Integer.valueOf(index + 1));
+                this.logFailure(index, exitCodes.get(index).intValue());
+            }
+        }
+        if (!failed.isEmpty())
+        {
+            throw new IOException("Shard(s) " + failed + " failed, see the " + LOG_FILE_NAME + " files in "
+                + this.directory);
+        }
+        return outputFiles;
+    }
+
+    /**
+     * Creates the worker generating the given shard, returning the exit code
+     * of its process.
+     */
+    private Callable<Integer> newWorker(final int index, final List<File> poms, final File shardDirectory)
+        throws IOException
+    {
+        final File pomsFile = new File(shardDirectory, POMS_FILE_NAME);
+        final PrintWriter writer = new PrintWriter(new FileWriter(pomsFile));
+        try
+        {
+            for (final File pom : poms)
+            {
+                writer.println(pom.getAbsolutePath());
+            }
+        }
+        finally
+        {
+            IOUtil.close(writer);
+        }
+        final List<String> command = new ArrayList<String>(this.command);
+        command.add("-DshardPoms=" + pomsFile.getAbsolutePath());
+        command.add("-DworkDirectory=" + shardDirectory.getAbsolutePath());
+        final File logFile = new File(shardDirectory, LOG_FILE_NAME);
+        return new Callable<Integer>()
+        {
+            public Integer call()
+                throws Exception
+            {
+                final long start = System.currentTimeMillis();
+                final Process process = new ProcessBuilder(command).directory(ShardRunner.this.workingDirectory)
+                    .redirectErrorStream(true).start();
+                try
+                {
+                    process.getOutputStream().close();
+                    copy(process.getInputStream(), logFile);
+                    final int exitCode = process.waitFor();
+                    ShardRunner.this.logger.info("Shard " + (index + 1) + " (" + poms.size() + " module(s)) "
+                        + (exitCode == 0 ? "done" : "failed") + " in " + (System.currentTimeMillis() - start)
+                        + " ms");
+                    return Integer.valueOf(exitCode);
+                }
+                finally
+                {
+                    // - no-op unless the wait was interrupted
+                    process.destroy();
+                }
+            }
+        };
+    }
+
+    /**
+     * Logs the end of the output of a failed worker.
+     */
+    private void logFailure(final int index, final int exitCode)
+    {
+        final File logFile = new File(this.getShardDirectory(index), LOG_FILE_NAME);
+        this.logger.error("Shard " + (index + 1) + " failed (exit code " + exitCode + "), the end of " + logFile
+            + " follows:");
+        try
+        {
+            final LinkedList<String> lines = new LinkedList<String>();
+            final BufferedReader reader = new BufferedReader(new FileReader(logFile));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    lines.add(line);
+                    if (lines.size() > FAILURE_LINES)
+                    {
+                        lines.removeFirst();
+                    }
+                }
+            }
+            finally
+            {
+                IOUtil.close(reader);
+            }
+            for (final String line : lines)
+            {
+                this.logger.error("  " + line);
+            }
+        }
+        catch (IOException exception)
+        {
+            this.logger.error("  (could not be read: " + exception + ")");
+        }
+    }
+
+    private File getShardDirectory(final int index)
+    {
+        return new File(this.directory, String.valueOf(index + 1));
+    }
+
+    /**
+     * Copies the output of a worker to its log file, until the worker exits.
+     */
+    private static void copy(final InputStream input, final File file)
+        throws IOException
+    {
+        final OutputStream output = new FileOutputStream(file);
+        try
+        {
+            IOUtil.copy(input, output);
+        }
+        finally
+        {
+            IOUtil.close(output);
+            IOUtil.close(input);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryFactory;
+import org.apache.maven.artifact.repository.layout.ArtifactRepositoryLayout;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.profiles.DefaultProfileManager;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.codehaus.plexus.PlexusTestCase;
+import org.mobicents.maven.plugin.utils.LightweightProjectBuilder;
+
+/**
+ * Base class of the tests needing the maven components (the project builder,
+ * the artifact factory...), looked up in a plexus container.
+ */
+public abstract class MavenTestCase
+    extends PlexusTestCase
+{
+    /**
+     * A directory of the test, deleted when the JVM exits.
+     */
+    protected File directory;
+
+    /**
+     * An (empty) local repository within the directory of the test.
+     */
+    protected ArtifactRepository localRepository;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.directory = TestFiles.createDirectory(this.getClass().getSimpleName());
+        this.localRepository = this.createRepository("local", new File(this.directory, "repository"));
+    }
+
+    /**
+     * Creates a repository of the default layout.
+     *
+     * @param id the id of the repository.
+     * @param directory the directory of the repository.
+     * @return the repository.
+     * @throws Exception
+     */
+    protected ArtifactRepository createRepository(final String id, final File directory)
+        throws Exception
+    {
+        return this.createRepository(id, directory.toURI().toString());
+    }
+
+    /**
+     * Creates a repository of the default layout.
+     *
+     * @param id the id of the repository.
+     * @param url the url of the repository.
+     * @return the repository.
+     * @throws Exception
+     */
+    protected ArtifactRepository createRepository(final String id, final String url)
+        throws Exception
+    {
+        final ArtifactRepositoryFactory factory = (ArtifactRepositoryFactory)this.lookup(ArtifactRepositoryFactory.ROLE);
+        final ArtifactRepositoryLayout layout =
+            (ArtifactRepositoryLayout)this.lookup(ArtifactRepositoryLayout.ROLE, "default");
+        return factory.createArtifactRepository(id, url, layout, null, null);
+    }
+
+    /**
+     * Gets the artifact factory.
+     *
+     * @return the factory.
+     * @throws Exception
+     */
+    protected ArtifactFactory getArtifactFactory()
+        throws Exception
+    {
+        return (ArtifactFactory)this.lookup(ArtifactFactory.ROLE);
+    }
+
+    /**
+     * Creates a jar artifact in compile scope. No container is needed, so the
+     * tests not extending this class create their artifacts with it too.
+     *
+     * @param groupId the group id.
+     * @param artifactId the artifact id.
+     * @param version the version (or version range).
+     * @return the artifact.
+     */
+    public static Artifact createArtifact(final String groupId, final String artifactId, final String version)
+    {
+        return createArtifact(groupId, artifactId, version, null);
+    }
+
+    /**
+     * Creates a jar artifact in compile scope, with a classifier.
+     *
+     * @param groupId the group id.
+     * @param artifactId the artifact id.
+     * @param version the version (or version range).
+     * @param classifier the classifier, null if none.
+     * @return the artifact.
+     */
+    public static Artifact createArtifact(
+        final String groupId,
+        final String artifactId,
+        final String version,
+        final String classifier)
+    {
+        try
+        {
+            return new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersionSpec(version),
+                Artifact.SCOPE_COMPILE, "jar", classifier, new DefaultArtifactHandler("jar"));
+        }
+        catch (final InvalidVersionSpecificationException exception)
+        {
+            throw new IllegalArgumentException(exception.getMessage());
+        }
+    }
+
+    /**
+     * Gets the (full) project builder.
+     *
+     * @return the builder.
+     * @throws Exception
+     */
+    protected MavenProjectBuilder getProjectBuilder()
+        throws Exception
+    {
+        return (MavenProjectBuilder)this.lookup(MavenProjectBuilder.ROLE);
+    }
+
+    /**
+     * Builds the project of the given POM with the full project builder.
+     *
+     * @param pom the POM.
+     * @return the project.
+     * @throws Exception
+     */
+    protected MavenProject buildProject(final File pom)
+        throws Exception
+    {
+        return this.getProjectBuilder().build(pom, this.localRepository, new DefaultProfileManager(this.getContainer()));
+    }
+
+    /**
+     * Creates a lightweight project builder working on the local repository.
+     *
+     * @param properties the execution properties.
+     * @return the builder.
+     * @throws Exception
+     */
+    protected LightweightProjectBuilder createLightweightProjectBuilder(final Properties properties)
+        throws Exception
+    {
+        return new LightweightProjectBuilder(this.getArtifactFactory(), this.localRepository,
+            Collections.EMPTY_LIST, properties, new SystemStreamLog());
+    }
+
+    /**
+     * Installs an artifact (its POM and an empty jar) into the local repository.
+     *
+     * @param groupId the group id.
+     * @param artifactId the artifact id.
+     * @param version the version.
+     * @param content more content of the POM (i.e. its dependencies).
+     * @return the artifact file.
+     * @throws Exception
+     */
+    protected File installArtifact(
+        final String groupId,
+        final String artifactId,
+        final String version,
+        final String content)
+        throws Exception
+    {
+        final String path = groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/' + artifactId + '-'
+            + version;
+        this.writePom(new File(this.localRepository.getBasedir(), path + ".pom"), "<groupId>" + groupId
+            + "</groupId><artifactId>" + artifactId + "</artifactId><version>" + version + "</version>\n" + content);
+        return TestFiles.writeJar(new File(this.localRepository.getBasedir(), path + ".jar"));
+    }
+
+    /**
+     * Writes a POM.
+     *
+     * @param file the POM file.
+     * @param content the content of the <code>project</code> element.
+     * @return the POM file.
+     * @throws Exception
+     */
+    protected File writePom(final File file, final String content)
+        throws Exception
+    {
+        return TestFiles.write(file, "<project>\n<modelVersion>4.0.0</modelVersion>\n" + content + "\n</project>\n");
+    }
+}
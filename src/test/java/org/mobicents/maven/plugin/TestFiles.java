@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Creates the files the tests work on.
+ */
+public class TestFiles
+{
+    /**
+     * Creates an empty directory, deleted when the JVM exits.
+     *
+     * @param name the prefix of the name of the directory.
+     * @return the directory.
+     * @throws IOException
+     */
+    public static File createDirectory(final String name)
+        throws IOException
+    {
+        final File directory = File.createTempFile(name, "");
+        directory.delete();
+        directory.mkdirs();
+        Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    FileUtils.deleteDirectory(directory);
+                }
+                catch (final IOException exception)
+                {
+                    // - left to the temp directory cleanup
+                }
+            }
+        });
+        return directory;
+    }
+
+    /**
+     * Writes a jar with the given (empty) entries.
+     *
+     * @param jar the jar file.
+     * @param entries the names of the entries.
+     * @return the jar file.
+     * @throws IOException
+     */
+    public static File writeJar(final File jar, final String... entries)
+        throws IOException
+    {
+        jar.getParentFile().mkdirs();
+        final JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        try
+        {
+            for (final String entry : entries)
+            {
+                output.putNextEntry(new JarEntry(entry));
+                output.closeEntry();
+            }
+        }
+        finally
+        {
+            IOUtil.close(output);
+        }
+        return jar;
+    }
+
+    /**
+     * Writes the given text to a file.
+     *
+     * @param file the file.
+     * @param content the text.
+     * @return the file.
+     * @throws IOException
+     */
+    public static File write(final File file, final String content)
+        throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        final OutputStream output = new FileOutputStream(file);
+        try
+        {
+            output.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            IOUtil.close(output);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.mobicents.maven.plugin.TestFiles;
+import org.mobicents.maven.plugin.utils.JarCentralDirectory;
+
+/**
+ * Tests the {@link ClasspathConflictDetector}.
+ */
+public class ClasspathConflictDetectorTest
+    extends TestCase
+{
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.directory = TestFiles.createDirectory("conflicts");
+    }
+
+    public void testDetectsDuplicateClassesAndSplitPackages()
+        throws Exception
+    {
+        final File first = TestFiles.writeJar(new File(this.directory, "first.jar"),
+            "a/A.class", "a/A$Inner.class", "b/B.class");
+        final File second = TestFiles.writeJar(new File(this.directory, "second.jar"),
+            "a/A.class", "a/A$Inner.class", "c/C.class");
+        final File sources = new File(this.directory, "src");
+        TestFiles.write(new File(sources, "c/D.java"), "package c; class D {}");
+
+        final int conflicts = new ClasspathConflictDetector(new SystemStreamLog(), 2).detect(
+            Arrays.asList(first, second), Collections.singletonList(sources));
+
+        // - a.A duplicated, package a split (first/second) and package c split (second/src)
+        assertEquals(3, conflicts);
+    }
+
+    public void testSkipsUnreadableJars()
+        throws Exception
+    {
+        final File jar = TestFiles.writeJar(new File(this.directory, "good.jar"), "a/A.class");
+        final File corrupt = TestFiles.write(new File(this.directory, "corrupt.jar"), "not a zip archive");
+        final File missing = new File(this.directory, "missing.jar");
+
+        final int conflicts = new ClasspathConflictDetector(new SystemStreamLog(), 2).detect(
+            Arrays.asList(jar, corrupt, missing), Collections.<File>emptyList());
+
+        assertEquals(0, conflicts);
+    }
+
+    public void testSkipsJarsWithACorruptCentralDirectory()
+        throws Exception
+    {
+        final File jar = TestFiles.writeJar(new File(this.directory, "good.jar"), "a/A.class");
+        final File corrupt = TestFiles.writeJar(new File(this.directory, "corrupt.jar"), "a/A.class", "b/B.class");
+        // - the name length of the last entry points past the end of the directory
+        final RandomAccessFile file = new RandomAccessFile(corrupt, "rw");
+        try
+        {
+            final byte[] content = new byte[(int)file.length()];
+            file.readFully(content);
+            int header = content.length - 4;
+            while (content[header] != 'P' || content[header + 1] != 'K' || content[header + 2] != 1
+                || content[header + 3] != 2)
+            {
+                header--;
+            }
+            file.seek(header + 28);
+            file.writeShort(0xFFFF);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        try
+        {
+            JarCentralDirectory.readEntryNames(corrupt);
+            fail("The central directory is corrupt");
+        }
+        catch (final IOException exception)
+        {
+            assertTrue(exception.getMessage(), exception.getMessage().startsWith("Corrupt central directory"));
+        }
+        final int conflicts = new ClasspathConflictDetector(new SystemStreamLog(), 2).detect(
+            Arrays.asList(jar, corrupt), Collections.<File>emptyList());
+
+        assertEquals(0, conflicts);
+    }
+
+    public void testToClassName()
+    {
+        assertEquals("a.b.C", ClasspathConflictDetector.toClassName("a/b/C.class"));
+        assertNull(ClasspathConflictDetector.toClassName("a/b/C$D.class"));
+        assertNull(ClasspathConflictDetector.toClassName("META-INF/versions/9/a/C.class"));
+        assertNull(ClasspathConflictDetector.toClassName("module-info.class"));
+        assertNull(ClasspathConflictDetector.toClassName("a/b/c.properties"));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.analysis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+import org.mobicents.maven.plugin.TestFiles;
+
+/**
+ * Tests the {@link UnusedDependencyAnalyzer}, against the compiled class of
+ * this very test (which references junit but nothing of the "unused" jar).
+ */
+public class UnusedDependencyAnalyzerTest
+    extends TestCase
+{
+    private File directory;
+
+    private File outputDirectory;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.directory = TestFiles.createDirectory("unused");
+        this.outputDirectory = new File(this.directory, "classes");
+        copyClass(this.getClass(), this.outputDirectory);
+    }
+
+    public void testFindsUnreferencedJars()
+        throws Exception
+    {
+        final File used = TestFiles.writeJar(new File(this.directory, "used.jar"), "junit/framework/TestCase.class");
+        final File unused = TestFiles.writeJar(new File(this.directory, "unused.jar"), "x/Unused.class");
+        final File resources = TestFiles.writeJar(new File(this.directory, "resources.jar"), "x/messages.properties");
+        final File corrupt = TestFiles.write(new File(this.directory, "corrupt.jar"), "not a zip archive");
+
+        final Set<File> found = new UnusedDependencyAnalyzer(new SystemStreamLog(), 2).findUnused(
+            Collections.singletonList(this.outputDirectory.getPath()), Arrays.asList(used, unused, resources, corrupt));
+
+        assertEquals(Collections.singleton(unused), found);
+    }
+
+    public void testKeepsTheJarsOfAnnotationsAndTypeArguments()
+        throws Exception
+    {
+        final File outputDirectory = new File(this.directory, "annotated");
+        copyClass(Annotated.class, outputDirectory);
+        final File annotations = TestFiles.writeJar(new File(this.directory, "annotations.jar"),
+            Marker.class.getName().replace('.', '/') + ".class");
+        final File typeArguments = TestFiles.writeJar(new File(this.directory, "arguments.jar"),
+            "junit/framework/Test.class");
+        final File unused = TestFiles.writeJar(new File(this.directory, "unused.jar"), "x/Unused.class");
+
+        final Set<File> found = new UnusedDependencyAnalyzer(new SystemStreamLog(), 2).findUnused(
+            Collections.singletonList(outputDirectory.getPath()), Arrays.asList(annotations, typeArguments, unused));
+
+        assertEquals(Collections.singleton(unused), found);
+    }
+
+    public void testReportsNothingBeforeCompilation()
+        throws Exception
+    {
+        final File unused = TestFiles.writeJar(new File(this.directory, "unused.jar"), "x/Unused.class");
+
+        final Set<File> found = new UnusedDependencyAnalyzer(new SystemStreamLog(), 2).findUnused(
+            Arrays.asList(new File(this.directory, "nothing").getPath(), null), Collections.singletonList(unused));
+
+        assertTrue(found.isEmpty());
+    }
+
+    /**
+     * Copies the compiled class of the given type into the given output
+     * directory.
+     */
+    private static void copyClass(final Class type, final File outputDirectory)
+        throws Exception
+    {
+        final File classFile = new File(outputDirectory, type.getName().replace('.', '/') + ".class");
+        classFile.getParentFile().mkdirs();
+        final InputStream input = type.getResourceAsStream(classFile.getName());
+        final OutputStream output = new FileOutputStream(classFile);
+        try
+        {
+            IOUtil.copy(input, output);
+        }
+        finally
+        {
+            IOUtil.close(input);
+            IOUtil.close(output);
+        }
+    }
+
+    /**
+     * References {@link Marker} only through its annotation, and junit's
+     * <code>Test</code> only through a type argument.
+     */
+    @Marker
+    static class Annotated
+    {
+        List<Test> tests;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ArtifactTable}: the rows keep the coordinates, owners and
+ * paths of the entries, however many there are, and sort by path.
+ */
+public class ArtifactTableTest
+    extends TestCase
+{
+    public void testKeepsTheEntriesOfTheArtifacts()
+    {
+        final ArtifactTable table = new ArtifactTable(0);
+        final Set<String> owners = Collections.singleton("g:module");
+        final int jar = table.add(MavenTestCase.createArtifact("g", "a", "1.0"), owners);
+        final int tests =
+            table.add(MavenTestCase.createArtifact("g", "a", "1.0", "tests"), new TreeSet<String>(owners));
+        final int unresolved =
+            table.add(MavenTestCase.createArtifact("h", "b", "1.0"), Collections.singleton("g:other"));
+        table.setPath(jar, "M2_REPO/g/a.jar", new File("a.jar"));
+        table.setPath(tests, "M2_REPO/g/a-tests.jar", new File("a-tests.jar"));
+        final int path = table.add("lib/c.jar", new File("c.jar"));
+
+        assertEquals(4, table.size());
+        assertEquals("g:a:jar", table.getConflictId(jar));
+        assertEquals("g:a:jar:tests", table.getConflictId(tests));
+        assertEquals("h:b:jar", table.getConflictId(unresolved));
+        assertEquals(owners, table.getOwners(jar));
+        assertEquals(owners, table.getOwners(tests));
+        assertEquals(Collections.singleton("g:other"), table.getOwners(unresolved));
+        assertNull(table.getOwners(path));
+        assertNull(table.getPath(unresolved));
+        assertEquals(new File("a-tests.jar"), table.getFile(tests));
+        assertEquals("lib/c.jar", table.getPath(path));
+    }
+
+    public void testGrowsAndSortsByPath()
+    {
+        final ArtifactTable table = new ArtifactTable(0);
+        for (int index = 0; index < 1000; index++)
+        {
+            final int row = table.add(MavenTestCase.createArtifact("g" + index % 7, "a" + index, "1.0"),
+                Collections.singleton("g:module" + index % 3));
+            if (index % 10 != 0)
+            {
+                table.setPath(row, "M2_REPO/" + (999 - index), null);
+            }
+        }
+
+        assertEquals(1000, table.size());
+        assertEquals("g5:a999:jar", table.getConflictId(999));
+        assertEquals(Collections.singleton("g:module0"), table.getOwners(999));
+        final int[] rows = table.sortByPath();
+        assertEquals(900, rows.length);
+        for (int index = 1; index < rows.length; index++)
+        {
+            assertTrue(table.getPath(rows[index - 1]).compareTo(table.getPath(rows[index])) < 0);
+        }
+    }
+
+    public void testMapsLikeTheMapsItReplaced()
+    {
+        final ArtifactRepository localRepository = new DefaultArtifactRepository("local", "file:///repository",
+            new DefaultRepositoryLayout());
+        final ClasspathAllocationBenchmark benchmark = new ClasspathAllocationBenchmark(
+            ClasspathAllocationBenchmark.createArtifacts(500, localRepository), Collections.singleton("excluded"),
+            Collections.singleton("jar"), localRepository, "M2_REPO");
+
+        assertEquals(benchmark.mapToMaps(), benchmark.mapToTable());
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.mobicents.maven.plugin.utils.PathNormalizer;
+
+/**
+ * Measures the memory allocated (and the time taken) mapping resolved
+ * artifacts to .classpath entries with the {@link ArtifactTable}, compared to
+ * mapping them into maps keyed by path with the exclude keys built for every
+ * artifact (as the writer used to). The allocations are those of the current
+ * thread, as reported by the HotSpot thread bean, so they're only measured on
+ * JVMs that have it. Run with the number of (generated) artifacts to map as
+ * argument.
+ */
+class ClasspathAllocationBenchmark
+{
+    private static final int RUNS = 5;
+
+    /**
+     * Keeps the results alive, so that the work can't be optimized away.
+     */
+    private static int sink;
+
+    private final Set artifacts;
+
+    private final Set classpathExcludes;
+
+    private final Set classpathArtifactTypes;
+
+    private final ArtifactRepository localRepository;
+
+    private final String repositoryVariableName;
+
+    /**
+     * Runs the benchmark on generated artifacts.
+     *
+     * @param arguments the number of artifacts (1000 if not given).
+     */
+    public static void main(final String[] arguments)
+    {
+        final int count = arguments.length > 0 ? Integer.parseInt(arguments[0]) : 1000;
+        final ArtifactRepository localRepository = new DefaultArtifactRepository(
+            "local", new File(System.getProperty("java.io.tmpdir"), "repository").toURI().toString(),
+            new DefaultRepositoryLayout());
+        run(createArtifacts(count, localRepository), Collections.singleton("excluded"), Collections.singleton("jar"),
+            localRepository, "M2_REPO", new SystemStreamLog());
+    }
+
+    /**
+     * Creates the given number of resolved artifacts, spread over a few
+     * groups, with their files in the given local repository.
+     */
+    static Set createArtifacts(final int count, final ArtifactRepository localRepository)
+    {
+        final Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        for (int index = 0; index < count; index++)
+        {
+            final Artifact artifact = new DefaultArtifact(index % 20 == 0 ? "excluded" : "group" + index % 10,
+                "artifact" + index, VersionRange.createFromVersion("1." + index % 3), Artifact.SCOPE_COMPILE,
+                index % 7 == 0 ? "pom" : "jar", index % 5 == 0 ? "tests" : null, new DefaultArtifactHandler("jar"));
+            artifact.setFile(new File(localRepository.getBasedir(), localRepository.pathOf(artifact)));
+            artifacts.add(artifact);
+        }
+        return artifacts;
+    }
+
+    ClasspathAllocationBenchmark(
+        final Set artifacts,
+        final Set classpathExcludes,
+        final Set classpathArtifactTypes,
+        final ArtifactRepository localRepository,
+        final String repositoryVariableName)
+    {
+        this.artifacts = artifacts;
+        this.classpathExcludes = classpathExcludes;
+        this.classpathArtifactTypes = classpathArtifactTypes;
+        this.localRepository = localRepository;
+        this.repositoryVariableName = repositoryVariableName;
+    }
+
+    /**
+     * Runs both mappings a few times and logs the best of each.
+     *
+     * @param artifacts the (resolved) artifacts.
+     * @param classpathExcludes the excludes.
+     * @param classpathArtifactTypes the types of the artifacts on the classpath.
+     * @param localRepository the local repository.
+     * @param repositoryVariableName the name of the repository variable.
+     * @param logger the logger.
+     */
+    static void run(
+        final Set artifacts,
+        final Set classpathExcludes,
+        final Set classpathArtifactTypes,
+        final ArtifactRepository localRepository,
+        final String repositoryVariableName,
+        final Log logger)
+    {
+        final ClasspathAllocationBenchmark benchmark = new ClasspathAllocationBenchmark(
+            artifacts, classpathExcludes, classpathArtifactTypes, localRepository, repositoryVariableName);
+        final Method allocatedBytes = getAllocatedBytesMethod();
+        final long[] maps = {Long.MAX_VALUE, Long.MAX_VALUE};
+        final long[] table = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int run = 0; run < RUNS; run++)
+        {
+            measure(benchmark, false, allocatedBytes, maps);
+            measure(benchmark, true, allocatedBytes, table);
+        }
+        logger.info("Classpath stage for " + artifacts.size() + " artifact(s): maps " + describe(maps)
+            + ", table " + describe(table));
+    }
+
+    private static void measure(
+        final ClasspathAllocationBenchmark benchmark,
+        final boolean table,
+        final Method allocatedBytes,
+        final long[] best)
+    {
+        final long bytes = getAllocatedBytes(allocatedBytes);
+        final long start = System.nanoTime();
+        sink += table ? benchmark.mapToTable() : benchmark.mapToMaps();
+        final long time = System.nanoTime() - start;
+        final long allocated = getAllocatedBytes(allocatedBytes) - bytes;
+        best[0] = Math.min(best[0], allocated);
+        best[1] = Math.min(best[1], time);
+    }
+
+    private static String describe(final long[] best)
+    {
+        return (best[0] < 0 ? "(allocations not measured)" : best[0] / 1024 + " KB allocated") + " in "
+            + best[1] / 1000 + " us";
+    }
+
+    /**
+     * Gets <code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)</code>,
+     * null if the JVM doesn't have it.
+     */
+    private static Method getAllocatedBytesMethod()
+    {
+        try
+        {
+            final Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+                "getThreadAllocatedBytes", new Class[] {long.class});
+            method.setAccessible(true);
+            return method;
+        }
+        catch (Exception exception)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread so far, a negative number
+     * if that's not known.
+     */
+    private static long getAllocatedBytes(final Method method)
+    {
+        if (method == null)
+        {
+            return -1;
+        }
+        try
+        {
+            return ((Long)method.invoke(ManagementFactory.getThreadMXBean(),
+                new Object[] {Long.valueOf(Thread.currentThread().getId())})).longValue();
+        }
+        catch (Exception exception)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Maps the artifacts the way the writer used to: the exclude keys built
+     * for every artifact, and maps keyed by path sorted as a list of paths.
+     */
+    int mapToMaps()
+    {
+        final Map<Artifact, String> artifactPaths = new HashMap<Artifact, String>();
+        final Map<String, File> pathFiles = new HashMap<String, File>();
+        final Map<String, String> pathConflictIds = new HashMap<String, String>();
+        for (final Iterator iterator = this.artifacts.iterator(); iterator.hasNext();)
+        {
+            final Artifact artifact = (Artifact)iterator.next();
+            if (this.classpathExcludes != null &&
+                (this.classpathExcludes.contains(artifact.getGroupId()) ||
+                    this.classpathExcludes.contains(artifact.getGroupId() + ":" + artifact.getArtifactId()) ||
+                    this.classpathExcludes.contains(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":"
+                        + artifact.getVersion())))
+            {
+                continue;
+            }
+            final File file = artifact.getFile();
+            if (this.classpathArtifactTypes.contains(artifact.getType()) && file != null)
+            {
+                final String path = StringUtils.replace(
+                    PathNormalizer.normalizePath(file.toString()),
+                    PathNormalizer.normalizePath(this.localRepository.getBasedir()),
+                    this.repositoryVariableName);
+                artifactPaths.put(artifact, path);
+                pathFiles.put(path, file);
+                pathConflictIds.put(path, artifact.getDependencyConflictId());
+            }
+        }
+        final List paths = new ArrayList();
+        for (final Iterator iterator = this.artifacts.iterator(); iterator.hasNext();)
+        {
+            final String path = artifactPaths.get(iterator.next());
+            if (path != null)
+            {
+                paths.add(path);
+            }
+        }
+        final Set<String> conflictIds = new HashSet<String>(pathConflictIds.values());
+        Collections.sort(paths);
+        final List<File> files = new ArrayList<File>();
+        for (final Iterator iterator = paths.iterator(); iterator.hasNext();)
+        {
+            files.add(pathFiles.get(iterator.next()));
+        }
+        return files.size() + conflictIds.size();
+    }
+
+    /**
+     * Maps the artifacts the way the writer does now, into an {@link ArtifactTable}.
+     */
+    int mapToTable()
+    {
+        final ClasspathExcludes excludes = new ClasspathExcludes(this.classpathExcludes);
+        final ClasspathVariables variables = new ClasspathVariables(Collections.singletonMap(
+            this.repositoryVariableName, this.localRepository.getBasedir()));
+        final ArtifactTable table = new ArtifactTable(this.artifacts.size());
+        for (final Iterator iterator = this.artifacts.iterator(); iterator.hasNext();)
+        {
+            final Artifact artifact = (Artifact)iterator.next();
+            final File file = artifact.getFile();
+            if (excludes.match(artifact) == null && this.classpathArtifactTypes.contains(artifact.getType()) &&
+                file != null)
+            {
+                final int row = table.add(artifact, null);
+                table.setPath(row, variables.relativize(PathNormalizer.normalizePath(file.toString())), file);
+            }
+        }
+        final Set<String> conflictIds = new HashSet<String>();
+        for (int row = 0; row < table.size(); row++)
+        {
+            conflictIds.add(table.getConflictId(row));
+        }
+        final int[] rows = table.sortByPath();
+        final List<File> files = new ArrayList<File>(rows.length);
+        for (int index = 0; index < rows.length; index++)
+        {
+            files.add(table.getFile(rows[index]));
+        }
+        return files.size() + conflictIds.size();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.mobicents.maven.plugin.TestFiles;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ClasspathState}: what the modules contributed survives
+ * a store and load, and a state that can't be read is ignored.
+ */
+public class ClasspathStateTest
+    extends TestCase
+{
+    private File file;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.file = new File(TestFiles.createDirectory("state"), "classpath-state.bin");
+    }
+
+    public void testStoresTheModules()
+        throws Exception
+    {
+        this.createState().store(this.file);
+        final ClasspathState state = ClasspathState.load(this.file);
+
+        assertNotNull(state);
+        assertEquals(Arrays.asList(new String[] {"a/pom.xml", "b/pom.xml"}), this.getKeys(state));
+        final ClasspathState.Module module = state.getModule("a/pom.xml");
+        assertEquals("g:a", module.getGroupId() + ':' + module.getArtifactId());
+        assertEquals(Collections.singletonList("g:b"), module.getDependencies());
+        assertEquals(Collections.singletonList("a/src/main/java"), module.getSourcePaths());
+        assertEquals(Collections.singletonMap("x:y:jar", "M2_REPO/x/y/1.0/y-1.0.jar"), module.getEntries());
+        assertFalse(new File(this.file.getPath() + ".tmp").exists());
+    }
+
+    public void testReplacesTheStoredState()
+        throws Exception
+    {
+        this.createState().store(this.file);
+        final ClasspathState state = new ClasspathState();
+        state.addModule(new ClasspathState.Module("c/pom.xml", "g", "c"));
+        state.store(this.file);
+
+        assertEquals(Collections.singletonList("c/pom.xml"), this.getKeys(ClasspathState.load(this.file)));
+    }
+
+    public void testIgnoresATornState()
+        throws Exception
+    {
+        this.createState().store(this.file);
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw");
+        try
+        {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+
+        assertNull(ClasspathState.load(this.file));
+        assertNull(ClasspathState.load(new File(this.file.getParentFile(), "missing.bin")));
+    }
+
+    private ClasspathState createState()
+    {
+        final ClasspathState state = new ClasspathState();
+        final ClasspathState.Module a = new ClasspathState.Module("a/pom.xml", "g", "a");
+        a.getDependencies().add("g:b");
+        a.getSourcePaths().add("a/src/main/java");
+        a.getEntries().put("x:y:jar", "M2_REPO/x/y/1.0/y-1.0.jar");
+        state.addModule(a);
+        state.addModule(new ClasspathState.Module("b/pom.xml", "g", "b"));
+        return state;
+    }
+
+    private List<String> getKeys(final ClasspathState state)
+    {
+        final List<String> keys = new ArrayList<String>();
+        for (final ClasspathState.Module module : state.getModules())
+        {
+            keys.add(module.getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ClasspathVariables}: a path is relativized against the
+ * variable with the longest root it's under, and turned back into its file.
+ */
+public class ClasspathVariablesTest
+    extends TestCase
+{
+    private ClasspathVariables variables;
+
+    protected void setUp()
+    {
+        final Map<String, String> roots = new LinkedHashMap<String, String>();
+        roots.put("M2_REPO", "/home/user/.m2/repository/");
+        roots.put("TEAM_CACHE", "/home/user/.m2/repository/team");
+        roots.put("SDK", "C:\\sdk");
+        roots.put("SAME_SDK", "C:/sdk");
+        this.variables = new ClasspathVariables(roots);
+    }
+
+    public void testUsesTheVariableWithTheLongestRoot()
+    {
+        assertEquals("M2_REPO/g/a/1.0/a-1.0.jar",
+            this.variables.relativize("/home/user/.m2/repository/g/a/1.0/a-1.0.jar"));
+        assertEquals("TEAM_CACHE/b.jar", this.variables.relativize("/home/user/.m2/repository/team/b.jar"));
+        assertEquals("M2_REPO/teams/c.jar", this.variables.relativize("/home/user/.m2/repository/teams/c.jar"));
+    }
+
+    public void testNormalizesTheRoots()
+    {
+        assertEquals("SDK/lib/d.jar", this.variables.relativize("C:/sdk/lib/d.jar"));
+    }
+
+    public void testLeavesThePathsUnderNoVariable()
+    {
+        assertEquals("/opt/e.jar", this.variables.relativize("/opt/e.jar"));
+        assertEquals("/home/user/.m2/repository", this.variables.relativize("/home/user/.m2/repository"));
+        assertFalse(this.variables.isRelative("/opt/e.jar"));
+    }
+
+    public void testTurnsThePathsBackIntoFiles()
+    {
+        assertTrue(this.variables.isRelative("TEAM_CACHE/b.jar"));
+        assertTrue(this.variables.isRelative("SAME_SDK/lib/d.jar"));
+        assertEquals(new File("/home/user/.m2/repository/team", "/b.jar"), this.variables.toFile("TEAM_CACHE/b.jar"));
+        assertEquals(new File("/opt/e.jar"), this.variables.toFile("/opt/e.jar"));
+    }
+}
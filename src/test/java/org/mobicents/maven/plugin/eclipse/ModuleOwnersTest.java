@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Tests the {@link ModuleOwners}.
+ */
+public class ModuleOwnersTest
+    extends TestCase
+{
+    private ModuleOwners owners;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.owners = new ModuleOwners();
+        this.owners.addDeclared(MavenTestCase.createArtifact("org.test", "direct", "1.0"), "a/pom.xml");
+        this.owners.addDeclared(MavenTestCase.createArtifact("org.test", "direct", "1.0"), "b/pom.xml");
+        this.owners.addDeclared(MavenTestCase.createArtifact("org.test", "other", "[1.0,2.0)"), "c/pom.xml");
+    }
+
+    public void testAttributesTransitiveArtifactsThroughTheirTrail()
+    {
+        final Artifact artifact = MavenTestCase.createArtifact("org.test", "transitive", "3.0");
+        artifact.setDependencyTrail(Arrays.asList(new String[] {
+            "org.test:root:pom:1.0", "org.test:direct:jar:1.0", "org.test:transitive:jar:3.0"}));
+        assertEquals(new LinkedHashSet(Arrays.asList(new String[] {"a/pom.xml", "b/pom.xml"})),
+            this.owners.getOwners(artifact));
+    }
+
+    public void testAttributesArtifactsReachedThroughAnotherVersion()
+    {
+        // - the trail holds the version picked in the range, not the declared one
+        final Artifact artifact = MavenTestCase.createArtifact("org.test", "transitive", "3.0");
+        artifact.setDependencyTrail(Arrays.asList(new String[] {
+            "org.test:root:pom:1.0", "org.test:other:jar:1.5", "org.test:transitive:jar:3.0"}));
+        assertEquals(Collections.singleton("c/pom.xml"), this.owners.getOwners(artifact));
+    }
+
+    public void testAttributesRestoredDirectArtifactsWithoutTrail()
+    {
+        assertEquals(Collections.singleton("c/pom.xml"),
+            this.owners.getOwners(MavenTestCase.createArtifact("org.test", "other", "1.5")));
+    }
+
+    public void testAttributesArtifactsOfUnknownOriginToEveryModule()
+    {
+        assertEquals(new LinkedHashSet(Arrays.asList(new String[] {"a/pom.xml", "b/pom.xml", "c/pom.xml"})),
+            this.owners.getOwners(MavenTestCase.createArtifact("org.test", "unknown", "1.0")));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Tests the {@link ResolutionCheckpoint}: the results recorded by a run are
+ * loaded by the next one, and a record torn by a failure is dropped.
+ */
+public class ResolutionCheckpointTest
+    extends MavenTestCase
+{
+    private File file;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.file = new File(this.directory, "resolution-checkpoint.bin");
+    }
+
+    public void testResumesFromTheRecordedResults()
+        throws Exception
+    {
+        final File jar = this.installArtifact("g", "a", "1.0", "");
+        this.record(jar);
+
+        final ResolutionState state = new ResolutionState();
+        assertEquals(2, new ResolutionCheckpoint(this.file, new SystemStreamLog()).load(state,
+            this.getArtifactFactory()));
+        final Artifact resolved = createArtifact("g", "a", "1.0");
+        assertTrue(state.restore(resolved, this.localRepository));
+        assertEquals(jar, resolved.getFile());
+
+        final Set artifacts = state.getTransitiveArtifacts("g:root:pom:1.0", "key", this.localRepository);
+        assertEquals(1, artifacts.size());
+        final Artifact artifact = (Artifact)artifacts.iterator().next();
+        assertEquals("g:a:jar:1.0", artifact.getId());
+        assertEquals(Artifact.SCOPE_RUNTIME, artifact.getScope());
+        assertEquals(jar, artifact.getFile());
+        assertEquals(Arrays.asList(new String[] {"g:root:pom:1.0", "g:b:jar:1.0", "g:a:jar:1.0"}),
+            artifact.getDependencyTrail());
+    }
+
+    public void testDropsATornRecord()
+        throws Exception
+    {
+        final File jar = this.installArtifact("g", "a", "1.0", "");
+        this.record(jar);
+        final long length = this.file.length();
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw");
+        try
+        {
+            randomAccessFile.setLength(length - 5);
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+
+        final ResolutionCheckpoint checkpoint = new ResolutionCheckpoint(this.file, new SystemStreamLog());
+        final ResolutionState state = new ResolutionState();
+        assertEquals(1, checkpoint.load(state, this.getArtifactFactory()));
+        assertTrue(state.restore(createArtifact("g", "a", "1.0"), this.localRepository));
+        assertNull(state.getTransitiveArtifacts("g:root:pom:1.0", "key", this.localRepository));
+        assertTrue(this.file.length() < length - 5);
+
+        // - what's recorded next is appended after the last whole record
+        final Artifact other = createArtifact("g", "b", "1.0");
+        other.setFile(this.installArtifact("g", "b", "1.0", ""));
+        checkpoint.addResolved(other, null);
+        checkpoint.close();
+        assertEquals(2, new ResolutionCheckpoint(this.file, new SystemStreamLog()).load(new ResolutionState(),
+            this.getArtifactFactory()));
+    }
+
+    public void testDeletesTheCheckpointOfACompletedRun()
+        throws Exception
+    {
+        final ResolutionCheckpoint checkpoint = this.record(this.installArtifact("g", "a", "1.0", ""));
+        checkpoint.delete();
+
+        assertFalse(this.file.exists());
+        assertEquals(0, new ResolutionCheckpoint(this.file, new SystemStreamLog()).load(new ResolutionState(),
+            this.getArtifactFactory()));
+    }
+
+    /**
+     * Records the resolution of an artifact, then the transitive resolution
+     * of a project depending on it through another one.
+     */
+    private ResolutionCheckpoint record(final File jar)
+        throws Exception
+    {
+        final ResolutionCheckpoint checkpoint = new ResolutionCheckpoint(this.file, new SystemStreamLog());
+        final Artifact artifact = this.getArtifactFactory().createDependencyArtifact("g", "a",
+            createArtifact("g", "a", "1.0").getVersionRange(), "jar", null, Artifact.SCOPE_RUNTIME, false);
+        artifact.setFile(jar);
+        artifact.setDependencyTrail(Arrays.asList(new String[] {"g:root:pom:1.0", "g:b:jar:1.0", "g:a:jar:1.0"}));
+        checkpoint.addResolved(artifact, null);
+        final Set artifacts = new LinkedHashSet();
+        artifacts.add(artifact);
+        checkpoint.addTransitive("g:root:pom:1.0", "key", artifacts, new ResolutionState(), this.localRepository);
+        checkpoint.close();
+        return checkpoint;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.mobicents.maven.plugin.MavenTestCase;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ResolutionPipeline}: every artifact submitted is handed
+ * back once, with the outcome of its resolution.
+ */
+public class ResolutionPipelineTest
+    extends TestCase
+{
+    public void testResolvesRightAwayOnASingleThread()
+        throws Exception
+    {
+        final ResolutionPipeline pipeline = new ResolutionPipeline(1);
+        final Set<String> resolved = new HashSet<String>();
+        pipeline.submit(0, MavenTestCase.createArtifact("g", "a", "1.0"), newResolution(resolved, "a", true));
+        assertTrue(resolved.contains("a"));
+        pipeline.add(1, MavenTestCase.createArtifact("g", "b", "1.0"));
+
+        ResolutionPipeline.Resolution resolution = pipeline.next();
+        assertEquals(0, resolution.row);
+        assertTrue(resolution.resolved);
+        resolution = pipeline.next();
+        assertEquals(1, resolution.row);
+        assertFalse(pipeline.hasNext());
+    }
+
+    public void testHandsBackEveryResolution()
+        throws Exception
+    {
+        final ResolutionPipeline pipeline = new ResolutionPipeline(4);
+        final Set<String> resolved = new HashSet<String>();
+        try
+        {
+            for (int row = 0; row < 50; row++)
+            {
+                pipeline.submit(row, MavenTestCase.createArtifact("g", "a" + row, "1.0"),
+                    newResolution(resolved, "a" + row, row % 3 != 0));
+            }
+            final Set<Integer> rows = new HashSet<Integer>();
+            while (pipeline.hasNext())
+            {
+                final ResolutionPipeline.Resolution resolution = pipeline.next();
+                assertTrue(rows.add(Integer.valueOf(resolution.row)));
+                assertEquals("a" + resolution.row, resolution.artifact.getArtifactId());
+                assertEquals(resolution.row % 3 != 0, resolution.resolved);
+            }
+            assertEquals(50, rows.size());
+        }
+        finally
+        {
+            pipeline.shutdown();
+        }
+    }
+
+    public void testHandsBackTheFailureOfAResolution()
+        throws Exception
+    {
+        final ResolutionPipeline pipeline = new ResolutionPipeline(2);
+        try
+        {
+            pipeline.submit(MavenTestCase.createArtifact("g", "a", "1.0"), new Callable<Boolean>()
+            {
+                public Boolean call()
+                    throws Exception
+                {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            pipeline.next();
+            fail("The failure of the resolution was lost");
+        }
+        catch (IllegalStateException exception)
+        {
+            assertEquals("failed", exception.getMessage());
+        }
+        finally
+        {
+            pipeline.shutdown();
+        }
+    }
+
+    private static Callable<Boolean> newResolution(final Set<String> resolved, final String id, final boolean found)
+    {
+        return new Callable<Boolean>()
+        {
+            public Boolean call()
+            {
+                synchronized (resolved)
+                {
+                    resolved.add(id);
+                }
+                return Boolean.valueOf(found);
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.mobicents.maven.plugin.MavenTestCase;
+import org.mobicents.maven.plugin.TestFiles;
+
+/**
+ * Tests the {@link ResolutionState}: releases are kept for good, snapshots
+ * only while their local repository metadata stays the same.
+ */
+public class ResolutionStateTest
+    extends MavenTestCase
+{
+    private final ResolutionState state = new ResolutionState();
+
+    public void testKeepsReleases()
+        throws Exception
+    {
+        final File file = this.installArtifact("g", "a", "1.0", "");
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+        artifact.setFile(file);
+        this.state.store(artifact, this.localRepository);
+
+        final Artifact restored = createArtifact("g", "a", "1.0");
+        assertTrue(this.state.restore(restored, this.localRepository));
+        assertEquals(file, restored.getFile());
+        assertTrue(restored.isResolved());
+        assertFalse(this.state.restore(createArtifact("g", "a", "2.0"), this.localRepository));
+
+        file.delete();
+        assertFalse(this.state.restore(createArtifact("g", "a", "1.0"), this.localRepository));
+    }
+
+    public void testForgetsSnapshotsWhoseMetadataChanged()
+        throws Exception
+    {
+        final File file = this.installArtifact("g", "b", "1.0-SNAPSHOT", "");
+        this.writeMetadata("b", "20110101120000");
+        final Artifact artifact = createArtifact("g", "b", "1.0-SNAPSHOT");
+        artifact.setFile(file);
+        this.state.store(artifact, this.localRepository);
+        assertTrue(this.state.restore(createArtifact("g", "b", "1.0-SNAPSHOT"), this.localRepository));
+
+        this.writeMetadata("b", "20110102120000");
+        assertFalse(this.state.restore(createArtifact("g", "b", "1.0-SNAPSHOT"), this.localRepository));
+    }
+
+    public void testForgetsTransitiveResolutionsWithChangedSnapshots()
+        throws Exception
+    {
+        this.installArtifact("g", "b", "1.0-SNAPSHOT", "");
+        this.writeMetadata("b", "20110101120000");
+        final Set artifacts = Collections.singleton(createArtifact("g", "b", "1.0-SNAPSHOT"));
+        this.state.setTransitiveArtifacts("g:root", "key", artifacts, this.localRepository);
+
+        assertEquals(artifacts, this.state.getTransitiveArtifacts("g:root", "key", this.localRepository));
+        assertNull(this.state.getTransitiveArtifacts("g:root", "other-key", this.localRepository));
+        assertNull(this.state.getTransitiveArtifacts("g:other", "key", this.localRepository));
+
+        this.writeMetadata("b", "20110102120000");
+        assertNull(this.state.getTransitiveArtifacts("g:root", "key", this.localRepository));
+    }
+
+    /**
+     * Writes the <code>maven-metadata-local.xml</code> of a snapshot, as
+     * installing it does, modified when it was last updated.
+     */
+    private void writeMetadata(final String artifactId, final String lastUpdated)
+        throws Exception
+    {
+        final File metadata = TestFiles.write(new File(this.localRepository.getBasedir(), "g/" + artifactId
+            + "/1.0-SNAPSHOT/maven-metadata-local.xml"), "<metadata><groupId>g</groupId><artifactId>" + artifactId
+            + "</artifactId><version>1.0-SNAPSHOT</version><versioning><snapshot><localCopy>true</localCopy>"
+            + "</snapshot><lastUpdated>" + lastUpdated + "</lastUpdated></versioning></metadata>");
+        metadata.setLastModified(new SimpleDateFormat("yyyyMMddHHmmss").parse(lastUpdated).getTime());
+    }
+}
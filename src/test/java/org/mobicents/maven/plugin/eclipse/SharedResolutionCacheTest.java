@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.maven.plugin.eclipse;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Tests the {@link SharedResolutionCache}: a resolution stored by a checkout
+ * is reused by another one, unless its files left the local repository.
+ */
+public class SharedResolutionCacheTest
+    extends MavenTestCase
+{
+    private SharedResolutionCache cache;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.cache =
+            new SharedResolutionCache(new File(this.directory, "shared"), this.getArtifactFactory(),
+                new SystemStreamLog());
+    }
+
+    public void testReusesAStoredResolution()
+        throws Exception
+    {
+        final File jar = this.installArtifact("g", "a", "1.0", "");
+        this.cache.put("key", this.createArtifacts(jar), new ResolutionState(), this.localRepository);
+
+        // - as another checkout would, with its own state and project
+        final ResolutionState state = new ResolutionState();
+        final Set artifacts = this.cache.get("g:other:pom:1.0", "key", state, this.localRepository);
+
+        assertNotNull(artifacts);
+        assertEquals(1, artifacts.size());
+        final Artifact artifact = (Artifact)artifacts.iterator().next();
+        assertEquals("g:a:jar:1.0", artifact.getId());
+        assertEquals(jar, artifact.getFile());
+        assertEquals(artifacts, state.getTransitiveArtifacts("g:other:pom:1.0", "key", this.localRepository));
+    }
+
+    public void testIgnoresAnUnknownResolution()
+        throws Exception
+    {
+        this.cache.put("key", this.createArtifacts(this.installArtifact("g", "a", "1.0", "")),
+            new ResolutionState(), this.localRepository);
+
+        assertNull(this.cache.get("g:root:pom:1.0", "other key", new ResolutionState(), this.localRepository));
+    }
+
+    public void testIgnoresAResolutionWithMissingFiles()
+        throws Exception
+    {
+        final File jar = this.installArtifact("g", "a", "1.0", "");
+        this.cache.put("key", this.createArtifacts(jar), new ResolutionState(), this.localRepository);
+        assertTrue(jar.delete());
+
+        final ResolutionState state = new ResolutionState();
+        assertNull(this.cache.get("g:root:pom:1.0", "key", state, this.localRepository));
+        assertNull(state.getTransitiveArtifacts("g:root:pom:1.0", "key", this.localRepository));
+    }
+
+    private Set createArtifacts(final File jar)
+        throws Exception
+    {
+        final Artifact artifact =
+            this.getArtifactFactory().createArtifact("g", "a", "1.0", Artifact.SCOPE_COMPILE, "jar");
+        artifact.setFile(jar);
+        final Set artifacts = new LinkedHashSet();
+        artifacts.add(artifact);
+        return artifacts;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.mobicents.maven.plugin.TestFiles;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link EclipseAptOutputWriter}: only the jars providing
+ * processors are in the .factorypath, the settings of the project are
+ * updated rather than replaced, and nothing is written without processors.
+ */
+public class EclipseAptOutputWriterTest
+    extends TestCase
+{
+    private static final String PROCESSOR_SERVICE = "META-INF/services/javax.annotation.processing.Processor";
+
+    private File directory;
+
+    private ClasspathModel model;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.directory = TestFiles.createDirectory("project");
+        final Model pom = new Model();
+        pom.setArtifactId("a");
+        this.model = new ClasspathModel(new MavenProject(pom), this.directory.getAbsolutePath());
+    }
+
+    public void testWritesTheProcessorJars()
+        throws Exception
+    {
+        final File processor = TestFiles.writeJar(new File(this.directory, "lib/processor.jar"), PROCESSOR_SERVICE);
+        final File library = TestFiles.writeJar(new File(this.directory, "lib/library.jar"), "b/B.class");
+        // - a corrupt jar is skipped, not a failure
+        final File corrupt = TestFiles.write(new File(this.directory, "lib/corrupt.jar"), "not a jar");
+        this.model.addEntry(new ClasspathModel.Entry("M2_REPO/p/processor.jar", true, processor));
+        this.model.addEntry(new ClasspathModel.Entry(library.getAbsolutePath(), false, library));
+        this.model.addEntry(new ClasspathModel.Entry(corrupt.getAbsolutePath(), false, corrupt));
+        final File corePreferences = new File(this.directory, ".settings/org.eclipse.jdt.core.prefs");
+        TestFiles.write(corePreferences, "eclipse.preferences.version=1\n"
+            + "org.eclipse.jdt.core.compiler.source=1.5\n"
+            + "org.eclipse.jdt.core.compiler.processAnnotations=disabled\n");
+
+        new EclipseAptOutputWriter().write(this.model, new SystemStreamLog());
+
+        final String factoryPath = FileUtils.fileRead(new File(this.directory, ".factorypath"));
+        assertTrue(factoryPath, factoryPath.indexOf("kind=\"VARJAR\" id=\"M2_REPO/p/processor.jar\"") != -1);
+        assertEquals(factoryPath, -1, factoryPath.indexOf("library.jar"));
+        assertEquals(factoryPath, -1, factoryPath.indexOf("corrupt.jar"));
+        final String aptPreferences =
+            FileUtils.fileRead(new File(this.directory, ".settings/org.eclipse.jdt.apt.core.prefs"));
+        assertTrue(aptPreferences, aptPreferences.indexOf("org.eclipse.jdt.apt.aptEnabled=true") != -1);
+        final String preferences = FileUtils.fileRead(corePreferences);
+        assertTrue(preferences, preferences.indexOf("org.eclipse.jdt.core.compiler.source=1.5") != -1);
+        assertTrue(preferences, preferences.indexOf("org.eclipse.jdt.core.compiler.processAnnotations=enabled") != -1);
+        assertEquals(preferences, -1, preferences.indexOf("=disabled"));
+    }
+
+    public void testWritesNothingWithoutProcessors()
+        throws Exception
+    {
+        final File library = TestFiles.writeJar(new File(this.directory, "lib/library.jar"), "b/B.class");
+        this.model.addEntry(new ClasspathModel.Entry(library.getAbsolutePath(), false, library));
+
+        new EclipseAptOutputWriter().write(this.model, new SystemStreamLog());
+
+        assertFalse(new File(this.directory, ".factorypath").exists());
+        assertFalse(new File(this.directory, ".settings").exists());
+    }
+}
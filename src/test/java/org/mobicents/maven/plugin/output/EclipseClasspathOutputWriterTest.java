@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.mobicents.maven.plugin.TestFiles;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link EclipseClasspathOutputWriter}: the entries of the
+ * .classpath, with jars of the project relative to it and the merged
+ * content kept.
+ */
+public class EclipseClasspathOutputWriterTest
+    extends TestCase
+{
+    private File directory;
+
+    private ClasspathModel model;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.directory = TestFiles.createDirectory("project");
+        final Model pom = new Model();
+        pom.setArtifactId("a");
+        this.model = new ClasspathModel(new MavenProject(pom), this.directory.getAbsolutePath());
+        this.model.addSourcePath("src/main/java");
+        this.model.setOutputPath("target/classes");
+    }
+
+    public void testWritesTheEntries()
+        throws Exception
+    {
+        final File jar = TestFiles.writeJar(new File(this.directory, "lib/b.jar"), "b/B.class");
+        this.model.addEntry(new ClasspathModel.Entry("M2_REPO/x/y/1.0/y-1.0.jar", true, new File("y-1.0.jar")));
+        this.model.addEntry(new ClasspathModel.Entry(jar.getAbsolutePath(), false, jar));
+        this.model.addEntry(new ClasspathModel.Entry("/opt/lib/c.jar", false, new File("/opt/lib/c.jar")));
+
+        final String classpath = this.write();
+
+        assertOrder(classpath, new String[] {
+            "<classpathentry kind=\"src\" path=\"src/main/java\"/>",
+            "<classpathentry kind=\"var\" path=\"M2_REPO/x/y/1.0/y-1.0.jar\"/>",
+            "<classpathentry kind=\"lib\" path=\"lib/b.jar\"/>",
+            "<classpathentry kind=\"lib\" path=\"/opt/lib/c.jar\"/>",
+            "<classpathentry kind=\"con\" path=\"org.eclipse.jdt.launching.JRE_CONTAINER\"/>",
+            "<classpathentry kind=\"output\" path=\"target/classes\"/>",
+            "</classpath>"});
+    }
+
+    public void testKeepsTheMergedContent()
+        throws Exception
+    {
+        this.model.setMerge("<classpathentry kind=\"src\" path=\"/other\"/>");
+
+        final String classpath = this.write();
+
+        assertOrder(classpath, new String[] {
+            "<classpathentry kind=\"output\" path=\"target/classes\"/>",
+            "<classpathentry kind=\"src\" path=\"/other\"/>",
+            "</classpath>"});
+    }
+
+    private String write()
+        throws Exception
+    {
+        new EclipseClasspathOutputWriter().write(this.model, new SystemStreamLog());
+        return FileUtils.fileRead(new File(this.directory, ".classpath"));
+    }
+
+    private static void assertOrder(final String content, final String[] fragments)
+    {
+        int index = 0;
+        for (final String fragment : fragments)
+        {
+            final int next = content.indexOf(fragment, index);
+            assertTrue(fragment + " not found in order in " + content, next != -1);
+            index = next + fragment.length();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.maven.plugin.output;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.mobicents.maven.plugin.TestFiles;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link OutputWriters}: the built-in writers are found through the
+ * services file, selected by name, and all run on the classpath.
+ */
+public class OutputWritersTest
+    extends TestCase
+{
+    private OutputWriters outputWriters;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.outputWriters = new OutputWriters(this.getClass().getClassLoader());
+    }
+
+    public void testFindsTheBuiltInWriters()
+    {
+        assertEquals(Arrays.asList(new String[] {"eclipse", "idea", "text", "apt"}),
+            this.getNames(this.outputWriters.select("eclipse,idea,text,apt")));
+        assertTrue(this.outputWriters.select("eclipse").get(0) instanceof EclipseClasspathOutputWriter);
+    }
+
+    public void testSelectsEachNameOnce()
+    {
+        assertEquals(Arrays.asList(new String[] {"text", "eclipse"}),
+            this.getNames(this.outputWriters.select(" text , eclipse,text,,")));
+        assertTrue(this.outputWriters.select("").isEmpty());
+    }
+
+    public void testRejectsAnUnknownName()
+    {
+        try
+        {
+            this.outputWriters.select("eclipse,netbeans");
+            fail("netbeans isn't an output");
+        }
+        catch (final IllegalArgumentException exception)
+        {
+            assertTrue(exception.getMessage(), exception.getMessage().indexOf("'netbeans'") != -1);
+        }
+    }
+
+    public void testRunsTheSelectedWriters()
+        throws Exception
+    {
+        final File directory = TestFiles.createDirectory("project");
+        final File jar = TestFiles.writeJar(new File(directory, "lib/a.jar"), "a/A.class");
+        final Model pom = new Model();
+        pom.setArtifactId("a");
+        final ClasspathModel model = new ClasspathModel(new MavenProject(pom), directory.getAbsolutePath());
+        model.addSourcePath("src/main/java");
+        model.addEntry(new ClasspathModel.Entry(jar.getAbsolutePath(), false, jar));
+        model.setOutputPath("target/classes");
+
+        OutputWriters.write(this.outputWriters.select("text,idea"), model, new SystemStreamLog());
+
+        assertEquals(jar.getAbsolutePath() + System.getProperty("line.separator"),
+            FileUtils.fileRead(new File(directory, "classpath.txt")));
+        final String module = FileUtils.fileRead(new File(directory, "a.iml"));
+        assertTrue(module, module.indexOf("url=\"jar://$MODULE_DIR$/lib/a.jar!/\"") != -1);
+        assertTrue(module, module.indexOf("url=\"file://$MODULE_DIR$/src/main/java\"") != -1);
+        assertFalse(new File(directory, ".classpath").exists());
+    }
+
+    private List<String> getNames(final List<OutputWriter> writers)
+    {
+        final List<String> names = new ArrayList<String>();
+        for (final OutputWriter writer : writers)
+        {
+            names.add(writer.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Tests the {@link CachingMetadataSource}: the cached metadata of releases
+ * must resolve what the POMs resolve, only in the context they were cached
+ * in, and the cache file must survive an entry cut short.
+ */
+public class CachingMetadataSourceTest
+    extends ResolverTestCase
+{
+    private File file;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.file = new File(this.directory, "metadata.bin");
+    }
+
+    public void testResolvesReleasesFromTheCache()
+        throws Exception
+    {
+        final Map<String, String> expected = this.resolve(this.source);
+        final CachingMetadataSource caching = this.createCache();
+        assertEquals(expected, this.resolve(caching));
+        caching.store();
+
+        // - the POMs are no longer available, the cache alone has to do
+        this.source.failing = true;
+        final CachingMetadataSource cached = this.createCache();
+
+        assertEquals(expected, this.resolve(cached));
+        assertEquals(caching.size(), cached.size());
+    }
+
+    public void testOnlyUsesTheEntriesOfTheContext()
+        throws Exception
+    {
+        final CachingMetadataSource caching = this.createCache("jdk-5");
+        this.resolve(caching);
+        caching.store();
+        final CachingMetadataSource other = this.createCache("jdk-6");
+        this.resolve(other);
+        other.store();
+        final int retrievals = this.source.getRetrievals();
+
+        assertEquals(caching.size(), this.createCache("jdk-5").size());
+        assertEquals(other.size(), this.createCache("jdk-6").size());
+        assertEquals(0, this.createCache("jdk-7").size());
+        assertEquals(2 * caching.size(), retrievals);
+    }
+
+    public void testDropsAnEntryCutShort()
+        throws Exception
+    {
+        final CachingMetadataSource caching = this.createCache();
+        this.resolve(caching);
+        caching.store();
+        final long length = this.file.length();
+        final FileOutputStream output = new FileOutputStream(this.file, true);
+        try
+        {
+            output.write(new byte[] {0, 20, 'f', 'i', 'x'});
+        }
+        finally
+        {
+            IOUtil.close(output);
+        }
+
+        final CachingMetadataSource cached = this.createCache();
+
+        assertEquals(caching.size(), cached.size());
+        assertEquals(length, this.file.length());
+    }
+
+    public void testRetrievesSnapshotsFromTheSource()
+        throws Exception
+    {
+        this.install("s", "1.0-SNAPSHOT", dependency("g", "1.0", null));
+        final CachingMetadataSource caching = this.createCache();
+        final Artifact snapshot = this.createFixtureArtifact("s", "1.0-SNAPSHOT", Artifact.SCOPE_COMPILE);
+
+        caching.retrieve(snapshot, this.localRepository, this.remoteRepositories);
+        caching.retrieve(snapshot, this.localRepository, this.remoteRepositories);
+
+        assertEquals(2, this.source.getRetrievals());
+        assertEquals(0, caching.size());
+    }
+
+    private CachingMetadataSource createCache()
+        throws Exception
+    {
+        return this.createCache("context");
+    }
+
+    private CachingMetadataSource createCache(final String context)
+        throws Exception
+    {
+        final CachingMetadataSource caching = new CachingMetadataSource(
+            this.source, this.getArtifactFactory(), this.file, context, new SystemStreamLog());
+        caching.load();
+        return caching;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.mobicents.maven.plugin.TestFiles;
+
+/**
+ * Resolves from a single repository after the delay of the repository,
+ * writing the repository id as the content of the artifact, and doesn't
+ * find anything in the repository with the id "missing". The repositories
+ * started on and the ones interrupted are kept.
+ */
+class DelayingResolver
+    implements ArtifactResolver
+{
+    final Map<String, Long> delays = new HashMap<String, Long>();
+
+    final List<String> started = new CopyOnWriteArrayList<String>();
+
+    final Map<String, Boolean> cancelled = new ConcurrentHashMap<String, Boolean>();
+
+    public void resolve(
+        final Artifact artifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository)
+        throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        final String id = ((ArtifactRepository)remoteRepositories.get(0)).getId();
+        this.started.add(id);
+        final Long delay = this.delays.get(id);
+        try
+        {
+            Thread.sleep(delay == null ? 0 : delay.longValue());
+        }
+        catch (InterruptedException exception)
+        {
+            this.cancelled.put(id, Boolean.TRUE);
+            throw new ArtifactResolutionException("Interrupted", artifact, exception);
+        }
+        if ("missing".equals(id))
+        {
+            throw new ArtifactNotFoundException("Not found", artifact);
+        }
+        try
+        {
+            final File file = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+            artifact.setFile(TestFiles.write(file, id));
+        }
+        catch (Exception exception)
+        {
+            throw new ArtifactResolutionException("Could not write", artifact, exception);
+        }
+    }
+
+    public void resolveAlways(
+        final Artifact artifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository)
+        throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        this.resolve(artifact, remoteRepositories, localRepository);
+    }
+
+    public ArtifactResolutionResult resolveTransitively(
+        final Set artifacts,
+        final Artifact originatingArtifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository,
+        final ArtifactMetadataSource source)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArtifactResolutionResult resolveTransitively(
+        final Set artifacts,
+        final Artifact originatingArtifact,
+        final List remoteRepositories,
+        final ArtifactRepository localRepository,
+        final ArtifactMetadataSource source,
+        final List listeners)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArtifactResolutionResult resolveTransitively(
+        final Set artifacts,
+        final Artifact originatingArtifact,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories,
+        final ArtifactMetadataSource source,
+        final ArtifactFilter filter)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArtifactResolutionResult resolveTransitively(
+        final Set artifacts,
+        final Artifact originatingArtifact,
+        final Map managedVersions,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories,
+        final ArtifactMetadataSource source)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArtifactResolutionResult resolveTransitively(
+        final Set artifacts,
+        final Artifact originatingArtifact,
+        final Map managedVersions,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories,
+        final ArtifactMetadataSource source,
+        final ArtifactFilter filter)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArtifactResolutionResult resolveTransitively(
+        final Set artifacts,
+        final Artifact originatingArtifact,
+        final Map managedVersions,
+        final ArtifactRepository localRepository,
+        final List remoteRepositories,
+        final ArtifactMetadataSource source,
+        final ArtifactFilter filter,
+        final List listeners)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
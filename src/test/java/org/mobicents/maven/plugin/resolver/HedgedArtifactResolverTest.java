@@ -0,0 +1,295 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+import junit.framework.AssertionFailedError;
+
+/**
+ * Tests the {@link HedgedArtifactResolver} against a resolver answering after
+ * a given delay per repository: slow repositories are given up on, hedged
+ * attempts race the attempt they hedge, and the attempts that lost are
+ * cancelled. The maven artifact resolver is then run against http
+ * repositories answering after a given latency.
+ */
+public class HedgedArtifactResolverTest
+    extends MavenTestCase
+{
+    private DelayingResolver resolver;
+
+    private ArtifactRepository fast;
+
+    private ArtifactRepository slow;
+
+    private ArtifactRepository missing;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.resolver = new DelayingResolver();
+        this.fast = this.createRepository("fast", new File(this.directory, "fast"));
+        this.slow = this.createRepository("slow", new File(this.directory, "slow"));
+        this.missing = this.createRepository("missing", new File(this.directory, "missing"));
+    }
+
+    public void testGivesUpOnARepositoryAfterTheTimeout()
+        throws Exception
+    {
+        this.resolver.delays.put("slow", Long.valueOf(10000));
+        final HedgedArtifactResolver hedged = this.createResolver(200, 0);
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+
+        final long start = System.currentTimeMillis();
+        hedged.resolve(artifact, Arrays.asList(new ArtifactRepository[] {this.slow, this.fast}), this.localRepository);
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        this.assertResolvedFrom(artifact, "fast");
+        this.assertCancelled("slow");
+    }
+
+    public void testFailsWhenEveryRepositoryTimesOut()
+        throws Exception
+    {
+        this.resolver.delays.put("slow", Long.valueOf(10000));
+        final HedgedArtifactResolver hedged = this.createResolver(200, 0);
+        try
+        {
+            hedged.resolve(createArtifact("g", "a", "1.0"), Collections.singletonList(this.slow), this.localRepository);
+            fail("Resolved from a repository that timed out");
+        }
+        catch (ArtifactNotFoundException exception)
+        {
+            assertTrue(exception.getMessage(), exception.getMessage().indexOf("slow: timed out") >= 0);
+        }
+        this.assertCancelled("slow");
+    }
+
+    public void testHedgeWinsOverASlowRepository()
+        throws Exception
+    {
+        this.resolver.delays.put("slow", Long.valueOf(10000));
+        final HedgedArtifactResolver hedged = this.createResolver(0, 100);
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+
+        final long start = System.currentTimeMillis();
+        hedged.resolve(artifact, Arrays.asList(new ArtifactRepository[] {this.slow, this.fast}), this.localRepository);
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        this.assertResolvedFrom(artifact, "fast");
+        this.assertCancelled("slow");
+        assertEquals(Arrays.asList(new String[] {"slow", "fast"}), this.resolver.started);
+    }
+
+    public void testHedgeLosesToTheRepositoryItHedges()
+        throws Exception
+    {
+        this.resolver.delays.put("fast", Long.valueOf(300));
+        this.resolver.delays.put("slow", Long.valueOf(10000));
+        final HedgedArtifactResolver hedged = this.createResolver(0, 100);
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+
+        hedged.resolve(artifact, Arrays.asList(new ArtifactRepository[] {this.fast, this.slow}), this.localRepository);
+
+        this.assertResolvedFrom(artifact, "fast");
+        this.assertCancelled("slow");
+        assertEquals(Arrays.asList(new String[] {"fast", "slow"}), this.resolver.started);
+    }
+
+    public void testAsksTheNextRepositoryOnceOneFailed()
+        throws Exception
+    {
+        final HedgedArtifactResolver hedged = this.createResolver(0, 0);
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+
+        hedged.resolve(artifact, Arrays.asList(new ArtifactRepository[] {this.missing, this.fast}),
+            this.localRepository);
+
+        this.assertResolvedFrom(artifact, "fast");
+        assertEquals(Arrays.asList(new String[] {"missing", "fast"}), this.resolver.started);
+        assertTrue(this.resolver.cancelled.isEmpty());
+    }
+
+    public void testReportDeletesWhatTheAbandonedAttemptsDownloaded()
+        throws Exception
+    {
+        this.resolver.delays.put("slow", Long.valueOf(10000));
+        final HedgedArtifactResolver hedged = this.createResolver(0, 100);
+        hedged.resolve(createArtifact("g", "a", "1.0"), Arrays.asList(new ArtifactRepository[] {this.slow, this.fast}),
+            this.localRepository);
+        this.assertCancelled("slow");
+
+        hedged.report();
+        assertFalse(new File(this.localRepository.getBasedir(), ".cache/mobicents-eclipse/hedged-resolution").exists());
+    }
+
+    public void testMeasuresTheResponseTimesOfHttpRepositories()
+        throws Exception
+    {
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+        final LatencyHttpServer slowServer = new LatencyHttpServer(5000);
+        final LatencyHttpServer fastServer = new LatencyHttpServer(200);
+        try
+        {
+            slowServer.put(this.localRepository.pathOf(artifact), "slow");
+            fastServer.put(this.localRepository.pathOf(artifact), "fast");
+            final ArtifactRepository slow = this.createRepository("slow", slowServer.getUrl());
+            final ArtifactRepository fast = this.createRepository("fast", fastServer.getUrl());
+            final RecordingLog log = new RecordingLog();
+            final HedgedArtifactResolver hedged = new HedgedArtifactResolver(
+                (ArtifactResolver)this.lookup(ArtifactResolver.ROLE), this.getArtifactFactory(), 0, 500, log);
+
+            // - another resolution asking the fast repository meanwhile
+            final List<Lock> taken = RepositoryLocks.instance().lock(Collections.singletonList(fast));
+            final long start = System.currentTimeMillis();
+            try
+            {
+                hedged.resolve(artifact, Arrays.asList(new ArtifactRepository[] {slow, fast}), this.localRepository);
+            }
+            finally
+            {
+                RepositoryLocks.instance().unlock(taken);
+            }
+            final long elapsed = System.currentTimeMillis() - start;
+
+            this.assertResolvedFrom(artifact, "fast");
+            assertEquals(1, fastServer.served.get());
+            hedged.report();
+            final long median = log.getMedian(fastServer.getUrl());
+            assertTrue(median + " ms", median >= 200 && median <= elapsed);
+        }
+        finally
+        {
+            slowServer.close();
+            fastServer.close();
+        }
+    }
+
+    public void testGivesUpOnAnHttpRepositoryAfterTheTimeout()
+        throws Exception
+    {
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+        final LatencyHttpServer slowServer = new LatencyHttpServer(5000);
+        final LatencyHttpServer fastServer = new LatencyHttpServer(0);
+        try
+        {
+            slowServer.put(this.localRepository.pathOf(artifact), "slow");
+            fastServer.put(this.localRepository.pathOf(artifact), "fast");
+            final RecordingLog log = new RecordingLog();
+            final HedgedArtifactResolver hedged = new HedgedArtifactResolver(
+                (ArtifactResolver)this.lookup(ArtifactResolver.ROLE), this.getArtifactFactory(), 500, 0, log);
+
+            final long start = System.currentTimeMillis();
+            hedged.resolve(artifact, Arrays.asList(new ArtifactRepository[] {
+                this.createRepository("slow", slowServer.getUrl()),
+                this.createRepository("fast", fastServer.getUrl())}), this.localRepository);
+
+            assertTrue(System.currentTimeMillis() - start < 4000);
+            this.assertResolvedFrom(artifact, "fast");
+            hedged.report();
+            assertTrue(log.infos.toString(), log.infos.toString().indexOf(
+                slowServer.getUrl() + "): 0 response(s), 1 timeout(s)") >= 0);
+        }
+        finally
+        {
+            slowServer.close();
+            fastServer.close();
+        }
+    }
+
+    private HedgedArtifactResolver createResolver(final long timeout, final long hedgeDelay)
+        throws Exception
+    {
+        return new HedgedArtifactResolver(this.resolver, this.getArtifactFactory(), timeout, hedgeDelay,
+            new SystemStreamLog());
+    }
+
+    private void assertResolvedFrom(final Artifact artifact, final String repositoryId)
+        throws Exception
+    {
+        final File file = new File(this.localRepository.getBasedir(), this.localRepository.pathOf(artifact));
+        assertTrue(artifact.isResolved());
+        assertEquals(file, artifact.getFile());
+        assertEquals(repositoryId, FileUtils.fileRead(file));
+    }
+
+    /**
+     * Asserts the attempt on the given repository was interrupted, waiting
+     * for it to notice.
+     */
+    private void assertCancelled(final String repositoryId)
+        throws Exception
+    {
+        for (int ii = 0; ii < 100 && !this.resolver.cancelled.containsKey(repositoryId); ii++)
+        {
+            Thread.sleep(50);
+        }
+        assertTrue(this.resolver.cancelled + " lacks " + repositoryId,
+            this.resolver.cancelled.containsKey(repositoryId));
+    }
+
+    /**
+     * A log keeping the info messages, such as the statistics reported.
+     */
+    private static class RecordingLog
+        extends SystemStreamLog
+    {
+        final List<String> infos = new ArrayList<String>();
+
+        public void info(final CharSequence content)
+        {
+            this.infos.add(content.toString());
+        }
+
+        /**
+         * Gets the median response time reported for the repository of the
+         * given <code>url</code>.
+         */
+        long getMedian(final String url)
+        {
+            for (final String info : this.infos)
+            {
+                final int index = info.indexOf(", p50 ");
+                if (info.indexOf(url) >= 0 && index >= 0)
+                {
+                    return Long.parseLong(info.substring(index + 6, info.indexOf(" ms", index)));
+                }
+            }
+            throw new AssertionFailedError("No median for " + url + " in " + this.infos);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for a remote repository: serves files over http on a local
+ * port, answering every request after a given latency, and "not found" for
+ * the files it doesn't have.
+ */
+class LatencyHttpServer
+    implements Runnable
+{
+    private final ServerSocket serverSocket;
+
+    private final long latency;
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * The number of files served.
+     */
+    final AtomicInteger served = new AtomicInteger();
+
+    /**
+     * Starts serving.
+     *
+     * @param latency the time (in milliseconds) every request is answered after.
+     * @throws IOException
+     */
+    LatencyHttpServer(final long latency)
+        throws IOException
+    {
+        this.latency = latency;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final Thread thread = new Thread(this, "latency-http-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the url of the repository served.
+     *
+     * @return the url.
+     */
+    String getUrl()
+    {
+        return "http://127.0.0.1:" + this.serverSocket.getLocalPort() + "/repository";
+    }
+
+    /**
+     * Serves the given <code>content</code> as the file of the given
+     * <code>path</code> within the repository.
+     *
+     * @param path the path of the file within the repository.
+     * @param content the content of the file.
+     * @throws IOException
+     */
+    void put(final String path, final String content)
+        throws IOException
+    {
+        this.files.put("/repository/" + path, content.getBytes("UTF-8"));
+    }
+
+    /**
+     * Stops accepting requests, the ones being answered still being answered.
+     */
+    void close()
+    {
+        try
+        {
+            this.serverSocket.close();
+        }
+        catch (IOException exception)
+        {
+            // - closed anyway
+        }
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            final Socket socket;
+            try
+            {
+                socket = this.serverSocket.accept();
+            }
+            catch (IOException exception)
+            {
+                // - closed
+                return;
+            }
+            final Thread thread = new Thread("latency-http-request")
+            {
+                public void run()
+                {
+                    LatencyHttpServer.this.answer(socket);
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void answer(final Socket socket)
+    {
+        try
+        {
+            final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            final String[] request = String.valueOf(reader.readLine()).split(" ");
+            for (String header = reader.readLine(); header != null && header.length() > 0; header = reader.readLine())
+            {
+                // - skipping the headers
+            }
+            Thread.sleep(this.latency);
+
+            final byte[] content = request.length > 1 ? this.files.get(request[1]) : null;
+            final String status = content == null ? "404 Not Found" : "200 OK";
+            final OutputStream output = socket.getOutputStream();
+            output.write(("HTTP/1.0 " + status + "\r\nContent-Length: " + (content == null ? 0 : content.length)
+                + "\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+            if (content != null && !"HEAD".equals(request[0]))
+            {
+                output.write(content);
+                this.served.incrementAndGet();
+            }
+            output.flush();
+        }
+        catch (Exception exception)
+        {
+            // - the client gave up
+        }
+        finally
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException exception)
+            {
+                // - closed anyway
+            }
+        }
+    }
+}
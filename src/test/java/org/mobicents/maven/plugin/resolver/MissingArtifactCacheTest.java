@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.mobicents.maven.plugin.MavenTestCase;
+import org.mobicents.maven.plugin.TestFiles;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link MissingArtifactCache}: misses are remembered per
+ * repository until they expire, and the stored cache keeps the misses of
+ * every process sharing it.
+ */
+public class MissingArtifactCacheTest
+    extends TestCase
+{
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private final ArtifactRepository central = createRepository("central");
+
+    private final ArtifactRepository other = createRepository("other");
+
+    private List repositories;
+
+    private File file;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.repositories = Arrays.asList(new ArtifactRepository[] {this.central, this.other});
+        this.file = new File(TestFiles.createDirectory("missing"), "missing.bin");
+    }
+
+    public void testSkipsTheRepositoriesAnArtifactIsMissingIn()
+    {
+        final MissingArtifactCache cache = new MissingArtifactCache(HOUR);
+        final Artifact artifact = MavenTestCase.createArtifact("g", "a", "1.0");
+        cache.addMissing(artifact, Collections.singletonList(this.central));
+
+        assertEquals(Collections.singletonList(this.other), cache.getRepositories(artifact, this.repositories));
+        assertEquals(this.repositories,
+            cache.getRepositories(MavenTestCase.createArtifact("g", "b", "1.0"), this.repositories));
+
+        cache.removeMissing(artifact);
+        assertEquals(this.repositories, cache.getRepositories(artifact, this.repositories));
+    }
+
+    public void testForgetsExpiredMisses()
+        throws Exception
+    {
+        final MissingArtifactCache cache = new MissingArtifactCache(0);
+        final Artifact artifact = MavenTestCase.createArtifact("g", "a", "1.0");
+        cache.addMissing(artifact, this.repositories);
+
+        assertEquals(this.repositories, cache.getRepositories(artifact, this.repositories));
+        cache.store(this.file);
+        final MissingArtifactCache loaded = new MissingArtifactCache(HOUR);
+        loaded.load(this.file);
+        assertEquals(0, loaded.size());
+    }
+
+    public void testMergesTheMissesOfOtherProcesses()
+        throws Exception
+    {
+        final MissingArtifactCache first = this.load();
+        final MissingArtifactCache second = this.load();
+        first.addMissing(MavenTestCase.createArtifact("g", "a", "1.0"), this.repositories);
+        second.addMissing(MavenTestCase.createArtifact("g", "b", "1.0"), this.repositories);
+
+        first.store(this.file);
+        second.store(this.file);
+
+        final MissingArtifactCache loaded = this.load();
+        assertEquals(4, loaded.size());
+        assertTrue(loaded.getRepositories(MavenTestCase.createArtifact("g", "a", "1.0"), this.repositories).isEmpty());
+        assertTrue(loaded.getRepositories(MavenTestCase.createArtifact("g", "b", "1.0"), this.repositories).isEmpty());
+    }
+
+    public void testRemovedAndClearedMissesDontComeBack()
+        throws Exception
+    {
+        final MissingArtifactCache cache = this.load();
+        cache.addMissing(MavenTestCase.createArtifact("g", "a", "1.0"), this.repositories);
+        cache.addMissing(MavenTestCase.createArtifact("g", "b", "1.0"), this.repositories);
+        cache.store(this.file);
+
+        final MissingArtifactCache removing = this.load();
+        removing.removeMissing(MavenTestCase.createArtifact("g", "a", "1.0"));
+        removing.store(this.file);
+        assertEquals(2, this.load().size());
+
+        final MissingArtifactCache clearing = this.load();
+        clearing.clear();
+        clearing.store(this.file);
+        assertEquals(0, this.load().size());
+    }
+
+    private MissingArtifactCache load()
+    {
+        final MissingArtifactCache cache = new MissingArtifactCache(HOUR);
+        cache.load(this.file);
+        return cache;
+    }
+
+    private static ArtifactRepository createRepository(final String id)
+    {
+        return new DefaultArtifactRepository(id, "http://" + id + ".example.org/repository",
+            new DefaultRepositoryLayout());
+    }
+}
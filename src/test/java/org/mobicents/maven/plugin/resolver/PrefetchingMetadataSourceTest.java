@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.util.Map;
+
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Tests the {@link PrefetchingMetadataSource}: expanding the dependency graph
+ * concurrently must resolve the same artifacts, in the same scopes and
+ * through the same trails, as the serial expansion of the resolver, and
+ * the retrievals must never overlap.
+ */
+public class PrefetchingMetadataSourceTest
+    extends ResolverTestCase
+{
+    public void testResolvesLikeTheSerialExpansion()
+        throws Exception
+    {
+        final Map<String, String> expected = this.resolve(this.source);
+
+        final Map<String, String> actual = this.resolve(this.prefetch());
+
+        assertEquals(expected, actual);
+        // - the fixture does exercise the mediation: nearest first, excluded, optional and scoped
+        assertTrue(actual.containsKey("fixture:e:jar:1.0:compile"));
+        assertEquals("[fixture:root:pom:1.0, fixture:b:jar:1.0, fixture:f:jar:1.0, fixture:g:jar:1.0]",
+            actual.get("fixture:g:jar:1.0:test"));
+        assertFalse(actual.containsKey("fixture:h:jar:1.0:compile"));
+        assertEquals(7, actual.size());
+    }
+
+    public void testCollectorGetsAllTheMetadataFromThePrefetch()
+        throws Exception
+    {
+        for (int ctr = 0; ctr < 20; ctr++)
+        {
+            this.source.retrievals.clear();
+            final PrefetchingMetadataSource prefetching = this.prefetch();
+            final int prefetched = this.source.getRetrievals();
+
+            this.resolve(prefetching);
+
+            assertEquals(9, this.source.retrievals.size());
+            assertEquals(prefetched, this.source.getRetrievals());
+        }
+    }
+
+    public void testRetrievesTheMetadataOneArtifactAtATime()
+        throws Exception
+    {
+        this.source.delay = 20;
+
+        this.prefetch();
+
+        assertEquals(9, this.source.retrievals.size());
+        assertEquals(0, this.source.overlaps.get());
+    }
+
+    private PrefetchingMetadataSource prefetch()
+        throws Exception
+    {
+        final PrefetchingMetadataSource prefetching = new PrefetchingMetadataSource(
+            this.source, (ArtifactResolver)this.lookup(ArtifactResolver.ROLE), this.getArtifactFactory(), 4,
+            new SystemStreamLog());
+        prefetching.prefetch(this.createDirectArtifacts(), this.localRepository, this.remoteRepositories);
+        return prefetching;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.mobicents.maven.plugin.MavenTestCase;
+import org.mobicents.maven.plugin.TestFiles;
+import org.mobicents.maven.plugin.utils.ConcurrentUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link RepositoryLocks}: resolutions never ask the same
+ * repository at the same time, while the ones asking different repositories
+ * run concurrently, and a release only holds the lock of the repository it
+ * is asking.
+ */
+public class RepositoryLocksTest
+    extends TestCase
+{
+    private final RepositoryLocks locks = new RepositoryLocks();
+
+    private final ArtifactRepository central = createRepository("central");
+
+    private final ArtifactRepository other = createRepository("other");
+
+    private final DelayingResolver resolver = new DelayingResolver();
+
+    private ArtifactRepository localRepository;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.localRepository = new DefaultArtifactRepository("local",
+            TestFiles.createDirectory("repository-locks").toURI().toString(), new DefaultRepositoryLayout());
+    }
+
+    public void testSerializesTheResolutionsOfARepository()
+        throws Exception
+    {
+        final List central = Collections.singletonList(this.central);
+        final List both = Arrays.asList(new ArtifactRepository[] {this.other, this.central});
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int ii = 0; ii < 20; ii++)
+        {
+            tasks.add(this.newResolution(ii % 2 == 0 ? central : both, running, overlaps, 10));
+        }
+        ConcurrentUtils.invokeAll("test", tasks, 4);
+
+        assertEquals(0, overlaps.get());
+    }
+
+    public void testRunsTheResolutionsOfDifferentRepositoriesConcurrently()
+        throws Exception
+    {
+        final List<Lock> taken = this.locks.lock(Collections.singletonList(this.central));
+        try
+        {
+            final AtomicInteger resolved = new AtomicInteger();
+            final Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        final RepositoryLocks locks = RepositoryLocksTest.this.locks;
+                        locks.unlock(locks.lock(Collections.singletonList(RepositoryLocksTest.this.other)));
+                        resolved.incrementAndGet();
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        // - left unresolved
+                    }
+                }
+            };
+            thread.start();
+            thread.join(5000);
+            thread.interrupt();
+            assertEquals(1, resolved.get());
+        }
+        finally
+        {
+            this.locks.unlock(taken);
+        }
+    }
+
+    public void testTakesNoLockWhenInterrupted()
+        throws Exception
+    {
+        Thread.currentThread().interrupt();
+        try
+        {
+            this.locks.lock(Arrays.asList(new ArtifactRepository[] {this.central, this.other}));
+            fail("Locked while interrupted");
+        }
+        catch (InterruptedException exception)
+        {
+            // - expected
+        }
+        final List<Lock> taken = this.locks.lock(Arrays.asList(new ArtifactRepository[] {this.central, this.other}));
+        assertEquals(2, taken.size());
+        this.locks.unlock(taken);
+    }
+
+    public void testResolvesAReleaseHoldingOnlyTheLockOfTheRepositoryAsked()
+        throws Exception
+    {
+        final Artifact artifact = MavenTestCase.createArtifact("g", "a", "1.0");
+        final List<Lock> taken = this.locks.lock(Collections.singletonList(this.other));
+        try
+        {
+            assertTrue(this.resolveOnAnotherThread(artifact, this.central, this.other));
+        }
+        finally
+        {
+            this.locks.unlock(taken);
+        }
+        assertEquals(Collections.singletonList("central"), this.resolver.started);
+    }
+
+    public void testAsksTheRepositoriesInOrderForARelease()
+        throws Exception
+    {
+        final Artifact artifact = MavenTestCase.createArtifact("g", "a", "1.0");
+        final ArtifactRepository missing = createRepository("missing");
+
+        this.locks.resolve(this.resolver, artifact, Arrays.asList(new ArtifactRepository[] {missing, this.other}),
+            this.localRepository);
+
+        assertEquals(Arrays.asList(new String[] {"missing", "other"}), this.resolver.started);
+    }
+
+    public void testFailsWhenNoRepositoryHasTheRelease()
+        throws Exception
+    {
+        try
+        {
+            this.locks.resolve(this.resolver, MavenTestCase.createArtifact("g", "a", "1.0"),
+                Collections.singletonList(createRepository("missing")), this.localRepository);
+            fail("Resolved from a repository without the artifact");
+        }
+        catch (ArtifactNotFoundException exception)
+        {
+            // - expected
+        }
+    }
+
+    public void testResolvesASnapshotHoldingTheLocksOfEveryRepository()
+        throws Exception
+    {
+        final Artifact artifact = MavenTestCase.createArtifact("g", "a", "1.0-SNAPSHOT");
+        final List<Lock> taken = this.locks.lock(Collections.singletonList(this.other));
+        try
+        {
+            assertFalse(this.resolveOnAnotherThread(artifact, this.central, this.other));
+        }
+        finally
+        {
+            this.locks.unlock(taken);
+        }
+    }
+
+    public void testTakesNoLockForAReleaseInTheLocalRepository()
+        throws Exception
+    {
+        final Artifact artifact = MavenTestCase.createArtifact("g", "a", "1.0");
+        TestFiles.write(new File(this.localRepository.getBasedir(), this.localRepository.pathOf(artifact)), "local");
+        final List<Lock> taken = this.locks.lock(Arrays.asList(new ArtifactRepository[] {this.central, this.other}));
+        try
+        {
+            assertTrue(this.resolveOnAnotherThread(artifact, this.central, this.other));
+        }
+        finally
+        {
+            this.locks.unlock(taken);
+        }
+    }
+
+    /**
+     * Resolves the given <code>artifact</code> on another thread, giving up
+     * on it after a while.
+     *
+     * @return whether the artifact was resolved before being given up on.
+     */
+    private boolean resolveOnAnotherThread(final Artifact artifact, final ArtifactRepository... repositories)
+        throws Exception
+    {
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final AtomicInteger resolved = new AtomicInteger();
+        final Thread thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    final RepositoryLocksTest test = RepositoryLocksTest.this;
+                    test.locks.resolve(test.resolver, artifact, Arrays.asList(repositories), test.localRepository);
+                    resolved.incrementAndGet();
+                }
+                catch (Exception exception)
+                {
+                    failure.set(exception);
+                }
+            }
+        };
+        thread.start();
+        thread.join(1000);
+        thread.interrupt();
+        thread.join();
+        // - interrupted while waiting for a lock
+        if (failure.get() != null && !(failure.get().getCause() instanceof InterruptedException))
+        {
+            throw failure.get();
+        }
+        return resolved.get() == 1;
+    }
+
+    /**
+     * A resolution from the given <code>repositories</code>, counting the
+     * resolutions running at the same time as another one.
+     */
+    private Callable<Object> newResolution(
+        final List repositories,
+        final AtomicInteger running,
+        final AtomicInteger overlaps,
+        final long time)
+    {
+        return new Callable<Object>()
+        {
+            public Object call()
+                throws Exception
+            {
+                final List<Lock> taken = RepositoryLocksTest.this.locks.lock(repositories);
+                try
+                {
+                    if (running.incrementAndGet() > 1)
+                    {
+                        overlaps.incrementAndGet();
+                    }
+                    Thread.sleep(time);
+                    running.decrementAndGet();
+                }
+                finally
+                {
+                    RepositoryLocksTest.this.locks.unlock(taken);
+                }
+                return null;
+            }
+        };
+    }
+
+    private static ArtifactRepository createRepository(final String id)
+    {
+        return new DefaultArtifactRepository(id, "http://" + id + ".example.org/repository",
+            new DefaultRepositoryLayout());
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.resolver;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Base class of the tests resolving a fixture dependency graph installed in
+ * the local repository: <code>a</code> (compile) and <code>b</code> (test)
+ * are the direct dependencies, and the graph has version conflicts, an
+ * exclusion, an optional and a runtime dependency.
+ */
+public abstract class ResolverTestCase
+    extends MavenTestCase
+{
+    /**
+     * The metadata source of the local repository, counting the retrievals.
+     */
+    protected CountingMetadataSource source;
+
+    /**
+     * The remote repositories: an empty <code>central</code>, the one the
+     * super POM declares.
+     */
+    protected List remoteRepositories;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.remoteRepositories = Collections.singletonList(
+            this.createRepository("central", new File(this.directory, "central")));
+        this.install("a", "1.0", dependency("c", "1.0", null) + dependency("d", "1.0",
+            "<exclusions><exclusion><groupId>fixture</groupId><artifactId>g</artifactId></exclusion></exclusions>"));
+        this.install("b", "1.0", dependency("c", "2.0", null) + dependency("f", "1.0", "<scope>runtime</scope>"));
+        this.install("c", "1.0", dependency("e", "1.0", null));
+        this.install("c", "2.0", dependency("e", "2.0", null));
+        this.install("d", "1.0", dependency("e", "2.0", null) + dependency("g", "1.0", null)
+            + dependency("h", "1.0", "<optional>true</optional>"));
+        this.install("e", "1.0", "");
+        this.install("e", "2.0", dependency("i", "1.0", "<scope>provided</scope>"));
+        this.install("f", "1.0", dependency("g", "1.0", null));
+        this.install("g", "1.0", "");
+        this.install("h", "1.0", "");
+        this.install("i", "1.0", "");
+        this.source = new CountingMetadataSource((ArtifactMetadataSource)this.lookup(ArtifactMetadataSource.ROLE));
+    }
+
+    /**
+     * Resolves the direct dependencies of the fixture transitively.
+     *
+     * @param metadataSource the metadata source to resolve with.
+     * @return the trail of every resolved artifact, keyed by id and scope.
+     * @throws Exception
+     */
+    protected Map<String, String> resolve(final ArtifactMetadataSource metadataSource)
+        throws Exception
+    {
+        final Set resolved = ((ArtifactResolver)this.lookup(ArtifactResolver.ROLE)).resolveTransitively(
+            this.createDirectArtifacts(), this.getArtifactFactory().createBuildArtifact("fixture", "root", "1.0", "pom"),
+            this.localRepository, this.remoteRepositories, metadataSource,
+            new ScopeArtifactFilter(Artifact.SCOPE_TEST)).getArtifacts();
+        final Map<String, String> trails = new TreeMap<String, String>();
+        for (final Iterator iterator = resolved.iterator(); iterator.hasNext();)
+        {
+            final Artifact artifact = (Artifact)iterator.next();
+            trails.put(artifact.getId() + ':' + artifact.getScope(), String.valueOf(artifact.getDependencyTrail()));
+        }
+        return trails;
+    }
+
+    /**
+     * Creates the direct dependencies of the fixture.
+     *
+     * @return the artifacts.
+     * @throws Exception
+     */
+    protected Set<Artifact> createDirectArtifacts()
+        throws Exception
+    {
+        final Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        artifacts.add(this.createFixtureArtifact("a", "1.0", Artifact.SCOPE_COMPILE));
+        artifacts.add(this.createFixtureArtifact("b", "1.0", Artifact.SCOPE_TEST));
+        return artifacts;
+    }
+
+    /**
+     * Creates an artifact of the fixture.
+     *
+     * @param artifactId the artifact id.
+     * @param version the version.
+     * @param scope the scope.
+     * @return the artifact.
+     * @throws Exception
+     */
+    protected Artifact createFixtureArtifact(final String artifactId, final String version, final String scope)
+        throws Exception
+    {
+        final Artifact artifact = createArtifact("fixture", artifactId, version);
+        artifact.setScope(scope);
+        return artifact;
+    }
+
+    /**
+     * Installs an artifact of the fixture.
+     *
+     * @param artifactId the artifact id.
+     * @param version the version.
+     * @param dependencies the dependency elements.
+     * @throws Exception
+     */
+    protected void install(final String artifactId, final String version, final String dependencies)
+        throws Exception
+    {
+        this.installArtifact("fixture", artifactId, version, "<dependencies>" + dependencies + "</dependencies>");
+    }
+
+    /**
+     * Creates the element of a dependency of the fixture.
+     */
+    protected static String dependency(final String artifactId, final String version, final String more)
+    {
+        return "<dependency><groupId>fixture</groupId><artifactId>" + artifactId + "</artifactId><version>"
+            + version + "</version>" + (more != null ? more : "") + "</dependency>";
+    }
+
+    /**
+     * Counts the metadata retrievals, per artifact id, and the ones started
+     * while another one was running, failing them or slowing them down when
+     * asked to.
+     */
+    protected static class CountingMetadataSource
+        implements ArtifactMetadataSource
+    {
+        private final ArtifactMetadataSource source;
+
+        final ConcurrentMap<String, AtomicInteger> retrievals = new ConcurrentHashMap<String, AtomicInteger>();
+
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        volatile boolean failing;
+
+        volatile long delay;
+
+        CountingMetadataSource(final ArtifactMetadataSource source)
+        {
+            this.source = source;
+        }
+
+        public ResolutionGroup retrieve(
+            final Artifact artifact,
+            final ArtifactRepository localRepository,
+            final List remoteRepositories)
+            throws ArtifactMetadataRetrievalException
+        {
+            final AtomicInteger count = new AtomicInteger();
+            final AtomicInteger existing = this.retrievals.putIfAbsent(artifact.getId(), count);
+            (existing != null ? existing : count).incrementAndGet();
+            if (this.running.incrementAndGet() > 1)
+            {
+                this.overlaps.incrementAndGet();
+            }
+            try
+            {
+                if (this.failing)
+                {
+                    throw new ArtifactMetadataRetrievalException("Not available: " + artifact.getId());
+                }
+                Thread.sleep(this.delay);
+                return this.source.retrieve(artifact, localRepository, remoteRepositories);
+            }
+            catch (InterruptedException exception)
+            {
+                throw new ArtifactMetadataRetrievalException("Interrupted: " + artifact.getId());
+            }
+            finally
+            {
+                this.running.decrementAndGet();
+            }
+        }
+
+        public List retrieveAvailableVersions(
+            final Artifact artifact,
+            final ArtifactRepository localRepository,
+            final List remoteRepositories)
+            throws ArtifactMetadataRetrievalException
+        {
+            return this.source.retrieveAvailableVersions(artifact, localRepository, remoteRepositories);
+        }
+
+        int getRetrievals()
+        {
+            int retrievals = 0;
+            for (final AtomicInteger count : this.retrievals.values())
+            {
+                retrievals += count.get();
+            }
+            return retrievals;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link FlightRecorderEvent}: when nothing is recorded the events
+ * are the shared no-op and their values aren't computed, and the events begun
+ * during a recording are real ones. The recording is started by reflection, as
+ * the plugin targets JVMs without the flight recorder.
+ */
+public class FlightRecorderEventTest
+    extends TestCase
+{
+    public void testIsANoOpWhenNotRecording()
+    {
+        final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+        assertSame(event, FlightRecorderEvent.pomDiscovery());
+        assertSame(event, FlightRecorderEvent.projectBuild());
+        assertSame(event, FlightRecorderEvent.artifactResolution());
+
+        // - the values would fail if computed
+        event.commitFileWrite(null);
+        event.commitProjectBuild(null, false);
+        event.commitArtifactResolution(null, null, null);
+        event.commitPomDiscovery(null, 0);
+    }
+
+    public void testRecordsTheEnabledEvents()
+        throws Exception
+    {
+        final Class recordingClass;
+        try
+        {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        }
+        catch (final ClassNotFoundException exception)
+        {
+            // - a JVM without the flight recorder, only the no-op applies
+            return;
+        }
+        final FlightRecorderEvent disabled = FlightRecorderEvent.fileWrite();
+        final Object recording = recordingClass.newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, "org.mobicents.maven.eclipse.FileWrite");
+        recordingClass.getMethod("start").invoke(recording);
+        try
+        {
+            final FlightRecorderEvent event = FlightRecorderEvent.fileWrite();
+            assertNotSame(disabled, event);
+            assertNotSame(FlightRecorderEvent.fileWrite(), event);
+            event.commitFileWrite(new File("recorded.txt"));
+        }
+        finally
+        {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import org.mobicents.maven.plugin.TestFiles;
+
+/**
+ * Tests the {@link JarIndexCache}.
+ */
+public class JarIndexCacheTest
+    extends TestCase
+{
+    private File directory;
+
+    private File cacheFile;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.directory = TestFiles.createDirectory("jar-index");
+        this.cacheFile = new File(this.directory, "cache/jar-index.bin");
+    }
+
+    public void testRoundTrip()
+        throws Exception
+    {
+        final File jar = TestFiles.writeJar(new File(this.directory, "a.jar"),
+            "META-INF/MANIFEST.MF", "a/b/C.class", "a/b/D.class", "a/e/F.class");
+        final JarIndexCache cache = new JarIndexCache();
+        final List<String> entries = cache.getEntries(jar);
+        cache.store(this.cacheFile);
+
+        final JarIndexCache loaded = new JarIndexCache();
+        loaded.load(this.cacheFile);
+        assertEquals(1, loaded.size());
+        assertEquals(entries, loaded.getEntries(jar));
+    }
+
+    public void testStoreMergesWhatOthersStored()
+        throws Exception
+    {
+        final File first = TestFiles.writeJar(new File(this.directory, "first.jar"), "a/A.class");
+        final File second = TestFiles.writeJar(new File(this.directory, "second.jar"), "b/B.class");
+        // - two checkouts that loaded the (same, empty) cache
+        final JarIndexCache firstCache = new JarIndexCache();
+        final JarIndexCache secondCache = new JarIndexCache();
+        firstCache.getEntries(first);
+        secondCache.getEntries(second);
+        firstCache.store(this.cacheFile);
+        secondCache.store(this.cacheFile);
+
+        final JarIndexCache loaded = new JarIndexCache();
+        loaded.load(this.cacheFile);
+        assertEquals(2, loaded.size());
+    }
+
+    public void testConcurrentStores()
+        throws Exception
+    {
+        final List<Callable<Object>> stores = new ArrayList<Callable<Object>>();
+        for (int ctr = 0; ctr < 8; ctr++)
+        {
+            final File jar = TestFiles.writeJar(new File(this.directory, ctr + ".jar"), "p" + ctr + "/A.class");
+            stores.add(new Callable<Object>()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    final JarIndexCache cache = new JarIndexCache();
+                    cache.getEntries(jar);
+                    cache.store(JarIndexCacheTest.this.cacheFile);
+                    return null;
+                }
+            });
+        }
+        ConcurrentUtils.invokeAll("store", stores, stores.size());
+
+        final JarIndexCache loaded = new JarIndexCache();
+        loaded.load(this.cacheFile);
+        assertEquals(8, loaded.size());
+        // - the cache and its lock, no temporary file left
+        assertEquals(2, this.cacheFile.getParentFile().list().length);
+    }
+
+    public void testFrontCoding()
+        throws Exception
+    {
+        final List<String> names = Arrays.asList("a/b/C.class", "a/b/CD.class", "a/x.txt", "", "z");
+        assertEquals(names, JarIndexCache.decode(JarIndexCache.encode(names)));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.maven.model.Profile;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Settings;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Tests the {@link LightweightProjectBuilder}: what it builds must be what
+ * the full project builder builds, and it must give up whenever something
+ * it doesn't handle (profiles, repositories) could apply anywhere in the
+ * lineage of a POM.
+ */
+public class LightweightProjectBuilderTest
+    extends MavenTestCase
+{
+    private static final String PARENT =
+        "<parent><groupId>g</groupId><artifactId>parent</artifactId><version>1</version></parent>\n";
+
+    private File childPom;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.childPom = this.writePom(new File(this.directory, "child/pom.xml"), PARENT
+            + "<artifactId>child</artifactId>\n"
+            + "<properties><lib.version>2.0</lib.version></properties>\n"
+            + "<build><resources><resource><directory>src/conf</directory></resource></resources></build>\n"
+            + "<dependencies>\n"
+            + "<dependency><groupId>x</groupId><artifactId>managed</artifactId></dependency>\n"
+            + "<dependency><groupId>x</groupId><artifactId>lib</artifactId><version>${lib.version}</version>"
+            + "<scope>test</scope></dependency>\n"
+            + "</dependencies>");
+    }
+
+    public void testBuildsWhatTheFullBuilderBuilds()
+        throws Exception
+    {
+        this.writeParent("");
+
+        assertBuildsLikeTheFullBuilder(this.childPom);
+        assertBuildsLikeTheFullBuilder(new File(this.directory, "pom.xml"));
+    }
+
+    public void testAppliesTheExecutionProperties()
+        throws Exception
+    {
+        this.writeParent("");
+        final Properties properties = new Properties();
+        properties.setProperty("lib.version", "3.0");
+
+        final MavenProject project = this.createLightweightProjectBuilder(properties).build(this.childPom);
+
+        assertTrue(LightweightProjectBuilder.describe(project).indexOf("x:lib:jar:3.0:test") >= 0);
+    }
+
+    public void testFallsBackOnAProfileOfTheModule()
+        throws Exception
+    {
+        this.writeParent("");
+        this.writePom(this.childPom, PARENT + "<artifactId>child</artifactId>\n"
+            + "<profiles><profile><id>extra</id></profile></profiles>");
+
+        assertNull(this.createLightweightProjectBuilder(new Properties()).build(this.childPom));
+    }
+
+    public void testFallsBackOnAProfileOfAParent()
+        throws Exception
+    {
+        // - no activation, it may still be activated with -P or by the settings
+        this.writeParent("<profiles><profile><id>extra</id>"
+            + "<properties><lib.version>3.0</lib.version></properties></profile></profiles>");
+
+        assertNull(this.createLightweightProjectBuilder(new Properties()).build(this.childPom));
+    }
+
+    public void testFallsBackOnTheRepositoriesOfAParent()
+        throws Exception
+    {
+        this.writeParent("<repositories><repository><id>other</id><url>file:///other</url></repository>"
+            + "</repositories>");
+
+        assertNull(this.createLightweightProjectBuilder(new Properties()).build(this.childPom));
+    }
+
+    public void testIsNotApplicableWhenTheSettingsDeclareProfiles()
+    {
+        final Settings settings = new Settings();
+        assertTrue(LightweightProjectBuilder.isApplicable(settings, null));
+
+        final org.apache.maven.settings.Profile profile = new org.apache.maven.settings.Profile();
+        profile.setId("extra");
+        settings.addProfile(profile);
+        assertFalse(LightweightProjectBuilder.isApplicable(settings, null));
+
+        final Settings activating = new Settings();
+        activating.addActiveProfile("extra");
+        assertFalse(LightweightProjectBuilder.isApplicable(activating, null));
+    }
+
+    public void testIsNotApplicableWhenProfilesWereActivated()
+        throws Exception
+    {
+        this.writeParent("");
+        final MavenProject rootProject = this.buildProject(this.childPom);
+        assertTrue(LightweightProjectBuilder.isApplicable(new Settings(), rootProject));
+
+        final Profile profile = new Profile();
+        profile.setId("extra");
+        rootProject.setActiveProfiles(Collections.singletonList(profile));
+        assertFalse(LightweightProjectBuilder.isApplicable(new Settings(), rootProject));
+    }
+
+    /**
+     * Builds the given POM with both builders and compares what the Eclipse
+     * writers use of the projects.
+     */
+    private void assertBuildsLikeTheFullBuilder(final File pom)
+        throws Exception
+    {
+        final MavenProject project = this.createLightweightProjectBuilder(new Properties()).build(pom);
+        assertNotNull("fell back to the full builder for " + pom, project);
+        assertEquals(LightweightProjectBuilder.describe(this.buildProject(pom)),
+            LightweightProjectBuilder.describe(project));
+    }
+
+    private void writeParent(final String content)
+        throws Exception
+    {
+        this.writePom(new File(this.directory, "pom.xml"),
+            "<groupId>g</groupId><artifactId>parent</artifactId><version>1</version><packaging>pom</packaging>\n"
+                + "<properties><lib.version>1.0</lib.version></properties>\n"
+                + "<dependencyManagement><dependencies>\n"
+                + "<dependency><groupId>x</groupId><artifactId>managed</artifactId><version>1.5</version>"
+                + "<scope>provided</scope></dependency>\n"
+                + "</dependencies></dependencyManagement>\n"
+                + "<build><outputDirectory>target/main</outputDirectory></build>\n"
+                + content);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+
+import org.apache.maven.artifact.Artifact;
+import org.mobicents.maven.plugin.MavenTestCase;
+import org.mobicents.maven.plugin.TestFiles;
+
+/**
+ * Tests the {@link LocalRepositoryIndex}: it must only resolve releases that
+ * are in the local repository, and a stored index must notice what changed
+ * in the repository since.
+ */
+public class LocalRepositoryIndexTest
+    extends MavenTestCase
+{
+    private File repository;
+
+    private File indexFile;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.repository = new File(this.localRepository.getBasedir());
+        this.indexFile = new File(this.directory, "index.bin");
+        this.installArtifact("g", "a", "1.0", "");
+    }
+
+    public void testResolvesTheReleasesInTheRepository()
+        throws Exception
+    {
+        final LocalRepositoryIndex index = this.loadIndex();
+
+        final Artifact artifact = createArtifact("g", "a", "1.0");
+        assertTrue(index.resolve(artifact, this.localRepository));
+        assertEquals(new File(this.repository, "g/a/1.0/a-1.0.jar"), artifact.getFile());
+        assertTrue(artifact.isResolved());
+        assertFalse(index.resolve(createArtifact("g", "a", "2.0"), this.localRepository));
+        assertFalse(index.resolve(createArtifact("g", "b", "1.0"), this.localRepository));
+    }
+
+    public void testLeavesSnapshotsToTheResolver()
+        throws Exception
+    {
+        this.installArtifact("g", "a", "1.1-SNAPSHOT", "");
+
+        assertFalse(this.loadIndex().resolve(createArtifact("g", "a", "1.1-SNAPSHOT"), this.localRepository));
+    }
+
+    public void testStoredIndexIsValidatedAgainstTheRepository()
+        throws Exception
+    {
+        this.loadIndex().store(this.indexFile);
+        final File jar = new File(this.repository, "g/a/1.0/a-1.0.jar");
+        jar.delete();
+        final File classifiedJar = TestFiles.writeJar(new File(this.repository, "g/a/1.0/a-1.0-sources.jar"));
+        classifiedJar.getParentFile().setLastModified(System.currentTimeMillis() + 10000);
+
+        final LocalRepositoryIndex index = this.loadIndex();
+
+        assertFalse(index.resolve(createArtifact("g", "a", "1.0"), this.localRepository));
+        final Artifact sources = this.getArtifactFactory().createArtifactWithClassifier("g", "a", "1.0", "jar",
+            "sources");
+        assertTrue(index.resolve(sources, this.localRepository));
+    }
+
+    public void testAddsWhatTheResolverResolved()
+        throws Exception
+    {
+        final LocalRepositoryIndex index = this.loadIndex();
+        final File jar = this.installArtifact("g", "b", "1.0", "");
+        final Artifact resolved = createArtifact("g", "b", "1.0");
+        assertFalse(index.resolve(resolved, this.localRepository));
+
+        resolved.setFile(jar);
+        index.add(resolved);
+        index.store(this.indexFile);
+
+        assertTrue(this.loadIndex().resolve(createArtifact("g", "b", "1.0"), this.localRepository));
+    }
+
+    private LocalRepositoryIndex loadIndex()
+        throws Exception
+    {
+        final LocalRepositoryIndex index = new LocalRepositoryIndex(this.repository, 2);
+        index.load(this.indexFile);
+        return index;
+    }
+}
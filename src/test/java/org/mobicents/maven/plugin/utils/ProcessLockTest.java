@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.mobicents.maven.plugin.TestFiles;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ProcessLock}: it's reentrant, keeps the other threads out
+ * until released, and isn't left held when it can't be acquired.
+ */
+public class ProcessLockTest
+    extends TestCase
+{
+    private File file;
+
+    private ExecutorService executor;
+
+    protected void setUp()
+        throws Exception
+    {
+        this.file = new File(TestFiles.createDirectory("lock"), "cache.bin");
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        this.executor.shutdownNow();
+    }
+
+    public void testIsReentrant()
+        throws Exception
+    {
+        final ProcessLock lock = ProcessLock.acquire(this.file);
+        final ProcessLock nestedLock = ProcessLock.acquire(this.file);
+        nestedLock.release();
+        assertTrue(new File(this.file.getPath() + ".lock").isFile());
+
+        // - still held after the nested release
+        final Future<Boolean> other = this.acquireInOtherThread(new CountDownLatch(1));
+        assertNotAcquired(other);
+        lock.release();
+        assertTrue(other.get(5, TimeUnit.SECONDS).booleanValue());
+    }
+
+    public void testKeepsTheOtherThreadsOut()
+        throws Exception
+    {
+        final ProcessLock lock = ProcessLock.acquire(this.file);
+        final CountDownLatch started = new CountDownLatch(1);
+        final Future<Boolean> other = this.acquireInOtherThread(started);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertNotAcquired(other);
+        lock.release();
+        assertTrue(other.get(5, TimeUnit.SECONDS).booleanValue());
+
+        // - and the other thread released it too
+        ProcessLock.acquire(this.file).release();
+    }
+
+    public void testIsNotHeldWhenItCantBeAcquired()
+        throws Exception
+    {
+        // - the lock file can't be created within a file
+        final File blocked = new File(TestFiles.write(new File(this.file.getParentFile(), "file"), ""), "cache.bin");
+        try
+        {
+            ProcessLock.acquire(blocked);
+            fail("The lock file can't be created");
+        }
+        catch (final IOException exception)
+        {
+            // - expected
+        }
+
+        final Future<Boolean> other = this.executor.submit(new Callable<Boolean>()
+        {
+            public Boolean call()
+                throws Exception
+            {
+                try
+                {
+                    ProcessLock.acquire(blocked).release();
+                    return Boolean.TRUE;
+                }
+                catch (final IOException exception)
+                {
+                    return Boolean.FALSE;
+                }
+            }
+        });
+        assertFalse(other.get(5, TimeUnit.SECONDS).booleanValue());
+    }
+
+    /**
+     * Acquires and releases the lock in another thread.
+     */
+    private Future<Boolean> acquireInOtherThread(final CountDownLatch started)
+    {
+        return this.executor.submit(new Callable<Boolean>()
+        {
+            public Boolean call()
+                throws Exception
+            {
+                started.countDown();
+                ProcessLock.acquire(ProcessLockTest.this.file).release();
+                return Boolean.TRUE;
+            }
+        });
+    }
+
+    private static void assertNotAcquired(final Future<Boolean> future)
+        throws Exception
+    {
+        try
+        {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("The lock is held by another thread");
+        }
+        catch (final TimeoutException exception)
+        {
+            // - expected
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Settings;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Tests the {@link ProjectSnapshotStore}: a snapshot must only be restored
+ * while its POMs and everything else the project was built with are the same.
+ */
+public class ProjectSnapshotStoreTest
+    extends MavenTestCase
+{
+    private File parentPom;
+
+    private File pom;
+
+    private List<File> lineage;
+
+    private File file;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.parentPom = this.writePom(new File(this.directory, "pom.xml"),
+            "<groupId>g</groupId><artifactId>parent</artifactId><version>1</version><packaging>pom</packaging>");
+        this.pom = this.writePom(new File(this.directory, "module/pom.xml"),
+            "<parent><groupId>g</groupId><artifactId>parent</artifactId><version>1</version></parent>\n"
+                + "<artifactId>module</artifactId>\n"
+                + "<dependencies><dependency><groupId>x</groupId><artifactId>y</artifactId><version>1.0</version>"
+                + "</dependency></dependencies>");
+        this.lineage = Arrays.asList(new File[] {this.pom, this.parentPom});
+        this.file = new File(this.directory, "snapshots.bin");
+    }
+
+    public void testRestoresAStoredSnapshot()
+        throws Exception
+    {
+        final String context = getContext(Collections.EMPTY_SET, new Properties());
+        final MavenProject project = this.takeSnapshot(context);
+
+        final MavenProject restored = this.restore(context);
+
+        assertNotNull(restored);
+        assertEquals(LightweightProjectBuilder.describe(project), LightweightProjectBuilder.describe(restored));
+    }
+
+    public void testChangedParentMissesTheSnapshot()
+        throws Exception
+    {
+        final String context = getContext(Collections.EMPTY_SET, new Properties());
+        this.takeSnapshot(context);
+        this.writePom(this.parentPom, "<groupId>g</groupId><artifactId>parent</artifactId><version>1</version>"
+            + "<packaging>pom</packaging><properties><changed>true</changed></properties>");
+
+        assertNull(this.restore(context));
+    }
+
+    public void testProfileSwitchMissesTheSnapshot()
+        throws Exception
+    {
+        this.takeSnapshot(getContext(Collections.EMPTY_SET, new Properties()));
+
+        assertNull(this.restore(getContext(Collections.singleton("dev"), new Properties())));
+    }
+
+    public void testChangedPropertiesOrSettingsMissTheSnapshot()
+        throws Exception
+    {
+        final Settings settings = new Settings();
+        this.takeSnapshot(ProjectSnapshotStore.getContext(settings, Collections.EMPTY_SET, new Properties()));
+
+        final Properties properties = new Properties();
+        properties.setProperty("env", "test");
+        assertNull(this.restore(ProjectSnapshotStore.getContext(settings, Collections.EMPTY_SET, properties)));
+
+        final Settings otherSettings = new Settings();
+        otherSettings.addActiveProfile("dev");
+        assertNull(this.restore(ProjectSnapshotStore.getContext(otherSettings, Collections.EMPTY_SET,
+            new Properties())));
+        assertNotNull(this.restore(ProjectSnapshotStore.getContext(new Settings(), Collections.EMPTY_SET,
+            new Properties())));
+    }
+
+    private MavenProject takeSnapshot(final String context)
+        throws Exception
+    {
+        final MavenProject project = this.buildProject(this.pom);
+        final ProjectSnapshotStore store = new ProjectSnapshotStore(this.file, context);
+        store.snapshot(this.pom, store.getKey(this.lineage), project);
+        store.store();
+        return project;
+    }
+
+    private MavenProject restore(final String context)
+        throws Exception
+    {
+        final ProjectSnapshotStore store = new ProjectSnapshotStore(this.file, context);
+        store.load();
+        return store.restore(this.pom, store.getKey(this.lineage), this.getArtifactFactory(), Collections.EMPTY_LIST);
+    }
+
+    private static String getContext(final Set profileIds, final Properties properties)
+        throws Exception
+    {
+        return ProjectSnapshotStore.getContext(null, profileIds, properties);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.mobicents.maven.plugin.MavenTestCase;
+
+/**
+ * Tests the rebuild of the projects after POMs changed (as the watch goal
+ * does): a change to a parent must reach the modules inheriting from it.
+ */
+public class ProjectUtilsTest
+    extends MavenTestCase
+{
+    private File parentPom;
+
+    private File childPom;
+
+    private File grandChildPom;
+
+    private File otherPom;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        this.parentPom = new File(this.directory, "pom.xml");
+        this.writeParent("1.0");
+        this.childPom = this.writePom(new File(this.directory, "child/pom.xml"),
+            "<parent><groupId>g</groupId><artifactId>parent</artifactId><version>1</version></parent>\n"
+                + "<artifactId>child</artifactId><packaging>pom</packaging>\n"
+                + "<dependencies><dependency><groupId>x</groupId><artifactId>y</artifactId></dependency>"
+                + "</dependencies>");
+        this.grandChildPom = this.writePom(new File(this.directory, "child/grand-child/pom.xml"),
+            "<parent><groupId>g</groupId><artifactId>child</artifactId><version>1</version></parent>\n"
+                + "<artifactId>grand-child</artifactId>");
+        // - a module whose parent is not in the tree (nor in the repository)
+        this.otherPom = this.writePom(new File(this.directory, "other/pom.xml"),
+            "<groupId>g</groupId><artifactId>other</artifactId><version>1</version>");
+    }
+
+    public void testChangedParentMakesItsModulesStale()
+        throws Exception
+    {
+        final Set<File> stale = ProjectUtils.getStalePoms(
+            Arrays.asList(this.parentPom, this.childPom, this.grandChildPom, this.otherPom),
+            Collections.singleton(this.parentPom),
+            this.createLightweightProjectBuilder(new Properties()));
+
+        assertEquals(new HashSet<File>(Arrays.asList(this.parentPom, this.childPom, this.grandChildPom)), stale);
+    }
+
+    public void testChangedModuleOnlyMakesItselfAndItsChildrenStale()
+        throws Exception
+    {
+        final Set<File> stale = ProjectUtils.getStalePoms(
+            Arrays.asList(this.parentPom, this.childPom, this.grandChildPom, this.otherPom),
+            // - compared canonically, whatever the path it was found through
+            Collections.singleton(new File(this.directory, "child/../child/pom.xml")),
+            this.createLightweightProjectBuilder(new Properties()));
+
+        assertEquals(new HashSet<File>(Arrays.asList(this.childPom, this.grandChildPom)), stale);
+    }
+
+    public void testRebuiltModuleGetsTheNewDependencyManagementOfItsParent()
+        throws Exception
+    {
+        assertEquals("1.0", this.getDependencyVersion(this.buildProject(this.grandChildPom)));
+
+        this.writeParent("2.0");
+        final Set<File> stale = ProjectUtils.getStalePoms(
+            Collections.singleton(this.grandChildPom),
+            Collections.singleton(this.parentPom),
+            this.createLightweightProjectBuilder(new Properties()));
+        assertEquals(Collections.singleton(this.grandChildPom), stale);
+        ProjectUtils.clearProjectBuilderCaches(this.getProjectBuilder(), new SystemStreamLog());
+
+        assertEquals("2.0", this.getDependencyVersion(this.buildProject(this.grandChildPom)));
+    }
+
+    public void testLightweightRebuildGetsTheNewDependencyManagementOfItsParent()
+        throws Exception
+    {
+        final LightweightProjectBuilder builder = this.createLightweightProjectBuilder(new Properties());
+        assertEquals("1.0", this.getDependencyVersion(builder.build(this.grandChildPom)));
+
+        this.writeParent("2.0");
+        builder.clear();
+
+        assertEquals("2.0", this.getDependencyVersion(builder.build(this.grandChildPom)));
+    }
+
+    public void testLoadedProjectIsNotKept()
+        throws Exception
+    {
+        final LightweightProjectBuilder builder = this.createLightweightProjectBuilder(new Properties());
+        final MavenProject loaded = ProjectUtils.loadProject(null, builder, null, this.otherPom, new SystemStreamLog());
+        assertEquals("other", loaded.getArtifactId());
+        assertNotSame(loaded, ProjectUtils.loadProject(null, builder, null, this.otherPom, new SystemStreamLog()));
+
+        final MavenProject project = ProjectUtils.getProject(null, builder, null, this.otherPom, new SystemStreamLog());
+        assertNotSame(loaded, project);
+        assertSame(project, ProjectUtils.getProject(null, builder, null, this.otherPom, new SystemStreamLog()));
+    }
+
+    private void writeParent(final String managedVersion)
+        throws Exception
+    {
+        this.writePom(this.parentPom,
+            "<groupId>g</groupId><artifactId>parent</artifactId><version>1</version><packaging>pom</packaging>\n"
+                + "<dependencyManagement><dependencies><dependency>\n"
+                + "<groupId>x</groupId><artifactId>y</artifactId><version>" + managedVersion + "</version>\n"
+                + "</dependency></dependencies></dependencyManagement>");
+    }
+
+    private String getDependencyVersion(final MavenProject project)
+    {
+        assertNotNull(project);
+        assertEquals(1, project.getDependencies().size());
+        return ((Dependency)project.getDependencies().get(0)).getVersion();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ReactorRegistry}: a project is built once however many
+ * executions ask for it at the same time, and a failed build is attempted
+ * again.
+ */
+public class ReactorRegistryTest
+    extends TestCase
+{
+    private final File pom = new File("module/pom.xml");
+
+    public void testBuildsAProjectOnceForAllTheExecutions()
+        throws Exception
+    {
+        final ReactorRegistry registry = new ReactorRegistry();
+        final AtomicInteger builds = new AtomicInteger();
+        final List<Callable<MavenProject>> executions = new ArrayList<Callable<MavenProject>>();
+        for (int ii = 0; ii < 8; ii++)
+        {
+            executions.add(new Callable<MavenProject>()
+            {
+                public MavenProject call()
+                    throws Exception
+                {
+                    return registry.getProject(ReactorRegistryTest.this.pom, newBuilder(builds, true));
+                }
+            });
+        }
+        final List<MavenProject> projects = ConcurrentUtils.invokeAll("test", executions, 8);
+
+        assertEquals(1, builds.get());
+        for (final MavenProject project : projects)
+        {
+            assertSame(projects.get(0), project);
+        }
+        assertSame(projects.get(0), registry.getProject(this.pom, newBuilder(builds, true)));
+        assertNotSame(projects.get(0), registry.rebuildProject(this.pom, newBuilder(builds, true)));
+        assertEquals(2, builds.get());
+    }
+
+    public void testBuildsAgainAProjectThatCouldNotBeBuilt()
+        throws Exception
+    {
+        final ReactorRegistry registry = new ReactorRegistry();
+        final AtomicInteger builds = new AtomicInteger();
+
+        assertNull(registry.getProject(this.pom, newBuilder(builds, false)));
+        assertNotNull(registry.getProject(this.pom, newBuilder(builds, true)));
+        assertEquals(2, builds.get());
+    }
+
+    public void testSharesTheComponentsOfASession()
+    {
+        final ReactorRegistry registry = ReactorRegistry.forSession(null);
+
+        assertSame(registry, ReactorRegistry.forSession(null));
+        assertSame(registry.getComponent(ArrayList.class), registry.getComponent(ArrayList.class));
+    }
+
+    private static Callable<MavenProject> newBuilder(final AtomicInteger builds, final boolean buildable)
+    {
+        return new Callable<MavenProject>()
+        {
+            public MavenProject call()
+                throws Exception
+            {
+                builds.incrementAndGet();
+                Thread.sleep(50);
+                return buildable ? new MavenProject(new Model()) : null;
+            }
+        };
+    }
+}
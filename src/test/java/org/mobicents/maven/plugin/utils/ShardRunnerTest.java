@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.FileUtils;
+import org.mobicents.maven.plugin.TestFiles;
+import org.mobicents.maven.plugin.eclipse.ClasspathState;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link ShardRunner}: the POMs are dealt out into stable shards,
+ * the workers get the options of the build (the settings in a file only
+ * their owner may read), and the states stub workers store merge the same
+ * whatever order they finish in.
+ */
+public class ShardRunnerTest
+    extends TestCase
+{
+    public void testDealsOutThePomsSortedByPath()
+    {
+        final List<File> poms = new ArrayList<File>();
+        for (int index = 9; index >= 0; index--)
+        {
+            poms.add(new File("module" + index + "/pom.xml"));
+        }
+        final List<List<File>> shards = ShardRunner.partition(poms, 3);
+
+        assertEquals(3, shards.size());
+        assertEquals(Arrays.asList(new File[] {new File("module0/pom.xml"), new File("module3/pom.xml"),
+            new File("module6/pom.xml"), new File("module9/pom.xml")}), shards.get(0));
+        assertEquals(3, shards.get(1).size());
+        assertEquals(3, shards.get(2).size());
+
+        // - the same shards whatever the order the POMs were found in
+        Collections.reverse(poms);
+        assertEquals(shards, ShardRunner.partition(poms, 3));
+    }
+
+    public void testMakesNoEmptyShard()
+    {
+        final List<File> poms = Arrays.asList(new File[] {new File("a/pom.xml"), new File("b/pom.xml")});
+
+        assertEquals(2, ShardRunner.partition(poms, 8).size());
+        assertEquals(Collections.singletonList(poms), ShardRunner.partition(poms, 0));
+    }
+
+    public void testPassesTheExecutionPropertiesOn()
+    {
+        final Properties properties = new Properties();
+        properties.setProperty("skipTests", "true");
+        properties.setProperty("env.HOME", "/home/user");
+        properties.setProperty("java.home", "/opt/jdk");
+        properties.setProperty("user.dir", "/work");
+        properties.setProperty("maven.repo.local", "/repository");
+        properties.setProperty("shardPoms", "poms.txt");
+        properties.setProperty("eclipse.workspace", "/workspace with spaces");
+
+        assertEquals(Arrays.asList(new String[] {"-Declipse.workspace=/workspace with spaces", "-DskipTests=true"}),
+            ShardRunner.getPropertyArguments(properties));
+        assertTrue(ShardRunner.getPropertyArguments(null).isEmpty());
+    }
+
+    public void testPassesTheUpdateAndChecksumPoliciesOn()
+    {
+        final ArtifactRepositoryPolicy always = new ArtifactRepositoryPolicy(true,
+            ArtifactRepositoryPolicy.UPDATE_POLICY_ALWAYS, ArtifactRepositoryPolicy.CHECKSUM_POLICY_FAIL);
+        final ArtifactRepositoryPolicy daily = new ArtifactRepositoryPolicy(true,
+            ArtifactRepositoryPolicy.UPDATE_POLICY_DAILY, ArtifactRepositoryPolicy.CHECKSUM_POLICY_WARN);
+
+        assertEquals(Arrays.asList(new String[] {"-U", "-C"}), ShardRunner.getPolicyArguments(Arrays.asList(
+            new ArtifactRepository[] {createRepository("central", always, always), createRepository("other", always,
+                always)})));
+        assertTrue(ShardRunner.getPolicyArguments(Arrays.asList(new ArtifactRepository[] {
+            createRepository("central", always, always), createRepository("other", daily, daily)})).isEmpty());
+        assertTrue(ShardRunner.getPolicyArguments(Collections.EMPTY_LIST).isEmpty());
+    }
+
+    public void testWritesTheSettingsForTheOwnerOnly()
+        throws Exception
+    {
+        final Server server = new Server();
+        server.setId("private");
+        server.setPassword("secret");
+        final Settings settings = new Settings();
+        settings.addServer(server);
+
+        final File file = ShardRunner.writeSettings(settings);
+        try
+        {
+            assertEquals(new File(System.getProperty("java.io.tmpdir")).getCanonicalFile(),
+                file.getParentFile().getCanonicalFile());
+            assertTrue(FileUtils.fileRead(file).indexOf("<password>secret</password>") >= 0);
+            if (File.separatorChar == '/')
+            {
+                assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testMergesTheStatesOfTheWorkersInPomOrder()
+        throws Exception
+    {
+        if (File.separatorChar != '/')
+        {
+            // - the stub worker is started by a shell script
+            return;
+        }
+        final File rootDirectory = TestFiles.createDirectory("shards");
+        final File worker = writeStubWorker(new File(rootDirectory, "worker.sh"));
+        final List<File> poms = new ArrayList<File>();
+        for (int index = 0; index < 10; index++)
+        {
+            poms.add(new File(rootDirectory, "module" + index + "/pom.xml"));
+        }
+        final List<File> selectedPoms = new ArrayList<File>(poms);
+        selectedPoms.add(new File(rootDirectory, "gone/pom.xml"));
+
+        List<String> firstMerge = null;
+        for (int run = 0; run < 2; run++)
+        {
+            final ShardRunner runner = new ShardRunner(Arrays.asList(new String[] {worker.getAbsolutePath(), "-B"}),
+                new File(rootDirectory, "shards"), rootDirectory, new SystemStreamLog());
+            final List<ClasspathState> shardStates = new ArrayList<ClasspathState>();
+            for (final File stateFile : runner.run(ShardRunner.partition(poms, 4), StubShardWorker.STATE_FILE_NAME))
+            {
+                shardStates.add(ClasspathState.load(stateFile));
+            }
+            final ClasspathState mergedState = new ClasspathState();
+            final ClasspathState.Module reused = new ClasspathState.Module("module3/pom.xml", "g", "module3");
+            reused.getSourcePaths().add("previous run");
+            mergedState.addModule(reused);
+
+            assertEquals(Collections.singletonList("gone/pom.xml"),
+                mergedState.addShardModules(selectedPoms, rootDirectory, shardStates));
+
+            final List<String> merge = new ArrayList<String>();
+            for (final ClasspathState.Module module : mergedState.getModules())
+            {
+                merge.add(module.getKey() + " from " + module.getSourcePaths());
+            }
+            assertEquals(10, merge.size());
+            assertEquals("module3/pom.xml from [previous run]", merge.get(0));
+            assertEquals("module0/pom.xml from [shard 1]", merge.get(1));
+            assertEquals("module5/pom.xml from [shard 2]", merge.get(5));
+            assertEquals("module9/pom.xml from [shard 2]", merge.get(9));
+            if (firstMerge == null)
+            {
+                firstMerge = merge;
+            }
+            assertEquals(firstMerge, merge);
+        }
+    }
+
+    /**
+     * Writes the script starting the {@link StubShardWorker}, as the
+     * <code>shardWorkerExecutable</code> would be.
+     */
+    private static File writeStubWorker(final File script)
+        throws Exception
+    {
+        TestFiles.write(script, "#!/bin/sh\nexec \"" + new File(System.getProperty("java.home"), "bin/java")
+            + "\" -cp \"" + System.getProperty("java.class.path") + "\" " + StubShardWorker.class.getName()
+            + " \"$@\"\n");
+        assertEquals(0, new ProcessBuilder(new String[] {"chmod", "755", script.getPath()}).start().waitFor());
+        return script;
+    }
+
+    private static ArtifactRepository createRepository(
+        final String id,
+        final ArtifactRepositoryPolicy snapshots,
+        final ArtifactRepositoryPolicy releases)
+    {
+        return new DefaultArtifactRepository(id, "http://" + id + ".example.org/repository",
+            new DefaultRepositoryLayout(), snapshots, releases);
+    }
+}
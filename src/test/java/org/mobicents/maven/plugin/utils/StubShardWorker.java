@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.maven.plugin.utils;
+
+import java.io.File;
+
+import org.mobicents.maven.plugin.eclipse.ClasspathState;
+
+/**
+ * Stands in for maven as a shard worker: stores a state with a module for
+ * every POM of its shard, each with a source path naming the shard. The
+ * first shards wait the longest, so that the workers finish in reverse
+ * shard order.
+ */
+public class StubShardWorker
+{
+    /**
+     * The name of the file (within the work directory) the state is stored in.
+     */
+    static final String STATE_FILE_NAME = "state.bin";
+
+    public static void main(final String[] arguments)
+        throws Exception
+    {
+        File pomsFile = null;
+        File workDirectory = null;
+        for (final String argument : arguments)
+        {
+            if (argument.startsWith("-DshardPoms="))
+            {
+                pomsFile = new File(argument.substring("-DshardPoms=".length()));
+            }
+            else if (argument.startsWith("-DworkDirectory="))
+            {
+                workDirectory = new File(argument.substring("-DworkDirectory=".length()));
+            }
+        }
+        final int shard = Integer.parseInt(workDirectory.getName());
+        Thread.sleep(Math.max(0, 5 - shard) * 100L);
+
+        final File rootDirectory = new File(System.getProperty("user.dir"));
+        final ClasspathState state = new ClasspathState();
+        for (final File pom : ShardRunner.readPoms(pomsFile))
+        {
+            final String key = ClasspathState.getModuleKey(pom, rootDirectory);
+            final ClasspathState.Module module = new ClasspathState.Module(key, "g", pom.getParentFile().getName());
+            module.getSourcePaths().add("shard " + shard);
+            state.addModule(module);
+        }
+        state.store(new File(workDirectory, STATE_FILE_NAME));
+        System.out.println("Stored " + state.getModules().size() + " module(s)");
+    }
+}